@@ -3,6 +3,9 @@ plugins {
     alias(libs.plugins.google.android.libraries.mapsplatform.secrets.gradle.plugin)
 }
 
+// See gradle.properties
+val facilitiesEnabled = providers.gradleProperty("facilities").map { it.toBoolean() }.getOrElse(false)
+
 android {
     namespace = "com.example.myapplication"
     compileSdk = 34
@@ -15,6 +18,7 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        buildConfigField("boolean", "FACILITIES", facilitiesEnabled.toString())
     }
 
     buildTypes {
@@ -38,6 +42,29 @@ android {
         viewBinding = true
         buildConfig = true
     }
+
+    // FacilityIndex maps the asset straight out of the APK, which needs it stored uncompressed
+    androidResources {
+        noCompress += "fidx"
+    }
+
+    sourceSets["main"].assets.srcDir(layout.buildDirectory.dir("generated/facilities"))
+}
+
+// Compiles the facility and road tables in src/main/facilities into the facilities.fidx asset
+val facilityCompiler: Configuration by configurations.creating
+val compileFacilities = tasks.register<JavaExec>("compileFacilities") {
+    val tables = layout.projectDirectory.dir("src/main/facilities")
+    val asset = layout.buildDirectory.file("generated/facilities/facilities.fidx")
+    inputs.dir(tables)
+    outputs.file(asset)
+    onlyIf { facilitiesEnabled }
+    classpath = facilityCompiler
+    mainClass.set("com.example.myapplication.tools.FacilityCompiler")
+    args(tables.file("facilities.tsv").asFile, tables.file("roads.tsv").asFile, asset.get().asFile)
+}
+tasks.named("preBuild") {
+    dependsOn(compileFacilities)
 }
 
 dependencies {
@@ -54,6 +81,7 @@ dependencies {
     implementation(libs.lifecycle.viewmodel.ktx)
     implementation(libs.navigation.fragment)
     implementation(libs.navigation.ui)
+    facilityCompiler(project(":tools"))
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
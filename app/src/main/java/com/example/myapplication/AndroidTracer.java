@@ -0,0 +1,34 @@
+package com.example.myapplication;
+
+import android.os.Trace;
+
+import com.example.myapplication.metrics.Tracer;
+
+/**
+ * {@link Tracer} that shows up as sections in Perfetto and systrace. Only does work while the
+ * app is being traced, so it can stay installed in release builds.
+ */
+public final class AndroidTracer implements Tracer {
+    // One bit per open section on this thread, set if it was really begun. Tracing can be switched
+    // on between a begin and its end, which must then not end someone else's section.
+    private final ThreadLocal<long[]> open = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public void beginSection(String name) {
+        long[] bits = open.get();
+        boolean tracing = Trace.isEnabled();
+        if (tracing) {
+            Trace.beginSection(name);
+        }
+        bits[0] = (bits[0] << 1) | (tracing ? 1 : 0);
+    }
+
+    @Override
+    public void endSection() {
+        long[] bits = open.get();
+        if ((bits[0] & 1) != 0) {
+            Trace.endSection();
+        }
+        bits[0] >>>= 1;
+    }
+}
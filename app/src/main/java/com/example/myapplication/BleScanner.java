@@ -0,0 +1,121 @@
+package com.example.myapplication;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+//Finds the Pi with BluetoothLeScanner. Matching on name and service UUID is done by ScanFilters,
+//so the Bluetooth controller drops other advertisements instead of waking the app for each one.
+public class BleScanner {
+    private static final String TAG = "BleScanner";
+
+    public enum Mode {
+        LOW_LATENCY, // user is waiting on the screen
+        LOW_POWER    // background reconnects
+    }
+
+    public interface Listener {
+        void onDeviceFound(BluetoothDevice device);
+
+        void onScanFailed(int errorCode);
+    }
+
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final List<ScanFilter> filters = new ArrayList<>();
+    private BluetoothLeScanner scanner;
+    private ScanCallback scanCallback;
+
+    public BleScanner(Context context, BluetoothAdapter bluetoothAdapter, String deviceName, UUID serviceUuid) {
+        this.context = context;
+        this.bluetoothAdapter = bluetoothAdapter;
+        // One filter, so name and service must both match: the service UUID alone is shared by every
+        // unit and by common devices, and separate filters would be OR'd
+        filters.add(new ScanFilter.Builder()
+                .setDeviceName(deviceName)
+                .setServiceUuid(new ParcelUuid(serviceUuid))
+                .build());
+    }
+
+    public synchronized boolean start(Mode mode, Listener listener) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "BLUETOOTH_SCAN permission not granted!");
+            return false;
+        }
+        scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            Log.e(TAG, "BLE scanner not available");
+            return false;
+        }
+        stop();
+
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(mode == Mode.LOW_LATENCY ? ScanSettings.SCAN_MODE_LOW_LATENCY : ScanSettings.SCAN_MODE_LOW_POWER)
+                .setMatchMode(ScanSettings.MATCH_MODE_AGGRESSIVE)
+                .setNumOfMatches(ScanSettings.MATCH_NUM_ONE_ADVERTISEMENT)
+                .setReportDelay(0)
+                .build();
+
+        scanCallback = new ScanCallback() {
+            @Override
+            public void onScanResult(int callbackType, ScanResult result) {
+                // Only the first match matters, stop before the controller reports it again
+                if (stopIfCurrent(this)) {
+                    listener.onDeviceFound(result.getDevice());
+                }
+            }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                Log.e(TAG, "Scan failed: " + errorCode);
+                if (stopIfCurrent(this)) {
+                    listener.onScanFailed(errorCode);
+                }
+            }
+        };
+        scanner.startScan(filters, settings, scanCallback);
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (scanCallback == null || scanner == null) {
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "BLUETOOTH_SCAN permission not granted!");
+        }
+        if (bluetoothAdapter.isEnabled()) {
+            scanner.stopScan(scanCallback);
+        }
+        scanCallback = null;
+    }
+
+    public synchronized boolean isScanning() {
+        return scanCallback != null;
+    }
+
+    private synchronized boolean stopIfCurrent(ScanCallback callback) {
+        if (callback != scanCallback) {
+            return false;
+        }
+        stop();
+        return true;
+    }
+}
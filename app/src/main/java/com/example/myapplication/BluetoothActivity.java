@@ -2,11 +2,16 @@
 package com.example.myapplication;
 
 import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.IBinder;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
@@ -14,18 +19,38 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import android.telephony.SmsManager;
 
-public class BluetoothActivity extends AppCompatActivity implements BluetoothClient.DataListener {
-    private BluetoothClient bluetoothClient;
+import com.example.myapplication.emergency.CrashAlertStateMachine;
+import com.example.myapplication.metrics.MetricsSnapshot;
+import com.example.myapplication.service.TelemetryStateStream;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.ui.ChoreographerFrameScheduler;
+import com.example.myapplication.ui.TelemetryPresenter;
+
+//Only shows what TelemetryService is doing; the ride keeps going without this activity
+public class BluetoothActivity extends AppCompatActivity implements TelemetryStateStream.Observer {
+    private TelemetryService telemetryService; // Set while bound
     private TextView dataTextView;
+    private TelemetryPresenter telemetryPresenter; // Batches text updates to one per display frame
     private Button scanButton;
     private Button cancelButton;
     private Button testButton;
     EditText emergencyNumber;
-    private Handler callHandler = new Handler(); // Handler to delay call
-    private Runnable callRunnable; // Runnable for delayed call
-    private static final String PERMISSION_CALL_PHONE = android.Manifest.permission.CALL_PHONE;
+    private SharedPreferences emergencyPreferences;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            telemetryService = ((TelemetryService.LocalBinder) service).getService();
+            telemetryPresenter.setPublishCounter(telemetryService.getMetrics().counter("ui.publishes"));
+            telemetryService.getStateStream().subscribe(BluetoothActivity.this);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            telemetryService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,9 +61,25 @@ public class BluetoothActivity extends AppCompatActivity implements BluetoothCli
         cancelButton = findViewById(R.id.cancelButton);
         emergencyNumber = findViewById(R.id.emergencyNumberInput);
         testButton = findViewById(R.id.testButton);
+        telemetryPresenter = new TelemetryPresenter(new ChoreographerFrameScheduler(), dataTextView::setText);
+
+        //The service reads the contacts from here when a crash happens
+        emergencyPreferences = getSharedPreferences(TelemetryService.PREFERENCES_NAME, Context.MODE_PRIVATE);
+        emergencyNumber.setText(emergencyPreferences.getString(TelemetryService.KEY_CONTACTS, ""));
+        emergencyNumber.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
 
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
-        bluetoothClient = new BluetoothClient(this, this);
+            @Override
+            public void afterTextChanged(Editable s) {
+                emergencyPreferences.edit().putString(TelemetryService.KEY_CONTACTS, s.toString()).apply();
+            }
+        });
 
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.BLUETOOTH_SCAN}, 1);
@@ -52,12 +93,16 @@ public class BluetoothActivity extends AppCompatActivity implements BluetoothCli
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.SEND_SMS}, 4);
         }
+        //The ride notification
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.POST_NOTIFICATIONS}, 5);
+        }
 
+        //Starts the ride; the service connects and keeps reconnecting until stopped from its notification
         scanButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                bluetoothClient.startScan();
-                dataTextView.setText("Scanning for devices...");
+                ContextCompat.startForegroundService(BluetoothActivity.this, new Intent(BluetoothActivity.this, TelemetryService.class));
             }
         });
 
@@ -65,79 +110,67 @@ public class BluetoothActivity extends AppCompatActivity implements BluetoothCli
         cancelButton.setOnClickListener(v -> cancelCall());
 
         //Button to simulate data
-        testButton = findViewById(R.id.testButton);
         testButton.setOnClickListener(v -> {
-            onDataReceived("1"); // Simulate Pi sending "1"
+            if (telemetryService != null) {
+                telemetryService.simulateCrash(); // Simulate Pi sending "1"
+            }
         });
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        bluetoothClient.closeConnection();
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, TelemetryService.class), serviceConnection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
-    public void onDataReceived(String data) {
-//        Change the text in the UI
-        runOnUiThread(() -> dataTextView.setText("Received: " + data));
-
-        //Check if the received string is "1": Crash detected
-        if (data.equals("1")) {
-            //Get the phone number entered in the text box
-            String phoneNumber = emergencyNumber.getText().toString();
-
-            //Error case
-            if (phoneNumber.isEmpty()) {
-                runOnUiThread(() -> dataTextView.setText("Error: No phone number entered."));
-                return;
-            }
+    protected void onStop() {
+        super.onStop();
+        if (telemetryService != null) {
+            telemetryService.getStateStream().unsubscribe(this);
+            telemetryPresenter.setPublishCounter(null);
+            telemetryService = null;
+        }
+        unbindService(serviceConnection);
+    }
 
-            //Change UI elements
-            runOnUiThread(() -> {
-                dataTextView.setText("Emergency call in 10 seconds. Tap cancel to stop.");
-                cancelButton.setVisibility(View.VISIBLE); // Show cancel button
-            });
+    //Stream callbacks come from the service's threads; the presenter only posts a frame callback
 
-            // Schedule the call after 10 seconds
-            callRunnable = () -> {
-                //Check if user gave app permission to call
-                if (ContextCompat.checkSelfPermission(this, Manifest.permission.CALL_PHONE) == PackageManager.PERMISSION_GRANTED) {
-                    //Make phone call
-                    Intent i = new Intent(Intent.ACTION_CALL);
-                    i.setData(Uri.parse("tel:" + phoneNumber));
-                    startActivity(i);
-                    dataTextView.setText("Emergency call ongoing."); //Change UI element
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        telemetryPresenter.onSampleReceived(sample);
+    }
 
-                    //Send SMS message
-                    String emergencyMessage = "Emergency Message";
-                    SmsManager smsManager = SmsManager.getDefault();
-                    smsManager.sendTextMessage(phoneNumber, null, emergencyMessage, null, null);
+    @Override
+    public void onStatus(String status) {
+        telemetryPresenter.showStatus(status);
+    }
 
-                } else {
-                    //Request permissions if not granted
-                    ActivityCompat.requestPermissions(this, new String[]{PERMISSION_CALL_PHONE}, 24);
-                }
-                runOnUiThread(() -> cancelButton.setVisibility(View.GONE)); // Hide cancel button after calling
-            };
+    @Override
+    public void onAlertStateChanged(CrashAlertStateMachine.State state) {
+        boolean cancellable = state == CrashAlertStateMachine.State.COUNTDOWN;
+        runOnUiThread(() -> cancelButton.setVisibility(cancellable ? View.VISIBLE : View.GONE));
+    }
 
-            //10 second delay
-            callHandler.postDelayed(callRunnable, 10000);
+    @Override
+    public void onMetrics(MetricsSnapshot snapshot) {
+        TelemetryService service = telemetryService;
+        if (BuildConfig.DEBUG) {
+            telemetryPresenter.showDebug(service == null ? snapshot.format()
+                    : service.getRideSummary().format() + "\n" + snapshot.format());
         }
     }
+
     private void cancelCall() {
-        callHandler.removeCallbacks(callRunnable); // Stop the delayed call
-        runOnUiThread(() -> {
-            dataTextView.setText("Call canceled.");
-            cancelButton.setVisibility(View.GONE); // Hide cancel button
-        });
+        if (telemetryService != null) {
+            telemetryService.cancelAlert(); // Stop the pending call
+        }
     }
 }
 
 
 
 
-
 //package com.example.myapplication;
 //
 //import android.Manifest;
@@ -6,113 +6,591 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothStatusCodes;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.content.ContextCompat;
 
+import com.example.myapplication.connection.ClockOffsetEstimator;
+import com.example.myapplication.connection.ClockSync;
+import com.example.myapplication.connection.ConnectionSupervisor;
+import com.example.myapplication.connection.ConnectionTimings;
+import com.example.myapplication.connection.DeviceProfile;
+import com.example.myapplication.connection.GattOperationException;
+import com.example.myapplication.connection.GattOperationQueue;
+import com.example.myapplication.connection.LinkParameters;
+import com.example.myapplication.connection.ThroughputMeter;
+import com.example.myapplication.metrics.Counter;
+import com.example.myapplication.metrics.LatencyHistogram;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.metrics.Tracer;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetryReceiver;
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.HandlerScheduler;
+import com.example.myapplication.util.LogSampler;
+
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class BluetoothClient {
     private static final String TAG = "BluetoothClient";
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothGatt bluetoothGatt;
+    private volatile BluetoothGatt bluetoothGatt; // Opened and closed on gattHandler only
     private DataListener dataListener;
-    private BluetoothActivity activity;
+    private final Context context;
+    private final TelemetryReceiver telemetryReceiver;
+    private final BleScanner scanner;
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // GATT callbacks run here instead of on a binder thread, one at a time and in order
+    private final HandlerThread gattThread;
+    private final Handler gattHandler;
+    private final ConnectionTimings connectionTimings = new ConnectionTimings();
+    private final ConnectionSupervisor supervisor;
+    private volatile boolean connected;
+    private BleScanner.Mode scanMode = BleScanner.Mode.LOW_LATENCY;
+    private final Runnable cachedConnectTimeout = this::onCachedConnectTimeout;
+    private final ThroughputMeter throughputMeter = new ThroughputMeter();
+    private volatile LinkParameters linkParameters = LinkParameters.defaults();
+    private volatile boolean riding = true;
+    private final GattOperationQueue gattQueue;
+    // Same clock as Location fixes and the rest of the app's latency measurements
+    private static final Clock ELAPSED_CLOCK = SystemClock::elapsedRealtimeNanos;
+    private final ClockOffsetEstimator clockEstimator = new ClockOffsetEstimator(new ClockOffsetEstimator.Config());
+    private final ClockSync clockSync; // null when the unit has no control characteristic
+
+    private final DeviceProfile profile;
+    private final String lastAddressKey;
+
+    private final MetricsRegistry metrics;
+    private final Counter notificationCounter;
+    private final Counter notificationBytes;
+    private final LatencyHistogram decodeTime;
+    // Per-packet logging is off unless enabled with setprop log.tag.BluetoothClient DEBUG, and even then sampled
+    private final LogSampler messageLogSampler = new LogSampler(Clock.SYSTEM, 1000);
+    private static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805F9B34FB"); // Client Characteristic Configuration
 
-    private static final String DEVICE_NAME = "raspberrypi"; // Change this to match your Pi's BLE name
-    private static final UUID SERVICE_UUID = UUID.fromString("0000180F-0000-1000-8000-00805F9B34FB"); // Example UUID
-    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("00002A19-0000-1000-8000-00805F9B34FB"); // Example UUID
+    private static final String PREFERENCES_NAME = "bluetooth_client";
+    private static final String KEY_LAST_DEVICE_ADDRESS = "last_device_address";
+    private static final long CACHED_CONNECT_TIMEOUT_MS = 5000; // Give up on the cached address and scan after this
+    private static final int LOW_LATENCY_ATTEMPTS = 3; // Reconnect attempts that scan aggressively before saving battery
+    private static final int REQUESTED_MTU = 517; // Largest ATT MTU, the Pi answers with what it supports
+    private static final long NEGOTIATION_STEP_TIMEOUT_MS = 2000; // Some stacks never answer, carry on without them
 
     public interface DataListener {
         void onDataReceived(String data);
     }
 
-    public BluetoothClient(BluetoothActivity activity, DataListener listener) {
-        this.activity = activity;
+    public BluetoothClient(Context context, DataListener listener) {
+        this(context, listener, null);
+    }
+
+    // sampleListener receives decoded binary frames, listener still gets the legacy text messages
+    public BluetoothClient(Context context, DataListener listener, SampleListener sampleListener) {
+        this(context, DeviceProfile.raspberryPi(), listener, sampleListener);
+    }
+
+    // Client for one unit; its samples are tagged with the profile's source id
+    public BluetoothClient(Context context, DeviceProfile profile, DataListener listener, SampleListener sampleListener) {
+        this(context, profile, listener, sampleListener, new MetricsRegistry());
+    }
+
+    // Metrics are registered under ble.<label>.*
+    public BluetoothClient(Context context, DeviceProfile profile, DataListener listener, SampleListener sampleListener,
+                           MetricsRegistry metrics) {
+        this.context = context;
+        this.metrics = metrics;
+        String prefix = "ble." + profile.getLabel() + ".";
+        this.notificationCounter = metrics.counter(prefix + "notifications");
+        this.notificationBytes = metrics.counter(prefix + "bytes");
+        this.decodeTime = metrics.histogram(prefix + "decode_us");
+        this.profile = profile;
         this.dataListener = listener;
-        BluetoothManager bluetoothManager = (BluetoothManager) activity.getSystemService(Context.BLUETOOTH_SERVICE);
+        int sourceId = profile.getSourceId();
+        this.telemetryReceiver = new TelemetryReceiver(sampleListener == null ? null : sample -> {
+            // Move the unit's timestamp onto the phone's clock before anyone sees it
+            long remoteMicros = sample.getTimestampMicros();
+            clockEstimator.observeArrival(remoteMicros, ELAPSED_CLOCK.nanoTime() / 1_000);
+            sample.setTimestampMicros(clockEstimator.toLocalMicros(remoteMicros));
+            sample.setSourceId(sourceId);
+            sampleListener.onSampleReceived(sample);
+        }, this::onLegacyMessage);
+        BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
         this.bluetoothAdapter = bluetoothManager.getAdapter();
+        this.scanner = new BleScanner(context, bluetoothAdapter, profile.getDeviceName(), profile.getServiceUuid());
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        // The original Pi keeps its old key so an upgrade still reconnects straight away
+        this.lastAddressKey = sourceId == 0 ? KEY_LAST_DEVICE_ADDRESS : KEY_LAST_DEVICE_ADDRESS + "_" + profile.getLabel();
+        this.gattThread = new HandlerThread(sourceId == 0 ? "gatt-callbacks" : "gatt-callbacks-" + profile.getLabel());
+        gattThread.start();
+        this.gattHandler = new Handler(gattThread.getLooper());
+        this.gattQueue = new GattOperationQueue(new HandlerScheduler(gattHandler), Clock.SYSTEM, new GattOperationQueue.Config());
+        UUID control = profile.getControlCharacteristicUuid();
+        this.clockSync = control == null ? null : new ClockSync(
+                request -> writeCharacteristic(control, request).thenCompose(ignored -> readCharacteristic(control)),
+                clockEstimator, new HandlerScheduler(gattHandler), ELAPSED_CLOCK, new ClockSync.Config(),
+                // Answers complete on the GATT thread, which also decodes the frames
+                telemetryReceiver.getDecoder()::unwrapTimestamp);
+        this.supervisor = new ConnectionSupervisor(new ConnectionSupervisor.Transport() {
+            @Override
+            public void connect(int attempt) {
+                startScan(attempt < LOW_LATENCY_ATTEMPTS ? BleScanner.Mode.LOW_LATENCY : BleScanner.Mode.LOW_POWER);
+            }
+
+            @Override
+            public void disconnect() {
+                closeGatt();
+            }
+        }, new HandlerScheduler(handler), Clock.SYSTEM, new Random(), new ConnectionSupervisor.Config());
+        metrics.gauge(prefix + "gatt_queue_depth", gattQueue::depth);
+    }
+
+    //Connects to the Pi and keeps reconnecting after link loss until closeConnection()
+    public void connect() {
+        supervisor.start();
+    }
+
+    public DeviceProfile getProfile() {
+        return profile;
     }
 
     public void startScan() {
+        startScan(BleScanner.Mode.LOW_LATENCY);
+    }
+
+    //Connects to the Pi, going straight to the last connected address when we have one
+    //and only scanning if that fails
+    public void startScan(BleScanner.Mode mode) {
         if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
             Log.e(TAG, "Bluetooth not available or disabled");
             return;
         }
+        scanMode = mode;
+        closeGatt();
 
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_SCAN)
-                != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "BLUETOOTH_SCAN permission not granted!");
-            return;
+        String address = preferences.getString(lastAddressKey, null);
+        if (address != null && BluetoothAdapter.checkBluetoothAddress(address)) {
+            Log.d(TAG, "Reconnecting to cached device " + address);
+            connectionTimings.start(ConnectionTimings.Path.CACHED_ADDRESS, SystemClock.elapsedRealtimeNanos());
+            connectToDevice(bluetoothAdapter.getRemoteDevice(address));
+            handler.postDelayed(cachedConnectTimeout, CACHED_CONNECT_TIMEOUT_MS);
+        } else {
+            startColdScan();
         }
+    }
 
-        bluetoothAdapter.startLeScan((device, rssi, scanRecord) -> {
-            if (device.getName() != null && device.getName().equals(DEVICE_NAME)) {
-                bluetoothAdapter.stopLeScan(null);
+    private void startColdScan() {
+        connectionTimings.start(ConnectionTimings.Path.COLD_SCAN, SystemClock.elapsedRealtimeNanos());
+        scanner.start(scanMode, new BleScanner.Listener() {
+            @Override
+            public void onDeviceFound(BluetoothDevice device) {
                 connectToDevice(device);
             }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                Log.e(TAG, "Could not find " + profile + ", scan error " + errorCode);
+            }
         });
     }
 
+    //The cached device didn't answer in time: forget about it and do a full scan
+    private void onCachedConnectTimeout() {
+        if (connected) {
+            return;
+        }
+        Log.w(TAG, "Cached device not reachable, scanning");
+        closeGatt();
+        startColdScan();
+    }
+
     private void connectToDevice(BluetoothDevice device) {
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
         != PackageManager.PERMISSION_GRANTED) {
             Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
         }
-        bluetoothGatt = device.connectGatt(activity, false, new BluetoothGattCallback() {
+        // Ask for the 2M PHY up front so the link can come up on it without a separate update
+        int phyMask = bluetoothAdapter.isLe2MPhySupported()
+                ? BluetoothDevice.PHY_LE_1M_MASK | BluetoothDevice.PHY_LE_2M_MASK : BluetoothDevice.PHY_LE_1M_MASK;
+        // After any close posted before it, so a stale close can't take the new connection down
+        gattHandler.post(() -> bluetoothGatt = device.connectGatt(context, false, new BluetoothGattCallback() {
             @Override
             public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
                 if (newState == BluetoothGatt.STATE_CONNECTED) {
-                    Log.d(TAG, "Connected to BLE device");
-                    if (ContextCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
-                            != PackageManager.PERMISSION_GRANTED) {
-                        Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
+                    connected = true;
+                    handler.removeCallbacks(cachedConnectTimeout);
+                    ConnectionTimings.Path path = connectionTimings.getPendingPath();
+                    long elapsedNanos = connectionTimings.connected(SystemClock.elapsedRealtimeNanos());
+                    if (elapsedNanos >= 0) {
+                        Log.d(TAG, "Connected to BLE device via " + path + " in " + elapsedNanos / 1_000_000 + " ms");
+                    } else {
+                        Log.d(TAG, "Connected to BLE device");
                     }
-                    gatt.discoverServices();
+                    telemetryReceiver.getDecoder().reset();
+                    // The unit may have rebooted, its clock has to be learned again
+                    clockEstimator.reset();
+                    supervisor.onConnected();
+                    startNegotiation(gatt);
                 } else {
                     Log.e(TAG, "Disconnected from BLE device");
+                    boolean wasConnected = connected;
+                    connected = false;
+                    throughputMeter.stop();
+                    if (clockSync != null) {
+                        clockSync.stop();
+                    }
+                    gattQueue.clear();
+                    if (!wasConnected && connectionTimings.getPendingPath() == ConnectionTimings.Path.CACHED_ADDRESS) {
+                        //The stack gave up on the cached address before our timeout did
+                        handler.removeCallbacks(cachedConnectTimeout);
+                        handler.post(cachedConnectTimeout);
+                    } else {
+                        supervisor.onDisconnected();
+                    }
                 }
             }
 
             @Override
             public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+                gattQueue.onComplete(GattOperationQueue.Type.DISCOVER_SERVICES, status, null);
+            }
+
+            @Override
+            public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+                gattQueue.onComplete(GattOperationQueue.Type.REQUEST_MTU, status, mtu);
+            }
+
+            @Override
+            public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+                // Also called when the Pi changes PHY on its own
                 if (status == BluetoothGatt.GATT_SUCCESS) {
-                    BluetoothGattService service = gatt.getService(SERVICE_UUID);
-                    if (service != null) {
-                        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
-                                != PackageManager.PERMISSION_GRANTED) {
-                            Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
-                        }
-                        BluetoothGattCharacteristic characteristic = service.getCharacteristic(CHARACTERISTIC_UUID);
-                        gatt.setCharacteristicNotification(characteristic, true);
-                    }
+                    linkParameters = linkParameters.withPhy(txPhy, rxPhy);
                 }
+                gattQueue.onComplete(GattOperationQueue.Type.SET_PHY, status, null);
+            }
+
+            @Override
+            public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+                gattQueue.onComplete(GattOperationQueue.Type.WRITE_DESCRIPTOR, status, null);
+            }
+
+            @Override
+            public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                gattQueue.onComplete(GattOperationQueue.Type.WRITE_CHARACTERISTIC, status, null);
+            }
+
+            // Called on Android 13+
+            @Override
+            public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, byte[] value, int status) {
+                gattQueue.onComplete(GattOperationQueue.Type.READ_CHARACTERISTIC, status, value);
+            }
+
+            // Called on Android 12
+            @Override
+            public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                gattQueue.onComplete(GattOperationQueue.Type.READ_CHARACTERISTIC, status, characteristic.getValue());
+            }
+
+            // Called on Android 13+ with the value already copied out of the characteristic
+            @Override
+            public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, byte[] value) {
+                onNotification(value);
             }
 
+            // Called on Android 12
             @Override
             public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-                String receivedData = new String(characteristic.getValue());
-                Log.d(TAG, "Data received: " + receivedData);
-                if (dataListener != null) {
-                    dataListener.onDataReceived(receivedData);
+                onNotification(characteristic.getValue());
+            }
+        }, BluetoothDevice.TRANSPORT_LE, phyMask, gattHandler));
+    }
+
+    //Setup after connecting. Every step goes through the GATT queue, so each starts as soon as the
+    //previous callback arrives; a refused or unanswered negotiation step keeps its default.
+    private void startNegotiation(BluetoothGatt gatt) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
+        }
+        linkParameters = LinkParameters.defaults();
+        LinkParameters.Priority priority = riding ? LinkParameters.Priority.HIGH : LinkParameters.Priority.BALANCED;
+        if (gatt.requestConnectionPriority(toAndroidPriority(priority))) {
+            linkParameters = linkParameters.withPriority(priority);
+        }
+
+        gattQueue.<Integer>submit(GattOperationQueue.Type.REQUEST_MTU, "MTU request", NEGOTIATION_STEP_TIMEOUT_MS, 0,
+                () -> gatt.requestMtu(REQUESTED_MTU))
+                .whenComplete((mtu, error) -> {
+                    if (error == null) {
+                        linkParameters = linkParameters.withMtu(mtu);
+                    } else {
+                        Log.w(TAG, error.getMessage());
+                    }
+                });
+        if (bluetoothAdapter.isLe2MPhySupported()) {
+            gattQueue.submit(GattOperationQueue.Type.SET_PHY, "2M PHY request", NEGOTIATION_STEP_TIMEOUT_MS, 0, () -> {
+                gatt.setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                        BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+                return true;
+            }).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    Log.w(TAG, error.getMessage());
                 }
+            });
+        }
+        gattQueue.submit(GattOperationQueue.Type.DISCOVER_SERVICES, "Service discovery", gatt::discoverServices)
+                .thenCompose(ignored -> enableNotifications(gatt))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "GATT setup failed: " + error.getMessage());
+                        if (gatt.getService(profile.getServiceUuid()) == null) {
+                            forgetDevice(gatt);
+                        }
+                        return;
+                    }
+                    // Only remembered once it turned out to be one of our units
+                    preferences.edit().putString(lastAddressKey, gatt.getDevice().getAddress()).apply();
+                    LinkParameters agreed = linkParameters;
+                    // The Pi sees the same MTU from the exchange and packs framesPerNotification() frames per notification
+                    Log.d(TAG, "Link negotiated: " + agreed);
+                    throughputMeter.setProfile(agreed.profileKey());
+                    if (clockSync != null) {
+                        clockSync.start();
+                    }
+                });
+    }
+
+    //setCharacteristicNotification only routes notifications locally, the Pi starts sending once the CCCD is written
+    private CompletableFuture<Void> enableNotifications(BluetoothGatt gatt) {
+        BluetoothGattService service = gatt.getService(profile.getServiceUuid());
+        BluetoothGattCharacteristic characteristic = service != null ? service.getCharacteristic(profile.getCharacteristicUuid()) : null;
+        BluetoothGattDescriptor cccd = characteristic != null ? characteristic.getDescriptor(CCCD_UUID) : null;
+        if (cccd == null) {
+            return failed(GattOperationQueue.Type.WRITE_DESCRIPTOR, "Telemetry characteristic lookup");
+        }
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
+        }
+        gatt.setCharacteristicNotification(characteristic, true);
+        return gattQueue.submit(GattOperationQueue.Type.WRITE_DESCRIPTOR, "Notification enable",
+                () -> writeDescriptor(gatt, cccd, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE));
+    }
+
+    //Queues a write to a characteristic of the Pi's service, completes once the Pi acknowledged it
+    public CompletableFuture<Void> writeCharacteristic(UUID uuid, byte[] value) {
+        BluetoothGatt gatt = bluetoothGatt;
+        BluetoothGattCharacteristic characteristic = findCharacteristic(gatt, uuid);
+        if (characteristic == null) {
+            return failed(GattOperationQueue.Type.WRITE_CHARACTERISTIC, "Write to " + uuid);
+        }
+        return gattQueue.submit(GattOperationQueue.Type.WRITE_CHARACTERISTIC, "Write to " + uuid, () -> {
+            if (gatt != bluetoothGatt) {
+                return false; // Closed while queued
+            }
+            if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                    != PackageManager.PERMISSION_GRANTED) {
+                Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
             }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                return gatt.writeCharacteristic(characteristic, value, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT)
+                        == BluetoothStatusCodes.SUCCESS;
+            }
+            characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            characteristic.setValue(value);
+            return gatt.writeCharacteristic(characteristic);
         });
     }
 
-    public void closeConnection() {
-        if (bluetoothGatt != null) {
-            if (ContextCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
+    //Queues a read of a characteristic of the Pi's service
+    public CompletableFuture<byte[]> readCharacteristic(UUID uuid) {
+        BluetoothGatt gatt = bluetoothGatt;
+        BluetoothGattCharacteristic characteristic = findCharacteristic(gatt, uuid);
+        if (characteristic == null) {
+            return failed(GattOperationQueue.Type.READ_CHARACTERISTIC, "Read of " + uuid);
+        }
+        return gattQueue.submit(GattOperationQueue.Type.READ_CHARACTERISTIC, "Read of " + uuid, () -> {
+            if (gatt != bluetoothGatt) {
+                return false; // Closed while queued
+            }
+            if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
                     != PackageManager.PERMISSION_GRANTED) {
                 Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
             }
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+            return gatt.readCharacteristic(characteristic);
+        });
+    }
+
+    private BluetoothGattCharacteristic findCharacteristic(BluetoothGatt gatt, UUID uuid) {
+        BluetoothGattService service = gatt != null ? gatt.getService(profile.getServiceUuid()) : null;
+        return service != null ? service.getCharacteristic(uuid) : null;
+    }
+
+    private boolean writeDescriptor(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, byte[] value) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return gatt.writeDescriptor(descriptor, value) == BluetoothStatusCodes.SUCCESS;
+        }
+        descriptor.setValue(value);
+        return gatt.writeDescriptor(descriptor);
+    }
+
+    private static <T> CompletableFuture<T> failed(GattOperationQueue.Type type, String description) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new GattOperationException(type, description, GattOperationQueue.STATUS_NOT_STARTED));
+        return future;
+    }
+
+    private static int toAndroidPriority(LinkParameters.Priority priority) {
+        switch (priority) {
+            case HIGH:
+                return BluetoothGatt.CONNECTION_PRIORITY_HIGH;
+            case LOW_POWER:
+                return BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER;
+            default:
+                return BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+        }
+    }
+
+    private void onNotification(byte[] value) {
+        Tracer tracer = metrics.getTracer();
+        tracer.beginSection("ble.notification");
+        long start = SystemClock.elapsedRealtimeNanos();
+        supervisor.onNotification();
+        notificationCounter.increment();
+        notificationBytes.add(value.length);
+        if (TelemetryFrame.isBinaryPayload(value)) {
+            throughputMeter.onSamples(TelemetryFrame.frameCount(value.length), start);
+        }
+        // Includes everything downstream that runs on this thread, merge and dispatch hand-off
+        telemetryReceiver.onNotification(value);
+        decodeTime.record((SystemClock.elapsedRealtimeNanos() - start) / 1_000);
+        tracer.endSection();
+    }
+
+    //Short connection interval while riding for the full sample rate, a relaxed one otherwise to save battery
+    public void setRiding(boolean riding) {
+        this.riding = riding;
+        gattHandler.post(() -> {
+            BluetoothGatt gatt = bluetoothGatt;
+            if (gatt == null || !connected) {
+                return;
+            }
+            if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                    != PackageManager.PERMISSION_GRANTED) {
+                Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
+            }
+            LinkParameters.Priority priority = riding ? LinkParameters.Priority.HIGH : LinkParameters.Priority.LOW_POWER;
+            if (gatt.requestConnectionPriority(toAndroidPriority(priority))) {
+                linkParameters = linkParameters.withPriority(priority);
+                throughputMeter.setProfile(linkParameters.profileKey());
+            }
+        });
+    }
+
+    private void onLegacyMessage(String receivedData) {
+        if (Log.isLoggable(TAG, Log.DEBUG) && messageLogSampler.shouldLog()) {
+            Log.d(TAG, "Data received: " + receivedData + " (" + messageLogSampler.takeSuppressed() + " not logged)");
+        }
+        if (dataListener != null) {
+            dataListener.onDataReceived(receivedData);
+        }
+    }
+
+    public TelemetryReceiver getTelemetryReceiver() {
+        return telemetryReceiver;
+    }
+
+    public ConnectionTimings getConnectionTimings() {
+        return connectionTimings;
+    }
+
+    public ConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    //What the last connection agreed on, defaults until negotiation finishes
+    public LinkParameters getLinkParameters() {
+        return linkParameters;
+    }
+
+    //Queue depth, latency and retry counts of GATT operations
+    public GattOperationQueue getGattQueue() {
+        return gattQueue;
+    }
+
+    //Maps this unit's sample timestamps onto the phone's elapsed-realtime clock
+    public ClockOffsetEstimator getClockEstimator() {
+        return clockEstimator;
+    }
+
+    //Samples/s received under each negotiated link profile
+    public ThroughputMeter getThroughputMeter() {
+        return throughputMeter;
+    }
+
+    //Stops reconnecting and closes the link, connect() starts over
+    public void disconnect() {
+        if (clockSync != null) {
+            clockSync.stop();
         }
+        supervisor.stop();
+        closeGatt();
+    }
+
+    //Like disconnect(), and also stops the callback thread: the client is not reusable afterwards
+    public void closeConnection() {
+        disconnect();
+        gattThread.quitSafely();
+    }
+
+    //Connected to something without our service, e.g. an address cached before scans matched on
+    //name and service together: drop it and find the unit by scanning
+    private void forgetDevice(BluetoothGatt gatt) {
+        Log.w(TAG, gatt.getDevice().getAddress() + " is not " + profile + ", forgetting it");
+        preferences.edit().remove(lastAddressKey).apply();
+        closeGatt();
+        supervisor.onDisconnected();
+    }
+
+    private void closeGatt() {
+        handler.removeCallbacks(cachedConnectTimeout);
+        scanner.stop();
+        connected = false;
+        // On the callback thread, so nothing there sees the gatt closing under it
+        gattHandler.post(() -> {
+            BluetoothGatt gatt = bluetoothGatt;
+            if (gatt == null) {
+                return;
+            }
+            bluetoothGatt = null;
+            // No disconnect callback follows a close: fail what is queued here instead
+            connected = false;
+            throughputMeter.stop();
+            gattQueue.clear();
+            if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                    != PackageManager.PERMISSION_GRANTED) {
+                Log.e(TAG, "BLUETOOTH_CONNECT permission not granted");
+            }
+            gatt.close();
+        });
     }
 }
 
@@ -0,0 +1,127 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.myapplication.connection.ClockOffsetEstimator;
+import com.example.myapplication.connection.ConnectionSupervisor;
+import com.example.myapplication.connection.DeviceProfile;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.StreamMerger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps one {@link BluetoothClient} per sensor unit connected at the same time and merges their
+ * samples into a single stream ordered by timestamp. Every client reconnects on its own; a unit
+ * that drops out only delays the others by the merger's lateness window.
+ */
+public class ConnectionManager {
+    private static final String TAG = "ConnectionManager";
+
+    private final List<BluetoothClient> clients;
+    private final StreamMerger merger;
+
+    // listener gets the legacy text messages of every unit, samples arrives merged
+    public ConnectionManager(Context context, List<DeviceProfile> profiles, BluetoothClient.DataListener listener,
+                             SampleListener samples, StreamMerger.Config config) {
+        this(context, profiles, listener, samples, config, new MetricsRegistry());
+    }
+
+    // Every client registers its metrics in metrics, together with the merger's
+    public ConnectionManager(Context context, List<DeviceProfile> profiles, BluetoothClient.DataListener listener,
+                             SampleListener samples, StreamMerger.Config config, MetricsRegistry metrics) {
+        this.merger = new StreamMerger(samples, config);
+        List<BluetoothClient> created = new ArrayList<>(profiles.size());
+        for (DeviceProfile profile : profiles) {
+            int sourceId = profile.getSourceId();
+            merger.addSource(sourceId);
+            BluetoothClient client = new BluetoothClient(context, profile, listener, merger, metrics);
+            // Called on the GATT thread before the new link delivers its first sample
+            client.getSupervisor().setListener(state -> {
+                if (state == ConnectionSupervisor.State.CONNECTED) {
+                    merger.onSourceReconnected(sourceId);
+                }
+            });
+            created.add(client);
+        }
+        this.clients = Collections.unmodifiableList(created);
+        metrics.gauge("merge.queued", merger::getQueuedCount);
+        metrics.gauge("merge.forced_releases", merger::getForcedReleases);
+    }
+
+    //Connects every unit and keeps them connected until disconnect()
+    public void connect() {
+        for (BluetoothClient client : clients) {
+            client.connect();
+        }
+    }
+
+    public void disconnect() {
+        for (BluetoothClient client : clients) {
+            client.disconnect();
+        }
+        // Nothing else is coming, hand over what was held back for the missing units
+        merger.flush();
+        logStats();
+    }
+
+    //The manager is not reusable afterwards
+    public void closeConnections() {
+        for (BluetoothClient client : clients) {
+            client.closeConnection();
+        }
+        merger.flush();
+    }
+
+    public List<BluetoothClient> getClients() {
+        return clients;
+    }
+
+    public BluetoothClient getClient(int sourceId) {
+        for (BluetoothClient client : clients) {
+            if (client.getProfile().getSourceId() == sourceId) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    //True while at least one unit is connected and streaming
+    public boolean isLinkHealthy() {
+        for (BluetoothClient client : clients) {
+            if (client.getSupervisor().isLinkHealthy()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //True when every unit's timestamps are mapped onto the phone's clock by clock sync
+    public boolean isClockSynchronized() {
+        for (BluetoothClient client : clients) {
+            if (!client.getClockEstimator().isSynchronized()) {
+                return false;
+            }
+        }
+        return !clients.isEmpty();
+    }
+
+    public StreamMerger getMerger() {
+        return merger;
+    }
+
+    public void logStats() {
+        for (StreamMerger.SourceStats stats : merger.getStats()) {
+            Log.i(TAG, stats.toString());
+        }
+        for (BluetoothClient client : clients) {
+            ClockOffsetEstimator clock = client.getClockEstimator();
+            Log.i(TAG, client.getProfile().getLabel() + " clock: synchronized=" + clock.isSynchronized()
+                    + " drift=" + clock.getDriftPpm() + " ppm, min round trip " + clock.getMinRoundTripMicros() + " us");
+        }
+    }
+}
@@ -4,23 +4,57 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.FragmentActivity;
 
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.IBinder;
 
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.MarkerOptions;
 import com.example.myapplication.databinding.ActivityMapsBinding;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.track.MultiResolutionTrack;
+import com.example.myapplication.track.RideTrack;
 
 public class MapsActivity extends FragmentActivity implements OnMapReadyCallback {
 
     private GoogleMap mMap;
     private static final String PERMISSION_FINE_LOCATION = android.Manifest.permission.ACCESS_FINE_LOCATION;
     private static final String PERMISSION_INTERNET = android.Manifest.permission.INTERNET;
+    private static final float RIDE_ZOOM = 15;
 private ActivityMapsBinding binding;
+    private final MetricsRegistry localMetrics = new MetricsRegistry();
+    // The service's while bound, so map.* reaches its metrics exporter; the map's own otherwise
+    private MetricsRegistry metrics = localMetrics;
+    private RideTrack rideTrack; // Set while bound to a running ride
+    private TrackRenderer trackRenderer;
+    private RideHistoryOverlay historyOverlay; // Set while started and the map is ready
+
+    //Only binds to a ride that is already running, the map never starts one
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            TelemetryService telemetry = ((TelemetryService.LocalBinder) service).getService();
+            metrics = telemetry.getMetrics();
+            if (historyOverlay != null) {
+                historyOverlay.setMetrics(metrics);
+            }
+            rideTrack = telemetry.getRideTrack();
+            showTrack();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            releaseTrack();
+            rideTrack = null;
+            metrics = localMetrics;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,20 +77,77 @@ private ActivityMapsBinding binding;
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, TelemetryService.class), serviceConnection, 0);
+        showHistory();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        releaseTrack();
+        rideTrack = null;
+        metrics = localMetrics;
+        unbindService(serviceConnection);
+        if (historyOverlay != null) {
+            historyOverlay.release();
+            historyOverlay = null;
+        }
+    }
 
     /**
      * Manipulates the map once available.
      * This callback is triggered when the map is ready to be used.
-     * This is where we can add markers or lines, add listeners or move the camera. In this case,
-     * we just add a marker near Sydney, Australia.
+     * The current ride's track is drawn as soon as both the map and the service are available.
      * If Google Play services is not installed on the device, the user will be prompted to install
      * it inside the SupportMapFragment. This method will only be triggered once the user has
      * installed Google Play services and returned to the app.
      */
     @Override
     public void onMapReady(GoogleMap googleMap) {
-        googleMap.addMarker(new MarkerOptions()
-                .position(new LatLng(0, 0))
-                .title("Marker"));
+        mMap = googleMap;
+        mMap.setOnCameraIdleListener(() -> {
+            if (trackRenderer != null) {
+                trackRenderer.onCameraIdle();
+            }
+            if (historyOverlay != null) {
+                historyOverlay.onCameraIdle();
+            }
+        });
+        showTrack();
+        showHistory();
+    }
+
+    //Past crash alerts in view, and how many earlier rides passed through here
+    private void showHistory() {
+        if (mMap == null || historyOverlay != null) {
+            return;
+        }
+        historyOverlay = new RideHistoryOverlay(this, mMap, metrics);
+        historyOverlay.setListener(rides -> setTitle(rides == 1 ? "1 earlier ride here" : rides + " earlier rides here"));
+        historyOverlay.onCameraIdle();
+    }
+
+    private void showTrack() {
+        if (mMap == null || rideTrack == null || trackRenderer != null) {
+            return;
+        }
+        int size = rideTrack.size();
+        if (size > 0) {
+            double[] latitude = new double[1];
+            double[] longitude = new double[1];
+            rideTrack.copy(size - 1, latitude, longitude);
+            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(new LatLng(latitude[0], longitude[0]), RIDE_ZOOM));
+        }
+        trackRenderer = new TrackRenderer(mMap, rideTrack, metrics, new MultiResolutionTrack.Config());
+    }
+
+    private void releaseTrack() {
+        if (trackRenderer != null) {
+            trackRenderer.release();
+            trackRenderer = null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.example.myapplication.sensor.PhoneImuBatcher;
+
+//The phone's accelerometer and gyroscope, batched in the sensor hub's FIFO so the CPU is woken
+//about once per maxReportLatency instead of for every event. Wake-up sensors are preferred:
+//a non-wake-up FIFO silently overwrites its oldest events while the phone sleeps.
+public class PhoneImuSource implements SensorEventListener {
+    private static final String TAG = "PhoneImuSource";
+
+    public static final class Config {
+        public int samplingPeriodMicros = 10_000; // 100 Hz, plenty for impact peaks
+        // Adds at most this much to the time to detect a crash, which takes seconds of stillness anyway
+        public int maxReportLatencyMicros = 1_000_000;
+    }
+
+    private final SensorManager sensorManager;
+    private final PhoneImuBatcher batcher;
+    private final Config config;
+    private final Sensor accelerometer;
+    private final Sensor gyroscope;
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private boolean flushPosted; // Only touched on the sensor thread
+    // Runs after every event of the current delivery, so one call per batch
+    private final Runnable flush = this::onBatchDelivered;
+
+    public PhoneImuSource(Context context, PhoneImuBatcher batcher, Config config) {
+        this.sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        this.batcher = batcher;
+        this.config = config;
+        this.accelerometer = defaultSensor(Sensor.TYPE_ACCELEROMETER);
+        this.gyroscope = defaultSensor(Sensor.TYPE_GYROSCOPE);
+    }
+
+    // False if the phone has no accelerometer
+    public synchronized boolean start() {
+        if (thread != null) {
+            return true;
+        }
+        if (accelerometer == null) {
+            Log.e(TAG, "No accelerometer, phone fallback unavailable");
+            return false;
+        }
+        thread = new HandlerThread("phone-imu");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(batcher::reset);
+        register(accelerometer);
+        if (gyroscope != null) {
+            register(gyroscope);
+        } else {
+            Log.w(TAG, "No gyroscope, rotation will read as zero");
+        }
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        sensorManager.unregisterListener(this);
+        // Whatever was delivered before unregistering is still processed
+        handler.post(batcher::flush);
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    // Sensor thread
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] v = event.values;
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            batcher.onAccelerometer(event.timestamp, v[0], v[1], v[2]);
+        } else {
+            batcher.onGyroscope(event.timestamp, v[0], v[1], v[2]);
+        }
+        Handler h = handler;
+        if (!flushPosted && h != null) {
+            flushPosted = true;
+            // Queued behind the rest of this delivery, the looper dispatches all pending events first
+            h.post(flush);
+        }
+    }
+
+    private void onBatchDelivered() {
+        flushPosted = false;
+        batcher.flush();
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    private void register(Sensor sensor) {
+        if (sensor.getFifoMaxEventCount() == 0) {
+            Log.w(TAG, sensor.getName() + " has no FIFO, every event wakes the CPU");
+        }
+        sensorManager.registerListener(this, sensor, config.samplingPeriodMicros, config.maxReportLatencyMicros, handler);
+    }
+
+    private Sensor defaultSensor(int type) {
+        Sensor wakeUp = sensorManager.getDefaultSensor(type, true);
+        return wakeUp != null ? wakeUp : sensorManager.getDefaultSensor(type);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication;
+
+import android.content.Context;
+
+import com.example.myapplication.geo.PayloadBounds;
+import com.example.myapplication.geo.SpatialIndex;
+
+import java.io.File;
+import java.io.IOException;
+
+//Where past rides went and where crash alerts were triggered, shared by the service that records
+//them and the map that shows them. Opened once per process: opening cleans up unfinished run
+//files, which must not happen under a writer. Payloads are minutes since the epoch, for rides the
+//minute of the ride's first fix, so every ride has its own payload. Rides are added through
+//addRide(), which also keeps each ride's bounding box for counting the rides in a region.
+public final class RideHistory {
+    private static RideHistory instance;
+
+    private final SpatialIndex rides;
+    private final SpatialIndex crashes;
+    private final PayloadBounds rideBounds;
+
+    private RideHistory(SpatialIndex rides, SpatialIndex crashes) {
+        this.rides = rides;
+        this.crashes = crashes;
+        this.rideBounds = PayloadBounds.of(rides);
+    }
+
+    //Reads the index files, so not on the main thread
+    public static synchronized RideHistory get(Context context) throws IOException {
+        if (instance == null) {
+            File directory = new File(context.getApplicationContext().getFilesDir(), "geo");
+            SpatialIndex.Config config = new SpatialIndex.Config();
+            instance = new RideHistory(SpatialIndex.open(new File(directory, "rides"), config),
+                    SpatialIndex.open(new File(directory, "crashes"), config));
+        }
+        return instance;
+    }
+
+    public static int minuteOf(long timeMillis) {
+        return (int) (timeMillis / 60_000);
+    }
+
+    //Writes the index files, so not on the main thread
+    public void addRide(double[] latitudes, double[] longitudes, int[] payloads, int count) throws IOException {
+        rides.add(latitudes, longitudes, payloads, count);
+        rideBounds.add(latitudes, longitudes, payloads, count);
+    }
+
+    //Rides whose bounding box overlaps the region; a box with west > east wraps across the antimeridian
+    public int countRides(double south, double west, double north, double east) {
+        return rideBounds.countIntersecting(south, west, north, east);
+    }
+
+    public SpatialIndex getRides() {
+        return rides;
+    }
+
+    public SpatialIndex getCrashes() {
+        return crashes;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.myapplication.metrics.LatencyHistogram;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Shows past crash alerts inside the visible part of the map and how many earlier rides went
+//through it. Both come from RideHistory, queried on a worker thread whenever the camera settles;
+//the main thread only swaps the markers. Only the latest view is queried: moves while a query is
+//waiting replace its bounds, and a result a newer view is already waiting for is dropped.
+public class RideHistoryOverlay {
+    private static final String TAG = "RideHistoryOverlay";
+    private static final int MAX_MARKERS = 100;
+
+    public interface Listener {
+        // Main thread
+        void onRidesInView(int rides);
+    }
+
+    private final Context context;
+    private final GoogleMap map;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "ride-history"));
+    private volatile LatencyHistogram queryTime;
+    private final AtomicReference<LatLngBounds> pending = new AtomicReference<>(); // View not queried yet
+    private final List<Marker> markers = new ArrayList<>(); // Main thread only
+    private Listener listener;
+    private boolean released;
+
+    public RideHistoryOverlay(Context context, GoogleMap map, MetricsRegistry metrics) {
+        this.context = context.getApplicationContext();
+        this.map = map;
+        setMetrics(metrics);
+    }
+
+    // Records into metrics from now on, e.g. the service's once bound to it
+    public void setMetrics(MetricsRegistry metrics) {
+        this.queryTime = metrics.histogram("map.history_query_us");
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    //Main thread, after the camera moved
+    public void onCameraIdle() {
+        LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        if (pending.getAndSet(bounds) == null) {
+            worker.execute(this::queryLatest);
+        }
+    }
+
+    public void release() {
+        released = true;
+        worker.shutdownNow();
+        for (Marker marker : markers) {
+            marker.remove();
+        }
+        markers.clear();
+        Log.i(TAG, queryTime.toString());
+    }
+
+    // Worker thread
+    private void queryLatest() {
+        LatLngBounds bounds = pending.getAndSet(null);
+        if (bounds != null) {
+            query(bounds);
+        }
+    }
+
+    private void query(LatLngBounds bounds) {
+        RideHistory history;
+        try {
+            history = RideHistory.get(context);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open ride history", e);
+            return;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        double south = bounds.southwest.latitude;
+        double west = bounds.southwest.longitude;
+        double north = bounds.northeast.latitude;
+        double east = bounds.northeast.longitude;
+        int rides = history.countRides(south, west, north, east);
+        List<MarkerOptions> crashes = new ArrayList<>();
+        history.getCrashes().query(south, west, north, east, (latitude, longitude, minute) -> {
+            if (crashes.size() < MAX_MARKERS) {
+                crashes.add(new MarkerOptions().position(new LatLng(latitude, longitude))
+                        .title("Crash alert"));
+            }
+        });
+        queryTime.record((SystemClock.elapsedRealtimeNanos() - start) / 1_000);
+        if (pending.get() != null) {
+            return; // Already out of view
+        }
+        mainHandler.post(() -> show(crashes, rides));
+    }
+
+    private void show(List<MarkerOptions> crashes, int rides) {
+        if (released) {
+            return;
+        }
+        for (Marker marker : markers) {
+            marker.remove();
+        }
+        markers.clear();
+        for (MarkerOptions options : crashes) {
+            markers.add(map.addMarker(options));
+        }
+        if (listener != null) {
+            listener.onRidesInView(rides);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.myapplication;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.telephony.SmsManager;
+
+import com.example.myapplication.emergency.EmergencyDispatcher;
+
+import java.util.ArrayList;
+
+//Sends emergency SMS through SmsManager and feeds the per-part sent and delivered reports back to the dispatcher
+public class SmsManagerTransport implements EmergencyDispatcher.SmsTransport {
+    private static final String ACTION_SENT = "com.example.myapplication.EMERGENCY_SMS_SENT";
+    private static final String ACTION_DELIVERED = "com.example.myapplication.EMERGENCY_SMS_DELIVERED";
+    private static final String EXTRA_MESSAGE_ID = "message_id";
+    private static final int MAX_PARTS = 64; // Keeps request codes unique per message and part
+
+    private final Context context;
+    private final SmsManager smsManager;
+    private EmergencyDispatcher dispatcher;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int messageId = intent.getIntExtra(EXTRA_MESSAGE_ID, -1);
+            if (dispatcher == null || messageId < 0) {
+                return;
+            }
+            if (ACTION_SENT.equals(intent.getAction())) {
+                dispatcher.onPartSent(messageId, getResultCode() == Activity.RESULT_OK);
+            } else if (ACTION_DELIVERED.equals(intent.getAction())) {
+                dispatcher.onPartDelivered(messageId, getResultCode() == Activity.RESULT_OK);
+            }
+        }
+    };
+
+    public SmsManagerTransport(Context context) {
+        this.context = context;
+        this.smsManager = context.getSystemService(SmsManager.class);
+    }
+
+    public void register(EmergencyDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_SENT);
+        filter.addAction(ACTION_DELIVERED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter);
+        }
+    }
+
+    public void unregister() {
+        context.unregisterReceiver(receiver);
+        dispatcher = null;
+    }
+
+    @Override
+    public int send(String number, String message, int messageId) {
+        ArrayList<String> parts = smsManager.divideMessage(message);
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+        ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            int requestCode = messageId * MAX_PARTS + i;
+            sentIntents.add(report(ACTION_SENT, messageId, requestCode));
+            deliveryIntents.add(report(ACTION_DELIVERED, messageId, requestCode));
+        }
+        smsManager.sendMultipartTextMessage(number, null, parts, sentIntents, deliveryIntents);
+        return parts.size();
+    }
+
+    private PendingIntent report(String action, int messageId, int requestCode) {
+        Intent intent = new Intent(action).setPackage(context.getPackageName()).putExtra(EXTRA_MESSAGE_ID, messageId);
+        return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_ONE_SHOT);
+    }
+}
@@ -0,0 +1,675 @@
+package com.example.myapplication;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.location.Location;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.telecom.TelecomManager;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import com.example.myapplication.connection.DeviceProfile;
+import com.example.myapplication.crash.BlackBoxRecorder;
+import com.example.myapplication.crash.CrashDetector;
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.crash.CrashListener;
+import com.example.myapplication.emergency.CrashAlertStateMachine;
+import com.example.myapplication.emergency.EmergencyDispatcher;
+import com.example.myapplication.emergency.EmergencyMessage;
+import com.example.myapplication.emergency.LocationCache;
+import com.example.myapplication.geo.FacilityIndex;
+import com.example.myapplication.journal.JournalCompactor;
+import com.example.myapplication.journal.RideArchiveWriter;
+import com.example.myapplication.journal.RideJournal;
+import com.example.myapplication.metrics.Counter;
+import com.example.myapplication.metrics.LatencyHistogram;
+import com.example.myapplication.metrics.MetricsExporter;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.metrics.Tracer;
+import com.example.myapplication.sensor.FallbackController;
+import com.example.myapplication.sensor.PhoneImuBatcher;
+import com.example.myapplication.service.TelemetryStateStream;
+import com.example.myapplication.stats.RideStatsAggregator;
+import com.example.myapplication.stats.RideSummary;
+import com.example.myapplication.telemetry.SampleDispatcher;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.SampleRingBuffer;
+import com.example.myapplication.telemetry.StreamMerger;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.track.DeadBandCompactor;
+import com.example.myapplication.track.KalmanLocationFilter;
+import com.example.myapplication.track.RideTrack;
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.ExecutorScheduler;
+import com.example.myapplication.util.HandlerScheduler;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Owns everything a ride needs: the BLE link, decoding, crash detection, the black box, the
+ * journal and the emergency alert. It runs as a foreground service so none of it is torn down
+ * when the screen rotates or the app goes to the background.
+ *
+ * <p>Work happens on the service's own threads: GATT callbacks on each BluetoothClient's thread,
+ * detection and journaling on their dispatchers, and the alert countdown and dispatch on
+ * "crash-alert". Activities bind to it and observe {@link #getStateStream()}; the only things
+ * they can ask for are {@link #cancelAlert()} and {@link #simulateCrash()}. A ride starts with
+ * startForegroundService() and ends from the notification's Stop action. Binding only builds the
+ * pipeline: location updates, the dispatchers and the metrics exporter run only during a ride.
+ *
+ * <p>While no unit is streaming, the phone's own accelerometer and gyroscope feed the same
+ * pipeline through a second CrashDetector, unless turned off with {@link #KEY_PHONE_FALLBACK}.
+ *
+ * <p>Every stage records into {@link #getMetrics()}; a snapshot is written to metrics.txt in the
+ * files directory every ten seconds while riding and published on the state stream.
+ */
+public class TelemetryService extends Service implements BluetoothClient.DataListener, SampleListener, CrashListener {
+    private static final String TAG = "TelemetryService";
+    private static final String CHANNEL_ID = "ride";
+    private static final String FACILITIES_ASSET = "facilities.fidx"; // Compiled by the :tools module
+    private static final int NOTIFICATION_ID = 1;
+    private static final long LOCATION_BATCH_MILLIS = 10_000;
+    private static final String ACTION_STOP = "com.example.myapplication.action.STOP_RIDE";
+
+    // Emergency contacts are written by the UI and read here, never from a view
+    public static final String PREFERENCES_NAME = "emergency";
+    public static final String KEY_CONTACTS = "contacts";
+    public static final String KEY_PHONE_FALLBACK = "phone_fallback";
+
+    // Units to ride with; e.g. Arrays.asList(DeviceProfile.helmet(), DeviceProfile.frame()) for a helmet and a frame unit
+    private static final List<DeviceProfile> DEVICE_PROFILES = Collections.singletonList(DeviceProfile.raspberryPi());
+
+    public class LocalBinder extends Binder {
+        public TelemetryService getService() {
+            return TelemetryService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final TelemetryStateStream stateStream = new TelemetryStateStream();
+    private final Clock elapsedClock = SystemClock::elapsedRealtimeNanos; // Same time base as Location fixes
+    private final LocationCache locationCache = new LocationCache(new LocationCache.Config()); // Kept warm for a crash
+    private final RideTrack rideTrack = new RideTrack(); // Shown by MapsActivity
+    private SharedPreferences preferences;
+    private ConnectionManager connectionManager;
+    private SampleDispatcher sampleDispatcher; // Hands samples from the GATT thread to a processing thread
+    private CrashDetector crashDetector; // Runs on the processing thread
+    private CrashDetector phoneCrashDetector; // Same logic over the phone's sensors, also on the processing thread
+    private PhoneImuBatcher phoneImuBatcher;
+    private PhoneImuSource phoneImu;
+    private long fallbackSinceNanos;
+    private long fallbackBatchesAtStart;
+    private FallbackController fallbackController; // Polls on the main thread
+    private RideJournal rideJournal; // Written on its own thread so disk I/O never delays detection
+    private SampleDispatcher journalDispatcher;
+    private BlackBoxRecorder blackBox; // Last seconds before a crash, saved when one is triggered
+    private ScheduledExecutorService blackBoxExecutor;
+    private FusedLocationProviderClient fusedLocationClient;
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            if (!tracking) {
+                return;
+            }
+            for (Location location : result.getLocations()) {
+                long start = elapsedClock.nanoTime();
+                blackBox.onLocation(location.getTime(), location.getLatitude(), location.getLongitude(),
+                        location.getSpeed(), location.getAccuracy());
+                cacheLocation(location);
+                trackLocation(location);
+                locationTime.record((elapsedClock.nanoTime() - start) / 1_000);
+            }
+        }
+    };
+    private EmergencyDispatcher emergencyDispatcher;
+    private SmsManagerTransport smsTransport;
+    private ExecutorService smsExecutor; // One thread per contact, so they are all sent at once
+    private HandlerThread alertThread;
+    private CrashAlertStateMachine crashAlert; // One countdown and one dispatch per crash, however many triggers arrive
+    private boolean foreground;
+    private volatile boolean tracking; // A batch of fixes can still be delivered after the ride stops
+    // Sample timestamps are on the phone's clock once clock sync has converged, so these are end to end
+    private final LatencyHistogram sensorToDecision = new LatencyHistogram("sensor-to-decision");
+    private final LatencyHistogram sensorToDispatch = new LatencyHistogram("sensor-to-dispatch");
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Counter samplesProcessed = metrics.counter("detect.samples");
+    private final LatencyHistogram detectTime = metrics.histogram("detect.sample_us");
+    private final LatencyHistogram crashToSms = metrics.histogram("alert.crash_to_sms_us");
+    private final LatencyHistogram locationTime = metrics.histogram("location.fix_us");
+    // The track gets smoothed fixes, and only those that change its shape; location callback only
+    private final KalmanLocationFilter locationFilter = new KalmanLocationFilter(new KalmanLocationFilter.Config());
+    private final DeadBandCompactor trackCompactor = new DeadBandCompactor(new DeadBandCompactor.Config());
+    private final RideStatsAggregator rideStats = new RideStatsAggregator(new RideStatsAggregator.Config());
+    private MetricsExporter metricsExporter; // Runs on the black box thread, which already does the disk I/O
+    private RideHistory rideHistory; // Opened and written on the black box thread
+    private volatile FacilityIndex facilities; // Nearest hospital and road for the alert text, null until loaded
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        preferences = getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        metrics.setTracer(new AndroidTracer());
+        metrics.register(sensorToDecision);
+        metrics.register(sensorToDispatch);
+
+        crashDetector = new CrashDetector(this);
+        phoneCrashDetector = new CrashDetector(this);
+        blackBoxExecutor = Executors.newSingleThreadScheduledExecutor();
+        blackBox = new BlackBoxRecorder(new File(getFilesDir(), "blackbox"), new BlackBoxRecorder.Config(), blackBoxExecutor,
+                new BlackBoxRecorder.Listener() {
+                    @Override
+                    public void onSnapshotSaved(File file) {
+                        Log.d(TAG, "Black box saved to " + file);
+                    }
+
+                    @Override
+                    public void onSnapshotFailed(IOException e) {
+                        Log.e(TAG, "Could not save black box", e);
+                    }
+                });
+        smsTransport = new SmsManagerTransport(this);
+        smsExecutor = Executors.newFixedThreadPool(4);
+        emergencyDispatcher = new EmergencyDispatcher(smsTransport, smsExecutor, elapsedClock);
+        emergencyDispatcher.setListener(new EmergencyDispatcher.Listener() {
+            @Override
+            public void onRecipientStatus(String number, EmergencyDispatcher.Status status) {
+                Log.d(TAG, "Emergency SMS to " + number + ": " + status);
+            }
+
+            @Override
+            public void onFirstSent(String number, long crashToSentMillis, long dispatchToSentMillis) {
+                Log.i(TAG, "First emergency SMS sent " + crashToSentMillis + " ms after the crash, "
+                        + dispatchToSentMillis + " ms after dispatch");
+                crashToSms.record(crashToSentMillis * 1_000);
+            }
+        });
+        smsTransport.register(emergencyDispatcher);
+        alertThread = new HandlerThread("crash-alert");
+        alertThread.start();
+        crashAlert = new CrashAlertStateMachine(this::dispatchEmergency, new HandlerScheduler(new Handler(alertThread.getLooper())),
+                elapsedClock, new CrashAlertStateMachine.Config());
+        crashAlert.setListener(this::onAlertStateChanged);
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+        // About 2.5 s of samples at 200 Hz; old samples are dropped first so detection stays current
+        sampleDispatcher = new SampleDispatcher(
+                new SampleRingBuffer(512, SampleRingBuffer.OverflowPolicy.DROP_OLDEST), this);
+        rideJournal = new RideJournal(new File(getFilesDir(), "rides"), new RideJournal.Config(), Clock.SYSTEM);
+        // Larger buffer than detection: the journal may stall for a commit, but should not lose samples
+        journalDispatcher = new SampleDispatcher(
+                new SampleRingBuffer(4096, SampleRingBuffer.OverflowPolicy.DROP_OLDEST), rideJournal, "ride-journal");
+        connectionManager = new ConnectionManager(this, DEVICE_PROFILES, this, sample -> {
+            sampleDispatcher.onSampleReceived(sample);
+            journalDispatcher.onSampleReceived(sample);
+        }, new StreamMerger.Config(), metrics);
+        metrics.gauge("detect.queue_depth", () -> sampleDispatcher.getBuffer().size());
+        metrics.gauge("detect.dropped", () -> sampleDispatcher.getBuffer().getDropped());
+        metrics.gauge("journal.queue_depth", () -> journalDispatcher.getBuffer().size());
+        metrics.gauge("journal.dropped", () -> journalDispatcher.getBuffer().getDropped());
+        metrics.gauge("location.fixes", trackCompactor::getOffered);
+        metrics.gauge("location.kept", trackCompactor::getKept);
+        metrics.gauge("location.outliers", locationFilter::getOutliers);
+        // Phone samples skip the merge, which would hold the units' samples back waiting for them,
+        // but take its lock so the dispatchers' rings never see two producers at once
+        phoneImuBatcher = new PhoneImuBatcher(connectionManager.getMerger()::forward, elapsedClock, metrics,
+                new PhoneImuBatcher.Config());
+        phoneImu = new PhoneImuSource(this, phoneImuBatcher, new PhoneImuSource.Config());
+        fallbackController = new FallbackController(connectionManager::isLinkHealthy,
+                new HandlerScheduler(new Handler(getMainLooper())), elapsedClock, new FallbackController.Config());
+        fallbackController.setListener(this::onFallbackChanged);
+        metricsExporter = new MetricsExporter(metrics, new ExecutorScheduler(blackBoxExecutor), elapsedClock,
+                new File(getFilesDir(), "metrics.txt"), new MetricsExporter.Config());
+        metricsExporter.setListener(stateStream::publishMetrics);
+        blackBoxExecutor.execute(() -> {
+            try {
+                rideHistory = RideHistory.get(this);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open ride history", e);
+            }
+            facilities = loadFacilities();
+        });
+    }
+
+    // Maps the asset where it lies in the APK, it is stored uncompressed for that
+    private FacilityIndex loadFacilities() {
+        if (!BuildConfig.FACILITIES) {
+            Log.i(TAG, "No offline facility index in this build, alerts go out without it");
+            return null;
+        }
+        try (AssetFileDescriptor descriptor = getAssets().openFd(FACILITIES_ASSET);
+             FileInputStream in = descriptor.createInputStream()) {
+            FacilityIndex index = FacilityIndex.wrap(in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength()), false);
+            Log.i(TAG, "Facility index: " + index.getFacilityCount() + " facilities, "
+                    + index.getRoadPointCount() + " road points");
+            return index;
+        } catch (IOException e) {
+            Log.e(TAG, "No offline facility index, alerts go out without it", e);
+            return null;
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopRide();
+            return START_NOT_STICKY;
+        }
+        startInForeground();
+        // Also runs when restarted without an intent after being killed: pick the ride back up
+        stateStream.publishStatus("Scanning for devices...");
+        connectionManager.connect();
+        if (preferences.getBoolean(KEY_PHONE_FALLBACK, true)) {
+            fallbackController.start();
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        metricsExporter.stop();
+        fallbackController.stop();
+        connectionManager.closeConnections();
+        stopLocationUpdates();
+        // No more samples are coming in; both drain what is still queued
+        sampleDispatcher.stop();
+        boolean journalDrained = journalDispatcher.stop();
+        // Lets a snapshot that is still being captured finish
+        blackBoxExecutor.shutdown();
+        smsTransport.unregister();
+        // Sends already handed out still complete
+        smsExecutor.shutdown();
+        alertThread.quitSafely();
+        if (!journalDrained) {
+            // Closing it under the journal thread would lose the tail; the next start recovers it instead
+            Log.w(TAG, "Ride journal still busy, leaving it open");
+            return;
+        }
+        try {
+            rideJournal.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not close ride journal", e);
+        }
+        archiveRides();
+    }
+
+    // Compacts the closed journal into archives; segments are only deleted once their archive is in place
+    private void archiveRides() {
+        File journalDirectory = new File(getFilesDir(), "rides");
+        File archiveDirectory = new File(getFilesDir(), "archive");
+        new Thread(() -> {
+            try {
+                JournalCompactor.Result result = JournalCompactor.compact(journalDirectory, archiveDirectory,
+                        new RideArchiveWriter.Config());
+                if (result.getSamples() > 0) {
+                    Log.i(TAG, String.format(Locale.US, "Archived %d samples into %d rides, %d -> %d bytes (%.1fx)",
+                            result.getSamples(), result.getArchives().size(), result.getJournalBytes(),
+                            result.getArchiveBytes(), result.getRatio()));
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Could not archive rides", e);
+            }
+        }, "ride-archive").start();
+    }
+
+    public TelemetryStateStream getStateStream() {
+        return stateStream;
+    }
+
+    // Rider tapped cancel during the countdown
+    public boolean cancelAlert() {
+        if (crashAlert.cancel()) {
+            stateStream.publishStatus("Call canceled.");
+            return true;
+        }
+        return false;
+    }
+
+    // Same path as the Pi reporting a crash, for testing the alert
+    public void simulateCrash() {
+        onDataReceived("1");
+    }
+
+    // Live summary of the current or last ride; never blocks
+    public RideSummary getRideSummary() {
+        return rideStats.getSummary();
+    }
+
+    public RideTrack getRideTrack() {
+        return rideTrack;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    // Last sample of a detected crash to the detector's decision
+    public LatencyHistogram getSensorToDecision() {
+        return sensorToDecision;
+    }
+
+    // Impact sample to the emergency dispatch, countdown included
+    public LatencyHistogram getSensorToDispatch() {
+        return sensorToDispatch;
+    }
+
+    public static Intent stopIntent(Context context) {
+        return new Intent(context, TelemetryService.class).setAction(ACTION_STOP);
+    }
+
+    // Legacy text messages from the Pi, on the GATT callback thread
+    @Override
+    public void onDataReceived(String data) {
+        stateStream.publishStatus("Received: " + data);
+
+        //Check if the received string is "1": Crash detected by the Pi
+        if (data.equals("1")) {
+            blackBox.trigger();
+            triggerAlert(null);
+        }
+    }
+
+    //Crash detected on the phone from the raw samples, runs on the processing thread
+    @Override
+    public void onCrashDetected(CrashEvent event) {
+        if (connectionManager.isClockSynchronized()) {
+            sensorToDecision.record(elapsedClock.nanoTime() / 1_000 - event.getDetectedTimestampMicros());
+        }
+        blackBox.onCrashDetected(event);
+        triggerAlert(event);
+    }
+
+    //This runs for every decoded binary frame from the Pi, on the processing thread
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        Tracer tracer = metrics.getTracer();
+        tracer.beginSection("detect.sample");
+        long start = elapsedClock.nanoTime();
+        blackBox.onSampleReceived(sample);
+        if (sample.getSourceId() == PhoneImuBatcher.SOURCE_ID) {
+            phoneCrashDetector.onSampleReceived(sample);
+        } else {
+            crashDetector.onSampleReceived(sample);
+        }
+        detectTime.record((elapsedClock.nanoTime() - start) / 1_000);
+        samplesProcessed.increment();
+        rideStats.onSampleReceived(sample);
+        tracer.endSection();
+        stateStream.onSampleReceived(sample);
+    }
+
+    // Main thread. The phone detector is not reset in between: its windows are time based, so a
+    // gap simply ages out whatever it saw during the previous fallback.
+    private void onFallbackChanged(boolean active) {
+        if (active) {
+            if (phoneImu.start()) {
+                fallbackSinceNanos = elapsedClock.nanoTime();
+                fallbackBatchesAtStart = phoneImuBatcher.getBatchCount();
+                stateStream.publishStatus("Sensor unit not connected, using the phone's sensors.");
+            }
+            return;
+        }
+        if (!phoneImu.isRunning()) {
+            return;
+        }
+        phoneImu.stop();
+        double minutes = (elapsedClock.nanoTime() - fallbackSinceNanos) / 60e9;
+        long wakeups = phoneImuBatcher.getBatchCount() - fallbackBatchesAtStart;
+        Log.i(TAG, "Phone sensors ran " + Math.round(minutes * 60) + " s, " + Math.round(wakeups / minutes)
+                + " wakeups/min, per batch " + phoneImuBatcher.getBatchTime());
+        if (connectionManager.isLinkHealthy()) {
+            stateStream.publishStatus("Sensor unit connected.");
+        }
+    }
+
+    private void recordCrashLocation() {
+        LocationCache.Fix fix = locationCache.best(elapsedClock.nanoTime());
+        if (fix == null) {
+            return;
+        }
+        int minute = RideHistory.minuteOf(fix.getTimeMillis());
+        blackBoxExecutor.execute(() -> {
+            if (rideHistory == null) {
+                return;
+            }
+            try {
+                rideHistory.getCrashes().add(new double[]{fix.getLatitude()}, new double[]{fix.getLongitude()}, new int[]{minute}, 1);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not record crash location", e);
+            }
+        });
+    }
+
+    // The finished ride's track goes into the history, off the main thread
+    private void indexRide() {
+        int size = rideTrack.size();
+        if (size == 0) {
+            return;
+        }
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        size = rideTrack.copy(0, latitudes, longitudes);
+        int[] payloads = new int[size];
+        Arrays.fill(payloads, RideHistory.minuteOf(rideTrack.getTimeMillis(0)));
+        int count = size;
+        blackBoxExecutor.execute(() -> {
+            if (rideHistory == null) {
+                return;
+            }
+            try {
+                rideHistory.addRide(latitudes, longitudes, payloads, count);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not add the ride to the history", e);
+            }
+        });
+    }
+
+    private void triggerAlert(CrashEvent event) {
+        //Error case
+        if (readContacts().isEmpty()) {
+            stateStream.publishStatus("Error: No phone number entered.");
+            return;
+        }
+        if (crashAlert.trigger(event)) {
+            recordCrashLocation();
+        }
+    }
+
+    // Called under the state machine's lock on whichever thread changed the state
+    private void onAlertStateChanged(CrashAlertStateMachine.State state) {
+        if (state == CrashAlertStateMachine.State.COUNTDOWN) {
+            // Hands over the batched fixes now, so the alert goes out with the latest position
+            fusedLocationClient.flushLocations();
+            stateStream.publishStatus("Emergency call in 10 seconds. Tap cancel to stop.");
+        }
+        stateStream.publishAlertState(state);
+    }
+
+    //Countdown ran out, on the alert thread: text every contact with the cached position, then call the first one.
+    //event is null when the Pi flagged the crash itself.
+    private void dispatchEmergency(CrashEvent event, long crashNanos) {
+        List<String> contacts = readContacts();
+        if (contacts.isEmpty()) {
+            stateStream.publishStatus("Error: No phone number entered.");
+            return;
+        }
+        if (event != null && connectionManager.isClockSynchronized()) {
+            sensorToDispatch.record(elapsedClock.nanoTime() / 1_000 - event.getImpactTimestampMicros());
+        }
+        if (hasPermission(Manifest.permission.SEND_SMS)) {
+            long now = elapsedClock.nanoTime();
+            LocationCache.Fix fix = locationCache.best(now);
+            String message = EmergencyMessage.build(fix, locationCache.freshness(fix, now), now, event, facilities);
+            emergencyDispatcher.dispatch(contacts, message, crashNanos);
+        } else {
+            Log.e(TAG, "SEND_SMS not granted, no emergency text sent");
+        }
+
+        //A service can't start the dialer from the background, the telecom stack places the call for us
+        if (hasPermission(Manifest.permission.CALL_PHONE)) {
+            TelecomManager telecomManager = (TelecomManager) getSystemService(Context.TELECOM_SERVICE);
+            telecomManager.placeCall(Uri.fromParts("tel", contacts.get(0), null), null);
+            stateStream.publishStatus("Emergency call ongoing.");
+        } else {
+            Log.e(TAG, "CALL_PHONE not granted, no emergency call placed");
+            stateStream.publishStatus("Error: Call permission not granted.");
+        }
+    }
+
+    // SharedPreferences keeps the file in memory, so this is cheap on any thread
+    private List<String> readContacts() {
+        return EmergencyDispatcher.parseContacts(preferences.getString(KEY_CONTACTS, ""));
+    }
+
+    private void trackLocation(Location location) {
+        if (!locationFilter.update(location.getElapsedRealtimeNanos(), location.getLatitude(), location.getLongitude(),
+                location.getAccuracy())) {
+            return;
+        }
+        rideStats.onLocation(location.getElapsedRealtimeNanos() / 1_000, locationFilter.getLatitude(), locationFilter.getLongitude(),
+                locationFilter.getSpeedMps());
+        if (trackCompactor.offer(location.getTime(), locationFilter.getLatitude(), locationFilter.getLongitude(),
+                locationFilter.getEastVelocity(), locationFilter.getNorthVelocity())) {
+            rideTrack.append(location.getTime(), locationFilter.getLatitude(), locationFilter.getLongitude());
+        }
+    }
+
+    private void cacheLocation(Location location) {
+        locationCache.update(new LocationCache.Fix(location.getTime(), location.getElapsedRealtimeNanos(),
+                location.getLatitude(), location.getLongitude(), location.getAccuracy(), location.getSpeed()));
+    }
+
+    private void startInForeground() {
+        if (foreground) {
+            return;
+        }
+        // A new ride
+        rideTrack.clear();
+        rideStats.reset();
+        blackBoxExecutor.execute(() -> {
+            locationFilter.reset();
+            trackCompactor.reset();
+        });
+        sampleDispatcher.start();
+        if (!journalDispatcher.start()) {
+            Log.w(TAG, "Ride journal still writing the last ride, this one is not journaled");
+        }
+        startLocationUpdates();
+        metricsExporter.start();
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(
+                new NotificationChannel(CHANNEL_ID, "Ride monitoring", NotificationManager.IMPORTANCE_LOW));
+        PendingIntent openApp = PendingIntent.getActivity(this, 0, new Intent(this, BluetoothActivity.class),
+                PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent stop = PendingIntent.getService(this, 1, stopIntent(this), PendingIntent.FLAG_IMMUTABLE);
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Ride monitoring")
+                .setContentText("Crash detection is running")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setContentIntent(openApp)
+                .addAction(0, "Stop", stop)
+                .build();
+        // Android 14 rejects a type whose permissions aren't granted, so only claim location when we have it
+        int type = ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE;
+        if (hasPermission(Manifest.permission.ACCESS_FINE_LOCATION)) {
+            type |= ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION;
+        }
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, notification, type);
+        foreground = true;
+    }
+
+    private void startLocationUpdates() {
+        if (!hasPermission(Manifest.permission.ACCESS_FINE_LOCATION)) {
+            return;
+        }
+        tracking = true;
+        // Start from the last known fix until the first update arrives
+        fusedLocationClient.getLastLocation().addOnSuccessListener(blackBoxExecutor, location -> {
+            if (location != null && locationCache.best(elapsedClock.nanoTime()) == null) {
+                cacheLocation(location);
+            }
+        });
+        // Fixes every second, delivered in batches so the CPU sleeps in between; a crash alert flushes the batch
+        fusedLocationClient.requestLocationUpdates(
+                new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 1000)
+                        .setMaxUpdateDelayMillis(LOCATION_BATCH_MILLIS)
+                        .build(), blackBoxExecutor, locationCallback);
+    }
+
+    private void stopLocationUpdates() {
+        tracking = false;
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+    }
+
+    private void stopRide() {
+        fallbackController.stop();
+        connectionManager.disconnect();
+        stopLocationUpdates();
+        // The samples still queued belong to this ride; the stats are flushed below once they are in
+        sampleDispatcher.stop();
+        if (journalDispatcher.stop()) {
+            rideJournal.flush();
+        }
+        Log.i(TAG, sensorToDecision.toString());
+        Log.i(TAG, sensorToDispatch.toString());
+        Log.i(TAG, locationTime.toString());
+        blackBoxExecutor.execute(() -> Log.i(TAG, String.format(Locale.US,
+                "Track: %d fixes, %d kept (%.1fx), %d outliers, %d filter restarts", trackCompactor.getOffered(),
+                trackCompactor.getKept(), trackCompactor.getCompactionRatio(), locationFilter.getOutliers(),
+                locationFilter.getResets())));
+        // One last snapshot covering the end of the ride
+        metricsExporter.stop();
+        blackBoxExecutor.execute(metricsExporter::exportNow);
+        indexRide();
+        stateStream.publishStatus("Ride stopped. " + rideStats.flush().format());
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        foreground = false;
+        stopSelf();
+    }
+
+    private boolean hasPermission(String permission) {
+        return ContextCompat.checkSelfPermission(this, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.myapplication;
+
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.myapplication.metrics.LatencyHistogram;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.track.MultiResolutionTrack;
+import com.example.myapplication.track.RideTrack;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Draws a RideTrack as one Polyline that is updated in place. Points are simplified for every
+//zoom level on a worker thread; the main thread only swaps in the list for the current zoom,
+//when new points arrive or the camera settles on a zoom that needs a different level. It does so
+//at the start of a frame and records how long that frame took, vsync to vsync, in map.frame_us.
+public class TrackRenderer implements RideTrack.Listener {
+    private static final String TAG = "TrackRenderer";
+    private static final int READ_BATCH = 4096;
+
+    private final GoogleMap map;
+    private final RideTrack source;
+    private final Polyline polyline;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer choreographer; // Main thread only
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "track-simplify"));
+    private final LatencyHistogram simplifyTime;
+    private final LatencyHistogram setPointsTime;
+    private final LatencyHistogram frameTime;
+
+    // Worker thread only
+    private final MultiResolutionTrack track;
+    private final List<List<LatLng>> frozenPoints = new ArrayList<>(); // Per level, reused across updates
+    private final double[] readLatitudes = new double[READ_BATCH];
+    private final double[] readLongitudes = new double[READ_BATCH];
+    private int read;
+    private int shownLevel = -1;
+    private int shownCount = -1;
+
+    private volatile int level; // Level for the current zoom, set on the main thread
+    private boolean updatePending; // Set on any thread, cleared on the worker
+    private boolean released;
+
+    // Main thread
+    public TrackRenderer(GoogleMap map, RideTrack source, MetricsRegistry metrics, MultiResolutionTrack.Config config) {
+        this.map = map;
+        this.source = source;
+        this.track = new MultiResolutionTrack(config);
+        for (int i = 0; i < track.getLevelCount(); i++) {
+            frozenPoints.add(new ArrayList<>());
+        }
+        this.simplifyTime = metrics.histogram("map.simplify_us");
+        this.setPointsTime = metrics.histogram("map.set_points_us");
+        this.frameTime = metrics.histogram("map.frame_us");
+        this.choreographer = Choreographer.getInstance();
+        this.polyline = map.addPolyline(new PolylineOptions().width(8).color(Color.BLUE).geodesic(false));
+        onCameraIdle();
+        source.addListener(this);
+        onPointsAdded(source.size());
+    }
+
+    // Main thread, from GoogleMap.OnCameraIdleListener; levelFor only reads the fixed zoom table
+    public void onCameraIdle() {
+        int newLevel = track.levelFor(map.getCameraPosition().zoom);
+        if (newLevel != level) {
+            level = newLevel;
+            requestUpdate();
+        }
+    }
+
+    @Override
+    public void onPointsAdded(int size) {
+        requestUpdate();
+    }
+
+    // Main thread; stops listening and removes the line
+    public void release() {
+        source.removeListener(this);
+        synchronized (this) {
+            released = true;
+        }
+        logStats();
+        worker.shutdown();
+        polyline.remove();
+    }
+
+    public void logStats() {
+        worker.execute(() -> {
+            StringBuilder sb = new StringBuilder("Track of ").append(track.size()).append(" points:");
+            for (int i = 0; i < track.getLevelCount(); i++) {
+                sb.append(" z").append(track.getZoom(i)).append('=').append(track.getPointCount(i));
+            }
+            Log.i(TAG, sb.toString());
+            Log.i(TAG, simplifyTime.toString());
+            Log.i(TAG, setPointsTime.toString());
+            Log.i(TAG, frameTime.toString());
+        });
+    }
+
+    // Coalesces bursts of fixes and zoom changes into one pass on the worker
+    private synchronized void requestUpdate() {
+        if (updatePending || released) {
+            return;
+        }
+        updatePending = true;
+        worker.execute(this::update);
+    }
+
+    private void update() {
+        synchronized (this) {
+            updatePending = false;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        if (source.size() < read) {
+            // The ride was restarted
+            track.clear();
+            for (List<LatLng> points : frozenPoints) {
+                points.clear();
+            }
+            read = 0;
+            shownCount = -1;
+        }
+        int count;
+        while ((count = source.copy(read, readLatitudes, readLongitudes)) > 0) {
+            for (int i = 0; i < count; i++) {
+                track.append(readLatitudes[i], readLongitudes[i]);
+            }
+            read += count;
+        }
+        int current = level;
+        int pointCount = track.getPointCount(current);
+        if (current == shownLevel && pointCount == shownCount) {
+            return;
+        }
+        // Frozen points never change, so their LatLngs are built once and only the tail is new
+        List<LatLng> frozen = frozenPoints.get(current);
+        int frozenCount = track.getFrozenCount(current);
+        track.forEachPoint(current, frozen.size(), frozenCount, (latitude, longitude) -> frozen.add(new LatLng(latitude, longitude)));
+        List<LatLng> points = new ArrayList<>(pointCount);
+        points.addAll(frozen);
+        track.forEachPoint(current, frozenCount, pointCount,
+                (latitude, longitude) -> points.add(new LatLng(latitude, longitude)));
+        shownLevel = current;
+        shownCount = pointCount;
+        simplifyTime.record((SystemClock.elapsedRealtimeNanos() - start) / 1_000);
+
+        mainHandler.post(() -> choreographer.postFrameCallback(frameStartNanos -> showPoints(points, frameStartNanos)));
+    }
+
+    // Main thread, at the start of a frame; a frame this pushes past the next vsync shows up in frameTime
+    private void showPoints(List<LatLng> points, long frameStartNanos) {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+        }
+        long setStart = SystemClock.elapsedRealtimeNanos();
+        polyline.setPoints(points);
+        setPointsTime.record((SystemClock.elapsedRealtimeNanos() - setStart) / 1_000);
+        choreographer.postFrameCallback(nextFrameNanos -> frameTime.record((nextFrameNanos - frameStartNanos) / 1_000));
+    }
+}
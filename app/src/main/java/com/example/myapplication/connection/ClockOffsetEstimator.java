@@ -0,0 +1,195 @@
+package com.example.myapplication.connection;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how a sensor unit's clock relates to the phone's, so sample timestamps can be moved
+ * into phone time.
+ *
+ * <p>The main input is NTP-style exchanges: the phone sends at local t1, the unit receives at
+ * remote t2 and answers at remote t3, and the phone gets the answer at local t4. Each exchange
+ * gives an offset (remote minus local) that is off by at most half its round trip. The estimator
+ * keeps the last {@link Config#window} exchanges, fits a line through the half with the shortest
+ * round trips, and so tracks both the offset and the drift between the two oscillators.
+ *
+ * <p>Until enough exchanges are in, or for a unit that doesn't support them, it falls back to
+ * sample arrivals: the smallest local-minus-remote difference seen recently is the offset plus
+ * the quickest delivery, which is a fair first guess.
+ *
+ * <p>All times are in microseconds. Thread-safe.
+ */
+public final class ClockOffsetEstimator {
+    public static final class Config {
+        // Exchanges kept for the fit; with ms of jitter the drift needs minutes of them
+        public int window = 64;
+        // Exchanges needed before the fit is trusted over arrivals
+        public int minExchanges = 4;
+        // Exchanges slower than this say nothing useful about the offset
+        public long maxRoundTripMicros = 500_000;
+        // The arrival fallback forgets its minimum this often, so it follows drift
+        public long arrivalWindowMicros = 10_000_000;
+    }
+
+    private final Config config;
+
+    // Ring of accepted exchanges, as the local midpoint and measured offset
+    private final long[] midpoints;
+    private final long[] offsets;
+    private final long[] roundTrips;
+    private int next;
+    private int size;
+
+    private long exchanges;
+    private long rejected;
+    private long lastRoundTripMicros = -1;
+    private long minRoundTripMicros = Long.MAX_VALUE;
+
+    // Fitted model: offset(t) = fitOffset + fitDrift * (t - fitReference)
+    private boolean fitted;
+    private long fitReference;
+    private double fitOffset;
+    private double fitDrift;
+
+    // Arrival fallback, minimum of local - remote over the current and previous window
+    private long arrivalWindowStart = Long.MIN_VALUE;
+    private long arrivalMin = Long.MAX_VALUE;
+    private long previousArrivalMin = Long.MAX_VALUE;
+
+    public ClockOffsetEstimator(Config config) {
+        if (config.window < 2 || config.minExchanges < 1) {
+            throw new IllegalArgumentException("window must be at least 2 and minExchanges at least 1");
+        }
+        this.config = config;
+        this.midpoints = new long[config.window];
+        this.offsets = new long[config.window];
+        this.roundTrips = new long[config.window];
+    }
+
+    // One completed exchange; t1 and t4 on the phone's clock, t2 and t3 on the unit's
+    public synchronized boolean addExchange(long t1, long t2, long t3, long t4) {
+        exchanges++;
+        long roundTrip = (t4 - t1) - (t3 - t2);
+        if (t4 < t1 || t3 < t2 || roundTrip < 0 || roundTrip > config.maxRoundTripMicros) {
+            rejected++;
+            return false;
+        }
+        lastRoundTripMicros = roundTrip;
+        minRoundTripMicros = Math.min(minRoundTripMicros, roundTrip);
+        // Halving each difference first keeps this from overflowing for far-apart clocks
+        midpoints[next] = t1 + (t4 - t1) / 2;
+        offsets[next] = (t2 - t1) / 2 + (t3 - t4) / 2;
+        roundTrips[next] = roundTrip;
+        next = (next + 1) % midpoints.length;
+        size = Math.min(size + 1, midpoints.length);
+        fit();
+        return true;
+    }
+
+    // Forgets everything, e.g. when the unit reconnects and may have rebooted
+    public synchronized void reset() {
+        next = 0;
+        size = 0;
+        fitted = false;
+        fitDrift = 0;
+        arrivalWindowStart = Long.MIN_VALUE;
+        arrivalMin = Long.MAX_VALUE;
+        previousArrivalMin = Long.MAX_VALUE;
+    }
+
+    // A sample stamped remoteMicros by the unit arrived at localMicros
+    public synchronized void observeArrival(long remoteMicros, long localMicros) {
+        if (arrivalWindowStart == Long.MIN_VALUE || localMicros - arrivalWindowStart >= config.arrivalWindowMicros) {
+            previousArrivalMin = arrivalMin;
+            arrivalMin = Long.MAX_VALUE;
+            arrivalWindowStart = localMicros;
+        }
+        arrivalMin = Math.min(arrivalMin, localMicros - remoteMicros);
+    }
+
+    // True once the exchanges, not the arrival fallback, drive the estimate
+    public synchronized boolean isSynchronized() {
+        return fitted && size >= config.minExchanges;
+    }
+
+    // The unit's clock minus the phone's at the given phone time
+    public synchronized long offsetMicros(long localMicros) {
+        if (isSynchronized()) {
+            return Math.round(fitOffset + fitDrift * (localMicros - fitReference));
+        }
+        long arrival = Math.min(arrivalMin, previousArrivalMin);
+        return arrival == Long.MAX_VALUE ? 0 : -arrival;
+    }
+
+    // Moves a timestamp from the unit's clock to the phone's; unchanged while nothing is known
+    public synchronized long toLocalMicros(long remoteMicros) {
+        if (isSynchronized()) {
+            // Solves local = remote - offset(local) for the fitted line
+            double local = (remoteMicros - fitOffset + fitDrift * fitReference) / (1 + fitDrift);
+            return Math.round(local);
+        }
+        long arrival = Math.min(arrivalMin, previousArrivalMin);
+        return arrival == Long.MAX_VALUE ? remoteMicros : remoteMicros + arrival;
+    }
+
+    // How much faster the unit's clock runs, in parts per million
+    public synchronized double getDriftPpm() {
+        return isSynchronized() ? fitDrift * 1e6 : 0;
+    }
+
+    public synchronized long getExchanges() {
+        return exchanges;
+    }
+
+    // Exchanges thrown away as impossible or too slow
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getLastRoundTripMicros() {
+        return lastRoundTripMicros;
+    }
+
+    public synchronized long getMinRoundTripMicros() {
+        return minRoundTripMicros == Long.MAX_VALUE ? -1 : minRoundTripMicros;
+    }
+
+    // Least squares over the quicker half of the window, relative to the newest midpoint
+    private void fit() {
+        long cutoff = medianRoundTrip();
+        long reference = midpoints[(next - 1 + midpoints.length) % midpoints.length];
+        int n = 0;
+        double sumT = 0;
+        double sumO = 0;
+        for (int i = 0; i < size; i++) {
+            if (roundTrips[i] <= cutoff) {
+                n++;
+                sumT += midpoints[i] - reference;
+                sumO += offsets[i];
+            }
+        }
+        double meanT = sumT / n;
+        double meanO = sumO / n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < size; i++) {
+            if (roundTrips[i] <= cutoff) {
+                double dt = midpoints[i] - reference - meanT;
+                covariance += dt * (offsets[i] - meanO);
+                variance += dt * dt;
+            }
+        }
+        // Points at (nearly) the same time say nothing about the drift; keep the last one
+        double drift = variance > 1e6 ? covariance / variance : (fitted ? fitDrift : 0);
+        fitReference = reference;
+        fitDrift = drift;
+        fitOffset = meanO - drift * meanT;
+        fitted = true;
+    }
+
+    private long medianRoundTrip() {
+        long[] sorted = new long[size];
+        System.arraycopy(roundTrips, 0, sorted, 0, size);
+        Arrays.sort(sorted);
+        return sorted[(size - 1) / 2];
+    }
+}
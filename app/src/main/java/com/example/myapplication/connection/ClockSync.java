@@ -0,0 +1,165 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Runs the clock exchanges with one unit over its control characteristic and feeds them to a
+ * {@link ClockOffsetEstimator}.
+ *
+ * <p>Wire format, little-endian like the telemetry frames:
+ * <pre>
+ * request  (10 bytes): u8 type=0x01, u8 id, i64 t1      phone time the request was sent
+ * response (26 bytes): u8 type=0x01, u8 id, i64 t1, i64 t2, i64 t3
+ * </pre>
+ * The phone writes the request; the unit stamps t2 when the write arrives and t3 when it serves
+ * the following read, echoing id and t1 so a stale answer is recognised. t2 and t3 come from the
+ * unit's frame clock, the microsecond counter whose low 32 bits stamp the telemetry frames. The
+ * decoder unwraps those from 0 after every reconnect, so t2 and t3 are moved onto the decoder's
+ * time line before the estimator sees them; otherwise a unit up for more than 2^32 us (71.6 min)
+ * would be hours off. Exchanges run every
+ * {@link Config#fastIntervalMillis} until the estimator is synchronized and every
+ * {@link Config#intervalMillis} after that, one at a time. A unit that never answers is given up
+ * on after {@link Config#maxConsecutiveFailures} attempts.
+ */
+public final class ClockSync {
+    public static final byte TYPE_SYNC = 0x01;
+    public static final int REQUEST_LENGTH = 10;
+    public static final int RESPONSE_LENGTH = 26;
+
+    // Writes the request and reads back the unit's answer, e.g. via the GATT queue
+    public interface Transport {
+        CompletableFuture<byte[]> exchange(byte[] request);
+    }
+
+    public static final class Config {
+        public long fastIntervalMillis = 250;
+        public long intervalMillis = 5_000;
+        public int maxConsecutiveFailures = 5;
+    }
+
+    private final Transport transport;
+    private final ClockOffsetEstimator estimator;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Config config;
+    private final LongUnaryOperator toFrameMicros;
+
+    private boolean running;
+    private boolean inFlight;
+    private Scheduler.Cancellable timer;
+    private int nextId;
+    private int consecutiveFailures;
+    private long failures;
+
+    public ClockSync(Transport transport, ClockOffsetEstimator estimator, Scheduler scheduler, Clock clock, Config config) {
+        this(transport, estimator, scheduler, clock, config, LongUnaryOperator.identity());
+    }
+
+    // toFrameMicros maps the unit's t2 and t3 onto the decoded samples' time line, e.g. FrameDecoder::unwrapTimestamp
+    public ClockSync(Transport transport, ClockOffsetEstimator estimator, Scheduler scheduler, Clock clock, Config config,
+                     LongUnaryOperator toFrameMicros) {
+        this.toFrameMicros = toFrameMicros;
+        this.transport = transport;
+        this.estimator = estimator;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.config = config;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        consecutiveFailures = 0;
+        timer = scheduler.schedule(this::exchangeNow, 0);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public ClockOffsetEstimator getEstimator() {
+        return estimator;
+    }
+
+    static byte[] encodeRequest(int id, long t1) {
+        return ByteBuffer.allocate(REQUEST_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+                .put(TYPE_SYNC).put((byte) id).putLong(t1).array();
+    }
+
+    private synchronized void exchangeNow() {
+        timer = null;
+        if (!running || inFlight) {
+            return;
+        }
+        inFlight = true;
+        int id = nextId++ & 0xFF;
+        long t1 = localMicros();
+        CompletableFuture<byte[]> answer;
+        try {
+            answer = transport.exchange(encodeRequest(id, t1));
+        } catch (RuntimeException e) {
+            answer = new CompletableFuture<>();
+            answer.completeExceptionally(e);
+        }
+        answer.whenComplete((response, error) -> onAnswer(id, t1, response, error));
+    }
+
+    private synchronized void onAnswer(int id, long t1, byte[] response, Throwable error) {
+        long t4 = localMicros();
+        inFlight = false;
+        if (!running) {
+            return;
+        }
+        if (error == null && accept(id, t1, t4, response)) {
+            consecutiveFailures = 0;
+        } else {
+            failures++;
+            if (++consecutiveFailures >= config.maxConsecutiveFailures) {
+                // The unit doesn't speak the protocol; the estimator keeps using arrivals
+                running = false;
+                return;
+            }
+        }
+        long delay = estimator.isSynchronized() ? config.intervalMillis : config.fastIntervalMillis;
+        timer = scheduler.schedule(this::exchangeNow, delay);
+    }
+
+    private boolean accept(int id, long t1, long t4, byte[] response) {
+        if (response == null || response.length < RESPONSE_LENGTH) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(response).order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.get() != TYPE_SYNC || (buf.get() & 0xFF) != id || buf.getLong() != t1) {
+            return false;
+        }
+        long t2 = toFrameMicros.applyAsLong(buf.getLong());
+        long t3 = toFrameMicros.applyAsLong(buf.getLong());
+        // A slow exchange is still an answer, the estimator just doesn't use it
+        estimator.addExchange(t1, t2, t3, t4);
+        return true;
+    }
+
+    private long localMicros() {
+        return clock.nanoTime() / 1_000;
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+import java.util.Random;
+
+/**
+ * Keeps the link to the Pi up without the rider having to press anything.
+ *
+ * <p>After a link loss or a failed attempt the supervisor waits a jittered, exponentially growing
+ * delay and asks the {@link Transport} to connect again. While connected, a watchdog checks that
+ * notifications keep arriving; if a streaming Pi goes quiet for longer than
+ * {@link Config#silenceTimeoutMillis} the link is treated as dead even if the stack hasn't noticed.
+ *
+ * <p>All waiting is done with timers on the given {@link Scheduler}: there is at most one pending
+ * reconnect or timeout and one watchdog tick at any time, and no thread per attempt.
+ */
+public final class ConnectionSupervisor {
+    public enum State {
+        IDLE,       // not supervising
+        CONNECTING, // attempt in progress
+        CONNECTED,
+        BACKOFF     // waiting before the next attempt
+    }
+
+    // The link being supervised, e.g. BluetoothClient or a fake in tests
+    public interface Transport {
+        // attempt counts up from 0 since the link was last healthy
+        void connect(int attempt);
+
+        void disconnect();
+    }
+
+    public interface Listener {
+        void onStateChanged(State state);
+    }
+
+    public static final class Config {
+        public long initialBackoffMillis = 500;
+        public long maxBackoffMillis = 30_000;
+        public double backoffMultiplier = 2;
+        // An attempt that hasn't connected after this is abandoned
+        public long connectTimeoutMillis = 20_000;
+        public long silenceTimeoutMillis = 3_000;
+        public long watchdogPeriodMillis = 1_000;
+    }
+
+    private final Transport transport;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Random random;
+    private final Config config;
+    private Listener listener;
+
+    private State state = State.IDLE;
+    private int attempt;
+    private Scheduler.Cancellable pendingTimer;
+    private Scheduler.Cancellable watchdogTimer;
+
+    // Written on every notification from the callback thread
+    private volatile long notificationCount;
+    private long watchdogSeenCount;
+    private long lastActivityNanos;
+    private boolean streaming; // notifications seen on the current connection
+
+    private long disconnectedSinceNanos = -1;
+    private long totalDisconnectedNanos;
+    private long lastRecoveryNanos = -1;
+    private long maxRecoveryNanos;
+    private long reconnectAttempts;
+    private long linkLosses;
+    private long watchdogTrips;
+
+    public ConnectionSupervisor(Transport transport, Scheduler scheduler, Clock clock, Random random, Config config) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.random = random;
+        this.config = config;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Starts connecting right away and keeps the link up until stop()
+    public synchronized void start() {
+        if (state != State.IDLE) {
+            return;
+        }
+        attempt = 0;
+        connectNow();
+    }
+
+    public synchronized void stop() {
+        if (state == State.IDLE) {
+            return;
+        }
+        cancelTimers();
+        if (disconnectedSinceNanos >= 0) {
+            totalDisconnectedNanos += clock.nanoTime() - disconnectedSinceNanos;
+            disconnectedSinceNanos = -1;
+        }
+        setState(State.IDLE);
+        transport.disconnect();
+    }
+
+    // Transport callback: the link is up
+    public synchronized void onConnected() {
+        if (state == State.IDLE) {
+            return;
+        }
+        cancelTimers();
+        long now = clock.nanoTime();
+        if (disconnectedSinceNanos >= 0) {
+            long recovery = now - disconnectedSinceNanos;
+            totalDisconnectedNanos += recovery;
+            if (linkLosses > 0) {
+                lastRecoveryNanos = recovery;
+                maxRecoveryNanos = Math.max(maxRecoveryNanos, recovery);
+            }
+            disconnectedSinceNanos = -1;
+        }
+        attempt = 0;
+        watchdogSeenCount = notificationCount;
+        lastActivityNanos = now;
+        streaming = false;
+        setState(State.CONNECTED);
+        watchdogTimer = scheduler.schedule(this::watchdogTick, config.watchdogPeriodMillis);
+    }
+
+    // Transport callback: the link dropped, or an attempt failed
+    public synchronized void onDisconnected() {
+        if (state == State.IDLE || state == State.BACKOFF) {
+            return;
+        }
+        if (state == State.CONNECTED) {
+            linkLosses++;
+            disconnectedSinceNanos = clock.nanoTime();
+        }
+        cancelTimers();
+        scheduleReconnect();
+    }
+
+    // Transport callback for every notification; lock-free, only bumps a counter
+    public void onNotification() {
+        notificationCount++;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Connected and, if the Pi streams, heard from recently
+    public synchronized boolean isLinkHealthy() {
+        return state == State.CONNECTED;
+    }
+
+    public synchronized long getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    public synchronized long getLinkLosses() {
+        return linkLosses;
+    }
+
+    // Times the watchdog declared a silent link dead
+    public synchronized long getWatchdogTrips() {
+        return watchdogTrips;
+    }
+
+    // Total time spent without a link after a link loss, including the current outage
+    public synchronized long getTotalDisconnectedMillis() {
+        long total = totalDisconnectedNanos;
+        if (disconnectedSinceNanos >= 0) {
+            total += clock.nanoTime() - disconnectedSinceNanos;
+        }
+        return total / 1_000_000;
+    }
+
+    // Time from the last link loss to the link being back, -1 if it never recovered from one
+    public synchronized long getLastTimeToRecoverMillis() {
+        return lastRecoveryNanos < 0 ? -1 : lastRecoveryNanos / 1_000_000;
+    }
+
+    public synchronized long getMaxTimeToRecoverMillis() {
+        return maxRecoveryNanos / 1_000_000;
+    }
+
+    // Delay before retry number attempt: exponential with "equal jitter", half fixed and half random
+    long backoffMillis(int attempt) {
+        double exponential = config.initialBackoffMillis * Math.pow(config.backoffMultiplier, attempt);
+        long capped = (long) Math.min(config.maxBackoffMillis, exponential);
+        long half = capped / 2;
+        return half + (half > 0 ? (long) (random.nextDouble() * half) : 0);
+    }
+
+    private void scheduleReconnect() {
+        long delay = backoffMillis(attempt);
+        attempt++;
+        setState(State.BACKOFF);
+        pendingTimer = scheduler.schedule(this::onBackoffElapsed, delay);
+    }
+
+    private synchronized void onBackoffElapsed() {
+        if (state != State.BACKOFF) {
+            return;
+        }
+        pendingTimer = null;
+        reconnectAttempts++;
+        connectNow();
+    }
+
+    private void connectNow() {
+        setState(State.CONNECTING);
+        pendingTimer = scheduler.schedule(this::onConnectTimeout, config.connectTimeoutMillis);
+        transport.connect(attempt);
+    }
+
+    private synchronized void onConnectTimeout() {
+        if (state != State.CONNECTING) {
+            return;
+        }
+        pendingTimer = null;
+        transport.disconnect();
+        scheduleReconnect();
+    }
+
+    private synchronized void watchdogTick() {
+        if (state != State.CONNECTED) {
+            return;
+        }
+        long now = clock.nanoTime();
+        long count = notificationCount;
+        if (count != watchdogSeenCount) {
+            watchdogSeenCount = count;
+            lastActivityNanos = now;
+            streaming = true;
+        } else if (streaming && now - lastActivityNanos >= config.silenceTimeoutMillis * 1_000_000) {
+            // Only a Pi that has streamed before can go silent; the legacy protocol sends nothing until a crash
+            watchdogTrips++;
+            watchdogTimer = null;
+            transport.disconnect();
+            onDisconnected();
+            return;
+        }
+        watchdogTimer = scheduler.schedule(this::watchdogTick, config.watchdogPeriodMillis);
+    }
+
+    private void cancelTimers() {
+        if (pendingTimer != null) {
+            pendingTimer.cancel();
+            pendingTimer = null;
+        }
+        if (watchdogTimer != null) {
+            watchdogTimer.cancel();
+            watchdogTimer = null;
+        }
+    }
+
+    private void setState(State newState) {
+        if (state == newState) {
+            return;
+        }
+        state = newState;
+        if (listener != null) {
+            listener.onStateChanged(newState);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.myapplication.connection;
+
+/**
+ * Time-to-connected statistics, kept separately for connections that needed a scan and for
+ * reconnects straight to a cached device address.
+ */
+public final class ConnectionTimings {
+    public enum Path {
+        COLD_SCAN,
+        CACHED_ADDRESS
+    }
+
+    private final long[] counts = new long[Path.values().length];
+    private final long[] totalNanos = new long[Path.values().length];
+    private final long[] bestNanos = new long[Path.values().length];
+    private final long[] lastNanos = new long[Path.values().length];
+
+    private Path pendingPath;
+    private long pendingStartNanos;
+
+    // Starts timing a connection attempt, replacing any attempt still in progress
+    public synchronized void start(Path path, long nowNanos) {
+        pendingPath = path;
+        pendingStartNanos = nowNanos;
+    }
+
+    /**
+     * Ends the attempt in progress.
+     *
+     * @return time to connected in nanoseconds, or -1 if no attempt was being timed
+     */
+    public synchronized long connected(long nowNanos) {
+        if (pendingPath == null) {
+            return -1;
+        }
+        int i = pendingPath.ordinal();
+        long elapsed = nowNanos - pendingStartNanos;
+        counts[i]++;
+        totalNanos[i] += elapsed;
+        lastNanos[i] = elapsed;
+        if (bestNanos[i] == 0 || elapsed < bestNanos[i]) {
+            bestNanos[i] = elapsed;
+        }
+        pendingPath = null;
+        return elapsed;
+    }
+
+    // Path of the attempt in progress, or null
+    public synchronized Path getPendingPath() {
+        return pendingPath;
+    }
+
+    public synchronized long getCount(Path path) {
+        return counts[path.ordinal()];
+    }
+
+    public synchronized long getAverageMillis(Path path) {
+        int i = path.ordinal();
+        return counts[i] == 0 ? -1 : totalNanos[i] / counts[i] / 1_000_000;
+    }
+
+    public synchronized long getBestMillis(Path path) {
+        return counts[path.ordinal()] == 0 ? -1 : bestNanos[path.ordinal()] / 1_000_000;
+    }
+
+    public synchronized long getLastMillis(Path path) {
+        return counts[path.ordinal()] == 0 ? -1 : lastNanos[path.ordinal()] / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("ConnectionTimings[");
+        for (Path path : Path.values()) {
+            if (path.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(path).append(": n=").append(getCount(path))
+                    .append(" avg=").append(getAverageMillis(path)).append("ms")
+                    .append(" best=").append(getBestMillis(path)).append("ms");
+        }
+        return sb.append(']').toString();
+    }
+}
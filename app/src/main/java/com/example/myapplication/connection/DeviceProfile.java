@@ -0,0 +1,91 @@
+package com.example.myapplication.connection;
+
+import java.util.UUID;
+
+/**
+ * What to look for when connecting to one sensor unit: the name it advertises, the GATT service
+ * and the characteristic that streams telemetry. Each profile has its own source id, which is
+ * stamped on every sample so the merged stream can be told apart again.
+ */
+public final class DeviceProfile {
+    // Example UUIDs. The single Pi keeps the service it has always advertised; the helmet and frame
+    // units each advertise their own 128-bit service so neither client can pick up the other's unit
+    public static final UUID TELEMETRY_SERVICE_UUID = UUID.fromString("0000180F-0000-1000-8000-00805F9B34FB");
+    public static final UUID HELMET_SERVICE_UUID = UUID.fromString("6D680001-5C2B-4E8A-9B1F-3A7D0E6C4F21");
+    public static final UUID FRAME_SERVICE_UUID = UUID.fromString("6D680002-5C2B-4E8A-9B1F-3A7D0E6C4F21");
+    public static final UUID TELEMETRY_CHARACTERISTIC_UUID = UUID.fromString("00002A19-0000-1000-8000-00805F9B34FB");
+    // Clock sync exchanges, see ClockSync
+    public static final UUID CONTROL_CHARACTERISTIC_UUID = UUID.fromString("0000FF01-0000-1000-8000-00805F9B34FB");
+
+    private final int sourceId;
+    private final String label;
+    private final String deviceName;
+    private final UUID serviceUuid;
+    private final UUID characteristicUuid;
+    private final UUID controlCharacteristicUuid;
+
+    public DeviceProfile(int sourceId, String label, String deviceName, UUID serviceUuid, UUID characteristicUuid) {
+        this(sourceId, label, deviceName, serviceUuid, characteristicUuid, null);
+    }
+
+    // controlCharacteristicUuid may be null for units that don't support clock sync
+    public DeviceProfile(int sourceId, String label, String deviceName, UUID serviceUuid, UUID characteristicUuid,
+                         UUID controlCharacteristicUuid) {
+        if (sourceId < 0) {
+            throw new IllegalArgumentException("sourceId must not be negative: " + sourceId);
+        }
+        this.sourceId = sourceId;
+        this.label = label;
+        this.deviceName = deviceName;
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.controlCharacteristicUuid = controlCharacteristicUuid;
+    }
+
+    // The single Pi the app has always talked to
+    public static DeviceProfile raspberryPi() {
+        return new DeviceProfile(0, "pi", "raspberrypi", TELEMETRY_SERVICE_UUID, TELEMETRY_CHARACTERISTIC_UUID,
+                CONTROL_CHARACTERISTIC_UUID);
+    }
+
+    // Change the advertised names to match the units
+    public static DeviceProfile helmet() {
+        return new DeviceProfile(1, "helmet", "mhp-helmet", HELMET_SERVICE_UUID, TELEMETRY_CHARACTERISTIC_UUID,
+                CONTROL_CHARACTERISTIC_UUID);
+    }
+
+    public static DeviceProfile frame() {
+        return new DeviceProfile(2, "frame", "mhp-frame", FRAME_SERVICE_UUID, TELEMETRY_CHARACTERISTIC_UUID,
+                CONTROL_CHARACTERISTIC_UUID);
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    // Short name for logs, thread names and preference keys
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public UUID getServiceUuid() {
+        return serviceUuid;
+    }
+
+    public UUID getCharacteristicUuid() {
+        return characteristicUuid;
+    }
+
+    public UUID getControlCharacteristicUuid() {
+        return controlCharacteristicUuid;
+    }
+
+    @Override
+    public String toString() {
+        return label + "(" + deviceName + ", source " + sourceId + ")";
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.myapplication.connection;
+
+/**
+ * A queued GATT operation that failed for good, after any retries.
+ */
+public class GattOperationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final GattOperationQueue.Type type;
+    private final int status;
+
+    public GattOperationException(GattOperationQueue.Type type, String description, int status) {
+        super(description + " failed: " + GattOperationQueue.statusName(status));
+        this.type = type;
+        this.status = status;
+    }
+
+    public GattOperationQueue.Type getType() {
+        return type;
+    }
+
+    // GATT status from the callback, or one of the GattOperationQueue.STATUS_* codes
+    public int getStatus() {
+        return status;
+    }
+}
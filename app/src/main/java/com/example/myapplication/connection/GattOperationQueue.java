@@ -0,0 +1,254 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs GATT operations one at a time, which is all Android allows per connection.
+ *
+ * <p>Each operation is started only after the previous one's callback arrived, failed or timed
+ * out. The GATT callback reports back through {@link #onComplete}; an operation that gets no
+ * callback within its timeout, is refused by the stack or ends with a bad status is retried up to
+ * its retry limit and then fails its future with a {@link GattOperationException}.
+ */
+public final class GattOperationQueue {
+    public enum Type {
+        DISCOVER_SERVICES,
+        REQUEST_MTU,
+        SET_PHY,
+        READ_CHARACTERISTIC,
+        WRITE_CHARACTERISTIC,
+        WRITE_DESCRIPTOR
+    }
+
+    // Issues the GATT call; false if the stack refused to start it
+    public interface Starter {
+        boolean start();
+    }
+
+    public static final class Config {
+        public long timeoutMillis = 5_000;
+        public int maxRetries = 2;
+        public long retryDelayMillis = 100;
+    }
+
+    public static final int STATUS_SUCCESS = 0; // BluetoothGatt.GATT_SUCCESS
+    public static final int STATUS_TIMEOUT = -1;
+    public static final int STATUS_NOT_STARTED = -2;
+    public static final int STATUS_DISCONNECTED = -3;
+
+    private static final class Operation {
+        final Type type;
+        final String description;
+        final long timeoutMillis;
+        final int maxRetries;
+        final Starter starter;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final long enqueuedNanos;
+        int attempts;
+
+        Operation(Type type, String description, long timeoutMillis, int maxRetries, Starter starter, long enqueuedNanos) {
+            this.type = type;
+            this.description = description;
+            this.timeoutMillis = timeoutMillis;
+            this.maxRetries = maxRetries;
+            this.starter = starter;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Config config;
+    private final ArrayDeque<Operation> pending = new ArrayDeque<>();
+    private Operation current;
+    private Scheduler.Cancellable timer;
+
+    private int maxDepth;
+    private long completed;
+    private long failed;
+    private long retries;
+    private long timeouts;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    public GattOperationQueue(Scheduler scheduler, Clock clock, Config config) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.config = config;
+    }
+
+    public <T> CompletableFuture<T> submit(Type type, String description, Starter starter) {
+        return submit(type, description, config.timeoutMillis, config.maxRetries, starter);
+    }
+
+    /**
+     * Queues an operation. The future completes with the value passed to {@link #onComplete},
+     * e.g. the new MTU or the bytes read.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> submit(Type type, String description, long timeoutMillis,
+                                                        int maxRetries, Starter starter) {
+        Operation operation = new Operation(type, description, timeoutMillis, maxRetries, starter, clock.nanoTime());
+        pending.add(operation);
+        maxDepth = Math.max(maxDepth, depth());
+        if (current == null) {
+            startNext();
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) operation.future;
+    }
+
+    /**
+     * GATT callback for an operation of the given type. Callbacks that don't match the running
+     * operation, such as a PHY update the Pi started itself, are ignored.
+     */
+    public synchronized void onComplete(Type type, int status, Object value) {
+        Operation operation = current;
+        if (operation == null || operation.type != type) {
+            return;
+        }
+        cancelTimer();
+        if (status == STATUS_SUCCESS) {
+            finish(operation, value);
+        } else {
+            retryOrFail(operation, status);
+        }
+    }
+
+    // Fails everything queued, e.g. after the link dropped
+    public synchronized void clear() {
+        cancelTimer();
+        List<Operation> dropped = new ArrayList<>(pending.size() + 1);
+        if (current != null) {
+            dropped.add(current);
+            current = null;
+        }
+        dropped.addAll(pending);
+        pending.clear();
+        // Empty the queue first so work chained on these futures sees a consistent queue
+        for (Operation operation : dropped) {
+            fail(operation, STATUS_DISCONNECTED);
+        }
+    }
+
+    // Operations waiting plus the one running
+    public synchronized int depth() {
+        return pending.size() + (current != null ? 1 : 0);
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    // Time from submit to the successful callback, including queueing and retries
+    public synchronized double getAverageLatencyMillis() {
+        return completed == 0 ? 0 : totalLatencyNanos / 1e6 / completed;
+    }
+
+    public synchronized double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1e6;
+    }
+
+    static String statusName(int status) {
+        switch (status) {
+            case STATUS_TIMEOUT:
+                return "timed out";
+            case STATUS_NOT_STARTED:
+                return "refused by the stack";
+            case STATUS_DISCONNECTED:
+                return "disconnected";
+            default:
+                return "status " + status;
+        }
+    }
+
+    private void startNext() {
+        while (current == null && !pending.isEmpty()) {
+            Operation operation = pending.poll();
+            current = operation;
+            operation.attempts++;
+            if (operation.starter.start()) {
+                timer = scheduler.schedule(this::onTimeout, operation.timeoutMillis);
+            } else {
+                // May leave current set again if a retry was scheduled
+                retryOrFail(operation, STATUS_NOT_STARTED);
+            }
+        }
+    }
+
+    private synchronized void onTimeout() {
+        timer = null;
+        Operation operation = current;
+        if (operation == null) {
+            return;
+        }
+        timeouts++;
+        retryOrFail(operation, STATUS_TIMEOUT);
+    }
+
+    private void retryOrFail(Operation operation, int status) {
+        if (operation.attempts <= operation.maxRetries) {
+            retries++;
+            // Stays current so nothing else jumps in between the attempts
+            timer = scheduler.schedule(this::onRetryDue, config.retryDelayMillis);
+            return;
+        }
+        current = null;
+        fail(operation, status);
+        startNext();
+    }
+
+    private synchronized void onRetryDue() {
+        timer = null;
+        Operation operation = current;
+        if (operation == null) {
+            return;
+        }
+        current = null;
+        pending.addFirst(operation);
+        startNext();
+    }
+
+    private void finish(Operation operation, Object value) {
+        current = null;
+        long latency = clock.nanoTime() - operation.enqueuedNanos;
+        completed++;
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        operation.future.complete(value);
+        startNext();
+    }
+
+    private void fail(Operation operation, int status) {
+        failed++;
+        operation.future.completeExceptionally(new GattOperationException(operation.type, operation.description, status));
+    }
+
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.telemetry.TelemetryFrame;
+
+/**
+ * Link parameters agreed with the Pi after connecting.
+ */
+public final class LinkParameters {
+    public static final int DEFAULT_MTU = 23;
+    public static final int PHY_1M = 1; // same values as BluetoothDevice.PHY_LE_*
+    public static final int PHY_2M = 2;
+    public static final int PHY_CODED = 3;
+
+    public enum Priority {
+        BALANCED,
+        HIGH,
+        LOW_POWER
+    }
+
+    private static final int ATT_HEADER_SIZE = 3;
+
+    private final int mtu;
+    private final int txPhy;
+    private final int rxPhy;
+    private final Priority priority;
+
+    public LinkParameters(int mtu, int txPhy, int rxPhy, Priority priority) {
+        this.mtu = mtu;
+        this.txPhy = txPhy;
+        this.rxPhy = rxPhy;
+        this.priority = priority;
+    }
+
+    // What we get if the Pi or the phone refuses everything
+    public static LinkParameters defaults() {
+        return new LinkParameters(DEFAULT_MTU, PHY_1M, PHY_1M, Priority.BALANCED);
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public int getTxPhy() {
+        return txPhy;
+    }
+
+    public int getRxPhy() {
+        return rxPhy;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    // Largest notification payload the link can carry
+    public int maxPayload() {
+        return mtu - ATT_HEADER_SIZE;
+    }
+
+    // How many telemetry frames the Pi can pack into one notification
+    public int framesPerNotification() {
+        return Math.max(1, maxPayload() / TelemetryFrame.SIZE);
+    }
+
+    public LinkParameters withMtu(int newMtu) {
+        return new LinkParameters(newMtu, txPhy, rxPhy, priority);
+    }
+
+    public LinkParameters withPhy(int newTxPhy, int newRxPhy) {
+        return new LinkParameters(mtu, newTxPhy, newRxPhy, priority);
+    }
+
+    public LinkParameters withPriority(Priority newPriority) {
+        return new LinkParameters(mtu, txPhy, rxPhy, newPriority);
+    }
+
+    // Short key used to group throughput measurements
+    public String profileKey() {
+        return "mtu=" + mtu + " phy=" + phyName(txPhy) + "/" + phyName(rxPhy) + " priority=" + priority;
+    }
+
+    @Override
+    public String toString() {
+        return "LinkParameters[" + profileKey() + ", frames/notification=" + framesPerNotification() + "]";
+    }
+
+    private static String phyName(int phy) {
+        switch (phy) {
+            case PHY_1M:
+                return "1M";
+            case PHY_2M:
+                return "2M";
+            case PHY_CODED:
+                return "coded";
+            default:
+                return String.valueOf(phy);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.myapplication.connection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures received samples per second, separately for each negotiated link profile.
+ * {@link #onSamples} is called for every notification and must come from one thread (the GATT
+ * callback thread), as must {@link #setProfile} and {@link #stop}; the read methods can be called
+ * from anywhere.
+ *
+ * <p>A profile is only timed while it is in use: each stint on it runs from its first
+ * notification to its last, and the time between stints, on another profile or disconnected, is
+ * not counted.
+ */
+public final class ThroughputMeter {
+    private static final class Profile {
+        volatile long samples;
+        volatile long notifications;
+        volatile long closedNanos; // Summed over the finished stints
+        volatile long firstNanos = -1; // Of the current stint, -1 while there is none
+        volatile long lastNanos;
+
+        // Called on the GATT callback thread
+        void closeStint() {
+            if (firstNanos >= 0) {
+                closedNanos += lastNanos - firstNanos;
+                firstNanos = -1;
+            }
+        }
+
+        double samplesPerSecond() {
+            long first = firstNanos;
+            long span = closedNanos + (first < 0 ? 0 : lastNanos - first);
+            return span <= 0 ? 0 : samples * 1e9 / span;
+        }
+    }
+
+    private final Map<String, Profile> profiles = new LinkedHashMap<>();
+    private volatile Profile current;
+
+    // Starts counting against the given profile; earlier stints on it are kept
+    public synchronized void setProfile(String key) {
+        stop();
+        Profile profile = profiles.get(key);
+        if (profile == null) {
+            profile = new Profile();
+            profiles.put(key, profile);
+        }
+        current = profile;
+    }
+
+    // Ends the current stint, e.g. on disconnect; nothing is counted until the next setProfile
+    public synchronized void stop() {
+        Profile profile = current;
+        if (profile != null) {
+            profile.closeStint();
+            current = null;
+        }
+    }
+
+    public void onSamples(int count, long nowNanos) {
+        Profile profile = current;
+        if (profile == null || count <= 0) {
+            return;
+        }
+        if (profile.firstNanos < 0) {
+            profile.firstNanos = nowNanos;
+        } else {
+            // The first notification of a stint only opens it, count what arrives after it
+            profile.samples += count;
+        }
+        profile.notifications++;
+        profile.lastNanos = nowNanos;
+    }
+
+    public synchronized double getSamplesPerSecond(String key) {
+        Profile profile = profiles.get(key);
+        return profile == null ? 0 : profile.samplesPerSecond();
+    }
+
+    // Samples per second for every profile seen so far
+    public synchronized Map<String, Double> snapshot() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+            rates.put(entry.getKey(), entry.getValue().samplesPerSecond());
+        }
+        return rates;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.myapplication.crash;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * A black-box snapshot as written by {@link BlackBoxRecorder}. All values are little-endian.
+ *
+ * <pre>
+ * 0  magic "BBOX"      int
+ * 4  version           u16
+ * 6  reserved          u16
+ * 8  saved at          long  wall clock millis
+ * 16 impact timestamp  long  sensor micros
+ * 24 peak g            float NaN if the crash came from the Pi's own flag
+ * 28 confidence        float NaN if the crash came from the Pi's own flag
+ * 32 sample count      int
+ * 36 location count    int
+ * 40 samples           40 bytes each: timestamp long, sequence int, source id int,
+ *                                     accel xyz, gyro xyz floats
+ * .. locations         32 bytes each: time millis long, latitude double, longitude double,
+ *                                     speed m/s float, accuracy m float
+ * .. CRC-32            int   over everything before it
+ * </pre>
+ */
+public final class BlackBoxFile {
+    static final int MAGIC = 0x584F4242; // "BBOX" read as little-endian
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 40;
+    static final int SAMPLE_SIZE = 40;
+    static final int LOCATION_SIZE = 32;
+
+    private final long savedAtMillis;
+    private final long impactTimestampMicros;
+    private final float peakG;
+    private final float confidence;
+    private final TelemetrySample[] samples;
+    private final long[] locationTimesMillis;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] speeds;
+    private final float[] accuracies;
+
+    private BlackBoxFile(ByteBuffer buf) {
+        savedAtMillis = buf.getLong(8);
+        impactTimestampMicros = buf.getLong(16);
+        peakG = buf.getFloat(24);
+        confidence = buf.getFloat(28);
+        int sampleCount = buf.getInt(32);
+        int locationCount = buf.getInt(36);
+        buf.position(HEADER_SIZE);
+        samples = new TelemetrySample[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            long timestamp = buf.getLong();
+            int sequence = buf.getInt();
+            int sourceId = buf.getInt();
+            samples[i] = new TelemetrySample();
+            samples[i].setSourceId(sourceId);
+            samples[i].set(sequence, timestamp, buf.getFloat(), buf.getFloat(), buf.getFloat(),
+                    buf.getFloat(), buf.getFloat(), buf.getFloat());
+        }
+        locationTimesMillis = new long[locationCount];
+        latitudes = new double[locationCount];
+        longitudes = new double[locationCount];
+        speeds = new float[locationCount];
+        accuracies = new float[locationCount];
+        for (int i = 0; i < locationCount; i++) {
+            locationTimesMillis[i] = buf.getLong();
+            latitudes[i] = buf.getDouble();
+            longitudes[i] = buf.getDouble();
+            speeds[i] = buf.getFloat();
+            accuracies[i] = buf.getFloat();
+        }
+    }
+
+    public static BlackBoxFile read(File file) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < HEADER_SIZE + 4 || buf.getInt(0) != MAGIC || (buf.getShort(4) & 0xFFFF) != VERSION) {
+            throw new IOException("Not a black-box snapshot: " + file);
+        }
+        int expectedLength = HEADER_SIZE + buf.getInt(32) * SAMPLE_SIZE + buf.getInt(36) * LOCATION_SIZE + 4;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if (bytes.length != expectedLength || buf.getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IOException("Corrupt black-box snapshot: " + file);
+        }
+        return new BlackBoxFile(buf);
+    }
+
+    public long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+
+    public long getImpactTimestampMicros() {
+        return impactTimestampMicros;
+    }
+
+    public float getPeakG() {
+        return peakG;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public TelemetrySample[] getSamples() {
+        return samples;
+    }
+
+    public int getLocationCount() {
+        return locationTimesMillis.length;
+    }
+
+    public long getLocationTimeMillis(int i) {
+        return locationTimesMillis[i];
+    }
+
+    public double getLatitude(int i) {
+        return latitudes[i];
+    }
+
+    public double getLongitude(int i) {
+        return longitudes[i];
+    }
+
+    public float getSpeed(int i) {
+        return speeds[i];
+    }
+
+    public float getAccuracy(int i) {
+        return accuracies[i];
+    }
+}
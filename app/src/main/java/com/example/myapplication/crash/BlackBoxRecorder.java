@@ -0,0 +1,286 @@
+package com.example.myapplication.crash;
+
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Flight-recorder style buffer of the last seconds of telemetry and location.
+ *
+ * <p>Samples and fixes go into fixed-size primitive rings; recording one is a few array stores
+ * and allocates nothing. When a crash is triggered the recorder keeps going for
+ * {@link Config#postSeconds} of sensor time, then freezes the rings and writes the window around
+ * the impact to a {@link BlackBoxFile} on the given executor, through a temp file that is renamed
+ * into place so a snapshot is either complete or absent. Recording resumes once the file is
+ * written.
+ *
+ * <p>Samples must come from one thread and locations from one (possibly different) thread.
+ * {@link #trigger} may be called from any thread.
+ */
+public final class BlackBoxRecorder implements SampleListener, CrashListener {
+    public interface Listener {
+        void onSnapshotSaved(File file);
+
+        void onSnapshotFailed(IOException e);
+    }
+
+    public static final class Config {
+        public double preSeconds = 20;
+        public double postSeconds = 5;
+        // Sizes the sample ring for pre + post seconds at this rate
+        public int maxSampleRateHz = 400;
+        public int locationCapacity = 64;
+        // Write anyway this long after postSeconds if samples stop, e.g. the link died in the crash
+        public long fallbackGraceMillis = 2_000;
+    }
+
+    private static final int RECORDING = 0;
+    private static final int CAPTURING = 1; // triggered, still recording the post-impact window
+    private static final int FROZEN = 2;    // rings are being written out
+
+    private final File directory;
+    private final Config config;
+    private final ScheduledExecutorService executor;
+    private final Listener listener;
+    private final AtomicInteger state = new AtomicInteger(RECORDING);
+
+    private final int sampleCapacity;
+    private final long[] sampleTimes;
+    private final int[] sampleSequences;
+    private final int[] sampleSources;
+    private final float[] sampleValues; // 6 per sample: accel xyz, gyro xyz
+    private volatile long sampleHead; // samples recorded so far
+
+    private final long[] locationTimes;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] speeds;
+    private final float[] accuracies;
+    private volatile long locationHead;
+
+    private volatile long impactMicros;
+    private volatile long captureEndMicros = Long.MAX_VALUE;
+    private volatile CrashEvent pendingEvent;
+    private volatile ScheduledFuture<?> fallback;
+
+    private volatile long snapshotsWritten;
+    private volatile long snapshotsFailed;
+
+    public BlackBoxRecorder(File directory, Config config, ScheduledExecutorService executor, Listener listener) {
+        this.directory = directory;
+        this.config = config;
+        this.executor = executor;
+        this.listener = listener;
+        // Both ends of the window are included
+        this.sampleCapacity = (int) Math.ceil((config.preSeconds + config.postSeconds) * config.maxSampleRateHz) + 1;
+        this.sampleTimes = new long[sampleCapacity];
+        this.sampleSequences = new int[sampleCapacity];
+        this.sampleSources = new int[sampleCapacity];
+        this.sampleValues = new float[sampleCapacity * 6];
+        this.locationTimes = new long[config.locationCapacity];
+        this.latitudes = new double[config.locationCapacity];
+        this.longitudes = new double[config.locationCapacity];
+        this.speeds = new float[config.locationCapacity];
+        this.accuracies = new float[config.locationCapacity];
+    }
+
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        int current = state.get();
+        if (current == FROZEN) {
+            return;
+        }
+        long head = sampleHead;
+        int slot = (int) (head % sampleCapacity);
+        long timestamp = sample.getTimestampMicros();
+        sampleTimes[slot] = timestamp;
+        sampleSequences[slot] = sample.getSequence();
+        sampleSources[slot] = sample.getSourceId();
+        int base = slot * 6;
+        sampleValues[base] = sample.getAccelX();
+        sampleValues[base + 1] = sample.getAccelY();
+        sampleValues[base + 2] = sample.getAccelZ();
+        sampleValues[base + 3] = sample.getGyroX();
+        sampleValues[base + 4] = sample.getGyroY();
+        sampleValues[base + 5] = sample.getGyroZ();
+        sampleHead = head + 1;
+
+        if (current == CAPTURING && timestamp >= captureEndMicros && freeze()) {
+            executor.execute(this::writeSnapshot);
+        }
+    }
+
+    public void onLocation(long timeMillis, double latitude, double longitude, float speedMps, float accuracyMeters) {
+        if (state.get() == FROZEN) {
+            return;
+        }
+        long head = locationHead;
+        int slot = (int) (head % locationTimes.length);
+        locationTimes[slot] = timeMillis;
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        speeds[slot] = speedMps;
+        accuracies[slot] = accuracyMeters;
+        locationHead = head + 1;
+    }
+
+    @Override
+    public void onCrashDetected(CrashEvent event) {
+        trigger(event.getImpactTimestampMicros(), event);
+    }
+
+    // Crash reported without an impact time, e.g. the Pi's own flag: the impact is taken as now
+    public boolean trigger() {
+        long head = sampleHead;
+        return trigger(head > 0 ? sampleTimes[(int) ((head - 1) % sampleCapacity)] : 0, null);
+    }
+
+    /**
+     * Starts capturing the post-impact window. Returns false if a snapshot is already being
+     * captured or written, in which case that one covers this crash as well.
+     */
+    public boolean trigger(long impactTimestampMicros, CrashEvent event) {
+        if (!state.compareAndSet(RECORDING, CAPTURING)) {
+            return false;
+        }
+        pendingEvent = event;
+        impactMicros = impactTimestampMicros;
+        long postMicros = (long) (config.postSeconds * 1_000_000);
+        captureEndMicros = impactTimestampMicros + postMicros;
+        fallback = executor.schedule(() -> {
+            if (freeze()) {
+                writeSnapshot();
+            }
+        }, postMicros / 1000 + config.fallbackGraceMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    public boolean isCapturing() {
+        return state.get() != RECORDING;
+    }
+
+    public long getSnapshotsWritten() {
+        return snapshotsWritten;
+    }
+
+    public long getSnapshotsFailed() {
+        return snapshotsFailed;
+    }
+
+    private boolean freeze() {
+        return state.compareAndSet(CAPTURING, FROZEN);
+    }
+
+    // Runs on the executor with the rings frozen
+    private void writeSnapshot() {
+        try {
+            if (fallback != null) {
+                fallback.cancel(false);
+            }
+            File file = write();
+            snapshotsWritten++;
+            if (listener != null) {
+                listener.onSnapshotSaved(file);
+            }
+        } catch (IOException e) {
+            snapshotsFailed++;
+            if (listener != null) {
+                listener.onSnapshotFailed(e);
+            }
+        } finally {
+            fallback = null;
+            pendingEvent = null;
+            captureEndMicros = Long.MAX_VALUE;
+            state.set(RECORDING);
+        }
+    }
+
+    private File write() throws IOException {
+        long from = impactMicros - (long) (config.preSeconds * 1_000_000);
+        long to = captureEndMicros;
+        long head = sampleHead;
+        long first = Math.max(0, head - sampleCapacity);
+        int samples = 0;
+        for (long i = first; i < head; i++) {
+            long t = sampleTimes[(int) (i % sampleCapacity)];
+            if (t >= from && t <= to) {
+                samples++;
+            }
+        }
+        long savedAt = System.currentTimeMillis();
+        long locationFrom = savedAt - (long) ((config.preSeconds + config.postSeconds) * 1000) - config.fallbackGraceMillis;
+        long locationEnd = locationHead;
+        long locationFirst = Math.max(0, locationEnd - locationTimes.length);
+        int locations = 0;
+        for (long i = locationFirst; i < locationEnd; i++) {
+            if (locationTimes[(int) (i % locationTimes.length)] >= locationFrom) {
+                locations++;
+            }
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(BlackBoxFile.HEADER_SIZE + samples * BlackBoxFile.SAMPLE_SIZE
+                + locations * BlackBoxFile.LOCATION_SIZE + 4).order(ByteOrder.LITTLE_ENDIAN);
+        CrashEvent event = pendingEvent;
+        buf.putInt(BlackBoxFile.MAGIC);
+        buf.putShort((short) BlackBoxFile.VERSION);
+        buf.putShort((short) 0);
+        buf.putLong(savedAt);
+        buf.putLong(impactMicros);
+        buf.putFloat(event != null ? event.getPeakG() : Float.NaN);
+        buf.putFloat(event != null ? event.getConfidence() : Float.NaN);
+        buf.putInt(samples);
+        buf.putInt(locations);
+        for (long i = first; i < head; i++) {
+            int slot = (int) (i % sampleCapacity);
+            long t = sampleTimes[slot];
+            if (t < from || t > to) {
+                continue;
+            }
+            buf.putLong(t);
+            buf.putInt(sampleSequences[slot]);
+            buf.putInt(sampleSources[slot]);
+            for (int k = 0; k < 6; k++) {
+                buf.putFloat(sampleValues[slot * 6 + k]);
+            }
+        }
+        for (long i = locationFirst; i < locationEnd; i++) {
+            int slot = (int) (i % locationTimes.length);
+            if (locationTimes[slot] < locationFrom) {
+                continue;
+            }
+            buf.putLong(locationTimes[slot]);
+            buf.putDouble(latitudes[slot]);
+            buf.putDouble(longitudes[slot]);
+            buf.putFloat(speeds[slot]);
+            buf.putFloat(accuracies[slot]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File target = new File(directory, "blackbox-" + savedAt + ".bbx");
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(buf.array(), 0, buf.position());
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + target);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.myapplication.crash;
+
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+/**
+ * Streaming crash detector over raw accelerometer and gyro samples.
+ *
+ * <p>Every sample updates a few {@link SlidingWindow}s: acceleration magnitude (peak g), rate of
+ * change of the magnitude (jerk) and rotation angle integrated from the gyro. A sample over the
+ * impact threshold starts an impact; the detector keeps collecting the peak features while the
+ * impact settles, then watches for the bike and rider to lie still. Once the stillness window is
+ * complete the features are combined into a confidence score and a {@link CrashEvent} is raised
+ * if it passes {@link Config#minConfidence}.
+ *
+ * <p>Plain Java with no Android dependencies. Calls must come from a single thread; nothing is
+ * allocated per sample.
+ */
+public final class CrashDetector implements SampleListener {
+    public enum State {
+        MONITORING, // riding, waiting for an impact
+        IMPACT,     // impact seen, collecting peak features while it settles
+        STILLNESS   // measuring post-impact stillness
+    }
+
+    public static final class Config {
+        public float impactThresholdG = 4f;
+        public float severeImpactG = 10f;
+        public float jerkReferenceGPerSecond = 500f;
+        public float rotationReferenceDegrees = 90f;
+        public float stillnessThresholdG = 0.15f;
+        public float minConfidence = 0.6f;
+        public long impactWindowMicros = 500_000;
+        public long rotationWindowMicros = 2_000_000;
+        public long settleMicros = 1_000_000;
+        public long stillnessWindowMicros = 2_000_000;
+        // Gaps longer than this don't count toward jerk or rotation
+        public long maxSampleGapMicros = 100_000;
+        // Sizes the windows; samples arriving faster than this shorten the windows
+        public int maxSampleRateHz = 1000;
+    }
+
+    private static final float WEIGHT_PEAK = 0.35f;
+    private static final float WEIGHT_JERK = 0.2f;
+    private static final float WEIGHT_ROTATION = 0.2f;
+    private static final float WEIGHT_STILLNESS = 0.25f;
+
+    private final Config config;
+    private final CrashListener listener;
+    private final SlidingWindow magnitudeWindow;
+    private final SlidingWindow jerkWindow;
+    private final SlidingWindow rotationWindow;
+    private final SlidingWindow stillnessWindow;
+
+    private State state = State.MONITORING;
+    private boolean hasPrevious;
+    private long previousTimestamp;
+    private float previousMagnitude;
+
+    private long firstImpactTimestamp; // reported in the event
+    private long impactTimestamp;      // latest impact, the settle period runs from here
+    private float impactPeakG;
+    private float impactPeakJerk;
+    private float impactRotation;
+    private long stillnessStart;
+
+    private long samplesProcessed;
+    private long impactsSeen;
+    private long crashesDetected;
+
+    public CrashDetector(CrashListener listener) {
+        this(new Config(), listener);
+    }
+
+    public CrashDetector(Config config, CrashListener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.magnitudeWindow = new SlidingWindow(config.impactWindowMicros, capacityFor(config.impactWindowMicros));
+        this.jerkWindow = new SlidingWindow(config.impactWindowMicros, capacityFor(config.impactWindowMicros));
+        this.rotationWindow = new SlidingWindow(config.rotationWindowMicros, capacityFor(config.rotationWindowMicros));
+        this.stillnessWindow = new SlidingWindow(config.stillnessWindowMicros, capacityFor(config.stillnessWindowMicros));
+    }
+
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        onSample(sample.getTimestampMicros(), sample.getAccelX(), sample.getAccelY(), sample.getAccelZ(),
+                sample.getGyroX(), sample.getGyroY(), sample.getGyroZ());
+    }
+
+    /**
+     * Feeds one sample; acceleration in g, angular rate in degrees per second.
+     * Samples that are not newer than the previous one are ignored.
+     */
+    public void onSample(long timestampMicros, float ax, float ay, float az, float gx, float gy, float gz) {
+        if (hasPrevious && timestampMicros <= previousTimestamp) {
+            return;
+        }
+        samplesProcessed++;
+        float magnitude = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        float angularRate = (float) Math.sqrt(gx * gx + gy * gy + gz * gz);
+
+        float jerk = 0;
+        float rotation = 0;
+        if (hasPrevious) {
+            long dt = timestampMicros - previousTimestamp;
+            if (dt <= config.maxSampleGapMicros) {
+                float seconds = dt / 1_000_000f;
+                jerk = Math.abs(magnitude - previousMagnitude) / seconds;
+                rotation = angularRate * seconds;
+            }
+        }
+        hasPrevious = true;
+        previousTimestamp = timestampMicros;
+        previousMagnitude = magnitude;
+
+        magnitudeWindow.add(timestampMicros, magnitude);
+        jerkWindow.add(timestampMicros, jerk);
+        rotationWindow.add(timestampMicros, rotation);
+
+        switch (state) {
+            case MONITORING:
+                if (magnitude >= config.impactThresholdG) {
+                    startImpact(timestampMicros);
+                }
+                break;
+            case IMPACT:
+                trackImpact();
+                if (timestampMicros - impactTimestamp >= config.settleMicros) {
+                    state = State.STILLNESS;
+                    stillnessStart = timestampMicros;
+                    stillnessWindow.clear();
+                }
+                break;
+            case STILLNESS:
+                if (magnitude >= config.impactThresholdG) {
+                    // Secondary impact, e.g. the bike hitting something after the first one.
+                    // The peaks carry over; the settle period starts again so the shaking
+                    // that follows doesn't end up in the stillness window
+                    state = State.IMPACT;
+                    impactTimestamp = timestampMicros;
+                    trackImpact();
+                    break;
+                }
+                stillnessWindow.add(timestampMicros, magnitude);
+                if (timestampMicros - stillnessStart >= config.stillnessWindowMicros) {
+                    evaluate(timestampMicros);
+                    state = State.MONITORING;
+                }
+                break;
+        }
+    }
+
+    public void reset() {
+        state = State.MONITORING;
+        hasPrevious = false;
+        magnitudeWindow.clear();
+        jerkWindow.clear();
+        rotationWindow.clear();
+        stillnessWindow.clear();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getSamplesProcessed() {
+        return samplesProcessed;
+    }
+
+    // Samples over the impact threshold that started an impact
+    public long getImpactsSeen() {
+        return impactsSeen;
+    }
+
+    public long getCrashesDetected() {
+        return crashesDetected;
+    }
+
+    private void startImpact(long timestampMicros) {
+        impactsSeen++;
+        state = State.IMPACT;
+        firstImpactTimestamp = timestampMicros;
+        impactTimestamp = timestampMicros;
+        impactPeakG = 0;
+        impactPeakJerk = 0;
+        impactRotation = 0;
+        trackImpact();
+    }
+
+    private void trackImpact() {
+        impactPeakG = Math.max(impactPeakG, magnitudeWindow.max());
+        impactPeakJerk = Math.max(impactPeakJerk, jerkWindow.max());
+        impactRotation = Math.max(impactRotation, (float) rotationWindow.sum());
+    }
+
+    private void evaluate(long timestampMicros) {
+        float stillness = (float) Math.sqrt(stillnessWindow.variance());
+        float peakScore = 0.5f + 0.5f * clamp((impactPeakG - config.impactThresholdG)
+                / (config.severeImpactG - config.impactThresholdG));
+        float jerkScore = clamp(impactPeakJerk / config.jerkReferenceGPerSecond);
+        float rotationScore = clamp(impactRotation / config.rotationReferenceDegrees);
+        float stillnessScore = clamp(1f - stillness / config.stillnessThresholdG);
+        float confidence = WEIGHT_PEAK * peakScore + WEIGHT_JERK * jerkScore
+                + WEIGHT_ROTATION * rotationScore + WEIGHT_STILLNESS * stillnessScore;
+
+        if (confidence >= config.minConfidence) {
+            crashesDetected++;
+            if (listener != null) {
+                listener.onCrashDetected(new CrashEvent(firstImpactTimestamp, timestampMicros, impactPeakG,
+                        impactPeakJerk, impactRotation, stillness, confidence));
+            }
+        }
+    }
+
+    private int capacityFor(long windowMicros) {
+        return (int) Math.max(16, windowMicros * config.maxSampleRateHz / 1_000_000 + 1);
+    }
+
+    private static float clamp(float value) {
+        return value < 0 ? 0 : (value > 1 ? 1 : value);
+    }
+}
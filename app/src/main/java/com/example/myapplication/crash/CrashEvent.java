@@ -0,0 +1,68 @@
+package com.example.myapplication.crash;
+
+/**
+ * A crash confirmed by {@link CrashDetector}, with the features that led to it.
+ * Immutable, so it can be handed to other threads as is.
+ */
+public final class CrashEvent {
+    private final long impactTimestampMicros;
+    private final long detectedTimestampMicros;
+    private final float peakG;
+    private final float peakJerk;
+    private final float rotationDegrees;
+    private final float stillnessG;
+    private final float confidence;
+
+    public CrashEvent(long impactTimestampMicros, long detectedTimestampMicros, float peakG, float peakJerk,
+                      float rotationDegrees, float stillnessG, float confidence) {
+        this.impactTimestampMicros = impactTimestampMicros;
+        this.detectedTimestampMicros = detectedTimestampMicros;
+        this.peakG = peakG;
+        this.peakJerk = peakJerk;
+        this.rotationDegrees = rotationDegrees;
+        this.stillnessG = stillnessG;
+        this.confidence = confidence;
+    }
+
+    // Sensor time of the first sample over the impact threshold
+    public long getImpactTimestampMicros() {
+        return impactTimestampMicros;
+    }
+
+    // Sensor time of the sample that confirmed the crash
+    public long getDetectedTimestampMicros() {
+        return detectedTimestampMicros;
+    }
+
+    // Highest acceleration magnitude around the impact, in g
+    public float getPeakG() {
+        return peakG;
+    }
+
+    // Highest rate of change of the acceleration magnitude, in g/s
+    public float getPeakJerk() {
+        return peakJerk;
+    }
+
+    // Total rotation around the impact, in degrees
+    public float getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    // Standard deviation of the acceleration magnitude after the impact, in g
+    public float getStillnessG() {
+        return stillnessG;
+    }
+
+    // 0..1, how sure the detector is that this was a crash
+    public float getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return "CrashEvent[t=" + impactTimestampMicros + ", peak=" + peakG + "g, jerk=" + peakJerk
+                + "g/s, rotation=" + rotationDegrees + "deg, stillness=" + stillnessG
+                + "g, confidence=" + confidence + "]";
+    }
+}
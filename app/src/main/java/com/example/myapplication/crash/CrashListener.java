@@ -0,0 +1,5 @@
+package com.example.myapplication.crash;
+
+public interface CrashListener {
+    void onCrashDetected(CrashEvent event);
+}
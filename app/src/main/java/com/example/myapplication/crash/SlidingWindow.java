@@ -0,0 +1,146 @@
+package com.example.myapplication.crash;
+
+/**
+ * Time-based sliding window over a stream of float values.
+ * Keeps a running sum and sum of squares for mean/variance and two monotonic deques for the
+ * window max and min, so every operation is O(1) amortized. All state lives in primitive arrays
+ * allocated up front; adding a value never allocates.
+ */
+public final class SlidingWindow {
+    private final long windowMicros;
+    private final int capacity;
+    private final long[] times;
+    private final float[] values;
+    private long head; // sequence number of the oldest entry
+    private long tail; // sequence number of the next entry
+
+    // Sequence numbers of entries that can still become the max (values decreasing) / min (values increasing)
+    private final long[] maxQueue;
+    private long maxHead;
+    private long maxTail;
+    private final long[] minQueue;
+    private long minHead;
+    private long minTail;
+
+    private double sum;
+    private double sumOfSquares;
+
+    /**
+     * @param windowMicros entries older than this relative to the newest one are evicted
+     * @param capacity most entries kept at once; the oldest is evicted early when the stream is faster than expected
+     */
+    public SlidingWindow(long windowMicros, int capacity) {
+        if (windowMicros <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("window and capacity must be positive");
+        }
+        this.windowMicros = windowMicros;
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.values = new float[capacity];
+        this.maxQueue = new long[capacity];
+        this.minQueue = new long[capacity];
+    }
+
+    public void add(long timestampMicros, float value) {
+        evictOlderThan(timestampMicros - windowMicros);
+        if (tail - head == capacity) {
+            removeOldest();
+        }
+        int slot = (int) (tail % capacity);
+        times[slot] = timestampMicros;
+        values[slot] = value;
+
+        while (maxTail > maxHead && values[(int) (maxQueue[(int) ((maxTail - 1) % capacity)] % capacity)] <= value) {
+            maxTail--;
+        }
+        maxQueue[(int) (maxTail++ % capacity)] = tail;
+        while (minTail > minHead && values[(int) (minQueue[(int) ((minTail - 1) % capacity)] % capacity)] >= value) {
+            minTail--;
+        }
+        minQueue[(int) (minTail++ % capacity)] = tail;
+
+        sum += value;
+        sumOfSquares += (double) value * value;
+        tail++;
+    }
+
+    // Drops entries with a timestamp before cutoffMicros
+    public void evictOlderThan(long cutoffMicros) {
+        while (tail > head && times[(int) (head % capacity)] < cutoffMicros) {
+            removeOldest();
+        }
+    }
+
+    public void clear() {
+        head = tail;
+        maxHead = maxTail;
+        minHead = minTail;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    // Largest value in the window, NaN when empty
+    public float max() {
+        return maxTail > maxHead ? values[(int) (maxQueue[(int) (maxHead % capacity)] % capacity)] : Float.NaN;
+    }
+
+    // Smallest value in the window, NaN when empty
+    public float min() {
+        return minTail > minHead ? values[(int) (minQueue[(int) (minHead % capacity)] % capacity)] : Float.NaN;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public double mean() {
+        return isEmpty() ? Double.NaN : sum / size();
+    }
+
+    // Population variance of the window, NaN when empty
+    public double variance() {
+        int n = size();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        double mean = sum / n;
+        return Math.max(0, sumOfSquares / n - mean * mean);
+    }
+
+    // Time covered by the entries currently in the window
+    public long spanMicros() {
+        return isEmpty() ? 0 : times[(int) ((tail - 1) % capacity)] - times[(int) (head % capacity)];
+    }
+
+    public long getWindowMicros() {
+        return windowMicros;
+    }
+
+    private void removeOldest() {
+        int slot = (int) (head % capacity);
+        float value = values[slot];
+        if (maxTail > maxHead && maxQueue[(int) (maxHead % capacity)] == head) {
+            maxHead++;
+        }
+        if (minTail > minHead && minQueue[(int) (minHead % capacity)] == head) {
+            minHead++;
+        }
+        head++;
+        if (head == tail) {
+            // Reset the sums whenever the window empties so rounding error can't build up
+            sum = 0;
+            sumOfSquares = 0;
+        } else {
+            sum -= value;
+            sumOfSquares -= (double) value * value;
+        }
+    }
+}
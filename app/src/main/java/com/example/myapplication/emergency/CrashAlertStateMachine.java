@@ -0,0 +1,193 @@
+package com.example.myapplication.emergency;
+
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+/**
+ * Turns crash triggers into at most one emergency dispatch per crash.
+ *
+ * <pre>
+ * ARMED --trigger--> COUNTDOWN --countdown elapsed--> DISPATCHING --dispatched--> COOLDOWN --cooldown elapsed--> ARMED
+ *                        |
+ *                        +--cancel--> ARMED
+ * </pre>
+ *
+ * Triggers outside ARMED are coalesced into the alert in progress in constant time, so a burst
+ * of crash packets cannot schedule more than one dispatch. There is a single timer, for whichever
+ * of the countdown or the cooldown is running.
+ */
+public final class CrashAlertStateMachine {
+    public enum State {
+        ARMED,
+        COUNTDOWN,   // rider can still cancel
+        DISPATCHING, // contacting people
+        COOLDOWN     // alert sent, further triggers belong to the same crash
+    }
+
+    public interface Actions {
+        // event is the most confident one seen during the countdown, null if none carried details
+        void dispatch(CrashEvent event, long triggeredNanos);
+    }
+
+    public interface Listener {
+        void onStateChanged(State state);
+    }
+
+    public static final class Config {
+        public long countdownMillis = 10_000;
+        public long cooldownMillis = 60_000;
+    }
+
+    private final Actions actions;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Config config;
+    private Listener listener;
+
+    private State state = State.ARMED;
+    private Scheduler.Cancellable timer;
+    private CrashEvent event;
+    private long triggeredNanos;
+    private long stateEnteredNanos;
+
+    private long triggers;
+    private long coalescedTriggers;
+    private long dispatches;
+    private long cancellations;
+    private long lastTriggerToDispatchMillis = -1;
+    private long lastCountdownMillis = -1;
+    private long lastDispatchMillis = -1;
+
+    public CrashAlertStateMachine(Actions actions, Scheduler scheduler, Clock clock, Config config) {
+        this.actions = actions;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.config = config;
+        this.stateEnteredNanos = clock.nanoTime();
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reports a crash; event is null when only a flag was received.
+     *
+     * @return true if this trigger started a countdown, false if it was coalesced
+     */
+    public synchronized boolean trigger(CrashEvent event) {
+        triggers++;
+        if (state != State.ARMED) {
+            coalescedTriggers++;
+            if (state == State.COUNTDOWN && isBetter(event, this.event)) {
+                this.event = event;
+            }
+            return false;
+        }
+        this.event = event;
+        triggeredNanos = clock.nanoTime();
+        setState(State.COUNTDOWN);
+        timer = scheduler.schedule(this::onCountdownElapsed, config.countdownMillis);
+        return true;
+    }
+
+    // Rider cancelled; only possible during the countdown
+    public synchronized boolean cancel() {
+        if (state != State.COUNTDOWN) {
+            return false;
+        }
+        cancelTimer();
+        cancellations++;
+        event = null;
+        lastCountdownMillis = (clock.nanoTime() - stateEnteredNanos) / 1_000_000;
+        setState(State.ARMED);
+        return true;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getTriggers() {
+        return triggers;
+    }
+
+    public synchronized long getCoalescedTriggers() {
+        return coalescedTriggers;
+    }
+
+    public synchronized long getDispatches() {
+        return dispatches;
+    }
+
+    public synchronized long getCancellations() {
+        return cancellations;
+    }
+
+    // First trigger to the start of the dispatch, the countdown plus any timer delay
+    public synchronized long getLastTriggerToDispatchMillis() {
+        return lastTriggerToDispatchMillis;
+    }
+
+    // How long the last countdown ran, until dispatch or cancel
+    public synchronized long getLastCountdownMillis() {
+        return lastCountdownMillis;
+    }
+
+    // How long the last dispatch action took
+    public synchronized long getLastDispatchMillis() {
+        return lastDispatchMillis;
+    }
+
+    private synchronized void onCountdownElapsed() {
+        if (state != State.COUNTDOWN) {
+            return;
+        }
+        timer = null;
+        long now = clock.nanoTime();
+        lastCountdownMillis = (now - stateEnteredNanos) / 1_000_000;
+        lastTriggerToDispatchMillis = (now - triggeredNanos) / 1_000_000;
+        setState(State.DISPATCHING);
+        dispatches++;
+        try {
+            actions.dispatch(event, triggeredNanos);
+        } finally {
+            lastDispatchMillis = (clock.nanoTime() - stateEnteredNanos) / 1_000_000;
+            event = null;
+            setState(State.COOLDOWN);
+            timer = scheduler.schedule(this::onCooldownElapsed, config.cooldownMillis);
+        }
+    }
+
+    private synchronized void onCooldownElapsed() {
+        if (state != State.COOLDOWN) {
+            return;
+        }
+        timer = null;
+        setState(State.ARMED);
+    }
+
+    // Prefer an event with details, then the more confident one
+    private static boolean isBetter(CrashEvent candidate, CrashEvent current) {
+        if (candidate == null) {
+            return false;
+        }
+        return current == null || candidate.getConfidence() > current.getConfidence();
+    }
+
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        stateEnteredNanos = clock.nanoTime();
+        if (listener != null) {
+            listener.onStateChanged(newState);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.myapplication.emergency;
+
+import com.example.myapplication.util.Clock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends the emergency SMS to every contact at once and tracks each recipient until delivery.
+ *
+ * <p>Each send is handed to the executor separately, so one slow or failing recipient does not
+ * hold up the others. The transport reports sent and delivered results per part through
+ * {@link #onPartSent} and {@link #onPartDelivered}; a recipient counts as sent once all parts of
+ * its message were.
+ */
+public final class EmergencyDispatcher {
+    public enum Status {
+        SENDING,
+        SENT,
+        DELIVERED,
+        FAILED
+    }
+
+    public interface SmsTransport {
+        /**
+         * Starts sending message to number. Results come back through the dispatcher's callbacks
+         * tagged with messageId.
+         *
+         * @return the number of parts the message was split into
+         */
+        int send(String number, String message, int messageId) throws Exception;
+    }
+
+    public interface Listener {
+        void onRecipientStatus(String number, Status status);
+
+        // The first recipient's message went out, crashToSentMillis after the crash
+        void onFirstSent(String number, long crashToSentMillis, long dispatchToSentMillis);
+    }
+
+    private static final class Recipient {
+        final String number;
+        Status status = Status.SENDING;
+        int partsPending = -1; // unknown until the transport returns
+        int partsUndelivered = -1;
+        int partsSentEarly; // results that came back before the part count
+        int partsDeliveredEarly;
+
+        Recipient(String number) {
+            this.number = number;
+        }
+    }
+
+    private final SmsTransport transport;
+    private final Executor executor;
+    private final Clock clock;
+    private Listener listener;
+
+    private final Map<Integer, Recipient> recipients = new LinkedHashMap<>();
+    private int nextMessageId = 1;
+    private long crashNanos;
+    private long dispatchNanos;
+    private boolean firstSentReported;
+    private long lastCrashToFirstSentMillis = -1;
+    private long lastDispatchToFirstSentMillis = -1;
+
+    public EmergencyDispatcher(SmsTransport transport, Executor executor, Clock clock) {
+        this.transport = transport;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Contacts typed as one string, separated by commas, semicolons or new lines
+    public static List<String> parseContacts(String text) {
+        List<String> numbers = new ArrayList<>();
+        for (String part : text.split("[,;\\n]")) {
+            String number = part.trim();
+            if (!number.isEmpty() && !numbers.contains(number)) {
+                numbers.add(number);
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Sends message to every number. crashNanos is when the crash was detected, on the same clock,
+     * for the latency measurement.
+     */
+    public synchronized void dispatch(List<String> numbers, String message, long crashNanos) {
+        recipients.clear();
+        this.crashNanos = crashNanos;
+        this.dispatchNanos = clock.nanoTime();
+        firstSentReported = false;
+        for (String number : numbers) {
+            int messageId = nextMessageId++;
+            Recipient recipient = new Recipient(number);
+            recipients.put(messageId, recipient);
+            executor.execute(() -> send(recipient, message, messageId));
+        }
+    }
+
+    public void onPartSent(int messageId, boolean success) {
+        List<Runnable> notifications = new ArrayList<>(2);
+        synchronized (this) {
+            Recipient recipient = recipients.get(messageId);
+            if (recipient == null || recipient.status != Status.SENDING) {
+                return;
+            }
+            if (!success) {
+                update(recipient, Status.FAILED, notifications);
+            } else if (recipient.partsPending < 0) {
+                recipient.partsSentEarly++;
+            } else if (--recipient.partsPending == 0) {
+                update(recipient, Status.SENT, notifications);
+            }
+        }
+        notifications.forEach(Runnable::run);
+    }
+
+    public void onPartDelivered(int messageId, boolean success) {
+        List<Runnable> notifications = new ArrayList<>(1);
+        synchronized (this) {
+            Recipient recipient = recipients.get(messageId);
+            if (recipient == null || recipient.status == Status.FAILED || recipient.status == Status.DELIVERED) {
+                return;
+            }
+            if (!success) {
+                update(recipient, Status.FAILED, notifications);
+            } else if (recipient.partsUndelivered < 0) {
+                recipient.partsDeliveredEarly++;
+            } else if (--recipient.partsUndelivered == 0 && recipient.status == Status.SENT) {
+                update(recipient, Status.DELIVERED, notifications);
+            }
+        }
+        notifications.forEach(Runnable::run);
+    }
+
+    public synchronized Status getStatus(String number) {
+        for (Recipient recipient : recipients.values()) {
+            if (recipient.number.equals(number)) {
+                return recipient.status;
+            }
+        }
+        return null;
+    }
+
+    // Crash detection to the first message sent for the last dispatch, -1 if none went out
+    public synchronized long getLastCrashToFirstSentMillis() {
+        return lastCrashToFirstSentMillis;
+    }
+
+    public synchronized long getLastDispatchToFirstSentMillis() {
+        return lastDispatchToFirstSentMillis;
+    }
+
+    private void send(Recipient recipient, String message, int messageId) {
+        int parts;
+        try {
+            parts = transport.send(recipient.number, message, messageId);
+        } catch (Exception e) {
+            onPartSent(messageId, false);
+            return;
+        }
+        List<Runnable> notifications = new ArrayList<>(2);
+        synchronized (this) {
+            if (recipient.status != Status.SENDING) {
+                return;
+            }
+            recipient.partsPending = parts - recipient.partsSentEarly;
+            recipient.partsUndelivered = parts - recipient.partsDeliveredEarly;
+            if (recipient.partsPending <= 0) {
+                update(recipient, Status.SENT, notifications);
+            }
+        }
+        notifications.forEach(Runnable::run);
+    }
+
+    // Listener calls are collected and run after the lock is released
+    private void update(Recipient recipient, Status status, List<Runnable> notifications) {
+        recipient.status = status;
+        Listener current = listener;
+        if (status == Status.SENT && !firstSentReported) {
+            firstSentReported = true;
+            long now = clock.nanoTime();
+            lastCrashToFirstSentMillis = (now - crashNanos) / 1_000_000;
+            lastDispatchToFirstSentMillis = (now - dispatchNanos) / 1_000_000;
+            long crashToSent = lastCrashToFirstSentMillis;
+            long dispatchToSent = lastDispatchToFirstSentMillis;
+            if (current != null) {
+                notifications.add(() -> current.onFirstSent(recipient.number, crashToSent, dispatchToSent));
+            }
+        }
+        if (status == Status.SENT && recipient.partsUndelivered == 0) {
+            // Delivery reports beat the sent reports
+            recipient.status = Status.DELIVERED;
+        }
+        Status reported = recipient.status;
+        if (current != null) {
+            notifications.add(() -> current.onRecipientStatus(recipient.number, reported));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication.emergency;
+
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.geo.FacilityIndex;
+
+import java.util.Locale;
+
+/**
+ * Text of the emergency SMS. It is usually longer than one SMS and is sent as a multipart
+ * message.
+ */
+public final class EmergencyMessage {
+    // How far from the fix a road still counts as the one the rider was on
+    private static final double ROAD_MAX_METERS = 100;
+    private static final double HOSPITAL_MAX_METERS = 100_000;
+
+    private EmergencyMessage() {
+    }
+
+    // event is null when the crash was flagged by the Pi without details
+    public static String build(LocationCache.Fix fix, LocationCache.Freshness freshness, long nowNanos, CrashEvent event) {
+        return build(fix, freshness, nowNanos, event, null);
+    }
+
+    // facilities adds the road and the nearest hospital from the offline index; may be null
+    public static String build(LocationCache.Fix fix, LocationCache.Freshness freshness, long nowNanos, CrashEvent event,
+                               FacilityIndex facilities) {
+        StringBuilder text = new StringBuilder("EMERGENCY: motorcycle crash detected, the rider may be injured.");
+        if (fix == null) {
+            text.append(" Location unavailable.");
+        } else {
+            text.append(String.format(Locale.US, " Location: https://maps.google.com/?q=%.6f,%.6f (within %.0f m",
+                    fix.getLatitude(), fix.getLongitude(), fix.getAccuracyMeters()));
+            if (freshness == LocationCache.Freshness.STALE) {
+                text.append(", last known ").append(fix.ageMillis(nowNanos) / 1000).append(" s ago");
+            }
+            text.append(String.format(Locale.US, ", speed %.0f km/h).", fix.getSpeedMps() * 3.6f));
+            if (facilities != null) {
+                appendNearby(text, fix, facilities);
+            }
+        }
+        if (event != null) {
+            text.append(String.format(Locale.US, " Impact %.1f g, rotation %.0f deg, confidence %.0f%%.",
+                    event.getPeakG(), event.getRotationDegrees(), event.getConfidence() * 100));
+        }
+        return text.toString();
+    }
+
+    // Offline lookups take microseconds, so this never holds up the dispatch
+    private static void appendNearby(StringBuilder text, LocationCache.Fix fix, FacilityIndex facilities) {
+        String road = facilities.roadName(fix.getLatitude(), fix.getLongitude(), ROAD_MAX_METERS);
+        if (road != null) {
+            text.append(" On ").append(road).append('.');
+        }
+        FacilityIndex.Place hospital = new FacilityIndex.Place();
+        if (facilities.nearestFacility(fix.getLatitude(), fix.getLongitude(), FacilityIndex.HOSPITAL,
+                HOSPITAL_MAX_METERS, hospital)) {
+            text.append(String.format(Locale.US, " Nearest hospital: %s, %.1f km (%.5f,%.5f).", hospital.getName(),
+                    hospital.getDistanceMeters() / 1000, hospital.getLatitude(), hospital.getLongitude()));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.myapplication.emergency;
+
+/**
+ * Latest position, kept warm by regular location updates so a crash never waits for a fix.
+ * Updates come from one thread; {@link #best} can be called from any thread.
+ */
+public final class LocationCache {
+    public enum Freshness {
+        FRESH, // recent enough to send as is
+        STALE, // old, sent with its age so the reader can judge
+        NONE
+    }
+
+    public static final class Config {
+        public long maxAgeMillis = 30_000;
+        // Fixes less accurate than this are only used when nothing better is fresh
+        public float maxAccuracyMeters = 100;
+    }
+
+    /** One location fix. Immutable. */
+    public static final class Fix {
+        private final long timeMillis;
+        private final long elapsedNanos;
+        private final double latitude;
+        private final double longitude;
+        private final float accuracyMeters;
+        private final float speedMps;
+
+        public Fix(long timeMillis, long elapsedNanos, double latitude, double longitude, float accuracyMeters, float speedMps) {
+            this.timeMillis = timeMillis;
+            this.elapsedNanos = elapsedNanos;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyMeters = accuracyMeters;
+            this.speedMps = speedMps;
+        }
+
+        // Wall clock time of the fix
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        // Monotonic time of the fix, same base as the cache's clock
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public float getAccuracyMeters() {
+            return accuracyMeters;
+        }
+
+        public float getSpeedMps() {
+            return speedMps;
+        }
+
+        public long ageMillis(long nowNanos) {
+            return Math.max(0, (nowNanos - elapsedNanos) / 1_000_000);
+        }
+    }
+
+    private final Config config;
+    private volatile Fix latest;
+    private volatile Fix latestAccurate;
+
+    public LocationCache(Config config) {
+        this.config = config;
+    }
+
+    public void update(Fix fix) {
+        latest = fix;
+        if (fix.accuracyMeters <= config.maxAccuracyMeters) {
+            latestAccurate = fix;
+        }
+    }
+
+    // Best fix to report right now: the latest accurate one if it is fresh, else the latest one, null if none
+    public Fix best(long nowNanos) {
+        Fix accurate = latestAccurate;
+        if (accurate != null && freshness(accurate, nowNanos) == Freshness.FRESH) {
+            return accurate;
+        }
+        return latest;
+    }
+
+    public Freshness freshness(Fix fix, long nowNanos) {
+        if (fix == null) {
+            return Freshness.NONE;
+        }
+        return fix.ageMillis(nowNanos) <= config.maxAgeMillis ? Freshness.FRESH : Freshness.STALE;
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.myapplication.geo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Offline lookup of the nearest emergency facility and of the road a position is on, for the
+ * crash alert text. The data is compiled ahead of time by {@link FacilityIndexWriter} into one
+ * file that is read in place, typically memory-mapped straight out of the APK: opening costs a
+ * header check and nothing is copied onto the heap.
+ *
+ * <p>Facilities and road points are each stored as an implicit k-d tree: in the slice
+ * [from, to) the middle element splits the rest on latitude or longitude, alternating with
+ * depth, so the sorted arrays are the whole tree. Road names are found through the nearest point
+ * of a road; the writer adds points along long segments so that is never far off the road
+ * itself. Distances are equirectangular, which is plenty at the distances that matter here.
+ * Positions near the antimeridian don't see across it.
+ *
+ * <pre>
+ * file (little-endian)
+ *   0  magic "FIDX"      int
+ *   4  version           int
+ *   8  facility count    int
+ *   12 road point count  int
+ *   16 name count        int
+ *   20 name bytes        int
+ *   24 data CRC-32       int   over everything after the header
+ *   28 header CRC-32     int   over bytes 0..27
+ *   32 facility latitude[], longitude[], name[], kind[]   int each, degrees * 1e7
+ *      road latitude[], longitude[], name[]
+ *      name offset[name count + 1]
+ *      name bytes, UTF-8
+ * </pre>
+ *
+ * Thread-safe. A query takes a few microseconds even with millions of road points.
+ */
+public final class FacilityIndex {
+    static final int MAGIC = 0x58444946; // "FIDX" read as little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final double SCALE = 1e7;
+
+    public static final int ANY = -1;
+    public static final int HOSPITAL = 0;
+    public static final int AMBULANCE_STATION = 1;
+    public static final int FIRE_STATION = 2;
+    public static final int POLICE = 3;
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double METERS_PER_UNIT = Math.toRadians(1 / SCALE) * EARTH_RADIUS_METERS;
+
+    // Result of nearestFacility(); reusable across queries
+    public static final class Place {
+        private int index = -1;
+        private String name;
+        private int kind;
+        private double latitude;
+        private double longitude;
+        private double distanceMeters;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public double getDistanceMeters() {
+            return distanceMeters;
+        }
+    }
+
+    // State of one query
+    private static final class Search {
+        final int queryLatitude;
+        final int queryLongitude;
+        final double longitudeScale;
+        final int kind;
+        int best = -1;
+        double bestDistance; // squared, in latitude units
+
+        Search(double latitude, double longitude, int kind, double maxMeters) {
+            this.queryLatitude = (int) Math.round(latitude * SCALE);
+            this.queryLongitude = (int) Math.round(longitude * SCALE);
+            this.longitudeScale = Math.cos(Math.toRadians(latitude));
+            this.kind = kind;
+            double maxUnits = maxMeters / METERS_PER_UNIT;
+            this.bestDistance = maxUnits * maxUnits;
+        }
+    }
+
+    private final IntBuffer facilityLatitudes;
+    private final IntBuffer facilityLongitudes;
+    private final IntBuffer facilityNames;
+    private final IntBuffer facilityKinds;
+    private final IntBuffer roadLatitudes;
+    private final IntBuffer roadLongitudes;
+    private final IntBuffer roadNames;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer nameBytes;
+    private final int facilityCount;
+    private final int roadPointCount;
+
+    private FacilityIndex(ByteBuffer buffer, int facilityCount, int roadPointCount, int nameCount, int nameByteCount) {
+        this.facilityCount = facilityCount;
+        this.roadPointCount = roadPointCount;
+        int position = HEADER_SIZE;
+        facilityLatitudes = ints(buffer, position, facilityCount);
+        facilityLongitudes = ints(buffer, position += facilityCount * 4, facilityCount);
+        facilityNames = ints(buffer, position += facilityCount * 4, facilityCount);
+        facilityKinds = ints(buffer, position += facilityCount * 4, facilityCount);
+        roadLatitudes = ints(buffer, position += facilityCount * 4, roadPointCount);
+        roadLongitudes = ints(buffer, position += roadPointCount * 4, roadPointCount);
+        roadNames = ints(buffer, position += roadPointCount * 4, roadPointCount);
+        nameOffsets = ints(buffer, position += roadPointCount * 4, nameCount + 1);
+        position += (nameCount + 1) * 4;
+        ByteBuffer names = buffer.duplicate();
+        names.position(position).limit(position + nameByteCount);
+        nameBytes = names.slice();
+    }
+
+    /**
+     * Reads an index in place, e.g. a mapped asset. The buffer must not change afterwards. The
+     * data CRC is only checked if verify is set, which reads every byte.
+     */
+    public static FacilityIndex wrap(ByteBuffer buffer, boolean verify) throws IOException {
+        ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE) {
+            throw new IOException("Facility index is truncated");
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer header = data.duplicate();
+        header.limit(28);
+        crc.update(header);
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || data.getInt(28) != (int) crc.getValue()) {
+            throw new IOException("Not a facility index");
+        }
+        int facilityCount = data.getInt(8);
+        int roadPointCount = data.getInt(12);
+        int nameCount = data.getInt(16);
+        int nameByteCount = data.getInt(20);
+        long length = HEADER_SIZE + 16L * facilityCount + 12L * roadPointCount + 4L * (nameCount + 1) + nameByteCount;
+        if (facilityCount < 0 || roadPointCount < 0 || nameCount < 0 || nameByteCount < 0 || data.remaining() != length) {
+            throw new IOException("Facility index has the wrong length");
+        }
+        if (verify) {
+            ByteBuffer body = data.duplicate();
+            body.position(HEADER_SIZE);
+            crc.reset();
+            crc.update(body);
+            if (data.getInt(24) != (int) crc.getValue()) {
+                throw new IOException("Facility index is corrupt");
+            }
+        }
+        return new FacilityIndex(data, facilityCount, roadPointCount, nameCount, nameByteCount);
+    }
+
+    public int getFacilityCount() {
+        return facilityCount;
+    }
+
+    public int getRoadPointCount() {
+        return roadPointCount;
+    }
+
+    /**
+     * Finds the closest facility of the given kind, or of any kind for {@link #ANY}, within
+     * maxMeters.
+     *
+     * @return false if there is none
+     */
+    public boolean nearestFacility(double latitude, double longitude, int kind, double maxMeters, Place out) {
+        Search search = new Search(latitude, longitude, kind, maxMeters);
+        nearest(facilityLatitudes, facilityLongitudes, facilityKinds, 0, facilityCount, 0, search);
+        if (search.best < 0) {
+            out.index = -1;
+            out.name = null;
+            return false;
+        }
+        int best = search.best;
+        if (out.index != best) {
+            out.index = best;
+            out.name = name(facilityNames.get(best));
+        }
+        out.kind = facilityKinds.get(best);
+        out.latitude = facilityLatitudes.get(best) / SCALE;
+        out.longitude = facilityLongitudes.get(best) / SCALE;
+        out.distanceMeters = Math.sqrt(search.bestDistance) * METERS_PER_UNIT;
+        return true;
+    }
+
+    // Name of the road closest to the position, or null if no road is within maxMeters
+    public String roadName(double latitude, double longitude, double maxMeters) {
+        Search search = new Search(latitude, longitude, ANY, maxMeters);
+        nearest(roadLatitudes, roadLongitudes, null, 0, roadPointCount, 0, search);
+        return search.best < 0 ? null : name(roadNames.get(search.best));
+    }
+
+    public static String kindName(int kind) {
+        switch (kind) {
+            case HOSPITAL:
+                return "hospital";
+            case AMBULANCE_STATION:
+                return "ambulance station";
+            case FIRE_STATION:
+                return "fire station";
+            case POLICE:
+                return "police";
+            default:
+                return "facility";
+        }
+    }
+
+    private void nearest(IntBuffer latitudes, IntBuffer longitudes, IntBuffer kinds, int from, int to, int depth,
+                         Search search) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            double dy = (double) latitudes.get(middle) - search.queryLatitude;
+            double dx = ((double) longitudes.get(middle) - search.queryLongitude) * search.longitudeScale;
+            double distance = dx * dx + dy * dy;
+            if (distance < search.bestDistance && (kinds == null || search.kind == ANY || kinds.get(middle) == search.kind)) {
+                search.best = middle;
+                search.bestDistance = distance;
+            }
+            // Near side first; the far side only if the splitting plane is closer than the best so far
+            double split = (depth & 1) == 0 ? -dy : -dx;
+            int nearFrom = split < 0 ? from : middle + 1;
+            int nearTo = split < 0 ? middle : to;
+            int farFrom = split < 0 ? middle + 1 : from;
+            int farTo = split < 0 ? to : middle;
+            nearest(latitudes, longitudes, kinds, nearFrom, nearTo, depth + 1, search);
+            if (split * split >= search.bestDistance) {
+                return;
+            }
+            from = farFrom;
+            to = farTo;
+            depth++;
+        }
+    }
+
+    private String name(int index) {
+        int start = nameOffsets.get(index);
+        int end = nameOffsets.get(index + 1);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = nameBytes.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int position, int count) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position).limit(position + count * 4);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+}
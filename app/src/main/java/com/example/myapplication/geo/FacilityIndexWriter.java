@@ -0,0 +1,225 @@
+package com.example.myapplication.geo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compiles facilities and named roads into the file read by {@link FacilityIndex}. Runs at build
+ * time, see the tools module; not thread-safe.
+ */
+public final class FacilityIndexWriter {
+    public static final class Config {
+        // Longest gap between road points after densifying, bounds the road lookup error
+        public double roadSpacingMeters = 25;
+    }
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+
+    private final Config config;
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] facilities = new int[64]; // latitude, longitude, name, kind per facility
+    private int facilityCount;
+    private int[] roadPoints = new int[1024]; // latitude, longitude, name per point
+    private int roadPointCount;
+
+    public FacilityIndexWriter(Config config) {
+        this.config = config;
+    }
+
+    public void addFacility(int kind, String name, double latitude, double longitude) {
+        if (kind < 0) {
+            throw new IllegalArgumentException("Unknown facility kind " + kind);
+        }
+        facilities = ensureCapacity(facilities, (facilityCount + 1) * 4);
+        int offset = facilityCount * 4;
+        facilities[offset] = fixed(latitude);
+        facilities[offset + 1] = fixed(longitude);
+        facilities[offset + 2] = name(name);
+        facilities[offset + 3] = kind;
+        facilityCount++;
+    }
+
+    // A named polyline; points are added along segments longer than Config.roadSpacingMeters
+    public void addRoad(String name, double[] latitudes, double[] longitudes, int count) {
+        int nameId = name(name);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                double dy = (latitudes[i] - latitudes[i - 1]) * METERS_PER_DEGREE;
+                double dx = (longitudes[i] - longitudes[i - 1]) * METERS_PER_DEGREE
+                        * Math.cos(Math.toRadians(latitudes[i]));
+                int steps = (int) Math.ceil(Math.sqrt(dx * dx + dy * dy) / config.roadSpacingMeters);
+                for (int step = 1; step < steps; step++) {
+                    double t = (double) step / steps;
+                    addRoadPoint(latitudes[i - 1] + (latitudes[i] - latitudes[i - 1]) * t,
+                            longitudes[i - 1] + (longitudes[i] - longitudes[i - 1]) * t, nameId);
+                }
+            }
+            addRoadPoint(latitudes[i], longitudes[i], nameId);
+        }
+    }
+
+    public int getFacilityCount() {
+        return facilityCount;
+    }
+
+    public int getRoadPointCount() {
+        return roadPointCount;
+    }
+
+    // Builds both trees and lays out the file; the writer can keep collecting afterwards
+    public ByteBuffer toByteBuffer() {
+        int[] facilityOrder = kdOrder(facilities, 4, facilityCount);
+        int[] roadOrder = kdOrder(roadPoints, 3, roadPointCount);
+        byte[][] encodedNames = new byte[names.size()][];
+        int nameBytes = 0;
+        for (int i = 0; i < encodedNames.length; i++) {
+            encodedNames[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            nameBytes += encodedNames[i].length;
+        }
+        int length = FacilityIndex.HEADER_SIZE + 16 * facilityCount + 12 * roadPointCount
+                + 4 * (names.size() + 1) + nameBytes;
+        ByteBuffer data = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        data.position(FacilityIndex.HEADER_SIZE);
+        IntBuffer ints = data.asIntBuffer();
+        for (int field = 0; field < 4; field++) {
+            for (int i : facilityOrder) {
+                ints.put(facilities[i * 4 + field]);
+            }
+        }
+        for (int field = 0; field < 3; field++) {
+            for (int i : roadOrder) {
+                ints.put(roadPoints[i * 3 + field]);
+            }
+        }
+        int offset = 0;
+        for (byte[] name : encodedNames) {
+            ints.put(offset);
+            offset += name.length;
+        }
+        ints.put(offset);
+        data.position(data.position() + ints.position() * 4);
+        for (byte[] name : encodedNames) {
+            data.put(name);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), FacilityIndex.HEADER_SIZE, length - FacilityIndex.HEADER_SIZE);
+        data.putInt(0, FacilityIndex.MAGIC);
+        data.putInt(4, FacilityIndex.VERSION);
+        data.putInt(8, facilityCount);
+        data.putInt(12, roadPointCount);
+        data.putInt(16, names.size());
+        data.putInt(20, nameBytes);
+        data.putInt(24, (int) crc.getValue());
+        crc.reset();
+        crc.update(data.array(), 0, 28);
+        data.putInt(28, (int) crc.getValue());
+        data.clear();
+        return data;
+    }
+
+    public void write(File file) throws IOException {
+        ByteBuffer data = toByteBuffer();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data.array());
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    private void addRoadPoint(double latitude, double longitude, int nameId) {
+        roadPoints = ensureCapacity(roadPoints, (roadPointCount + 1) * 3);
+        int offset = roadPointCount * 3;
+        roadPoints[offset] = fixed(latitude);
+        roadPoints[offset + 1] = fixed(longitude);
+        roadPoints[offset + 2] = nameId;
+        roadPointCount++;
+    }
+
+    private int name(String name) {
+        Integer id = nameIndex.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIndex.put(name, id);
+        }
+        return id;
+    }
+
+    // Order of the records in the implicit k-d tree FacilityIndex searches
+    private static int[] kdOrder(int[] records, int stride, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        kdOrder(records, stride, order, 0, count, 0);
+        return order;
+    }
+
+    private static void kdOrder(int[] records, int stride, int[] order, int from, int to, int depth) {
+        while (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            select(records, stride, depth & 1, order, from, to, middle);
+            kdOrder(records, stride, order, from, middle, depth + 1);
+            from = middle + 1;
+            depth++;
+        }
+    }
+
+    // Quickselect: afterwards order[k] has the k-th smallest value on the axis, smaller ones before it
+    private static void select(int[] records, int stride, int axis, int[] order, int from, int to, int k) {
+        int low = from;
+        int high = to - 1;
+        while (low < high) {
+            int pivot = records[order[(low + high) >>> 1] * stride + axis];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (records[order[i] * stride + axis] < pivot) {
+                    i++;
+                }
+                while (records[order[j] * stride + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static int fixed(double degrees) {
+        return (int) Math.round(degrees * FacilityIndex.SCALE);
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.myapplication.geo;
+
+import java.util.Arrays;
+
+/**
+ * Bounding box of the points of each payload, e.g. of each ride in a {@link SpatialIndex} of ride
+ * positions. Counting the payloads whose box overlaps a region looks at one box per payload
+ * instead of every point in the region, at the price of also counting a payload that only goes
+ * around it.
+ *
+ * <p>Boxes are kept sorted by payload, so adding points of the newest ride, whose payload is the
+ * largest so far, is a binary search and an update. Thread-safe.
+ */
+public final class PayloadBounds {
+    private int[] payloads = new int[16];
+    private double[] minLatitudes = new double[16];
+    private double[] minLongitudes = new double[16];
+    private double[] maxLatitudes = new double[16];
+    private double[] maxLongitudes = new double[16];
+    private int size;
+
+    // Boxes of everything already in the index; reads every point once
+    public static PayloadBounds of(SpatialIndex index) {
+        PayloadBounds bounds = new PayloadBounds();
+        index.query(-90, -180, 90, 180, bounds::add);
+        return bounds;
+    }
+
+    public synchronized void add(double[] latitudes, double[] longitudes, int[] payloads, int count) {
+        for (int i = 0; i < count; i++) {
+            add(latitudes[i], longitudes[i], payloads[i]);
+        }
+    }
+
+    public synchronized void add(double latitude, double longitude, int payload) {
+        int slot = Arrays.binarySearch(payloads, 0, size, payload);
+        if (slot < 0) {
+            slot = insert(-slot - 1, payload);
+            minLatitudes[slot] = maxLatitudes[slot] = latitude;
+            minLongitudes[slot] = maxLongitudes[slot] = longitude;
+            return;
+        }
+        minLatitudes[slot] = Math.min(minLatitudes[slot], latitude);
+        maxLatitudes[slot] = Math.max(maxLatitudes[slot], latitude);
+        minLongitudes[slot] = Math.min(minLongitudes[slot], longitude);
+        maxLongitudes[slot] = Math.max(maxLongitudes[slot], longitude);
+    }
+
+    /**
+     * Number of payloads whose box overlaps the given one, edges included. A box with
+     * minLongitude greater than maxLongitude wraps across the antimeridian, like in
+     * {@link SpatialIndex#query}.
+     */
+    public synchronized int countIntersecting(double minLatitude, double minLongitude, double maxLatitude,
+                                              double maxLongitude) {
+        boolean wraps = minLongitude > maxLongitude;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (maxLatitudes[i] < minLatitude || minLatitudes[i] > maxLatitude) {
+                continue;
+            }
+            boolean overlaps = wraps
+                    ? maxLongitudes[i] >= minLongitude || minLongitudes[i] <= maxLongitude
+                    : maxLongitudes[i] >= minLongitude && minLongitudes[i] <= maxLongitude;
+            if (overlaps) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Opens a box at position, shifting the later ones up; a new ride normally goes at the end
+    private int insert(int position, int payload) {
+        if (size == payloads.length) {
+            int capacity = size * 2;
+            payloads = Arrays.copyOf(payloads, capacity);
+            minLatitudes = Arrays.copyOf(minLatitudes, capacity);
+            minLongitudes = Arrays.copyOf(minLongitudes, capacity);
+            maxLatitudes = Arrays.copyOf(maxLatitudes, capacity);
+            maxLongitudes = Arrays.copyOf(maxLongitudes, capacity);
+        }
+        int moved = size - position;
+        System.arraycopy(payloads, position, payloads, position + 1, moved);
+        System.arraycopy(minLatitudes, position, minLatitudes, position + 1, moved);
+        System.arraycopy(minLongitudes, position, minLongitudes, position + 1, moved);
+        System.arraycopy(maxLatitudes, position, maxLatitudes, position + 1, moved);
+        System.arraycopy(maxLongitudes, position, maxLongitudes, position + 1, moved);
+        payloads[position] = payload;
+        size++;
+        return position;
+    }
+}
@@ -0,0 +1,490 @@
+package com.example.myapplication.geo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * On-device spatial index over recorded points, e.g. every position of every ride or every crash
+ * location, answering bounding-box and nearest-neighbour queries without scanning them all.
+ *
+ * <p>Points are added in batches, typically one ride at a time. Each batch becomes an immutable
+ * {@link SpatialRun} sorted in Z-order, which doubles as a packed quadtree. A new run is merged
+ * into the one before it while it is at least 1/{@link Config#mergeRatio} of its size, so there
+ * are only ever O(log n) runs and each point is rewritten O(log n) times overall. Every run is a
+ * file of its own and a small manifest names the live ones; both are replaced through a temp file
+ * and a rename, so a crash during an add leaves the previous state. Opening the index maps the
+ * run files and copies them into arrays, no rebuilding.
+ *
+ * <p>Each point carries an int payload chosen by the caller, e.g. a ride id. Queries never block
+ * and may run on any thread concurrently with an add; they see the index as it was when they
+ * started. Distances are on a local flat-earth approximation around the query point, accurate to
+ * well under a percent within the few kilometres "near here" is about. Boxes that cross the
+ * antimeridian are supported, distances across it are not.
+ */
+public final class SpatialIndex {
+    public static final class Config {
+        // Cells with at most this many points are scanned instead of split further
+        public int leafSize = 32;
+        public int mergeRatio = 4;
+        // Check the data CRC of every run when opening; costs about a millisecond per 100k points
+        public boolean verifyOnLoad = true;
+    }
+
+    public interface PointSink {
+        void accept(double latitude, double longitude, int payload);
+    }
+
+    // Results of nearest(), closest first; reusable across queries
+    public static final class Neighbors {
+        private double[] latitudes = new double[0];
+        private double[] longitudes = new double[0];
+        private int[] payloads = new int[0];
+        private double[] distances = new double[0];
+        private int count;
+
+        public int size() {
+            return count;
+        }
+
+        public double getLatitude(int i) {
+            return latitudes[i];
+        }
+
+        public double getLongitude(int i) {
+            return longitudes[i];
+        }
+
+        public int getPayload(int i) {
+            return payloads[i];
+        }
+
+        public double getDistanceMeters(int i) {
+            return distances[i];
+        }
+
+        void reset(int k) {
+            if (latitudes.length < k) {
+                latitudes = new double[k];
+                longitudes = new double[k];
+                payloads = new int[k];
+                distances = new double[k];
+            }
+            count = 0;
+        }
+
+        // Keeps the k closest, sorted; k is small so insertion beats a heap
+        void offer(int k, double distance, double latitude, double longitude, int payload) {
+            if (count == k && distance >= distances[k - 1]) {
+                return;
+            }
+            int i = count < k ? count++ : k - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                latitudes[i] = latitudes[i - 1];
+                longitudes[i] = longitudes[i - 1];
+                payloads[i] = payloads[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            payloads[i] = payload;
+            distances[i] = distance;
+        }
+
+        double worst(int k) {
+            return count < k ? Double.POSITIVE_INFINITY : distances[k - 1];
+        }
+    }
+
+    private static final String MANIFEST = "manifest";
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double CELLS = 4294967296.0; // 2^32 quantization steps per axis
+
+    private final File directory;
+    private final Config config;
+    // Largest and oldest first; replaced, never modified, so queries can read it without a lock
+    private volatile SpatialRun[] runs;
+    private long[] runIds;
+    private long nextRunId;
+
+    private SpatialIndex(File directory, Config config, SpatialRun[] runs, long[] runIds) {
+        this.directory = directory;
+        this.config = config;
+        this.runs = runs;
+        this.runIds = runIds;
+        for (long id : runIds) {
+            nextRunId = Math.max(nextRunId, id + 1);
+        }
+    }
+
+    // Index that lives only in memory
+    public static SpatialIndex inMemory(Config config) {
+        return new SpatialIndex(null, config, new SpatialRun[0], new long[0]);
+    }
+
+    // Loads the index kept in directory, or starts an empty one there
+    public static SpatialIndex open(File directory, Config config) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        long[] ids = readManifest(directory);
+        SpatialRun[] runs = new SpatialRun[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            runs[i] = SpatialRun.read(runFile(directory, ids[i]), config.verifyOnLoad);
+        }
+        deleteUnlisted(directory, ids);
+        return new SpatialIndex(directory, config, runs, ids);
+    }
+
+    /**
+     * Adds count points. Writes and merges runs on the calling thread, so keep it off the main
+     * thread when the index is persisted.
+     */
+    public synchronized void add(double[] latitudes, double[] longitudes, int[] payloads, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = quantizeLongitude(longitudes[i]);
+            ys[i] = quantizeLatitude(latitudes[i]);
+        }
+        List<SpatialRun> newRuns = new ArrayList<>(Arrays.asList(runs));
+        List<Long> newIds = new ArrayList<>(runIds.length + 1);
+        for (long id : runIds) {
+            newIds.add(id);
+        }
+        SpatialRun run = SpatialRun.build(xs, ys, payloads, count);
+        List<Long> obsolete = new ArrayList<>();
+        // Merging in memory first means only the final run of a cascade is written
+        while (!newRuns.isEmpty()) {
+            SpatialRun previous = newRuns.get(newRuns.size() - 1);
+            if ((long) run.size * config.mergeRatio < previous.size) {
+                break;
+            }
+            run = SpatialRun.merge(previous, run);
+            newRuns.remove(newRuns.size() - 1);
+            obsolete.add(newIds.remove(newIds.size() - 1));
+        }
+        long id = nextRunId++;
+        if (directory != null) {
+            run.write(runFile(directory, id));
+        }
+        newRuns.add(run);
+        newIds.add(id);
+
+        long[] ids = new long[newIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = newIds.get(i);
+        }
+        if (directory != null) {
+            writeManifest(directory, ids);
+            for (long old : obsolete) {
+                runFile(directory, old).delete();
+            }
+        }
+        runIds = ids;
+        runs = newRuns.toArray(new SpatialRun[0]);
+    }
+
+    public long size() {
+        long size = 0;
+        for (SpatialRun run : runs) {
+            size += run.size;
+        }
+        return size;
+    }
+
+    public int getRunCount() {
+        return runs.length;
+    }
+
+    /**
+     * Passes every point inside the box, edges included, to sink in no particular order. A box
+     * with minLongitude greater than maxLongitude wraps across the antimeridian.
+     *
+     * @return number of points found
+     */
+    public int query(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, PointSink sink) {
+        if (minLongitude > maxLongitude) {
+            return query(minLatitude, minLongitude, maxLatitude, 180, sink)
+                    + query(minLatitude, -180, maxLatitude, maxLongitude, sink);
+        }
+        long x0 = quantizeLongitude(minLongitude) & 0xFFFFFFFFL;
+        long x1 = quantizeLongitude(maxLongitude) & 0xFFFFFFFFL;
+        long y0 = quantizeLatitude(minLatitude) & 0xFFFFFFFFL;
+        long y1 = quantizeLatitude(maxLatitude) & 0xFFFFFFFFL;
+        int found = 0;
+        // Depth-first over cells; each level adds at most three siblings to the stack
+        int depth = 3 * 32 + 2;
+        int[] levels = new int[depth];
+        long[] xs = new long[depth];
+        long[] ys = new long[depth];
+        int[] bounds = new int[5 * depth];
+        long[] childX = new long[4];
+        long[] childY = new long[4];
+        int[] childBounds = new int[5];
+        for (SpatialRun run : runs) {
+            if (run.size == 0) {
+                continue;
+            }
+            int top = 0;
+            levels[0] = 0;
+            xs[0] = 0;
+            ys[0] = 0;
+            bounds[0] = 0;
+            bounds[1] = run.size;
+            top++;
+            while (top > 0) {
+                top--;
+                int level = levels[top];
+                long cx0 = xs[top];
+                long cy0 = ys[top];
+                int from = bounds[2 * top];
+                int to = bounds[2 * top + 1];
+                long extent = (1L << (32 - level)) - 1;
+                if (cx0 > x1 || cx0 + extent < x0 || cy0 > y1 || cy0 + extent < y0) {
+                    continue;
+                }
+                boolean inside = cx0 >= x0 && cx0 + extent <= x1 && cy0 >= y0 && cy0 + extent <= y1;
+                if (inside || to - from <= config.leafSize || level == 32) {
+                    for (int i = from; i < to; i++) {
+                        long x = run.xs[i] & 0xFFFFFFFFL;
+                        long y = run.ys[i] & 0xFFFFFFFFL;
+                        if (inside || (x >= x0 && x <= x1 && y >= y0 && y <= y1)) {
+                            sink.accept(latitudeOf(run.ys[i]), longitudeOf(run.xs[i]), run.payloads[i]);
+                            found++;
+                        }
+                    }
+                    continue;
+                }
+                split(run, level, cx0, cy0, from, to, childX, childY, childBounds);
+                for (int q = 0; q < 4; q++) {
+                    if (childBounds[q + 1] > childBounds[q]) {
+                        levels[top] = level + 1;
+                        xs[top] = childX[q];
+                        ys[top] = childY[q];
+                        bounds[2 * top] = childBounds[q];
+                        bounds[2 * top + 1] = childBounds[q + 1];
+                        top++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the k points closest to the given position.
+     *
+     * @return number of points found, fewer than k only if the index is that small
+     */
+    public int nearest(double latitude, double longitude, int k, Neighbors out) {
+        out.reset(k);
+        if (k <= 0) {
+            return 0;
+        }
+        double metersPerLongitude = Math.toRadians(1) * EARTH_RADIUS_METERS * Math.cos(Math.toRadians(latitude));
+        double metersPerLatitude = Math.toRadians(1) * EARTH_RADIUS_METERS;
+        // Best first: cells come off the queue closest first, so once the closest cell is farther
+        // than the k-th point found nothing else can get in
+        PriorityQueue<Cell> queue = new PriorityQueue<>();
+        for (SpatialRun run : runs) {
+            if (run.size > 0) {
+                queue.add(new Cell(run, 0, 0, 0, 0, run.size, 0));
+            }
+        }
+        long[] childX = new long[4];
+        long[] childY = new long[4];
+        int[] childBounds = new int[5];
+        while (!queue.isEmpty()) {
+            Cell cell = queue.poll();
+            if (cell.distance >= out.worst(k)) {
+                break;
+            }
+            SpatialRun run = cell.run;
+            if (cell.to - cell.from <= config.leafSize || cell.level == 32) {
+                for (int i = cell.from; i < cell.to; i++) {
+                    double pointLatitude = latitudeOf(run.ys[i]);
+                    double pointLongitude = longitudeOf(run.xs[i]);
+                    double dx = (pointLongitude - longitude) * metersPerLongitude;
+                    double dy = (pointLatitude - latitude) * metersPerLatitude;
+                    out.offer(k, Math.sqrt(dx * dx + dy * dy), pointLatitude, pointLongitude, run.payloads[i]);
+                }
+                continue;
+            }
+            split(run, cell.level, cell.x, cell.y, cell.from, cell.to, childX, childY, childBounds);
+            for (int q = 0; q < 4; q++) {
+                if (childBounds[q + 1] > childBounds[q]) {
+                    double distance = cellDistance(cell.level + 1, childX[q], childY[q], latitude, longitude,
+                            metersPerLatitude, metersPerLongitude);
+                    if (distance < out.worst(k)) {
+                        queue.add(new Cell(run, cell.level + 1, childX[q], childY[q], childBounds[q], childBounds[q + 1], distance));
+                    }
+                }
+            }
+        }
+        return out.size();
+    }
+
+    private static final class Cell implements Comparable<Cell> {
+        final SpatialRun run;
+        final int level;
+        final long x;
+        final long y;
+        final int from;
+        final int to;
+        final double distance;
+
+        Cell(SpatialRun run, int level, long x, long y, int from, int to, double distance) {
+            this.run = run;
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.from = from;
+            this.to = to;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Cell other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    // The four children of a cell in key order, and where each one's slice of the run starts
+    private static void split(SpatialRun run, int level, long cx0, long cy0, int from, int to,
+                              long[] childX, long[] childY, int[] childBounds) {
+        long half = 1L << (31 - level);
+        childBounds[0] = from;
+        childBounds[4] = to;
+        for (int q = 0; q < 4; q++) {
+            childX[q] = cx0 + ((q & 1) != 0 ? half : 0);
+            childY[q] = cy0 + ((q & 2) != 0 ? half : 0);
+            if (q > 0) {
+                long firstKey = SpatialRun.morton((int) childX[q], (int) childY[q]);
+                childBounds[q] = run.lowerBound(childBounds[q - 1], to, firstKey);
+            }
+        }
+    }
+
+    private static double cellDistance(int level, long cx0, long cy0, double latitude, double longitude,
+                                       double metersPerLatitude, double metersPerLongitude) {
+        double size = Math.scalb(1.0, 32 - level);
+        double lon0 = cx0 / CELLS * 360 - 180;
+        double lat0 = cy0 / CELLS * 180 - 90;
+        double lon1 = (cx0 + size) / CELLS * 360 - 180;
+        double lat1 = (cy0 + size) / CELLS * 180 - 90;
+        double dx = (Math.max(lon0, Math.min(lon1, longitude)) - longitude) * metersPerLongitude;
+        double dy = (Math.max(lat0, Math.min(lat1, latitude)) - latitude) * metersPerLatitude;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    static int quantizeLongitude(double longitude) {
+        return quantize((longitude + 180) / 360);
+    }
+
+    static int quantizeLatitude(double latitude) {
+        return quantize((latitude + 90) / 180);
+    }
+
+    private static int quantize(double fraction) {
+        long q = (long) Math.floor(fraction * CELLS);
+        return (int) Math.max(0, Math.min((long) CELLS - 1, q));
+    }
+
+    // Centre of the quantization step
+    static double longitudeOf(int x) {
+        return ((x & 0xFFFFFFFFL) + 0.5) / CELLS * 360 - 180;
+    }
+
+    static double latitudeOf(int y) {
+        return ((y & 0xFFFFFFFFL) + 0.5) / CELLS * 180 - 90;
+    }
+
+    private static File runFile(File directory, long id) {
+        return new File(directory, String.format(Locale.US, "run-%010d.sidx", id));
+    }
+
+    private static long[] readManifest(File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            return new long[0];
+        }
+        List<Long> ids = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    try {
+                        ids.add(Long.parseLong(line.trim()));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Bad manifest line: " + line, e);
+                    }
+                }
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static void writeManifest(File directory, long[] ids) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (long id : ids) {
+            sb.append(id).append('\n');
+        }
+        File manifest = new File(directory, MANIFEST);
+        File temp = new File(directory, MANIFEST + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(manifest)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + manifest);
+        }
+    }
+
+    // Runs left behind by an add that crashed before its manifest was written
+    private static void deleteUnlisted(File directory, long[] ids) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            if (!name.startsWith("run-") || !name.endsWith(".sidx")) {
+                continue;
+            }
+            boolean listed = false;
+            for (long id : ids) {
+                if (runFile(directory, id).getName().equals(name)) {
+                    listed = true;
+                    break;
+                }
+            }
+            if (!listed) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.myapplication.geo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable batch of indexed points, sorted by the Morton (Z-order) code of their quantized
+ * coordinates. In that order every quadtree cell is one contiguous slice of the arrays, so the
+ * sorted arrays are the whole tree: a cell's points are found by binary search on its key range
+ * and nothing else is stored.
+ *
+ * <p>Coordinates are quantized to 32 bits each over the full range of longitude and latitude,
+ * about a centimetre, and kept as ints with unsigned meaning. 12 bytes per point.
+ *
+ * <pre>
+ * file (little-endian)
+ *   0  magic "SIDX"   int
+ *   4  version        int
+ *   8  count          int
+ *   12 data CRC-32    int   over the three arrays
+ *   16 header CRC-32  int   over bytes 0..15
+ *   20 reserved       12 bytes
+ *   32 x[count], y[count], payload[count]   int each
+ * </pre>
+ */
+final class SpatialRun {
+    static final int MAGIC = 0x58444953; // "SIDX" read as little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    final int[] xs;
+    final int[] ys;
+    final int[] payloads;
+    final int size;
+
+    private SpatialRun(int[] xs, int[] ys, int[] payloads) {
+        this.xs = xs;
+        this.ys = ys;
+        this.payloads = payloads;
+        this.size = xs.length;
+    }
+
+    // Sorts a copy of the points
+    static SpatialRun build(int[] xs, int[] ys, int[] payloads, int count) {
+        long[] keys = new long[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = morton(xs[i], ys[i]);
+            order[i] = i;
+        }
+        radixSort(keys, order);
+        int[] sortedX = new int[count];
+        int[] sortedY = new int[count];
+        int[] sortedPayloads = new int[count];
+        for (int i = 0; i < count; i++) {
+            int from = order[i];
+            sortedX[i] = xs[from];
+            sortedY[i] = ys[from];
+            sortedPayloads[i] = payloads[from];
+        }
+        return new SpatialRun(sortedX, sortedY, sortedPayloads);
+    }
+
+    static SpatialRun merge(SpatialRun a, SpatialRun b) {
+        int count = a.size + b.size;
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        int[] payloads = new int[count];
+        int i = 0;
+        int j = 0;
+        long keyA = a.size > 0 ? a.key(0) : 0;
+        long keyB = b.size > 0 ? b.key(0) : 0;
+        for (int out = 0; out < count; out++) {
+            if (j == b.size || (i < a.size && Long.compareUnsigned(keyA, keyB) <= 0)) {
+                xs[out] = a.xs[i];
+                ys[out] = a.ys[i];
+                payloads[out] = a.payloads[i];
+                if (++i < a.size) {
+                    keyA = a.key(i);
+                }
+            } else {
+                xs[out] = b.xs[j];
+                ys[out] = b.ys[j];
+                payloads[out] = b.payloads[j];
+                if (++j < b.size) {
+                    keyB = b.key(j);
+                }
+            }
+        }
+        return new SpatialRun(xs, ys, payloads);
+    }
+
+    long key(int index) {
+        return morton(xs[index], ys[index]);
+    }
+
+    // First index in from..to whose key is not below key, unsigned
+    int lowerBound(int from, int to, long key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    void write(File file) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + size * 12).order(ByteOrder.LITTLE_ENDIAN);
+        data.position(HEADER_SIZE);
+        data.asIntBuffer().put(xs).put(ys).put(payloads);
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), HEADER_SIZE, size * 12);
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(8, size);
+        data.putInt(12, (int) crc.getValue());
+        crc.reset();
+        crc.update(data.array(), 0, 16);
+        data.putInt(16, (int) crc.getValue());
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data.array());
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    // Maps the file and copies the arrays out in bulk; verifying the data CRC is optional
+    static SpatialRun read(File file, boolean verify) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is truncated");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            ByteBuffer header = map.duplicate();
+            header.limit(16);
+            crc.update(header);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(16) != (int) crc.getValue()) {
+                throw new IOException(file + " is not a spatial index run");
+            }
+            int count = map.getInt(8);
+            if (count < 0 || channel.size() != HEADER_SIZE + (long) count * 12) {
+                throw new IOException(file + " has the wrong length for " + count + " points");
+            }
+            if (verify) {
+                ByteBuffer body = map.duplicate();
+                body.position(HEADER_SIZE);
+                crc.reset();
+                crc.update(body);
+                if (map.getInt(12) != (int) crc.getValue()) {
+                    throw new IOException(file + " is corrupt");
+                }
+            }
+            int[] xs = new int[count];
+            int[] ys = new int[count];
+            int[] payloads = new int[count];
+            map.position(HEADER_SIZE);
+            map.asIntBuffer().get(xs).get(ys).get(payloads);
+            return new SpatialRun(xs, ys, payloads);
+        }
+    }
+
+    // Interleaves the bits of x (even positions) and y (odd positions)
+    static long morton(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(int value) {
+        long v = value & 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    // LSD radix sort on unsigned keys, 16 bits per pass, carrying order along. Four passes, so the
+    // result ends up back in the arrays passed in.
+    private static void radixSort(long[] keys, int[] order) {
+        int n = keys.length;
+        long[] keySource = keys;
+        int[] orderSource = order;
+        long[] keyTarget = new long[n];
+        int[] orderTarget = new int[n];
+        int[] counts = new int[1 << 16];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) (keySource[i] >>> shift) & 0xFFFF]++;
+            }
+            int total = 0;
+            for (int d = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = total;
+                total += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int slot = counts[(int) (keySource[i] >>> shift) & 0xFFFF]++;
+                keyTarget[slot] = keySource[i];
+                orderTarget[slot] = orderSource[i];
+            }
+            long[] keySwap = keySource;
+            keySource = keyTarget;
+            keyTarget = keySwap;
+            int[] orderSwap = orderSource;
+            orderSource = orderTarget;
+            orderTarget = orderSwap;
+        }
+    }
+}
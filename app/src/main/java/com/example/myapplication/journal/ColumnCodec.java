@@ -0,0 +1,489 @@
+package com.example.myapplication.journal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Column encodings of the ride archive, see {@link RideArchiveWriter}.
+ *
+ * <p>Integer columns are stored whichever way is smallest for the block: zigzag varints of the
+ * differences between neighbours, those differences bit-packed at the width of the largest,
+ * offsets from the block minimum bit-packed, or Rice codes of either the differences or the
+ * offsets from the block mean. Smooth signals favour differences; sensor noise, whose neighbours
+ * are unrelated, favours offsets, and Rice codes get close to its entropy where bit-packing
+ * spends a fixed width on every value. Float columns whose values are all
+ * exactly raw integers divided by the column's scale, as everything the Pi sends is, are stored
+ * as those integers; anything else is XOR-compressed against the previous value.
+ */
+final class ColumnCodec {
+    static final int DELTA_VARINT = 0;
+    static final int DELTA_PACKED = 1;
+    static final int OFFSET_PACKED = 2;
+    static final int DELTA_RICE = 3;
+    static final int OFFSET_RICE = 4;
+    static final int FLOAT_SCALED = 0;
+    static final int FLOAT_XOR = 1;
+
+    // Rice quotients this large are stored as the whole value instead
+    private static final int RICE_ESCAPE = 24;
+    private static final int MAX_RICE_K = 62;
+
+    private ColumnCodec() {
+    }
+
+    // Growable output, reused across blocks
+    static final class Sink {
+        byte[] bytes = new byte[4096];
+        int size;
+        private long[] deltas = new long[0];
+        private long[] offsets = new long[0];
+        private long bits;
+        private int bitCount;
+
+        void clear() {
+            size = 0;
+            bits = 0;
+            bitCount = 0;
+        }
+
+        void put(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        // Low count bits of value, count up to 64
+        void putBits(long value, int count) {
+            if (count > 32) {
+                putBits(value >>> 32, count - 32);
+                count = 32;
+            }
+            if (count == 0) {
+                return;
+            }
+            bits = (bits << count) | (value & (-1L >>> (64 - count)));
+            bitCount += count;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                put((int) (bits >>> bitCount));
+            }
+        }
+
+        // Pads the last byte of a bit run with zeros
+        void alignBits() {
+            if (bitCount > 0) {
+                put((int) (bits << (8 - bitCount)));
+                bitCount = 0;
+            }
+            bits = 0;
+        }
+    }
+
+    // Reads back what a Sink wrote, from a copy of one block
+    static final class Source {
+        byte[] bytes = new byte[0];
+        int size;
+        private int position;
+        private long bits;
+        private int bitCount;
+
+        // Copies length bytes at offset out of the mapped archive
+        void reset(ByteBuffer buffer, int offset, int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            ByteBuffer range = buffer.duplicate();
+            range.position(offset);
+            range.get(bytes, 0, length);
+            size = length;
+            position = 0;
+            bits = 0;
+            bitCount = 0;
+        }
+
+        int get() {
+            if (position >= size) {
+                throw new IllegalStateException("Read past the end of the block");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long getVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        // Counts one bits up to a zero, or up to limit without reading the zero
+        int getUnary(int limit) {
+            int ones = 0;
+            while (true) {
+                if (bitCount == 0) {
+                    refill(1);
+                }
+                int run = Math.min(Long.numberOfLeadingZeros(~(bits << (64 - bitCount))), bitCount);
+                if (run >= limit - ones) {
+                    bitCount -= limit - ones;
+                    return limit;
+                }
+                ones += run;
+                bitCount -= run;
+                if (bitCount > 0) {
+                    bitCount--; // the zero
+                    return ones;
+                }
+            }
+        }
+
+        long getBits(int count) {
+            if (count > 56) {
+                long high = getBits(count - 32);
+                return (high << 32) | getBits(32);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            if (bitCount < count) {
+                refill(count);
+            }
+            bitCount -= count;
+            return (bits >>> bitCount) & (-1L >>> (64 - count));
+        }
+
+        // Bits are read ahead a word at a time; whole bytes not used are handed back
+        void alignBits() {
+            position -= bitCount >>> 3;
+            bits = 0;
+            bitCount = 0;
+        }
+
+        private void refill(int count) {
+            while (bitCount <= 56 && position < size) {
+                bits = (bits << 8) | (bytes[position++] & 0xFF);
+                bitCount += 8;
+            }
+            if (bitCount < count) {
+                throw new IllegalStateException("Read past the end of the block");
+            }
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void encodeLongs(long[] values, int count, Sink out) {
+        if (count == 0) {
+            return;
+        }
+        if (out.deltas.length < count) {
+            out.deltas = new long[count];
+            out.offsets = new long[count];
+        }
+        long[] deltas = out.deltas;
+        long[] offsets = out.offsets;
+        long min = values[0];
+        long max = values[0];
+        long sum = values[0];
+        long deltaBits = 0; // OR of the values has the width of the largest, taken as unsigned
+        long varintBytes = 0;
+        for (int i = 1; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+            sum += values[i];
+            long delta = zigzag(values[i] - values[i - 1]);
+            deltas[i - 1] = delta;
+            deltaBits |= delta;
+            varintBytes += varintSize(delta);
+        }
+        long mean = Math.round((double) sum / count);
+        long offsetBits = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = zigzag(values[i] - mean);
+            offsetBits |= offsets[i];
+        }
+        int deltaWidth = width(deltaBits);
+        int offsetWidth = width(max - min);
+        int centeredWidth = width(offsetBits);
+        int deltaRice = riceParameter(deltas, count - 1, deltaWidth);
+        int offsetRice = riceParameter(offsets, count, centeredWidth);
+
+        long[] sizes = {
+                varintBytes,
+                2 + ((long) deltaWidth * (count - 1) + 7) / 8,
+                2 + ((long) offsetWidth * count + 7) / 8,
+                3 + (riceBits(deltas, count - 1, deltaRice, deltaWidth) + 7) / 8,
+                3 + (riceBits(offsets, count, offsetRice, centeredWidth) + 7) / 8,
+        };
+        int best = DELTA_VARINT;
+        for (int encoding = 1; encoding < sizes.length; encoding++) {
+            if (sizes[encoding] < sizes[best]) {
+                best = encoding;
+            }
+        }
+        out.put(best);
+        switch (best) {
+            case DELTA_PACKED:
+                out.putVarint(zigzag(values[0]));
+                out.put(deltaWidth);
+                for (int i = 0; i < count - 1; i++) {
+                    out.putBits(deltas[i], deltaWidth);
+                }
+                out.alignBits();
+                break;
+            case OFFSET_PACKED:
+                out.putVarint(zigzag(min));
+                out.put(offsetWidth);
+                for (int i = 0; i < count; i++) {
+                    out.putBits(values[i] - min, offsetWidth);
+                }
+                out.alignBits();
+                break;
+            case DELTA_RICE:
+                out.putVarint(zigzag(values[0]));
+                putRice(deltas, count - 1, deltaRice, deltaWidth, out);
+                break;
+            case OFFSET_RICE:
+                out.putVarint(zigzag(mean));
+                putRice(offsets, count, offsetRice, centeredWidth, out);
+                break;
+            default:
+                out.putVarint(zigzag(values[0]));
+                for (int i = 0; i < count - 1; i++) {
+                    out.putVarint(deltas[i]);
+                }
+        }
+    }
+
+    static void decodeLongs(Source in, long[] out, int count) {
+        if (count == 0) {
+            return;
+        }
+        int encoding = in.get();
+        switch (encoding) {
+            case OFFSET_PACKED: {
+                long min = unzigzag(in.getVarint());
+                int width = in.get();
+                for (int i = 0; i < count; i++) {
+                    out[i] = min + in.getBits(width);
+                }
+                in.alignBits();
+                break;
+            }
+            case DELTA_PACKED: {
+                out[0] = unzigzag(in.getVarint());
+                int width = in.get();
+                for (int i = 1; i < count; i++) {
+                    out[i] = out[i - 1] + unzigzag(in.getBits(width));
+                }
+                in.alignBits();
+                break;
+            }
+            case DELTA_RICE: {
+                out[0] = unzigzag(in.getVarint());
+                int k = in.get();
+                if (k > MAX_RICE_K) {
+                    throw new IllegalStateException("Bad Rice parameter " + k);
+                }
+                int escapeWidth = in.get();
+                for (int i = 1; i < count; i++) {
+                    out[i] = out[i - 1] + unzigzag(getRice(in, k, escapeWidth));
+                }
+                in.alignBits();
+                break;
+            }
+            case OFFSET_RICE: {
+                long mean = unzigzag(in.getVarint());
+                int k = in.get();
+                if (k > MAX_RICE_K) {
+                    throw new IllegalStateException("Bad Rice parameter " + k);
+                }
+                int escapeWidth = in.get();
+                for (int i = 0; i < count; i++) {
+                    out[i] = mean + unzigzag(getRice(in, k, escapeWidth));
+                }
+                in.alignBits();
+                break;
+            }
+            case DELTA_VARINT:
+                out[0] = unzigzag(in.getVarint());
+                for (int i = 1; i < count; i++) {
+                    out[i] = out[i - 1] + unzigzag(in.getVarint());
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown column encoding " + encoding);
+        }
+    }
+
+    // scratch needs count entries
+    static void encodeFloats(float[] values, int count, float scale, long[] scratch, Sink out) {
+        boolean scaled = true;
+        for (int i = 0; i < count && scaled; i++) {
+            float value = values[i];
+            long raw = Math.round(value * scale);
+            // Bit-exact, so -0.0 and NaN take the XOR path
+            scaled = Math.abs(raw) <= Short.MAX_VALUE * 2
+                    && Float.floatToRawIntBits(raw / scale) == Float.floatToRawIntBits(value);
+            scratch[i] = raw;
+        }
+        if (scaled) {
+            out.put(FLOAT_SCALED);
+            encodeLongs(scratch, count, out);
+            return;
+        }
+        out.put(FLOAT_XOR);
+        int previous = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 0; i < count; i++) {
+            int bits = Float.floatToRawIntBits(values[i]);
+            int xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                out.putBits(0, 1);
+                continue;
+            }
+            out.putBits(1, 1);
+            int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                // Fits the previous window, only its bits are stored
+                out.putBits(0, 1);
+                out.putBits((xor >>> previousTrailing) & 0xFFFFFFFFL, 32 - previousLeading - previousTrailing);
+            } else {
+                int meaningful = 32 - leading - trailing;
+                out.putBits(1, 1);
+                out.putBits(leading, 5);
+                out.putBits(meaningful - 1, 5);
+                out.putBits((xor >>> trailing) & 0xFFFFFFFFL, meaningful);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+        out.alignBits();
+    }
+
+    static void decodeFloats(Source in, float[] out, int count, float scale, long[] scratch) {
+        int encoding = in.get();
+        if (encoding == FLOAT_SCALED) {
+            decodeLongs(in, scratch, count);
+            for (int i = 0; i < count; i++) {
+                out[i] = scratch[i] / scale;
+            }
+            return;
+        }
+        if (encoding != FLOAT_XOR) {
+            throw new IllegalStateException("Unknown float encoding " + encoding);
+        }
+        int previous = 0;
+        int previousLeading = 0;
+        int previousTrailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (in.getBits(1) != 0) {
+                if (in.getBits(1) != 0) {
+                    previousLeading = (int) in.getBits(5);
+                    int meaningful = (int) in.getBits(5) + 1;
+                    previousTrailing = 32 - previousLeading - meaningful;
+                }
+                int meaningful = 32 - previousLeading - previousTrailing;
+                previous ^= (int) in.getBits(meaningful) << previousTrailing;
+            }
+            out[i] = Float.intBitsToFloat(previous);
+        }
+        in.alignBits();
+    }
+
+    // Estimated from the mean, then the best of it and its neighbours
+    private static int riceParameter(long[] values, int count, int escapeWidth) {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        double mean = sum / count;
+        // The log goes negative for means below 1/ln 2, where k = 0 is the right answer anyway
+        int estimate = mean < 1 ? 0 : Math.max(0, Math.min(MAX_RICE_K,
+                (int) Math.round(Math.log(mean * Math.log(2)) / Math.log(2))));
+        int best = estimate;
+        long bestBits = riceBits(values, count, estimate, escapeWidth);
+        for (int k = Math.max(0, estimate - 1); k <= Math.min(MAX_RICE_K, estimate + 1); k++) {
+            long bits = riceBits(values, count, k, escapeWidth);
+            if (bits < bestBits) {
+                best = k;
+                bestBits = bits;
+            }
+        }
+        return best;
+    }
+
+    private static long riceBits(long[] values, int count, int k, int escapeWidth) {
+        checkRiceParameter(k);
+        long bits = 0;
+        for (int i = 0; i < count; i++) {
+            long quotient = values[i] >>> k;
+            bits += Long.compareUnsigned(quotient, RICE_ESCAPE) < 0 ? quotient + 1 + k : RICE_ESCAPE + escapeWidth;
+        }
+        return bits;
+    }
+
+    private static void putRice(long[] values, int count, int k, int escapeWidth, Sink out) {
+        checkRiceParameter(k);
+        out.put(k);
+        out.put(escapeWidth);
+        for (int i = 0; i < count; i++) {
+            long quotient = values[i] >>> k;
+            if (Long.compareUnsigned(quotient, RICE_ESCAPE) < 0) {
+                // quotient ones and a zero
+                out.putBits(-2L, (int) quotient + 1);
+                out.putBits(values[i], k);
+            } else {
+                out.putBits(-1L, RICE_ESCAPE);
+                out.putBits(values[i], escapeWidth);
+            }
+        }
+        out.alignBits();
+    }
+
+    private static void checkRiceParameter(int k) {
+        if (k < 0 || k > MAX_RICE_K) {
+            throw new IllegalArgumentException("Rice parameter " + k);
+        }
+    }
+
+    private static long getRice(Source in, int k, int escapeWidth) {
+        int quotient = in.getUnary(RICE_ESCAPE);
+        if (quotient == RICE_ESCAPE) {
+            return in.getBits(escapeWidth);
+        }
+        return ((long) quotient << k) | in.getBits(k);
+    }
+
+    private static int width(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static int varintSize(long value) {
+        return Math.max(1, (width(value) + 6) / 7);
+    }
+}
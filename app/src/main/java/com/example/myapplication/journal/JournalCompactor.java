@@ -0,0 +1,266 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Moves finished rides out of a {@link RideJournal} directory into {@link RideArchiveWriter}
+ * archives and deletes the segments once the archives are in place.
+ *
+ * <p>Only closed segments are compacted; one the journal is still writing, or one left open by a
+ * crash that the journal hasn't recovered yet, stays for a later run. Every source gets archives
+ * of its own. The journal interleaves sources that are not merged by timestamp, like the phone's
+ * IMU, and a unit's clock mapping may step back a little when it is corrected, so each source's
+ * samples are sorted within a window of {@link #RESET_MICROS}. Only a sample further back than
+ * that is taken for a clock reset, e.g. across a reboot, and starts a new archive.
+ *
+ * <p>An archive is named after its first timestamp, the segment and record it starts at and its
+ * source, so running again after a crash between renaming the archive and deleting the segments
+ * rewrites the same archive instead of adding a copy, while segment numbers starting over once
+ * the journal is empty can't collide with an older archive. The segments are only deleted once
+ * every archive has been read back in full; if one can't be, they stay and the run fails.
+ */
+public final class JournalCompactor {
+    /** What one run did. */
+    public static final class Result {
+        private final List<File> archives;
+        private final long samples;
+        private final long journalBytes;
+        private final long archiveBytes;
+
+        Result(List<File> archives, long samples, long journalBytes, long archiveBytes) {
+            this.archives = archives;
+            this.samples = samples;
+            this.journalBytes = journalBytes;
+            this.archiveBytes = archiveBytes;
+        }
+
+        public List<File> getArchives() {
+            return archives;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        // Size of the compacted segments, all records counted at full size
+        public long getJournalBytes() {
+            return journalBytes;
+        }
+
+        public long getArchiveBytes() {
+            return archiveBytes;
+        }
+
+        // Journal bytes per archive byte, 1 when nothing was compacted
+        public double getRatio() {
+            return archiveBytes == 0 ? 1 : (double) journalBytes / archiveBytes;
+        }
+    }
+
+    // A source going back in time further than this has had its clock reset
+    static final long RESET_MICROS = 1_000_000;
+    // Samples held per source for sorting, in case a source is faster than expected
+    static final int WINDOW_CAPACITY = 4096;
+
+    private static final String ARCHIVE_PREFIX = "ride-";
+    private static final String ARCHIVE_SUFFIX = ".rca";
+
+    // The archive being written for one source and its samples still waiting to be sorted in
+    private static final class SourceArchive {
+        final int sourceId;
+        final TelemetrySample[] window = new TelemetrySample[WINDOW_CAPACITY];
+        int head;
+        int size;
+        long newestMicros = Long.MIN_VALUE;
+        long segmentIndex; // where the archive's first sample was read
+        int record;
+        RideArchiveWriter writer;
+
+        SourceArchive(int sourceId) {
+            this.sourceId = sourceId;
+            for (int i = 0; i < window.length; i++) {
+                window[i] = new TelemetrySample();
+            }
+        }
+
+        TelemetrySample slot(int index) {
+            return window[(head + index) % window.length];
+        }
+    }
+
+    private JournalCompactor() {
+    }
+
+    public static Result compact(File journalDirectory, File archiveDirectory, RideArchiveWriter.Config config) throws IOException {
+        List<JournalReader.SegmentInfo> closed = new ArrayList<>();
+        long journalBytes = 0;
+        for (JournalReader.SegmentInfo segment : JournalReader.listSegments(journalDirectory)) {
+            if (segment.isClosed()) {
+                closed.add(segment);
+                journalBytes += JournalFormat.HEADER_SIZE + (long) segment.getRecordCount() * JournalFormat.RECORD_SIZE;
+            }
+        }
+        if (closed.isEmpty()) {
+            return new Result(Collections.emptyList(), 0, 0, 0);
+        }
+        if (!archiveDirectory.isDirectory() && !archiveDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + archiveDirectory);
+        }
+
+        List<File> archives = new ArrayList<>();
+        List<SourceArchive> sources = new ArrayList<>();
+        long samples = 0;
+        long archiveBytes = 0;
+        TelemetrySample sample = new TelemetrySample();
+        try {
+            for (JournalReader.SegmentInfo segment : closed) {
+                try (JournalReader reader = new JournalReader(Collections.singletonList(segment))) {
+                    for (int record = 0; reader.next(sample); record++) {
+                        SourceArchive source = sourceFor(sources, sample.getSourceId());
+                        if (source.size == WINDOW_CAPACITY) {
+                            release(source, archiveDirectory, config, archives);
+                        }
+                        long micros = sample.getTimestampMicros();
+                        long last = source.writer == null ? Long.MIN_VALUE : source.writer.getLastTimestampMicros();
+                        if (source.newestMicros != Long.MIN_VALUE
+                                && (source.newestMicros - micros > RESET_MICROS || micros < last)) {
+                            archiveBytes += finish(source, archiveDirectory, config, archives);
+                        }
+                        if (source.size == 0 && source.writer == null) {
+                            source.segmentIndex = segment.getIndex();
+                            source.record = record;
+                        }
+                        source.newestMicros = Math.max(source.newestMicros, micros);
+                        enqueue(source, sample);
+                        while (source.size > 0 && source.slot(0).getTimestampMicros() < source.newestMicros - RESET_MICROS) {
+                            release(source, archiveDirectory, config, archives);
+                        }
+                        samples++;
+                    }
+                }
+            }
+            for (SourceArchive source : sources) {
+                archiveBytes += finish(source, archiveDirectory, config, archives);
+            }
+        } finally {
+            for (SourceArchive source : sources) {
+                if (source.writer != null) {
+                    source.writer.close();
+                }
+            }
+        }
+        // Deleting the journal can't be undone, so every archive has to read back in full first
+        long verified = 0;
+        for (File archive : archives) {
+            verified += verify(archive);
+        }
+        if (verified != samples) {
+            throw new IOException("Archives hold " + verified + " samples, the journal " + samples);
+        }
+        for (JournalReader.SegmentInfo segment : closed) {
+            if (!segment.getFile().delete()) {
+                throw new IOException("Cannot delete " + segment.getFile());
+            }
+        }
+        return new Result(archives, samples, journalBytes, archiveBytes);
+    }
+
+    // Archives in the directory, by first timestamp
+    public static List<File> listArchives(File archiveDirectory) {
+        List<File> result = new ArrayList<>();
+        File[] files = archiveDirectory.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(ARCHIVE_PREFIX) && name.endsWith(ARCHIVE_SUFFIX)) {
+                result.add(file);
+            }
+        }
+        // Names are zero-padded
+        Collections.sort(result, (a, b) -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    static File archiveFile(File directory, long firstTimestampMicros, long segmentIndex, int record, int sourceId) {
+        return new File(directory, String.format(Locale.US, "%s%019d-%010d-%07d-%d%s",
+                ARCHIVE_PREFIX, firstTimestampMicros, segmentIndex, record, sourceId, ARCHIVE_SUFFIX));
+    }
+
+    // Decodes every block of the archive, returns its sample count
+    static long verify(File archive) throws IOException {
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(archive)) {
+            long count = 0;
+            while (reader.next(sample)) {
+                count++;
+            }
+            if (count != reader.getSampleCount()) {
+                throw new IOException(archive + " holds " + count + " samples, its footer says " + reader.getSampleCount());
+            }
+            return count;
+        }
+    }
+
+    private static SourceArchive sourceFor(List<SourceArchive> sources, int sourceId) {
+        for (SourceArchive source : sources) {
+            if (source.sourceId == sourceId) {
+                return source;
+            }
+        }
+        SourceArchive source = new SourceArchive(sourceId);
+        sources.add(source);
+        return source;
+    }
+
+    // Insertion from the back; a source's samples are nearly always in order already
+    private static void enqueue(SourceArchive source, TelemetrySample sample) {
+        int index = source.size;
+        long micros = sample.getTimestampMicros();
+        while (index > 0 && source.slot(index - 1).getTimestampMicros() > micros) {
+            source.slot(index).copyFrom(source.slot(index - 1));
+            index--;
+        }
+        source.slot(index).copyFrom(sample);
+        source.size++;
+    }
+
+    // Appends the oldest held sample to the source's archive, starting the archive if needed
+    private static void release(SourceArchive source, File directory, RideArchiveWriter.Config config,
+                                List<File> archives) throws IOException {
+        TelemetrySample oldest = source.slot(0);
+        if (source.writer == null) {
+            File archive = archiveFile(directory, oldest.getTimestampMicros(), source.segmentIndex, source.record,
+                    source.sourceId);
+            source.writer = new RideArchiveWriter(archive, config);
+            archives.add(archive);
+        }
+        source.writer.append(oldest);
+        source.head = (source.head + 1) % source.window.length;
+        source.size--;
+    }
+
+    // Writes out what the source still holds and finishes its archive, 0 bytes if it had none
+    private static long finish(SourceArchive source, File directory, RideArchiveWriter.Config config,
+                               List<File> archives) throws IOException {
+        while (source.size > 0) {
+            release(source, directory, config, archives);
+        }
+        source.newestMicros = Long.MIN_VALUE;
+        RideArchiveWriter writer = source.writer;
+        if (writer == null) {
+            return 0;
+        }
+        source.writer = null;
+        writer.finish();
+        return writer.getBytesWritten();
+    }
+}
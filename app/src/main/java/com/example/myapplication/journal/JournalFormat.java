@@ -0,0 +1,158 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout of journal segments. All values are little-endian.
+ *
+ * <pre>
+ * header (64 bytes)
+ *   0  magic "RJNL"     int
+ *   4  version          u16
+ *   6  record size      u16
+ *   8  segment index    long
+ *   16 min timestamp    long  micros, Long.MAX_VALUE while empty
+ *   24 max timestamp    long  micros, Long.MIN_VALUE while empty
+ *   32 record count     int   committed records, a hint until the segment is closed
+ *   36 flags            int
+ *   40 header CRC-32    int   over bytes 0..39
+ * record (44 bytes)
+ *   0  timestamp        long  micros
+ *   8  sequence         int
+ *   12 source id        int
+ *   16 accel x, y, z    float g
+ *   28 gyro x, y, z     float deg/s
+ *   40 record CRC-32    int   over bytes 0..39
+ * </pre>
+ *
+ * <p>Version 1 had no source id and 40-byte records. Its segments are left alone by the journal
+ * and skipped by the reader.
+ */
+final class JournalFormat {
+    static final int MAGIC = 0x4C4E4A52; // "RJNL" read as little-endian
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 44;
+    static final int FLAG_CLOSED = 1; // written on clean close or after recovery
+
+    private static final int HEADER_CRC_OFFSET = 40;
+    private static final int RECORD_CRC_OFFSET = 40;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".rjl";
+
+    private JournalFormat() {
+    }
+
+    static File segmentFile(File directory, long index) {
+        return new File(directory, String.format(Locale.US, "%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    // Segment index from a file name, -1 if the file isn't a segment
+    static long segmentIndex(String fileName) {
+        if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static void writeHeader(ByteBuffer buf, long index, long minTimestamp, long maxTimestamp, int count, int flags, CRC32 crc) {
+        buf.putInt(0, MAGIC);
+        buf.putShort(4, (short) VERSION);
+        buf.putShort(6, (short) RECORD_SIZE);
+        buf.putLong(8, index);
+        buf.putLong(16, minTimestamp);
+        buf.putLong(24, maxTimestamp);
+        buf.putInt(32, count);
+        buf.putInt(36, flags);
+        buf.putInt(HEADER_CRC_OFFSET, checksum(buf, 0, HEADER_CRC_OFFSET, crc));
+    }
+
+    static boolean isValidHeader(ByteBuffer buf, CRC32 crc) {
+        return buf.limit() >= HEADER_SIZE
+                && buf.getInt(0) == MAGIC
+                && (buf.getShort(4) & 0xFFFF) == VERSION
+                && (buf.getShort(6) & 0xFFFF) == RECORD_SIZE
+                && buf.getInt(HEADER_CRC_OFFSET) == checksum(buf, 0, HEADER_CRC_OFFSET, crc);
+    }
+
+    // A segment written by another version of the app, which must not be recovered as torn
+    static boolean isOtherVersion(ByteBuffer buf) {
+        return buf.limit() >= HEADER_SIZE
+                && buf.getInt(0) == MAGIC
+                && (buf.getShort(4) & 0xFFFF) != VERSION;
+    }
+
+    static long headerIndex(ByteBuffer buf) {
+        return buf.getLong(8);
+    }
+
+    static long headerMinTimestamp(ByteBuffer buf) {
+        return buf.getLong(16);
+    }
+
+    static long headerMaxTimestamp(ByteBuffer buf) {
+        return buf.getLong(24);
+    }
+
+    static int headerCount(ByteBuffer buf) {
+        return buf.getInt(32);
+    }
+
+    static int headerFlags(ByteBuffer buf) {
+        return buf.getInt(36);
+    }
+
+    static int recordOffset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    static void writeRecord(ByteBuffer buf, int offset, TelemetrySample sample, CRC32 crc) {
+        buf.putLong(offset, sample.getTimestampMicros());
+        buf.putInt(offset + 8, sample.getSequence());
+        buf.putInt(offset + 12, sample.getSourceId());
+        buf.putFloat(offset + 16, sample.getAccelX());
+        buf.putFloat(offset + 20, sample.getAccelY());
+        buf.putFloat(offset + 24, sample.getAccelZ());
+        buf.putFloat(offset + 28, sample.getGyroX());
+        buf.putFloat(offset + 32, sample.getGyroY());
+        buf.putFloat(offset + 36, sample.getGyroZ());
+        buf.putInt(offset + RECORD_CRC_OFFSET, checksum(buf, offset, RECORD_CRC_OFFSET, crc));
+    }
+
+    // A record is valid only if its CRC matches; zeroed or half-written slots never do
+    static boolean isValidRecord(ByteBuffer buf, int offset, CRC32 crc) {
+        return offset + RECORD_SIZE <= buf.limit()
+                && buf.getInt(offset + RECORD_CRC_OFFSET) == checksum(buf, offset, RECORD_CRC_OFFSET, crc);
+    }
+
+    static long recordTimestamp(ByteBuffer buf, int offset) {
+        return buf.getLong(offset);
+    }
+
+    static void readRecord(ByteBuffer buf, int offset, TelemetrySample out) {
+        out.set(buf.getInt(offset + 8), buf.getLong(offset),
+                buf.getFloat(offset + 16), buf.getFloat(offset + 20), buf.getFloat(offset + 24),
+                buf.getFloat(offset + 28), buf.getFloat(offset + 32), buf.getFloat(offset + 36));
+        out.setSourceId(buf.getInt(offset + 12));
+    }
+
+    // CRC-32 of length bytes at offset, without copying or allocating
+    private static int checksum(ByteBuffer buf, int offset, int length, CRC32 crc) {
+        int position = buf.position();
+        int limit = buf.limit();
+        buf.limit(offset + length).position(offset);
+        crc.reset();
+        crc.update(buf);
+        buf.limit(limit).position(position);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a {@link RideJournal} directory back, segment by segment in the order they were written.
+ * Reading stops at the first record that fails its CRC in each segment, so a journal that is
+ * still being written or was never recovered reads up to its last intact record.
+ */
+public final class JournalReader implements Closeable {
+    /** What a segment header says about its contents. */
+    public static final class SegmentInfo {
+        private final File file;
+        private final long index;
+        private final long minTimestampMicros;
+        private final long maxTimestampMicros;
+        private final int recordCount;
+        private final boolean closed;
+
+        SegmentInfo(File file, long index, long minTimestampMicros, long maxTimestampMicros, int recordCount, boolean closed) {
+            this.file = file;
+            this.index = index;
+            this.minTimestampMicros = minTimestampMicros;
+            this.maxTimestampMicros = maxTimestampMicros;
+            this.recordCount = recordCount;
+            this.closed = closed;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public long getMinTimestampMicros() {
+            return minTimestampMicros;
+        }
+
+        public long getMaxTimestampMicros() {
+            return maxTimestampMicros;
+        }
+
+        // Exact once closed, the last committed count otherwise
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        // Whether the segment may hold samples in [fromMicros, toMicros]
+        public boolean overlaps(long fromMicros, long toMicros) {
+            return recordCount > 0 && minTimestampMicros <= toMicros && maxTimestampMicros >= fromMicros;
+        }
+    }
+
+    private final List<SegmentInfo> segments;
+    private final CRC32 crc = new CRC32();
+    private int segmentPosition = -1;
+    private MappedByteBuffer current;
+    private int offset;
+
+    public JournalReader(File directory) throws IOException {
+        this.segments = listSegments(directory);
+    }
+
+    // Reads just these segments, in this order
+    JournalReader(List<SegmentInfo> segments) {
+        this.segments = segments;
+    }
+
+    // Segments with a valid header, oldest first
+    public static List<SegmentInfo> listSegments(File directory) throws IOException {
+        List<SegmentInfo> result = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return result;
+        }
+        CRC32 crc = new CRC32();
+        for (File file : files) {
+            long index = JournalFormat.segmentIndex(file.getName());
+            if (index < 0 || file.length() < JournalFormat.HEADER_SIZE) {
+                continue;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, JournalFormat.HEADER_SIZE);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                if (!JournalFormat.isValidHeader(header, crc)) {
+                    continue;
+                }
+                result.add(new SegmentInfo(file, JournalFormat.headerIndex(header),
+                        JournalFormat.headerMinTimestamp(header), JournalFormat.headerMaxTimestamp(header),
+                        JournalFormat.headerCount(header),
+                        (JournalFormat.headerFlags(header) & JournalFormat.FLAG_CLOSED) != 0));
+            }
+        }
+        Collections.sort(result, (a, b) -> Long.compare(a.index, b.index));
+        return result;
+    }
+
+    public List<SegmentInfo> getSegments() {
+        return segments;
+    }
+
+    // Reads the next record into out, false once every segment is exhausted
+    public boolean next(TelemetrySample out) throws IOException {
+        while (true) {
+            if (current != null && JournalFormat.isValidRecord(current, offset, crc)) {
+                JournalFormat.readRecord(current, offset, out);
+                offset += JournalFormat.RECORD_SIZE;
+                return true;
+            }
+            if (segmentPosition + 1 >= segments.size()) {
+                current = null;
+                return false;
+            }
+            segmentPosition++;
+            current = map(segments.get(segmentPosition).getFile());
+            offset = JournalFormat.recordOffset(0);
+        }
+    }
+
+    @Override
+    public void close() {
+        current = null;
+        segmentPosition = segments.size();
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads an archive written by {@link RideArchiveWriter}. The file is mapped and only the block
+ * index is loaded up front; {@link #seek(long)} binary-searches the index, so jumping to any
+ * point of a long ride decodes one block. Each block's CRC is checked when it is decoded.
+ *
+ * <p>Not thread-safe; open one reader per thread.
+ */
+public final class RideArchiveReader implements Closeable {
+    private final File file;
+    private MappedByteBuffer buffer;
+    private final long sampleCount;
+    private final int blockCount;
+    private final long[] blockFirst;
+    private final long[] blockLast;
+    private final int[] blockOffsets;
+    private final int[] blockCounts;
+    private final int[] blockCrcs;
+    private final CRC32 crc = new CRC32();
+    private final ColumnCodec.Source source = new ColumnCodec.Source();
+    private final long[] timestamps;
+    private final long[] sequences;
+    private final long[] sources;
+    private final float[][] columns;
+    private final long[] scratch;
+    private int block = -1; // decoded into the arrays above
+    private int nextBlock;
+    private int position;
+    private int count;
+
+    private RideArchiveReader(File file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        int size = buffer.limit();
+        if (size < RideArchiveWriter.HEADER_SIZE + RideArchiveWriter.FOOTER_SIZE
+                || buffer.getInt(0) != RideArchiveWriter.MAGIC
+                || buffer.getInt(size - 4) != RideArchiveWriter.MAGIC) {
+            throw new IOException(file + " is not a ride archive");
+        }
+        if (buffer.getInt(4) != RideArchiveWriter.VERSION) {
+            throw new IOException(file + " has unsupported version " + buffer.getInt(4));
+        }
+        int footer = size - RideArchiveWriter.FOOTER_SIZE;
+        long indexOffset = buffer.getLong(footer);
+        sampleCount = buffer.getLong(footer + 8);
+        blockCount = buffer.getInt(footer + 16);
+        if (blockCount < 0 || indexOffset < RideArchiveWriter.HEADER_SIZE
+                || indexOffset + (long) blockCount * RideArchiveWriter.INDEX_ENTRY_SIZE != footer) {
+            throw new IOException(file + " has a corrupt footer");
+        }
+        int index = (int) indexOffset;
+        if (checksum(index, footer) != buffer.getInt(footer + 20)) {
+            throw new IOException(file + " has a corrupt index");
+        }
+
+        blockFirst = new long[blockCount];
+        blockLast = new long[blockCount];
+        blockOffsets = new int[blockCount];
+        blockCounts = new int[blockCount];
+        blockCrcs = new int[blockCount];
+        int largest = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int entry = index + i * RideArchiveWriter.INDEX_ENTRY_SIZE;
+            blockFirst[i] = buffer.getLong(entry);
+            blockLast[i] = buffer.getLong(entry + 8);
+            blockOffsets[i] = (int) buffer.getLong(entry + 16);
+            blockCounts[i] = buffer.getInt(entry + 24);
+            blockCrcs[i] = buffer.getInt(entry + 28);
+            largest = Math.max(largest, blockCounts[i]);
+        }
+        timestamps = new long[largest];
+        sequences = new long[largest];
+        sources = new long[largest];
+        columns = new float[RideArchiveWriter.SCALES.length][largest];
+        scratch = new long[largest];
+    }
+
+    public static RideArchiveReader open(File file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new RideArchiveReader(file, buffer);
+        }
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    // Long.MAX_VALUE while empty
+    public long getMinTimestampMicros() {
+        return blockCount == 0 ? Long.MAX_VALUE : blockFirst[0];
+    }
+
+    // Long.MIN_VALUE while empty
+    public long getMaxTimestampMicros() {
+        return blockCount == 0 ? Long.MIN_VALUE : blockLast[blockCount - 1];
+    }
+
+    /** Positions the reader so that {@link #next} returns the first sample at or after fromMicros. */
+    public void seek(long fromMicros) throws IOException {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockLast[mid] < fromMicros) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == blockCount) {
+            nextBlock = blockCount;
+            position = count;
+            return;
+        }
+        decode(low);
+        // And within the block
+        int first = 0;
+        int last = count;
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (timestamps[mid] < fromMicros) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        position = first;
+    }
+
+    // Reads the next sample into out, false at the end of the archive
+    public boolean next(TelemetrySample out) throws IOException {
+        while (position == count) {
+            if (nextBlock >= blockCount) {
+                return false;
+            }
+            decode(nextBlock);
+        }
+        int i = position++;
+        out.set((int) sequences[i], timestamps[i],
+                columns[0][i], columns[1][i], columns[2][i],
+                columns[3][i], columns[4][i], columns[5][i]);
+        out.setSourceId((int) sources[i]);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        nextBlock = blockCount;
+        position = count;
+    }
+
+    private void decode(int b) throws IOException {
+        nextBlock = b + 1;
+        position = 0;
+        if (block == b) {
+            return;
+        }
+        if (buffer == null) {
+            throw new IOException(file + " is closed");
+        }
+        int start = blockOffsets[b];
+        int end = b + 1 < blockCount ? blockOffsets[b + 1] : indexStart();
+        if (end < start) {
+            throw new IOException(file + " has a corrupt block " + b);
+        }
+        source.reset(buffer, start, end - start);
+        crc.reset();
+        crc.update(source.bytes, 0, source.size);
+        if ((int) crc.getValue() != blockCrcs[b]) {
+            block = -1;
+            count = 0;
+            throw new IOException(file + " has a corrupt block " + b);
+        }
+        try {
+            int n = (int) source.getVarint();
+            if (n != blockCounts[b]) {
+                throw new IOException(file + " block " + b + " holds " + n + " samples, index says " + blockCounts[b]);
+            }
+            decodeDeltas(timestamps, n);
+            decodeDeltas(sequences, n);
+            ColumnCodec.decodeLongs(source, sources, n);
+            for (int c = 0; c < columns.length; c++) {
+                ColumnCodec.decodeFloats(source, columns[c], n, RideArchiveWriter.SCALES[c], scratch);
+            }
+            block = b;
+            count = n;
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            block = -1;
+            count = 0;
+            throw new IOException(file + " has a corrupt block " + b, e);
+        }
+    }
+
+    private void decodeDeltas(long[] values, int n) {
+        values[0] = ColumnCodec.unzigzag(source.getVarint());
+        ColumnCodec.decodeLongs(source, scratch, n - 1);
+        for (int i = 1; i < n; i++) {
+            values[i] = values[i - 1] + scratch[i - 1];
+        }
+    }
+
+    private int checksum(int start, int end) {
+        ByteBuffer range = buffer.duplicate();
+        range.limit(end);
+        range.position(start);
+        crc.reset();
+        crc.update(range);
+        return (int) crc.getValue();
+    }
+
+    private int indexStart() {
+        return buffer.limit() - RideArchiveWriter.FOOTER_SIZE - blockCount * RideArchiveWriter.INDEX_ENTRY_SIZE;
+    }
+}
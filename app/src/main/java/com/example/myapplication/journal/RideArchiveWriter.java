@@ -0,0 +1,249 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a finished ride as a compressed, column-oriented archive that {@link RideArchiveReader}
+ * can seek into by time. All fixed-width values are little-endian.
+ *
+ * <pre>
+ * header (16 bytes)
+ *   0  magic "RARC"      int
+ *   4  version           int
+ *   8  reserved          long
+ * blocks, each up to {@link Config#blockSamples} samples
+ *   sample count         varint
+ *   first timestamp      zigzag varint, micros
+ *   timestamp deltas     long column, so delta-of-delta or offsets from the smallest delta
+ *   first sequence       zigzag varint
+ *   sequence deltas      long column
+ *   source ids           long column, a few bytes when the block holds one source
+ *   accel x, y, z        float columns, scaled by TelemetryFrame.ACCEL_SCALE
+ *   gyro x, y, z         float columns, scaled by TelemetryFrame.GYRO_SCALE
+ * index, one entry per block (32 bytes)
+ *   0  first timestamp   long
+ *   8  last timestamp    long
+ *   16 block offset      long
+ *   24 sample count      int
+ *   28 block CRC-32      int
+ * footer (32 bytes)
+ *   0  index offset      long
+ *   8  sample count      long
+ *   16 block count       int
+ *   20 index CRC-32      int
+ *   24 reserved          int
+ *   28 magic "RARC"      int
+ * </pre>
+ *
+ * The column encodings are in {@link ColumnCodec}. Samples are buffered one block at a time and
+ * the index is kept in memory, so memory use doesn't grow with the ride beyond 32 bytes a block.
+ * The archive is written to a temporary file and only renamed into place by {@link #finish()},
+ * so a reader never sees a partial archive. Timestamps must not go backwards.
+ *
+ * <p>Version 1 had no source id column.
+ *
+ * <p>Not thread-safe.
+ */
+public final class RideArchiveWriter implements Closeable {
+    public static final class Config {
+        public int blockSamples = 1024; // about 10 s at 100 Hz
+    }
+
+    static final int MAGIC = 0x43524152; // "RARC" read as little-endian
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 32;
+    static final int FOOTER_SIZE = 32;
+    static final float[] SCALES = {
+            TelemetryFrame.ACCEL_SCALE, TelemetryFrame.ACCEL_SCALE, TelemetryFrame.ACCEL_SCALE,
+            TelemetryFrame.GYRO_SCALE, TelemetryFrame.GYRO_SCALE, TelemetryFrame.GYRO_SCALE,
+    };
+
+    private final File file;
+    private final File temp;
+    private final int blockSamples;
+    private final FileOutputStream stream;
+    private final BufferedOutputStream out;
+    private final CRC32 crc = new CRC32();
+    private final ColumnCodec.Sink sink = new ColumnCodec.Sink();
+    private final long[] timestamps;
+    private final long[] sequences;
+    private final long[] sources;
+    private final float[][] columns;
+    private final long[] scratch;
+    private int buffered;
+    private long offset;
+    private long sampleCount;
+    private long[] blockFirst = new long[64];
+    private long[] blockLast = new long[64];
+    private long[] blockOffsets = new long[64];
+    private int[] blockCounts = new int[64];
+    private int[] blockCrcs = new int[64];
+    private int blockCount;
+    private boolean finished;
+
+    public RideArchiveWriter(File file, Config config) throws IOException {
+        if (config.blockSamples < 1) {
+            throw new IllegalArgumentException("blockSamples must be positive");
+        }
+        this.file = file;
+        this.temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        this.blockSamples = config.blockSamples;
+        timestamps = new long[blockSamples];
+        sequences = new long[blockSamples];
+        sources = new long[blockSamples];
+        columns = new float[SCALES.length][blockSamples];
+        scratch = new long[blockSamples];
+        stream = new FileOutputStream(temp);
+        out = new BufferedOutputStream(stream, 64 * 1024);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        write(header.array(), HEADER_SIZE);
+    }
+
+    public void append(TelemetrySample sample) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Archive already finished");
+        }
+        long timestamp = sample.getTimestampMicros();
+        long previous = getLastTimestampMicros();
+        if (timestamp < previous) {
+            throw new IllegalArgumentException("Timestamp " + timestamp + " before " + previous);
+        }
+        timestamps[buffered] = timestamp;
+        sequences[buffered] = sample.getSequence();
+        sources[buffered] = sample.getSourceId();
+        columns[0][buffered] = sample.getAccelX();
+        columns[1][buffered] = sample.getAccelY();
+        columns[2][buffered] = sample.getAccelZ();
+        columns[3][buffered] = sample.getGyroX();
+        columns[4][buffered] = sample.getGyroY();
+        columns[5][buffered] = sample.getGyroZ();
+        sampleCount++;
+        if (++buffered == blockSamples) {
+            writeBlock();
+        }
+    }
+
+    // Last timestamp appended, Long.MIN_VALUE while empty
+    public long getLastTimestampMicros() {
+        return buffered > 0 ? timestamps[buffered - 1] : blockCount > 0 ? blockLast[blockCount - 1] : Long.MIN_VALUE;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    // Bytes written so far; the archive size once finished
+    public long getBytesWritten() {
+        return offset;
+    }
+
+    /** Writes the last block, the index and the footer, syncs and renames the archive into place. */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (buffered > 0) {
+            writeBlock();
+        }
+        long indexOffset = offset;
+        ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < blockCount; i++) {
+            index.putLong(blockFirst[i]);
+            index.putLong(blockLast[i]);
+            index.putLong(blockOffsets[i]);
+            index.putInt(blockCounts[i]);
+            index.putInt(blockCrcs[i]);
+        }
+        write(index.array(), index.capacity());
+        crc.reset();
+        crc.update(index.array(), 0, index.capacity());
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        footer.putLong(0, indexOffset);
+        footer.putLong(8, sampleCount);
+        footer.putInt(16, blockCount);
+        footer.putInt(20, (int) crc.getValue());
+        footer.putInt(28, MAGIC);
+        write(footer.array(), FOOTER_SIZE);
+        out.flush();
+        stream.getFD().sync();
+        out.close();
+        finished = true;
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    // Abandons the archive unless it was finished
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            out.close();
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        int count = buffered;
+        sink.clear();
+        sink.putVarint(count);
+        encodeDeltas(timestamps, count);
+        encodeDeltas(sequences, count);
+        ColumnCodec.encodeLongs(sources, count, sink);
+        for (int c = 0; c < columns.length; c++) {
+            ColumnCodec.encodeFloats(columns[c], count, SCALES[c], scratch, sink);
+        }
+        crc.reset();
+        crc.update(sink.bytes, 0, sink.size);
+
+        if (blockCount == blockFirst.length) {
+            int capacity = blockCount * 2;
+            blockFirst = Arrays.copyOf(blockFirst, capacity);
+            blockLast = Arrays.copyOf(blockLast, capacity);
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockCounts = Arrays.copyOf(blockCounts, capacity);
+            blockCrcs = Arrays.copyOf(blockCrcs, capacity);
+        }
+        blockFirst[blockCount] = timestamps[0];
+        blockLast[blockCount] = timestamps[count - 1];
+        blockOffsets[blockCount] = offset;
+        blockCounts[blockCount] = count;
+        blockCrcs[blockCount] = (int) crc.getValue();
+        blockCount++;
+        write(sink.bytes, sink.size);
+        buffered = 0;
+    }
+
+    // First value, then the differences as a column of their own
+    private void encodeDeltas(long[] values, int count) {
+        sink.putVarint(ColumnCodec.zigzag(values[0]));
+        for (int i = 1; i < count; i++) {
+            scratch[i - 1] = values[i] - values[i - 1];
+        }
+        ColumnCodec.encodeLongs(scratch, count - 1, sink);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        offset += length;
+    }
+}
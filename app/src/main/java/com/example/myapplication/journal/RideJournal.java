@@ -0,0 +1,264 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.Clock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of decoded samples, written to fixed-size memory-mapped segment files.
+ *
+ * <p>Appending is a handful of stores into the mapped segment and allocates nothing; records
+ * reach the page cache immediately and survive the app being killed. Every
+ * {@link Config#groupCommitRecords} records or {@link Config#groupCommitMillis}, whichever comes
+ * first, the segment header is updated and the mapping forced to storage, so a power loss costs at
+ * most one commit group. Segments rotate when full or after {@link Config#maxSegmentMillis}.
+ *
+ * <p>On the first append, segments that were never closed are recovered: records are validated
+ * by CRC up to the first bad one, the header is rewritten and the torn tail truncated. New data
+ * always goes into a new segment.
+ *
+ * <p>Not thread-safe. Feed it from one thread, normally a {@link
+ * com.example.myapplication.telemetry.SampleDispatcher} so file I/O never runs on the GATT thread.
+ */
+public final class RideJournal implements SampleListener, Closeable {
+    public static final class Config {
+        public int segmentBytes = 4 * 1024 * 1024; // about 17 minutes at 100 Hz
+        public long maxSegmentMillis = 10 * 60 * 1000;
+        public int groupCommitRecords = 512;
+        public long groupCommitMillis = 1_000;
+    }
+
+    private final File directory;
+    private final Config config;
+    private final Clock clock;
+    private final int capacity;
+    private final CRC32 crc = new CRC32();
+
+    private boolean opened;
+    private boolean closed;
+    private long nextIndex;
+    private RandomAccessFile file;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private long segmentOpenedNanos;
+    private int count;
+    private int committedCount;
+    private long lastCommitNanos;
+    private long minTimestamp;
+    private long maxTimestamp;
+
+    private long appended;
+    private long commits;
+    private long segmentsCreated;
+    private long recoveredSegments;
+    private long tornTails;
+    private long writeErrors;
+    private IOException lastError;
+
+    public RideJournal(File directory, Config config, Clock clock) {
+        if (config.segmentBytes < JournalFormat.HEADER_SIZE + JournalFormat.RECORD_SIZE) {
+            throw new IllegalArgumentException("segmentBytes too small: " + config.segmentBytes);
+        }
+        this.directory = directory;
+        this.config = config;
+        this.clock = clock;
+        this.capacity = (config.segmentBytes - JournalFormat.HEADER_SIZE) / JournalFormat.RECORD_SIZE;
+    }
+
+    // Consumer side of a SampleDispatcher; failures are counted instead of thrown
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        try {
+            append(sample);
+        } catch (IOException e) {
+            writeErrors++;
+            lastError = e;
+        }
+    }
+
+    public void append(TelemetrySample sample) throws IOException {
+        if (closed) {
+            throw new IOException("Journal closed");
+        }
+        if (!opened) {
+            open();
+        }
+        long now = clock.nanoTime();
+        if (segment == null || count == capacity
+                || now - segmentOpenedNanos >= config.maxSegmentMillis * 1_000_000) {
+            rotate(now);
+        }
+        JournalFormat.writeRecord(segment, JournalFormat.recordOffset(count), sample, crc);
+        count++;
+        appended++;
+        long timestamp = sample.getTimestampMicros();
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        if (count - committedCount >= config.groupCommitRecords
+                || now - lastCommitNanos >= config.groupCommitMillis * 1_000_000) {
+            commit(now);
+        }
+    }
+
+    // Forces everything appended so far to storage
+    public void flush() {
+        if (segment != null && committedCount != count) {
+            commit(clock.nanoTime());
+        }
+    }
+
+    // Commits, marks the current segment closed and trims it to the records it holds
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeSegment();
+    }
+
+    public long getAppended() {
+        return appended;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getSegmentsCreated() {
+        return segmentsCreated;
+    }
+
+    // Segments found unclosed on open, e.g. after the app was killed mid-ride
+    public long getRecoveredSegments() {
+        return recoveredSegments;
+    }
+
+    // Recovered segments whose last record was only partly written
+    public long getTornTails() {
+        return tornTails;
+    }
+
+    public long getWriteErrors() {
+        return writeErrors;
+    }
+
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File[] files = directory.listFiles();
+        long lastIndex = -1;
+        if (files != null) {
+            for (File candidate : files) {
+                long index = JournalFormat.segmentIndex(candidate.getName());
+                if (index >= 0) {
+                    lastIndex = Math.max(lastIndex, index);
+                    recover(candidate);
+                }
+            }
+        }
+        nextIndex = lastIndex + 1;
+        opened = true;
+    }
+
+    // Validates an unclosed segment record by record, then rewrites its header and truncates it
+    private void recover(File segmentFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < JournalFormat.HEADER_SIZE) {
+                // Killed before the header was written
+                channel.truncate(0);
+                recoveredSegments++;
+                return;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            boolean validHeader = JournalFormat.isValidHeader(buf, crc);
+            if (validHeader && (JournalFormat.headerFlags(buf) & JournalFormat.FLAG_CLOSED) != 0
+                    || JournalFormat.isOtherVersion(buf)) {
+                return;
+            }
+            long index = JournalFormat.segmentIndex(segmentFile.getName());
+            int records = 0;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            int offset = JournalFormat.recordOffset(0);
+            while (JournalFormat.isValidRecord(buf, offset, crc)) {
+                long timestamp = JournalFormat.recordTimestamp(buf, offset);
+                min = Math.min(min, timestamp);
+                max = Math.max(max, timestamp);
+                records++;
+                offset += JournalFormat.RECORD_SIZE;
+            }
+            if (offset + JournalFormat.RECORD_SIZE <= size && !isZero(buf, offset, JournalFormat.RECORD_SIZE)) {
+                tornTails++;
+            }
+            JournalFormat.writeHeader(buf, index, min, max, records, JournalFormat.FLAG_CLOSED, crc);
+            buf.force();
+            channel.truncate(offset);
+            recoveredSegments++;
+        }
+    }
+
+    private void rotate(long now) throws IOException {
+        closeSegment();
+        segmentIndex = nextIndex++;
+        file = new RandomAccessFile(JournalFormat.segmentFile(directory, segmentIndex), "rw");
+        file.setLength(config.segmentBytes);
+        segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, config.segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segmentOpenedNanos = now;
+        count = 0;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+        segmentsCreated++;
+        commit(now);
+    }
+
+    private void commit(long now) {
+        JournalFormat.writeHeader(segment, segmentIndex, minTimestamp, maxTimestamp, count, 0, crc);
+        segment.force();
+        committedCount = count;
+        lastCommitNanos = now;
+        commits++;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        JournalFormat.writeHeader(segment, segmentIndex, minTimestamp, maxTimestamp, count, JournalFormat.FLAG_CLOSED, crc);
+        segment.force();
+        segment = null;
+        try {
+            file.getChannel().truncate(JournalFormat.recordOffset(count));
+        } finally {
+            file.close();
+            file = null;
+        }
+    }
+
+    private static boolean isZero(MappedByteBuffer buf, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buf.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.myapplication.metrics;
+
+/**
+ * Current value of something owned elsewhere, e.g. a queue depth. Read only when a snapshot is
+ * taken, so it costs nothing on the hot path; must be cheap and safe to call from any thread.
+ */
+public interface Gauge {
+    long read();
+}
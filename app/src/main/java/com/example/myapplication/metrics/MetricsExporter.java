@@ -0,0 +1,124 @@
+package com.example.myapplication.metrics;
+
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Takes a {@link MetricsSnapshot} of a registry at a fixed period, writes it to a text file and
+ * hands it to a listener, e.g. the debug UI. The file is replaced through a temp file and a rename,
+ * so a reader never sees half a snapshot. Runs on the scheduler's thread, which should be one that
+ * may touch the disk.
+ */
+public final class MetricsExporter {
+    public static final class Config {
+        public long periodMillis = 10_000;
+    }
+
+    public interface Listener {
+        void onSnapshot(MetricsSnapshot snapshot);
+    }
+
+    private final MetricsRegistry registry;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final File target;
+    private final Config config;
+    private volatile Listener listener;
+    private Scheduler.Cancellable pending;
+    private MetricsSnapshot last;
+    private long writeFailures;
+
+    // target may be null to only notify the listener
+    public MetricsExporter(MetricsRegistry registry, Scheduler scheduler, Clock clock, File target, Config config) {
+        this.registry = registry;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.target = target;
+        this.config = config;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (pending == null) {
+            pending = scheduler.schedule(this::tick, config.periodMillis);
+        }
+    }
+
+    public synchronized void stop() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return pending != null;
+    }
+
+    // Takes, writes and publishes a snapshot right away, e.g. when the ride stops
+    public MetricsSnapshot exportNow() {
+        MetricsSnapshot snapshot;
+        synchronized (this) {
+            snapshot = registry.snapshot(clock.nanoTime() / 1_000_000, last);
+            last = snapshot;
+            if (target != null) {
+                try {
+                    write(snapshot);
+                } catch (IOException e) {
+                    writeFailures++;
+                }
+            }
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.onSnapshot(snapshot);
+        }
+        return snapshot;
+    }
+
+    public synchronized MetricsSnapshot getLastSnapshot() {
+        return last;
+    }
+
+    public synchronized long getWriteFailures() {
+        return writeFailures;
+    }
+
+    private void tick() {
+        synchronized (this) {
+            if (pending == null) {
+                return;
+            }
+        }
+        exportNow();
+        synchronized (this) {
+            if (pending != null) {
+                pending = scheduler.schedule(this::tick, config.periodMillis);
+            }
+        }
+    }
+
+    private void write(MetricsSnapshot snapshot) throws IOException {
+        File directory = target.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(snapshot.format().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + target);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.myapplication.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named counters, histograms and gauges for the BLE-to-alert pipeline.
+ *
+ * <p>Look metrics up once and keep the reference: recording into a {@link Counter} or
+ * {@link LatencyHistogram} is lock-free and allocation-free, the lookup by name is not meant for
+ * the hot path. Gauges are only read by {@link #snapshot}. The registry also carries the
+ * {@link Tracer} that instrumented code should use, {@link Tracer#NONE} unless one is installed.
+ */
+public final class MetricsRegistry {
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private volatile Tracer tracer = Tracer.NONE;
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    // Adds an existing histogram under its own name, or returns the one already registered
+    public LatencyHistogram register(LatencyHistogram histogram) {
+        LatencyHistogram existing = histograms.putIfAbsent(histogram.getName(), histogram);
+        return existing != null ? existing : histogram;
+    }
+
+    // Replaces any gauge of the same name
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer != null ? tracer : Tracer.NONE;
+    }
+
+    /**
+     * Reads every metric. Counter rates are computed against previous, which may be null.
+     *
+     * @param timeMillis current time on a monotonic clock, used for the rates
+     */
+    public MetricsSnapshot snapshot(long timeMillis, MetricsSnapshot previous) {
+        long interval = previous == null ? 0 : timeMillis - previous.getTimeMillis();
+        SortedMap<String, Long> counterValues = new TreeMap<>();
+        SortedMap<String, Double> rates = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            long value = entry.getValue().get();
+            counterValues.put(entry.getKey(), value);
+            if (interval > 0) {
+                rates.put(entry.getKey(), (value - previous.getCounter(entry.getKey())) * 1000.0 / interval);
+            }
+        }
+        SortedMap<String, Long> gaugeValues = new TreeMap<>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().read());
+        }
+        SortedMap<String, MetricsSnapshot.HistogramSummary> summaries = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            summaries.put(entry.getKey(), new MetricsSnapshot.HistogramSummary(entry.getValue()));
+        }
+        return new MetricsSnapshot(timeMillis, interval, counterValues, rates, gaugeValues, summaries);
+    }
+}
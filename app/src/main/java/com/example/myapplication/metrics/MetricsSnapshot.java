@@ -0,0 +1,134 @@
+package com.example.myapplication.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Values of every metric at one point in time, plus counter rates since the previous snapshot.
+ * Immutable; safe to hand to the UI thread or a file writer.
+ */
+public final class MetricsSnapshot {
+    // What a histogram looked like when the snapshot was taken
+    public static final class HistogramSummary {
+        private final long count;
+        private final double meanMicros;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        HistogramSummary(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.meanMicros = histogram.getMeanMicros();
+            this.p50Micros = histogram.getPercentileMicros(0.5);
+            this.p99Micros = histogram.getPercentileMicros(0.99);
+            this.maxMicros = histogram.getMaxMicros();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+
+    private final long timeMillis;
+    private final long intervalMillis;
+    private final SortedMap<String, Long> counters;
+    private final SortedMap<String, Double> rates;
+    private final SortedMap<String, Long> gauges;
+    private final SortedMap<String, HistogramSummary> histograms;
+
+    MetricsSnapshot(long timeMillis, long intervalMillis, SortedMap<String, Long> counters,
+                    SortedMap<String, Double> rates, SortedMap<String, Long> gauges,
+                    SortedMap<String, HistogramSummary> histograms) {
+        this.timeMillis = timeMillis;
+        this.intervalMillis = intervalMillis;
+        this.counters = Collections.unmodifiableSortedMap(counters);
+        this.rates = Collections.unmodifiableSortedMap(rates);
+        this.gauges = Collections.unmodifiableSortedMap(gauges);
+        this.histograms = Collections.unmodifiableSortedMap(histograms);
+    }
+
+    // On the clock the registry was snapshotted with
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    // Time since the previous snapshot, 0 for the first one
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    // Per second since the previous snapshot; empty for the first one
+    public Map<String, Double> getRates() {
+        return rates;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, HistogramSummary> getHistograms() {
+        return histograms;
+    }
+
+    public long getCounter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    public double getRate(String name) {
+        Double value = rates.get(name);
+        return value == null ? 0 : value;
+    }
+
+    // One metric per line, sorted by name
+    public String format() {
+        StringBuilder sb = new StringBuilder(64 * (counters.size() + gauges.size() + histograms.size()) + 32);
+        sb.append("# t=").append(timeMillis).append(" ms interval=").append(intervalMillis).append(" ms\n");
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            sb.append(counter.getKey()).append(' ').append(counter.getValue());
+            Double rate = rates.get(counter.getKey());
+            if (rate != null) {
+                sb.append(' ').append(Math.round(rate * 10) / 10.0).append("/s");
+            }
+            sb.append('\n');
+        }
+        for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+            sb.append(gauge.getKey()).append(' ').append(gauge.getValue()).append('\n');
+        }
+        for (Map.Entry<String, HistogramSummary> entry : histograms.entrySet()) {
+            HistogramSummary h = entry.getValue();
+            sb.append(entry.getKey()).append(" n=").append(h.count)
+                    .append(" mean=").append(Math.round(h.meanMicros))
+                    .append("us p50=").append(h.p50Micros)
+                    .append("us p99=").append(h.p99Micros)
+                    .append("us max=").append(h.maxMicros).append("us\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.myapplication.metrics;
+
+/**
+ * Marks named sections for a system trace. Sections must be ended on the thread that began them,
+ * in reverse order. {@link #NONE} does nothing and is what the JVM code uses by default.
+ */
+public interface Tracer {
+    Tracer NONE = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+
+    // name must be a constant, building it per call would defeat the point
+    void beginSection(String name);
+
+    void endSection();
+}
@@ -0,0 +1,35 @@
+package com.example.myapplication.replay;
+
+import com.example.myapplication.telemetry.FrameDecoder;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+/**
+ * {@link RideReplayer.Source} over a raw capture: frames back to back, as the Pi sends them.
+ * Frames that fail their CRC or arrive out of order are skipped.
+ */
+public final class FrameCaptureSource implements RideReplayer.Source {
+    private final byte[] frames;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private int offset;
+
+    public FrameCaptureSource(byte[] frames) {
+        this.frames = frames;
+    }
+
+    @Override
+    public boolean next(TelemetrySample out) {
+        while (offset + TelemetryFrame.SIZE <= frames.length) {
+            int status = decoder.decode(frames, offset, out);
+            offset += TelemetryFrame.SIZE;
+            if (status == FrameDecoder.OK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public FrameDecoder getDecoder() {
+        return decoder;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.myapplication.replay;
+
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetryReceiver;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Packs replayed samples back into frames and notification payloads, so a replay exercises the
+ * same decode path as the live link. Legacy text messages, such as the Pi's "1", can be injected
+ * in between; with a receiver built as {@code new TelemetryReceiver(samples, dataListener::onDataReceived)}
+ * they reach a {@code BluetoothClient.DataListener} exactly like live ones.
+ */
+public final class NotificationEncoder implements SampleListener {
+    private final TelemetryReceiver receiver;
+    private final int burstSize;
+    private final byte[] payload;
+    private int frames;
+
+    public NotificationEncoder(TelemetryReceiver receiver, int burstSize) {
+        this.receiver = receiver;
+        this.burstSize = burstSize;
+        this.payload = new byte[burstSize * TelemetryFrame.SIZE];
+    }
+
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        TelemetryFrame.encode(sample, payload, frames * TelemetryFrame.SIZE);
+        if (++frames == burstSize) {
+            // The receiver decodes synchronously, so the payload can be reused
+            receiver.onNotification(payload);
+            frames = 0;
+        }
+    }
+
+    // Sends a partly filled notification, e.g. at the end of a replay
+    public void flush() {
+        if (frames > 0) {
+            receiver.onNotification(Arrays.copyOf(payload, frames * TelemetryFrame.SIZE));
+            frames = 0;
+        }
+    }
+
+    public void sendLegacyMessage(String message) {
+        flush();
+        receiver.onNotification(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
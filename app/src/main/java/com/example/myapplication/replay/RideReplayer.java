@@ -0,0 +1,173 @@
+package com.example.myapplication.replay;
+
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+import java.io.IOException;
+
+/**
+ * Plays a recorded ride into a {@link SampleListener} with its original timing, sped up, or as
+ * fast as possible.
+ *
+ * <p>Pacing runs off timers on the given {@link Scheduler} and {@link Clock}: with a virtual
+ * scheduler a replay is fully deterministic, with an {@link com.example.myapplication.util.ExecutorScheduler}
+ * it runs in real time on the executor's thread. Each tick delivers every sample that is due, so
+ * timing is accurate to {@link Config#tickMillis} while keeping the number of timers low at high
+ * speeds. To go through frame decoding and the legacy text path as well, replay into a
+ * {@link NotificationEncoder}.
+ */
+public final class RideReplayer {
+    // Where recorded samples come from, e.g. JournalReader::next
+    public interface Source {
+        // Reads the next sample into out, false at the end of the recording
+        boolean next(TelemetrySample out) throws IOException;
+    }
+
+    public interface Listener {
+        void onReplayFinished(long samples);
+
+        void onReplayFailed(IOException e);
+    }
+
+    public static final class Config {
+        // Multiple of real time, 0 or less for as fast as possible
+        public double speed = 1;
+        public long tickMillis = 10;
+        // Longer pauses in the recording, e.g. between rides, and timestamps going back are replayed as this
+        public long maxGapMillis = 1_000;
+    }
+
+    private final Source source;
+    private final SampleListener sink;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Config config;
+    private final TelemetrySample pending = new TelemetrySample();
+    private Listener listener;
+
+    private boolean running;
+    private boolean hasPending;
+    private boolean timelineStarted;
+    private long startNanos;
+    private long lastRecordedMicros;
+    private long replayMicros; // position of the pending sample on the replay timeline
+    private Scheduler.Cancellable timer;
+
+    private long samplesReplayed;
+    private long maxLagMicros;
+
+    public RideReplayer(Source source, SampleListener sink, Scheduler scheduler, Clock clock, Config config) {
+        this.source = source;
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.config = config;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        startNanos = clock.nanoTime();
+        timer = scheduler.schedule(this::tick, 0);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Replays everything on the calling thread as fast as possible, ignoring the configured speed.
+     *
+     * @return the number of samples replayed
+     */
+    public long runToEnd() throws IOException {
+        while (source.next(pending)) {
+            sink.onSampleReceived(pending);
+            samplesReplayed++;
+        }
+        return samplesReplayed;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized long getSamplesReplayed() {
+        return samplesReplayed;
+    }
+
+    // How far behind schedule the latest sample was delivered at worst, in recording time
+    public synchronized long getMaxLagMicros() {
+        return maxLagMicros;
+    }
+
+    private synchronized void tick() {
+        timer = null;
+        if (!running) {
+            return;
+        }
+        try {
+            if (config.speed <= 0) {
+                runToEnd();
+                finish();
+                return;
+            }
+            long nowMicros = (long) ((clock.nanoTime() - startNanos) / 1000 * config.speed);
+            while (true) {
+                if (!hasPending && !readNext()) {
+                    finish();
+                    return;
+                }
+                if (replayMicros > nowMicros) {
+                    break;
+                }
+                maxLagMicros = Math.max(maxLagMicros, nowMicros - replayMicros);
+                hasPending = false;
+                sink.onSampleReceived(pending);
+                samplesReplayed++;
+            }
+            long untilDueMillis = (long) Math.ceil((replayMicros - nowMicros) / config.speed / 1000);
+            timer = scheduler.schedule(this::tick, Math.max(config.tickMillis, untilDueMillis));
+        } catch (IOException e) {
+            running = false;
+            if (listener != null) {
+                listener.onReplayFailed(e);
+            }
+        }
+    }
+
+    // Reads the next sample and places it on the replay timeline
+    private boolean readNext() throws IOException {
+        if (!source.next(pending)) {
+            return false;
+        }
+        long recorded = pending.getTimestampMicros();
+        if (timelineStarted) {
+            long gap = recorded - lastRecordedMicros;
+            replayMicros += gap < 0 ? 0 : Math.min(gap, config.maxGapMillis * 1000);
+        }
+        timelineStarted = true;
+        lastRecordedMicros = recorded;
+        hasPending = true;
+        return true;
+    }
+
+    private void finish() {
+        running = false;
+        if (listener != null) {
+            listener.onReplayFinished(samplesReplayed);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.myapplication.sensor;
+
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.Scheduler;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides when the phone's own sensors have to stand in for the sensor units.
+ *
+ * <p>Polls the link health and switches the fallback on once the link has been unhealthy for
+ * {@link Config#activateAfterMillis}, and off again only after it has been healthy for
+ * {@link Config#deactivateAfterMillis}, so a flaky link doesn't toggle the phone sensors on every
+ * reconnect. The listener is called on the scheduler's thread.
+ */
+public final class FallbackController {
+    public static final class Config {
+        public long pollMillis = 1_000;
+        // Rides out a short reconnect; the supervisor already needs a few seconds to notice silence
+        public long activateAfterMillis = 2_000;
+        public long deactivateAfterMillis = 10_000;
+    }
+
+    public interface Listener {
+        void onFallbackChanged(boolean active);
+    }
+
+    private final BooleanSupplier linkHealthy;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Config config;
+    private Listener listener;
+    private Scheduler.Cancellable timer;
+    private boolean active;
+    private boolean lastHealthy;
+    private long changedAtNanos;
+    private long activations;
+
+    public FallbackController(BooleanSupplier linkHealthy, Scheduler scheduler, Clock clock, Config config) {
+        this.linkHealthy = linkHealthy;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.config = config;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        // A ride starts without a link, which counts as the link having just gone down
+        lastHealthy = linkHealthy.getAsBoolean();
+        changedAtNanos = clock.nanoTime();
+        timer = scheduler.schedule(this::poll, config.pollMillis);
+    }
+
+    // Stops polling and switches the fallback off if it was on
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.cancel();
+        timer = null;
+        setActive(false);
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    // How often the phone sensors had to take over
+    public synchronized long getActivations() {
+        return activations;
+    }
+
+    private synchronized void poll() {
+        if (timer == null) {
+            return;
+        }
+        long now = clock.nanoTime();
+        boolean healthy = linkHealthy.getAsBoolean();
+        if (healthy != lastHealthy) {
+            lastHealthy = healthy;
+            changedAtNanos = now;
+        }
+        long stableMillis = (now - changedAtNanos) / 1_000_000;
+        if (!active && !healthy && stableMillis >= config.activateAfterMillis) {
+            setActive(true);
+        } else if (active && healthy && stableMillis >= config.deactivateAfterMillis) {
+            setActive(false);
+        }
+        timer = scheduler.schedule(this::poll, config.pollMillis);
+    }
+
+    private void setActive(boolean active) {
+        if (this.active == active) {
+            return;
+        }
+        this.active = active;
+        if (active) {
+            activations++;
+        }
+        if (listener != null) {
+            listener.onFallbackChanged(active);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.myapplication.sensor;
+
+import com.example.myapplication.metrics.Counter;
+import com.example.myapplication.metrics.LatencyHistogram;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.Clock;
+
+/**
+ * Turns the phone's own accelerometer and gyroscope events into {@link TelemetrySample}s, so the
+ * phone can stand in for the sensor unit with the same detection logic.
+ *
+ * <p>The two sensors report separately and the hardware hands them over in batches from its FIFO.
+ * Events are only copied into preallocated arrays as they arrive; {@link #flush()}, called once
+ * the whole batch has been delivered, converts them in one pass. Each accelerometer event becomes
+ * a sample carrying the most recent gyro reading at or before it, in the units the Pi uses: g and
+ * degrees per second. Timestamps stay on the sensor clock, which is elapsedRealtime, the same base
+ * BluetoothClient maps the units' samples onto.
+ *
+ * <p>Records batches, samples and processing time per batch under imu.* in the registry; the rate
+ * of imu.batches is the number of times the CPU was woken for sensor data. Not thread-safe: events
+ * and flush() must come from the same thread.
+ */
+public final class PhoneImuBatcher {
+    // Source id stamped on phone samples, well clear of the units' ids
+    public static final int SOURCE_ID = 100;
+
+    private static final float STANDARD_GRAVITY = 9.80665f; // SensorManager.GRAVITY_EARTH
+    private static final float DEGREES_PER_RADIAN = (float) (180 / Math.PI);
+
+    public static final class Config {
+        // Events held per sensor between flushes; a larger batch is processed in several passes
+        public int capacity = 1024;
+    }
+
+    private final SampleListener downstream;
+    private final Clock clock;
+    private final TelemetrySample sample = new TelemetrySample();
+
+    private final long[] accelTimes;
+    private final float[] accel;
+    private int accelCount;
+    private final long[] gyroTimes;
+    private final float[] gyro;
+    private int gyroCount;
+    private int gyroRead;
+
+    // Latest gyro reading already used, carried over between batches
+    private float gyroX;
+    private float gyroY;
+    private float gyroZ;
+    private int sequence;
+    private long lastMicros = Long.MIN_VALUE;
+
+    private final Counter batches;
+    private final Counter samples;
+    private final LatencyHistogram batchTime;
+
+    public PhoneImuBatcher(SampleListener downstream, Clock clock, MetricsRegistry metrics, Config config) {
+        if (config.capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.downstream = downstream;
+        this.clock = clock;
+        this.accelTimes = new long[config.capacity];
+        this.accel = new float[config.capacity * 3];
+        this.gyroTimes = new long[config.capacity];
+        this.gyro = new float[config.capacity * 3];
+        this.batches = metrics.counter("imu.batches");
+        this.samples = metrics.counter("imu.samples");
+        this.batchTime = metrics.histogram("imu.batch_us");
+        sample.setSourceId(SOURCE_ID);
+    }
+
+    // Acceleration in m/s^2 including gravity, as TYPE_ACCELEROMETER reports it
+    public void onAccelerometer(long timestampNanos, float x, float y, float z) {
+        if (accelCount == accelTimes.length) {
+            process();
+        }
+        accelTimes[accelCount] = timestampNanos;
+        accel[accelCount * 3] = x;
+        accel[accelCount * 3 + 1] = y;
+        accel[accelCount * 3 + 2] = z;
+        accelCount++;
+    }
+
+    // Angular rate in rad/s, as TYPE_GYROSCOPE reports it
+    public void onGyroscope(long timestampNanos, float x, float y, float z) {
+        if (gyroCount == gyroTimes.length) {
+            process();
+            if (gyroCount == gyroTimes.length) {
+                // No acceleration to pair them with, only the newest reading matters
+                int last = (gyroCount - 1) * 3;
+                gyroX = gyro[last] * DEGREES_PER_RADIAN;
+                gyroY = gyro[last + 1] * DEGREES_PER_RADIAN;
+                gyroZ = gyro[last + 2] * DEGREES_PER_RADIAN;
+                gyroCount = 0;
+            }
+        }
+        gyroTimes[gyroCount] = timestampNanos;
+        gyro[gyroCount * 3] = x;
+        gyro[gyroCount * 3 + 1] = y;
+        gyro[gyroCount * 3 + 2] = z;
+        gyroCount++;
+    }
+
+    // End of a delivered batch; returns the number of samples passed downstream
+    public int flush() {
+        if (accelCount == 0 && gyroCount == 0) {
+            return 0;
+        }
+        long start = clock.nanoTime();
+        int emitted = process();
+        batches.increment();
+        batchTime.record((clock.nanoTime() - start) / 1_000);
+        return emitted;
+    }
+
+    // Forgets held readings, e.g. when the phone takes over again after a while
+    public void reset() {
+        accelCount = 0;
+        gyroCount = 0;
+        gyroRead = 0;
+        gyroX = 0;
+        gyroY = 0;
+        gyroZ = 0;
+        lastMicros = Long.MIN_VALUE;
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getSampleCount() {
+        return samples.get();
+    }
+
+    public LatencyHistogram getBatchTime() {
+        return batchTime;
+    }
+
+    private int process() {
+        int emitted = 0;
+        for (int i = 0; i < accelCount; i++) {
+            long t = accelTimes[i];
+            // Both FIFOs are in time order, so one forward pass pairs them up
+            while (gyroRead < gyroCount && gyroTimes[gyroRead] <= t) {
+                gyroX = gyro[gyroRead * 3] * DEGREES_PER_RADIAN;
+                gyroY = gyro[gyroRead * 3 + 1] * DEGREES_PER_RADIAN;
+                gyroZ = gyro[gyroRead * 3 + 2] * DEGREES_PER_RADIAN;
+                gyroRead++;
+            }
+            long micros = t / 1_000;
+            if (micros <= lastMicros) {
+                continue;
+            }
+            lastMicros = micros;
+            sample.set(sequence++ & 0xFFFF, micros,
+                    accel[i * 3] / STANDARD_GRAVITY, accel[i * 3 + 1] / STANDARD_GRAVITY, accel[i * 3 + 2] / STANDARD_GRAVITY,
+                    gyroX, gyroY, gyroZ);
+            downstream.onSampleReceived(sample);
+            emitted++;
+        }
+        accelCount = 0;
+        // Gyro readings newer than the last acceleration belong to the next one
+        int remaining = gyroCount - gyroRead;
+        System.arraycopy(gyroTimes, gyroRead, gyroTimes, 0, remaining);
+        System.arraycopy(gyro, gyroRead * 3, gyro, 0, remaining * 3);
+        gyroCount = remaining;
+        gyroRead = 0;
+        samples.add(emitted);
+        return emitted;
+    }
+}
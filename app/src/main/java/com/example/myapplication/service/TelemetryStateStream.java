@@ -0,0 +1,96 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.emergency.CrashAlertStateMachine;
+import com.example.myapplication.metrics.MetricsSnapshot;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Read-only view of the ride pipeline for whatever UI is currently attached.
+ *
+ * <p>The service publishes into the stream from its worker threads; observers only receive.
+ * The latest status and alert state are remembered, so an observer that subscribes after a
+ * rotation or when the app comes back to the foreground is brought up to date immediately.
+ * Samples are passed straight through and are not retained.
+ */
+public final class TelemetryStateStream implements SampleListener {
+    // Called on the publishing thread; hand off to the UI thread if needed
+    public interface Observer extends SampleListener {
+        void onStatus(String status);
+
+        void onAlertStateChanged(CrashAlertStateMachine.State state);
+
+        // Periodic pipeline metrics, for a debug overlay
+        default void onMetrics(MetricsSnapshot snapshot) {
+        }
+    }
+
+    private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+    private volatile String status;
+    private volatile CrashAlertStateMachine.State alertState = CrashAlertStateMachine.State.ARMED;
+    private volatile MetricsSnapshot metrics;
+
+    // Registers observer and replays the current status and alert state to it
+    public synchronized void subscribe(Observer observer) {
+        if (!observers.addIfAbsent(observer)) {
+            return;
+        }
+        String currentStatus = status;
+        if (currentStatus != null) {
+            observer.onStatus(currentStatus);
+        }
+        observer.onAlertStateChanged(alertState);
+    }
+
+    public void unsubscribe(Observer observer) {
+        observers.remove(observer);
+    }
+
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        for (Observer observer : observers) {
+            observer.onSampleReceived(sample);
+        }
+    }
+
+    // Synchronized with subscribe() so a new observer never misses an update or sees it twice
+    public synchronized void publishStatus(String status) {
+        this.status = status;
+        for (Observer observer : observers) {
+            observer.onStatus(status);
+        }
+    }
+
+    public synchronized void publishAlertState(CrashAlertStateMachine.State state) {
+        alertState = state;
+        for (Observer observer : observers) {
+            observer.onAlertStateChanged(state);
+        }
+    }
+
+    public void publishMetrics(MetricsSnapshot snapshot) {
+        metrics = snapshot;
+        for (Observer observer : observers) {
+            observer.onMetrics(snapshot);
+        }
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public CrashAlertStateMachine.State getAlertState() {
+        return alertState;
+    }
+
+    // Latest published snapshot, or null
+    public MetricsSnapshot getMetrics() {
+        return metrics;
+    }
+
+    public int getObserverCount() {
+        return observers.size();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.myapplication.stats;
+
+/**
+ * Streaming estimate of one quantile with the P-square algorithm (Jain and Chlamtac): five
+ * markers track the minimum, the quantile, the maximum and two points in between, and are moved
+ * along a parabola fitted through their neighbours as values arrive. Constant space and time per
+ * value; typically within a percent or two of the exact quantile on smooth distributions. Exact
+ * for the first five values. Not thread-safe.
+ */
+public final class P2Quantile {
+    private final double quantile;
+    private final double[] heights = new double[5];
+    private final double[] positions = new double[5];
+    private final double[] desired = new double[5];
+    private final double[] increments;
+    private long count;
+
+    // quantile between 0 and 1, e.g. 0.99
+    public P2Quantile(double quantile) {
+        if (!(quantile > 0 && quantile < 1)) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+        }
+        this.quantile = quantile;
+        this.increments = new double[]{0, quantile / 2, quantile, (1 + quantile) / 2, 1};
+    }
+
+    public void add(double value) {
+        if (count < 5) {
+            // Kept sorted until the markers can start
+            int i = (int) count;
+            while (i > 0 && heights[i - 1] > value) {
+                heights[i] = heights[i - 1];
+                i--;
+            }
+            heights[i] = value;
+            count++;
+            if (count == 5) {
+                for (int m = 0; m < 5; m++) {
+                    positions[m] = m + 1;
+                    desired[m] = 1 + 4 * increments[m];
+                }
+            }
+            return;
+        }
+        count++;
+        int cell;
+        if (value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        } else if (value >= heights[4]) {
+            heights[4] = value;
+            cell = 3;
+        } else {
+            cell = 0;
+            while (value >= heights[cell + 1]) {
+                cell++;
+            }
+        }
+        for (int m = cell + 1; m < 5; m++) {
+            positions[m]++;
+        }
+        for (int m = 0; m < 5; m++) {
+            desired[m] += increments[m];
+        }
+        for (int m = 1; m < 4; m++) {
+            double offset = desired[m] - positions[m];
+            if ((offset >= 1 && positions[m + 1] - positions[m] > 1)
+                    || (offset <= -1 && positions[m - 1] - positions[m] < -1)) {
+                int step = offset > 0 ? 1 : -1;
+                double height = parabolic(m, step);
+                if (height <= heights[m - 1] || height >= heights[m + 1]) {
+                    height = heights[m] + step * (heights[m + step] - heights[m]) / (positions[m + step] - positions[m]);
+                }
+                heights[m] = height;
+                positions[m] += step;
+            }
+        }
+    }
+
+    // NaN when empty
+    public double get() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count < 5) {
+            return heights[(int) Math.round(quantile * (count - 1))];
+        }
+        return heights[2];
+    }
+
+    public double getQuantile() {
+        return quantile;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    private double parabolic(int m, int step) {
+        double left = positions[m] - positions[m - 1];
+        double right = positions[m + 1] - positions[m];
+        return heights[m] + step / (positions[m + 1] - positions[m - 1])
+                * ((left + step) * (heights[m + 1] - heights[m]) / right
+                + (right - step) * (heights[m] - heights[m - 1]) / left);
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.myapplication.stats;
+
+import com.example.myapplication.crash.SlidingWindow;
+import com.example.myapplication.sensor.PhoneImuBatcher;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+/**
+ * Keeps the ride summary up to date as samples and position fixes arrive, in constant memory and
+ * constant time per update however long the ride gets.
+ *
+ * <ul>
+ * <li>Acceleration: peak, running mean and spread ({@link RunningMoments}) and the median and 99th
+ * percentile ({@link P2Quantile}) of the magnitude, from every unit. The phone's own IMU is left
+ * out: it moves around in a pocket or bag, so its g say little about the ride.
+ * <li>Lean: estimated from speed and yaw rate as atan(v * yaw rate / g), which holds in a steady
+ * turn. A {@link SlidingWindow} over the last {@link Config#leanWindowMicros} gives the lean held
+ * through the whole window; the deepest one held counts, so a bump doesn't. The speed is taken
+ * between the fixes around each sample, so yaw rates wait for their fixes, which come in batches;
+ * a sample with no fix within {@link Config#maxFixDistanceMicros} gives no lean.
+ * <li>Position: distance, time moving, top speed, average and 85th percentile moving speed, from
+ * the smoothed fixes.
+ * </ul>
+ *
+ * <p>Samples and fixes may come from different threads. Readers never block: the summary is an
+ * immutable {@link RideSummary}, republished at most every {@link Config#publishIntervalMicros}
+ * of sample time and on every fix.
+ */
+public final class RideStatsAggregator implements SampleListener {
+    public static final class Config {
+        // Samples of this unit give the lean; it must be fixed to the bike, Z up
+        public int leanSourceId = 0;
+        // Samples of this source are ignored, see above
+        public int phoneSourceId = PhoneImuBatcher.SOURCE_ID;
+        public long leanWindowMicros = 500_000;
+        // The yaw rate says little about lean at walking pace
+        public double minLeanSpeedMps = 5;
+        public double movingSpeedMps = 2;
+        // Longer gaps between fixes count toward distance, not toward time moving
+        public long maxFixGapMillis = 30_000;
+        public long publishIntervalMicros = 200_000;
+        // A sample's lean needs a fix at most this far from it
+        public long maxFixDistanceMicros = 1_000_000;
+        // How long yaw rates wait for their fixes, longer than the location batches
+        public long maxFixDelayMicros = 15_000_000;
+        // Sizes the lean window and the yaw rates waiting for fixes
+        public int maxSampleRateHz = 1000;
+    }
+
+    private static final double GRAVITY = 9.80665;
+    private static final int FIX_HISTORY = 64;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+
+    private final Config config;
+    private final RunningMoments accel = new RunningMoments();
+    private final P2Quantile accelMedian = new P2Quantile(0.5);
+    private final P2Quantile accelP99 = new P2Quantile(0.99);
+    private final SlidingWindow leanWindow;
+    private double maxLeanLeft;
+    private double maxLeanRight;
+    private final long[] pendingMicros;
+    private final float[] pendingYawRates;
+    private int pendingHead;
+    private int pendingSize;
+
+    private final RunningMoments movingSpeed = new RunningMoments();
+    private final P2Quantile movingSpeedP85 = new P2Quantile(0.85);
+    private long fixes;
+    private boolean hasFix;
+    private long lastFixMicros;
+    // Recent fixes, for the speed at the time of a waiting yaw rate
+    private final long[] fixMicros = new long[FIX_HISTORY];
+    private final double[] fixSpeeds = new double[FIX_HISTORY];
+    private double lastLatitude;
+    private double lastLongitude;
+    private double speedMps;
+    private double maxSpeedMps;
+    private double distanceMeters;
+    private long movingMillis;
+
+    private long lastPublishMicros = Long.MIN_VALUE;
+    private long version;
+    private volatile RideSummary summary = RideSummary.EMPTY;
+
+    public RideStatsAggregator(Config config) {
+        this.config = config;
+        int capacity = (int) Math.max(1, config.maxSampleRateHz * config.leanWindowMicros / 1_000_000);
+        this.leanWindow = new SlidingWindow(config.leanWindowMicros, capacity);
+        int pending = (int) Math.max(1, config.maxSampleRateHz * config.maxFixDelayMicros / 1_000_000);
+        this.pendingMicros = new long[pending];
+        this.pendingYawRates = new float[pending];
+    }
+
+    @Override
+    public synchronized void onSampleReceived(TelemetrySample sample) {
+        if (sample.getSourceId() == config.phoneSourceId) {
+            return;
+        }
+        double magnitude = sample.accelMagnitude();
+        accel.add(magnitude);
+        accelMedian.add(magnitude);
+        accelP99.add(magnitude);
+
+        long micros = sample.getTimestampMicros();
+        if (sample.getSourceId() == config.leanSourceId) {
+            if (pendingSize == pendingMicros.length) {
+                // Waited too long, goes with whatever fixes there are
+                resolveLeans(pendingMicros[pendingHead]);
+            }
+            int slot = (pendingHead + pendingSize) % pendingMicros.length;
+            pendingMicros[slot] = micros;
+            pendingYawRates[slot] = sample.getGyroZ();
+            pendingSize++;
+        }
+        if (lastPublishMicros == Long.MIN_VALUE || micros - lastPublishMicros >= config.publishIntervalMicros) {
+            lastPublishMicros = micros;
+            publish();
+        }
+    }
+
+    /**
+     * Adds a smoothed position fix, e.g. from {@link com.example.myapplication.track.KalmanLocationFilter}.
+     * Fixes must arrive in time order, timed in elapsed-realtime micros like the samples.
+     */
+    public synchronized void onLocation(long micros, double latitude, double longitude, double speedMps) {
+        int slot = (int) (fixes % FIX_HISTORY);
+        fixMicros[slot] = micros;
+        fixSpeeds[slot] = speedMps;
+        fixes++;
+        this.speedMps = speedMps;
+        maxSpeedMps = Math.max(maxSpeedMps, speedMps);
+        if (hasFix) {
+            long gapMillis = (micros - lastFixMicros) / 1_000;
+            double east = (longitude - lastLongitude) * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+            double north = (latitude - lastLatitude) * METERS_PER_DEGREE;
+            distanceMeters += Math.sqrt(east * east + north * north);
+            if (speedMps >= config.movingSpeedMps && gapMillis > 0 && gapMillis <= config.maxFixGapMillis) {
+                movingMillis += gapMillis;
+            }
+        }
+        if (speedMps >= config.movingSpeedMps) {
+            movingSpeed.add(speedMps);
+            movingSpeedP85.add(speedMps);
+        }
+        hasFix = true;
+        lastFixMicros = micros;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        resolveLeans(micros);
+        publish();
+    }
+
+    // Latest published summary; never blocks
+    public RideSummary getSummary() {
+        return summary;
+    }
+
+    // Publishes now, e.g. when the ride stops, and returns the result
+    public synchronized RideSummary flush() {
+        resolveLeans(Long.MAX_VALUE);
+        publish();
+        return summary;
+    }
+
+    // Starts a new ride
+    public synchronized void reset() {
+        accel.reset();
+        accelMedian.reset();
+        accelP99.reset();
+        leanWindow.clear();
+        pendingSize = 0;
+        maxLeanLeft = 0;
+        maxLeanRight = 0;
+        movingSpeed.reset();
+        movingSpeedP85.reset();
+        fixes = 0;
+        hasFix = false;
+        speedMps = 0;
+        maxSpeedMps = 0;
+        distanceMeters = 0;
+        movingMillis = 0;
+        lastPublishMicros = Long.MIN_VALUE;
+        publish();
+    }
+
+    // Turns the yaw rates waiting up to untilMicros into leans
+    private void resolveLeans(long untilMicros) {
+        while (pendingSize > 0 && pendingMicros[pendingHead] <= untilMicros) {
+            addLean(pendingMicros[pendingHead], pendingYawRates[pendingHead]);
+            pendingHead = (pendingHead + 1) % pendingMicros.length;
+            pendingSize--;
+        }
+    }
+
+    // Speed at micros, between the fixes around it or from the nearer one, NaN if neither is close
+    private double speedAt(long micros) {
+        int before = -1;
+        int after = -1;
+        for (long i = fixes - 1; i >= Math.max(0, fixes - FIX_HISTORY); i--) {
+            int slot = (int) (i % FIX_HISTORY);
+            if (fixMicros[slot] <= micros) {
+                before = slot;
+                break;
+            }
+            after = slot;
+        }
+        long max = config.maxFixDistanceMicros;
+        if (before >= 0 && after >= 0 && fixMicros[after] - fixMicros[before] <= 2 * max) {
+            long span = fixMicros[after] - fixMicros[before];
+            return fixSpeeds[before] + (fixSpeeds[after] - fixSpeeds[before]) * (micros - fixMicros[before]) / span;
+        }
+        if (before >= 0 && micros - fixMicros[before] <= max
+                && (after < 0 || micros - fixMicros[before] <= fixMicros[after] - micros)) {
+            return fixSpeeds[before];
+        }
+        if (after >= 0 && fixMicros[after] - micros <= max) {
+            return fixSpeeds[after];
+        }
+        return Double.NaN;
+    }
+
+    // Positive leans right; the gyro turns counter-clockwise positive seen from above
+    private void addLean(long micros, float yawRateDegrees) {
+        double speed = speedAt(micros);
+        if (Double.isNaN(speed)) {
+            // Unknown, so nothing before it counts as held through
+            leanWindow.clear();
+            return;
+        }
+        double lean = 0;
+        if (speed >= config.minLeanSpeedMps) {
+            lean = -Math.toDegrees(Math.atan(speed * Math.toRadians(yawRateDegrees) / GRAVITY));
+        }
+        leanWindow.add(micros, (float) lean);
+        // Only a window that covers its whole length says the lean was held that long
+        if (leanWindow.spanMicros() >= config.leanWindowMicros * 9 / 10) {
+            maxLeanRight = Math.max(maxLeanRight, leanWindow.min());
+            maxLeanLeft = Math.max(maxLeanLeft, -leanWindow.max());
+        }
+    }
+
+    private void publish() {
+        summary = new RideSummary(accel.getCount(), fixes, movingMillis, distanceMeters, maxSpeedMps,
+                movingSpeed.getMean(), movingSpeedP85.get(), accel.getMax(), accelMedian.get(), accelP99.get(),
+                accel.getStandardDeviation(), maxLeanLeft, maxLeanRight, ++version);
+    }
+}
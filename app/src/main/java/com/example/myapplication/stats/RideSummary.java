@@ -0,0 +1,118 @@
+package com.example.myapplication.stats;
+
+import java.util.Locale;
+
+/**
+ * Immutable summary of the ride so far, published by {@link RideStatsAggregator}. Values that
+ * need data not seen yet are NaN.
+ */
+public final class RideSummary {
+    public static final RideSummary EMPTY = new RideSummary(0, 0, 0, 0, 0, Double.NaN, Double.NaN, Double.NaN,
+            Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0, 0);
+
+    private final long samples;
+    private final long fixes;
+    private final long movingMillis;
+    private final double distanceMeters;
+    private final double maxSpeedMps;
+    private final double averageMovingSpeedMps;
+    private final double speedP85Mps;
+    private final double peakG;
+    private final double medianG;
+    private final double p99G;
+    private final double gStandardDeviation;
+    private final double maxLeanLeftDegrees;
+    private final double maxLeanRightDegrees;
+    private final long version;
+
+    RideSummary(long samples, long fixes, long movingMillis, double distanceMeters, double maxSpeedMps,
+                double averageMovingSpeedMps, double speedP85Mps, double peakG, double medianG, double p99G,
+                double gStandardDeviation, double maxLeanLeftDegrees, double maxLeanRightDegrees, long version) {
+        this.samples = samples;
+        this.fixes = fixes;
+        this.movingMillis = movingMillis;
+        this.distanceMeters = distanceMeters;
+        this.maxSpeedMps = maxSpeedMps;
+        this.averageMovingSpeedMps = averageMovingSpeedMps;
+        this.speedP85Mps = speedP85Mps;
+        this.peakG = peakG;
+        this.medianG = medianG;
+        this.p99G = p99G;
+        this.gStandardDeviation = gStandardDeviation;
+        this.maxLeanLeftDegrees = maxLeanLeftDegrees;
+        this.maxLeanRightDegrees = maxLeanRightDegrees;
+        this.version = version;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getFixes() {
+        return fixes;
+    }
+
+    // Time spent above the moving speed threshold
+    public long getMovingMillis() {
+        return movingMillis;
+    }
+
+    public double getDistanceMeters() {
+        return distanceMeters;
+    }
+
+    public double getMaxSpeedMps() {
+        return maxSpeedMps;
+    }
+
+    public double getAverageMovingSpeedMps() {
+        return averageMovingSpeedMps;
+    }
+
+    // Speed not exceeded 85% of the moving time, estimated
+    public double getSpeedP85Mps() {
+        return speedP85Mps;
+    }
+
+    // Highest acceleration magnitude from any unit
+    public double getPeakG() {
+        return peakG;
+    }
+
+    public double getMedianG() {
+        return medianG;
+    }
+
+    public double getP99G() {
+        return p99G;
+    }
+
+    public double getGStandardDeviation() {
+        return gStandardDeviation;
+    }
+
+    // Deepest lean held for the lean window, positive degrees
+    public double getMaxLeanLeftDegrees() {
+        return maxLeanLeftDegrees;
+    }
+
+    public double getMaxLeanRightDegrees() {
+        return maxLeanRightDegrees;
+    }
+
+    // Increases with every publish, tells a poller whether anything changed
+    public long getVersion() {
+        return version;
+    }
+
+    public String format() {
+        return String.format(Locale.US, "%.1f km, %d min moving, max %.0f km/h, avg %.0f km/h, peak %.1f g, "
+                        + "lean %.0f/%.0f deg", distanceMeters / 1000, movingMillis / 60_000, maxSpeedMps * 3.6,
+                averageMovingSpeedMps * 3.6, peakG, maxLeanLeftDegrees, maxLeanRightDegrees);
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
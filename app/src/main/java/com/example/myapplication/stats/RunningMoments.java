@@ -0,0 +1,62 @@
+package com.example.myapplication.stats;
+
+/**
+ * Count, mean, variance and range of a stream in constant space. Uses Welford's update, which
+ * stays accurate over millions of values where a plain sum of squares loses all its digits.
+ * Not thread-safe.
+ */
+public final class RunningMoments {
+    private long count;
+    private double mean;
+    private double m2; // Sum of squared differences from the current mean
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (count == 1) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // NaN when empty
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    // Population variance, NaN when empty
+    public double getVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.myapplication.telemetry;
+
+/**
+ * Decodes {@link TelemetryFrame}s into a caller supplied {@link TelemetrySample}.
+ * One decoder is meant to live as long as the connection and be called from a single thread;
+ * it never allocates after construction. The counters are written by the decoding thread only
+ * and can be read from anywhere.
+ */
+public final class FrameDecoder {
+    public static final int OK = 0;
+    public static final int BAD_LENGTH = 1;
+    public static final int BAD_CRC = 2;
+    public static final int OUT_OF_ORDER = 3;
+
+    private static final long TIMESTAMP_WRAP = 1L << 32;
+    // Frames arrive at most this far behind the newest one; further back the counter restarted
+    static final int MAX_REORDER = 64;
+    // Late frames in a row that mean the counter jumped backwards rather than frames being late
+    static final int MAX_CONSECUTIVE_LATE = 8;
+
+    private boolean first = true;
+    private int expectedSequence;
+    private int consecutiveLate;
+    private long lastRawTimestamp;
+    private long timestampEpoch;
+
+    private volatile long framesDecoded;
+    private volatile long framesDropped;
+    private volatile long framesOutOfOrder;
+    private volatile long crcErrors;
+    private volatile long lengthErrors;
+    private volatile long resyncs;
+
+    /**
+     * Decodes the frame at {@code offset} into {@code out}.
+     * {@code out} is only written when the result is {@link #OK}. Frames that arrive after a
+     * newer one are reported as {@link #OUT_OF_ORDER} and not decoded, since they were already
+     * counted as dropped when the gap was seen. A jump further back than {@link #MAX_REORDER}
+     * frames, or more than {@link #MAX_CONSECUTIVE_LATE} late frames in a row, resynchronizes
+     * to the new sequence instead.
+     */
+    public int decode(byte[] buf, int offset, TelemetrySample out) {
+        if (offset < 0 || buf.length - offset < TelemetryFrame.SIZE) {
+            lengthErrors++;
+            return BAD_LENGTH;
+        }
+        int crc = TelemetryFrame.getUnsignedShort(buf, offset + TelemetryFrame.CRC_OFFSET);
+        if (crc != TelemetryFrame.crc16(buf, offset, TelemetryFrame.CRC_OFFSET)) {
+            crcErrors++;
+            return BAD_CRC;
+        }
+
+        int sequence = TelemetryFrame.getUnsignedShort(buf, offset);
+        if (first) {
+            first = false;
+        } else {
+            int gap = (short) (sequence - expectedSequence); // signed distance modulo 2^16
+            if (gap < 0) {
+                if (gap >= -MAX_REORDER && ++consecutiveLate <= MAX_CONSECUTIVE_LATE) {
+                    framesOutOfOrder++;
+                    return OUT_OF_ORDER;
+                }
+                // The Pi restarted its counter or more than half the sequence space was lost;
+                // follow the new sequence instead of dropping everything until it catches up
+                resyncs++;
+            } else if (gap > 0) {
+                framesDropped += gap;
+            }
+        }
+        consecutiveLate = 0;
+        expectedSequence = (sequence + 1) & 0xFFFF;
+
+        long rawTimestamp = TelemetryFrame.getUnsignedInt(buf, offset + 2);
+        if (rawTimestamp < lastRawTimestamp && lastRawTimestamp - rawTimestamp > TIMESTAMP_WRAP / 2) {
+            timestampEpoch += TIMESTAMP_WRAP;
+        }
+        lastRawTimestamp = rawTimestamp;
+
+        out.set(sequence, timestampEpoch + rawTimestamp,
+                TelemetryFrame.getShort(buf, offset + 6) / TelemetryFrame.ACCEL_SCALE,
+                TelemetryFrame.getShort(buf, offset + 8) / TelemetryFrame.ACCEL_SCALE,
+                TelemetryFrame.getShort(buf, offset + 10) / TelemetryFrame.ACCEL_SCALE,
+                TelemetryFrame.getShort(buf, offset + 12) / TelemetryFrame.GYRO_SCALE,
+                TelemetryFrame.getShort(buf, offset + 14) / TelemetryFrame.GYRO_SCALE,
+                TelemetryFrame.getShort(buf, offset + 16) / TelemetryFrame.GYRO_SCALE);
+        framesDecoded++;
+        return OK;
+    }
+
+    /**
+     * Puts a unit timestamp from outside the frames, such as a clock exchange, on the time line of
+     * the decoded samples: the value with the same low 32 bits that is closest to the last decoded
+     * timestamp. Call it on the decoding thread.
+     */
+    public long unwrapTimestamp(long unitMicros) {
+        long raw = unitMicros & (TIMESTAMP_WRAP - 1);
+        if (first) {
+            // The next frame starts the time line at epoch 0
+            return raw;
+        }
+        return timestampEpoch + lastRawTimestamp + (int) (raw - lastRawTimestamp);
+    }
+
+    // Forget the sequence and timestamp state, e.g. after a reconnect when the Pi restarts its counters
+    public void reset() {
+        first = true;
+        consecutiveLate = 0;
+        lastRawTimestamp = 0;
+        timestampEpoch = 0;
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    // Frames missing from sequence gaps
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public long getFramesOutOfOrder() {
+        return framesOutOfOrder;
+    }
+
+    public long getCrcErrors() {
+        return crcErrors;
+    }
+
+    public long getLengthErrors() {
+        return lengthErrors;
+    }
+
+    // Times the sequence jumped backwards and decoding followed it
+    public long getResyncs() {
+        return resyncs;
+    }
+}
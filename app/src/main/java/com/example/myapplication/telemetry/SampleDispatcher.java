@@ -0,0 +1,96 @@
+package com.example.myapplication.telemetry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves samples off the GATT callback thread.
+ * {@link #onSampleReceived} only copies the sample into a {@link SampleRingBuffer}; a dedicated
+ * processing thread drains the buffer and calls the downstream listener, so a slow consumer
+ * can no longer stall the Bluetooth stack.
+ */
+public final class SampleDispatcher implements SampleListener {
+    private static final long IDLE_WAIT_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 5_000;
+
+    private final SampleRingBuffer buffer;
+    private final SampleListener consumer;
+    private final String threadName;
+    private volatile boolean running;
+    private Thread thread;
+
+    public SampleDispatcher(SampleRingBuffer buffer, SampleListener consumer) {
+        this(buffer, consumer, "telemetry-processing");
+    }
+
+    public SampleDispatcher(SampleRingBuffer buffer, SampleListener consumer, String threadName) {
+        this.buffer = buffer;
+        this.consumer = consumer;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Starts the processing thread; it can be started again after {@link #stop()}.
+     *
+     * @return false if the thread from the last stop() is still draining, nothing is started then
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        // Two threads would feed the consumer at once
+        if (thread != null && !stop()) {
+            return false;
+        }
+        running = true;
+        thread = new Thread(this::processLoop, threadName);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops the processing thread after it has handed every queued sample to the consumer. Call it
+     * once the producers have stopped. The thread is not interrupted, since an interrupt would
+     * close a FileChannel the consumer is writing to.
+     *
+     * @return false if the thread was still draining after a few seconds; calling it again waits again
+     */
+    public synchronized boolean stop() {
+        running = false;
+        if (thread == null) {
+            return true;
+        }
+        try {
+            thread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            return false;
+        }
+        thread = null;
+        return true;
+    }
+
+    // Producer side, called on the GATT callback thread
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        buffer.offer(sample);
+    }
+
+    public SampleRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    private void processLoop() {
+        TelemetrySample sample = new TelemetrySample();
+        while (running) {
+            if (buffer.take(sample, IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                consumer.onSampleReceived(sample);
+            }
+        }
+        // The producers are done, hand over what they left
+        while (buffer.poll(sample)) {
+            consumer.onSampleReceived(sample);
+        }
+    }
+}
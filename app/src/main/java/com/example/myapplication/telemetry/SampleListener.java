@@ -0,0 +1,9 @@
+package com.example.myapplication.telemetry;
+
+/**
+ * Receives decoded samples. The sample object is reused by the caller,
+ * so copy it if it has to outlive the callback.
+ */
+public interface SampleListener {
+    void onSampleReceived(TelemetrySample sample);
+}
@@ -0,0 +1,186 @@
+package com.example.myapplication.telemetry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer queue of preallocated {@link TelemetrySample} slots.
+ * The producer (the GATT callback thread) copies samples in with {@link #offer}, the consumer
+ * (the processing thread) copies them out with {@link #poll} or {@link #take}. Neither side
+ * takes a lock or allocates.
+ *
+ * <p>The read index is advanced with a CAS so that the producer can discard the oldest sample
+ * under {@link OverflowPolicy#DROP_OLDEST} without coordinating with the consumer; a consumer
+ * that loses that race simply retries on the next slot.
+ */
+public final class SampleRingBuffer {
+    public enum OverflowPolicy {
+        DROP_OLDEST, // overwrite the oldest queued sample, keeps the stream fresh
+        DROP_NEWEST, // reject the incoming sample, keeps the queued history intact
+        BLOCK        // wait for space up to the configured timeout, then drop the incoming sample
+    }
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final TelemetrySample[] slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+
+    private final AtomicLong head = new AtomicLong(); // next slot to read
+    private final AtomicLong tail = new AtomicLong(); // next slot to write
+    private volatile Thread waitingConsumer;
+
+    // Written by the producer only
+    private volatile long offered;
+    private volatile long dropped;
+    private volatile int highWaterMark;
+
+    public SampleRingBuffer(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param capacity rounded up to the next power of two
+     * @param blockTimeout how long {@link #offer} may wait under {@link OverflowPolicy#BLOCK}
+     */
+    public SampleRingBuffer(int capacity, OverflowPolicy policy, long blockTimeout, TimeUnit unit) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new TelemetrySample[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new TelemetrySample();
+        }
+        this.mask = size - 1;
+        this.policy = policy;
+        this.blockTimeoutNanos = unit.toNanos(blockTimeout);
+    }
+
+    /**
+     * Copies {@code sample} into the queue. Producer thread only.
+     *
+     * @return false if the sample was dropped
+     */
+    public boolean offer(TelemetrySample sample) {
+        offered++;
+        long t = tail.get();
+        long deadline = 0;
+        while (true) {
+            long h = head.get();
+            if (t - h < slots.length) {
+                break;
+            }
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped++;
+                return false;
+            } else if (policy == OverflowPolicy.DROP_OLDEST) {
+                if (head.compareAndSet(h, h + 1)) {
+                    dropped++;
+                    break;
+                }
+            } else {
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + blockTimeoutNanos;
+                }
+                if (now - deadline >= 0) {
+                    dropped++;
+                    return false;
+                }
+                LockSupport.parkNanos(this, Math.min(PRODUCER_PARK_NANOS, deadline - now));
+            }
+        }
+
+        slots[(int) t & mask].copyFrom(sample);
+        // A full volatile store, not lazySet: the read of waitingConsumer below must not be
+        // reordered before it, or a consumer that just parked is never woken
+        tail.set(t + 1);
+
+        int depth = (int) (t + 1 - head.get());
+        if (depth > highWaterMark) {
+            highWaterMark = depth;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the oldest queued sample into {@code out}. Consumer thread only.
+     * {@code out} may be overwritten even when this returns false, so treat it as scratch space.
+     *
+     * @return false if the queue was empty
+     */
+    public boolean poll(TelemetrySample out) {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return false;
+            }
+            out.copyFrom(slots[(int) h & mask]);
+            if (head.compareAndSet(h, h + 1)) {
+                return true;
+            }
+            // The producer discarded this slot while we were copying it, try the next one
+        }
+    }
+
+    /**
+     * Like {@link #poll} but parks the consumer until a sample arrives or the timeout expires.
+     *
+     * @return false on timeout or interrupt
+     */
+    public boolean take(TelemetrySample out, long timeout, TimeUnit unit) {
+        if (poll(out)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (!poll(out)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(0, tail.get() - h);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getOffered() {
+        return offered;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    // Largest queue depth seen so far
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
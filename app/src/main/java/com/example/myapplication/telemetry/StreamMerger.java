@@ -0,0 +1,309 @@
+package com.example.myapplication.telemetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges the sample streams of several sensor units into one stream ordered by timestamp.
+ *
+ * <p>Each source gets a fixed-size queue of preallocated samples. The oldest head across the
+ * queues is released as soon as every source has something queued, which is a plain k-way merge;
+ * a source that has gone quiet can hold the others back for at most
+ * {@link Config#latenessMicros} of their time. A sample older than one already released is too
+ * late to be placed and is dropped. If a queue fills up, the merge releases early instead of
+ * losing samples. With a single source nothing is ever held back.
+ *
+ * <p>The heads are compared with a linear scan; there are only ever a handful of units, so this
+ * beats a heap. Timestamps of different units are compared as they are, so they have to be on a
+ * common time base; BluetoothClient moves them onto the phone's clock first. Samples are told
+ * apart by {@link TelemetrySample#getSourceId()}.
+ *
+ * <p>Thread-safe, since every unit delivers on its own GATT thread. Downstream is called under
+ * the lock and must not block.
+ */
+public final class StreamMerger implements SampleListener {
+    public static final class Config {
+        // Samples held per source while waiting for the others
+        public int capacityPerSource = 256;
+        // How far behind the newest sample a slow source may hold the merge back
+        public long latenessMicros = 50_000;
+    }
+
+    // Point-in-time statistics for one source
+    public static final class SourceStats {
+        private final int sourceId;
+        private final long received;
+        private final long released;
+        private final long lateDrops;
+        private final long sequenceGaps;
+        private final double rateHz;
+        private final long skewMicros;
+        private final long maxSkewMicros;
+
+        SourceStats(int sourceId, long received, long released, long lateDrops, long sequenceGaps,
+                    double rateHz, long skewMicros, long maxSkewMicros) {
+            this.sourceId = sourceId;
+            this.received = received;
+            this.released = released;
+            this.lateDrops = lateDrops;
+            this.sequenceGaps = sequenceGaps;
+            this.rateHz = rateHz;
+            this.skewMicros = skewMicros;
+            this.maxSkewMicros = maxSkewMicros;
+        }
+
+        public int getSourceId() {
+            return sourceId;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        // Samples passed downstream
+        public long getReleased() {
+            return released;
+        }
+
+        // Samples that arrived after the merge had moved past them
+        public long getLateDrops() {
+            return lateDrops;
+        }
+
+        // Samples the unit sent that never arrived, from holes in the sequence numbers
+        public long getSequenceGaps() {
+            return sequenceGaps;
+        }
+
+        // Sample rate from the sample timestamps, 0 until two samples were seen
+        public double getRateHz() {
+            return rateHz;
+        }
+
+        // How far this source's newest sample is behind the newest of any source
+        public long getSkewMicros() {
+            return skewMicros;
+        }
+
+        public long getMaxSkewMicros() {
+            return maxSkewMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "source " + sourceId + ": " + received + " received, " + released + " released, "
+                    + lateDrops + " late, " + sequenceGaps + " lost, " + Math.round(rateHz) + " Hz, skew "
+                    + skewMicros + " us (max " + maxSkewMicros + " us)";
+        }
+    }
+
+    private static final class Source {
+        final int id;
+        final TelemetrySample[] slots;
+        int head;
+        int size;
+
+        long received;
+        long released;
+        long lateDrops;
+        long sequenceGaps;
+        int lastSequence = -1;
+        long firstMicros;
+        long lastMicros = Long.MIN_VALUE;
+        long maxSkewMicros;
+
+        Source(int id, int capacity) {
+            this.id = id;
+            this.slots = new TelemetrySample[capacity];
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new TelemetrySample();
+            }
+        }
+
+        TelemetrySample slot(int index) {
+            return slots[(head + index) % slots.length];
+        }
+
+        long headMicros() {
+            return slots[head].getTimestampMicros();
+        }
+    }
+
+    private final SampleListener downstream;
+    private final Config config;
+    private Source[] sources = new Source[0];
+    private long newestMicros = Long.MIN_VALUE;
+    private long lastReleasedMicros = Long.MIN_VALUE;
+    private long forcedReleases;
+
+    public StreamMerger(SampleListener downstream, Config config) {
+        if (config.capacityPerSource < 1) {
+            throw new IllegalArgumentException("capacityPerSource must be positive");
+        }
+        this.downstream = downstream;
+        this.config = config;
+    }
+
+    // Registers a source up front so the merge waits for it; unknown sources are added on their first sample
+    public synchronized void addSource(int sourceId) {
+        sourceFor(sourceId);
+    }
+
+    // A unit reconnected and may have rebooted; its sequence numbers start over without counting as lost
+    public synchronized void onSourceReconnected(int sourceId) {
+        sourceFor(sourceId).lastSequence = -1;
+    }
+
+    @Override
+    public synchronized void onSampleReceived(TelemetrySample sample) {
+        Source source = sourceFor(sample.getSourceId());
+        source.received++;
+        int sequence = sample.getSequence() & 0xFFFF;
+        if (source.lastSequence >= 0) {
+            int gap = (sequence - source.lastSequence - 1) & 0xFFFF;
+            // A huge gap is a duplicate or a reordered frame, not 60k lost ones
+            if (gap < 0x8000) {
+                source.sequenceGaps += gap;
+            }
+        }
+        source.lastSequence = sequence;
+
+        long micros = sample.getTimestampMicros();
+        if (newestMicros != Long.MIN_VALUE && newestMicros - micros > source.maxSkewMicros) {
+            source.maxSkewMicros = newestMicros - micros;
+        }
+        if (micros < lastReleasedMicros) {
+            source.lateDrops++;
+            return;
+        }
+        if (source.lastMicros == Long.MIN_VALUE) {
+            source.firstMicros = micros;
+        }
+        source.lastMicros = Math.max(source.lastMicros, micros);
+        newestMicros = Math.max(newestMicros, micros);
+
+        while (source.size == source.slots.length) {
+            forcedReleases++;
+            releaseOldest();
+        }
+        enqueue(source, sample);
+        drain(false);
+    }
+
+    // Hands a sample straight downstream for a source that must not hold the merge back, like the
+    // phone's IMU. Taking the lock keeps downstream's rings down to one producer at a time.
+    public synchronized void forward(TelemetrySample sample) {
+        downstream.onSampleReceived(sample);
+    }
+
+    // Releases everything still queued, in order, e.g. when the ride stops
+    public synchronized void flush() {
+        drain(true);
+    }
+
+    public synchronized SourceStats getStats(int sourceId) {
+        for (Source source : sources) {
+            if (source.id == sourceId) {
+                return stats(source);
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<SourceStats> getStats() {
+        List<SourceStats> stats = new ArrayList<>(sources.length);
+        for (Source source : sources) {
+            stats.add(stats(source));
+        }
+        return stats;
+    }
+
+    // Samples waiting for the other sources
+    public synchronized int getQueuedCount() {
+        int queued = 0;
+        for (Source source : sources) {
+            queued += source.size;
+        }
+        return queued;
+    }
+
+    // Releases made early because a queue was full
+    public synchronized long getForcedReleases() {
+        return forcedReleases;
+    }
+
+    private Source sourceFor(int sourceId) {
+        for (Source source : sources) {
+            if (source.id == sourceId) {
+                return source;
+            }
+        }
+        Source source = new Source(sourceId, config.capacityPerSource);
+        sources = Arrays.copyOf(sources, sources.length + 1);
+        sources[sources.length - 1] = source;
+        return source;
+    }
+
+    // Keeps each queue sorted; a unit's own samples normally arrive in order, so this rarely shifts
+    private static void enqueue(Source source, TelemetrySample sample) {
+        int index = source.size;
+        long micros = sample.getTimestampMicros();
+        while (index > 0 && source.slot(index - 1).getTimestampMicros() > micros) {
+            source.slot(index).copyFrom(source.slot(index - 1));
+            index--;
+        }
+        source.slot(index).copyFrom(sample);
+        source.size++;
+    }
+
+    private void drain(boolean all) {
+        while (true) {
+            Source oldest = null;
+            boolean everySourceQueued = true;
+            for (Source source : sources) {
+                if (source.size == 0) {
+                    everySourceQueued = false;
+                } else if (oldest == null || source.headMicros() < oldest.headMicros()) {
+                    oldest = source;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            // A missing source might still send something older, unless it is too late for that
+            if (!all && !everySourceQueued && oldest.headMicros() > newestMicros - config.latenessMicros) {
+                return;
+            }
+            release(oldest);
+        }
+    }
+
+    private void releaseOldest() {
+        Source oldest = null;
+        for (Source source : sources) {
+            if (source.size > 0 && (oldest == null || source.headMicros() < oldest.headMicros())) {
+                oldest = source;
+            }
+        }
+        release(oldest);
+    }
+
+    private void release(Source source) {
+        TelemetrySample sample = source.slots[source.head];
+        lastReleasedMicros = sample.getTimestampMicros();
+        source.head = (source.head + 1) % source.slots.length;
+        source.size--;
+        source.released++;
+        downstream.onSampleReceived(sample);
+    }
+
+    private SourceStats stats(Source source) {
+        long span = source.lastMicros - source.firstMicros;
+        long accepted = source.received - source.lateDrops;
+        double rate = source.lastMicros != Long.MIN_VALUE && span > 0 ? (accepted - 1) * 1e6 / span : 0;
+        long skew = source.lastMicros == Long.MIN_VALUE ? 0 : newestMicros - source.lastMicros;
+        return new SourceStats(source.id, source.received, source.released, source.lateDrops, source.sequenceGaps,
+                rate, skew, source.maxSkewMicros);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.myapplication.telemetry;
+
+/**
+ * Binary telemetry frame sent by the Pi, one or more per BLE notification.
+ *
+ * <pre>
+ * offset size  field
+ *  0     2     sequence number, uint16
+ *  2     4     sensor timestamp in microseconds, uint32 (wraps every ~71 minutes)
+ *  6     6     accel x, y, z as int16 milli-g
+ * 12     6     gyro x, y, z as int16 tenths of a degree per second
+ * 18     2     CRC-16/CCITT-FALSE over bytes 0..17
+ * </pre>
+ *
+ * All fields are little-endian. A frame is 20 bytes so that it fits the payload of a
+ * notification on the default 23-byte ATT MTU; with a larger MTU the Pi packs several frames
+ * back to back into one notification.
+ */
+public final class TelemetryFrame {
+    public static final int SIZE = 20;
+    static final int CRC_OFFSET = 18;
+
+    public static final float ACCEL_SCALE = 1000f; // raw units per g
+    public static final float GYRO_SCALE = 10f;    // raw units per degree/s
+
+    private static final short[] CRC_TABLE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = (short) crc;
+        }
+    }
+
+    private TelemetryFrame() {}
+
+    // Returns true if the payload looks like one or more binary frames rather than the legacy text protocol
+    public static boolean isBinaryPayload(byte[] payload) {
+        return payload != null && payload.length > 0 && payload.length % SIZE == 0;
+    }
+
+    // Number of whole frames in a payload of the given length
+    public static int frameCount(int payloadLength) {
+        return payloadLength / SIZE;
+    }
+
+    public static int crc16(byte[] buf, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc << 8) ^ (CRC_TABLE[((crc >>> 8) ^ buf[i]) & 0xFF] & 0xFFFF);
+        }
+        return crc & 0xFFFF;
+    }
+
+    /**
+     * Writes a sample into {@code buf} at {@code offset} as one frame. Values outside the int16
+     * range are clamped. Used by the Pi simulator, tests and the replay tools.
+     */
+    public static void encode(TelemetrySample sample, byte[] buf, int offset) {
+        putShort(buf, offset, sample.getSequence());
+        putInt(buf, offset + 2, (int) sample.getTimestampMicros());
+        putShort(buf, offset + 6, toRaw(sample.getAccelX(), ACCEL_SCALE));
+        putShort(buf, offset + 8, toRaw(sample.getAccelY(), ACCEL_SCALE));
+        putShort(buf, offset + 10, toRaw(sample.getAccelZ(), ACCEL_SCALE));
+        putShort(buf, offset + 12, toRaw(sample.getGyroX(), GYRO_SCALE));
+        putShort(buf, offset + 14, toRaw(sample.getGyroY(), GYRO_SCALE));
+        putShort(buf, offset + 16, toRaw(sample.getGyroZ(), GYRO_SCALE));
+        putShort(buf, offset + CRC_OFFSET, crc16(buf, offset, CRC_OFFSET));
+    }
+
+    static int getUnsignedShort(byte[] buf, int offset) {
+        return (buf[offset] & 0xFF) | (buf[offset + 1] & 0xFF) << 8;
+    }
+
+    static short getShort(byte[] buf, int offset) {
+        return (short) getUnsignedShort(buf, offset);
+    }
+
+    static long getUnsignedInt(byte[] buf, int offset) {
+        return ((buf[offset] & 0xFF)
+                | (buf[offset + 1] & 0xFF) << 8
+                | (buf[offset + 2] & 0xFF) << 16
+                | (long) (buf[offset + 3] & 0xFF) << 24);
+    }
+
+    private static void putShort(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) value;
+        buf[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) value;
+        buf[offset + 1] = (byte) (value >>> 8);
+        buf[offset + 2] = (byte) (value >>> 16);
+        buf[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int toRaw(float value, float scale) {
+        int raw = Math.round(value * scale);
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, raw));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.myapplication.telemetry;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns raw notification payloads into samples or legacy text messages.
+ * Binary payloads are decoded frame by frame into one reused sample; anything else is treated
+ * as the old text protocol where the Pi sends "1" for a crash.
+ */
+public final class TelemetryReceiver {
+    public interface LegacyListener {
+        void onLegacyMessage(String message);
+    }
+
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final TelemetrySample sample = new TelemetrySample();
+    private final SampleListener sampleListener;
+    private final LegacyListener legacyListener;
+
+    public TelemetryReceiver(SampleListener sampleListener, LegacyListener legacyListener) {
+        this.sampleListener = sampleListener;
+        this.legacyListener = legacyListener;
+    }
+
+    // Called with each notification payload, on the thread that owns this receiver
+    public void onNotification(byte[] payload) {
+        if (payload == null || payload.length == 0) {
+            return;
+        }
+        if (!TelemetryFrame.isBinaryPayload(payload)) {
+            if (legacyListener != null) {
+                legacyListener.onLegacyMessage(new String(payload, StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        for (int offset = 0; offset < payload.length; offset += TelemetryFrame.SIZE) {
+            if (decoder.decode(payload, offset, sample) == FrameDecoder.OK && sampleListener != null) {
+                sampleListener.onSampleReceived(sample);
+            }
+        }
+    }
+
+    public FrameDecoder getDecoder() {
+        return decoder;
+    }
+}
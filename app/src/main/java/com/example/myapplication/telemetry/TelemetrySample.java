@@ -0,0 +1,106 @@
+package com.example.myapplication.telemetry;
+
+/**
+ * One decoded sensor sample from the Pi.
+ * Instances are mutable and meant to be reused, so a listener that wants to keep a sample
+ * past its callback has to copy it with {@link #copyFrom(TelemetrySample)}.
+ */
+public final class TelemetrySample {
+    private int sourceId;
+    private int sequence;
+    private long timestampMicros;
+    private float accelX;
+    private float accelY;
+    private float accelZ;
+    private float gyroX;
+    private float gyroY;
+    private float gyroZ;
+
+    public void set(int sequence, long timestampMicros,
+                    float accelX, float accelY, float accelZ,
+                    float gyroX, float gyroY, float gyroZ) {
+        this.sequence = sequence;
+        this.timestampMicros = timestampMicros;
+        this.accelX = accelX;
+        this.accelY = accelY;
+        this.accelZ = accelZ;
+        this.gyroX = gyroX;
+        this.gyroY = gyroY;
+        this.gyroZ = gyroZ;
+    }
+
+    public void copyFrom(TelemetrySample other) {
+        sourceId = other.sourceId;
+        set(other.sequence, other.timestampMicros,
+                other.accelX, other.accelY, other.accelZ,
+                other.gyroX, other.gyroY, other.gyroZ);
+    }
+
+    // Which device the sample came from, see DeviceProfile; 0 for the single Pi setup
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public void setSourceId(int sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    // Frame sequence number (16 bits on the wire)
+    public int getSequence() {
+        return sequence;
+    }
+
+    // Sensor timestamp in microseconds, unwrapped to 64 bits; on the Pi's clock as decoded,
+    // on the phone's elapsed-realtime clock once BluetoothClient has mapped it
+    public long getTimestampMicros() {
+        return timestampMicros;
+    }
+
+    // Used to move the timestamp onto the phone's clock
+    public void setTimestampMicros(long timestampMicros) {
+        this.timestampMicros = timestampMicros;
+    }
+
+    // Acceleration in g
+    public float getAccelX() {
+        return accelX;
+    }
+
+    public float getAccelY() {
+        return accelY;
+    }
+
+    public float getAccelZ() {
+        return accelZ;
+    }
+
+    // Angular rate in degrees per second
+    public float getGyroX() {
+        return gyroX;
+    }
+
+    public float getGyroY() {
+        return gyroY;
+    }
+
+    public float getGyroZ() {
+        return gyroZ;
+    }
+
+    // Magnitude of the acceleration vector in g
+    public float accelMagnitude() {
+        return (float) Math.sqrt(accelX * accelX + accelY * accelY + accelZ * accelZ);
+    }
+
+    // Magnitude of the angular rate vector in degrees per second
+    public float gyroMagnitude() {
+        return (float) Math.sqrt(gyroX * gyroX + gyroY * gyroY + gyroZ * gyroZ);
+    }
+
+    @Override
+    public String toString() {
+        return "TelemetrySample[src=" + sourceId + ", seq=" + sequence + ", t=" + timestampMicros
+                + ", a=(" + accelX + ", " + accelY + ", " + accelZ + ")"
+                + ", g=(" + gyroX + ", " + gyroY + ", " + gyroZ + ")]";
+    }
+}
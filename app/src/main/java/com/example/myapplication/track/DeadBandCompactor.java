@@ -0,0 +1,77 @@
+package com.example.myapplication.track;
+
+/**
+ * Drops track points that add no geometric information. From the last kept point the rider is
+ * dead-reckoned at that point's velocity; a new point is only kept once the rider has strayed
+ * more than {@link Config#toleranceMeters} from that line, so straight stretches at steady speed
+ * and standing still cost one point each. A point is also kept after {@link Config#maxGapMillis}
+ * so the timeline never has long holes.
+ *
+ * <p>Not thread-safe and allocation-free.
+ */
+public final class DeadBandCompactor {
+    public static final class Config {
+        public double toleranceMeters = 5;
+        public long maxGapMillis = 30_000;
+    }
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+
+    private final Config config;
+    private boolean hasKept;
+    private long keptMillis;
+    private double keptLatitude;
+    private double keptLongitude;
+    private double keptEastVelocity;
+    private double keptNorthVelocity;
+    private long offered;
+    private long kept;
+
+    public DeadBandCompactor(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Offers the next point with its velocity in m/s, e.g. from {@link KalmanLocationFilter}.
+     *
+     * @return true if the point should be kept
+     */
+    public boolean offer(long timeMillis, double latitude, double longitude, double eastVelocity, double northVelocity) {
+        offered++;
+        if (hasKept && timeMillis - keptMillis < config.maxGapMillis) {
+            double dt = (timeMillis - keptMillis) / 1000.0;
+            double metersPerLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(keptLatitude));
+            double east = (longitude - keptLongitude) * metersPerLongitude - keptEastVelocity * dt;
+            double north = (latitude - keptLatitude) * METERS_PER_DEGREE - keptNorthVelocity * dt;
+            if (east * east + north * north <= config.toleranceMeters * config.toleranceMeters) {
+                return false;
+            }
+        }
+        hasKept = true;
+        keptMillis = timeMillis;
+        keptLatitude = latitude;
+        keptLongitude = longitude;
+        keptEastVelocity = eastVelocity;
+        keptNorthVelocity = northVelocity;
+        kept++;
+        return true;
+    }
+
+    // Starts a new track; the counts keep going
+    public void reset() {
+        hasKept = false;
+    }
+
+    public long getOffered() {
+        return offered;
+    }
+
+    public long getKept() {
+        return kept;
+    }
+
+    // Points offered per point kept, 1 until something was dropped
+    public double getCompactionRatio() {
+        return kept == 0 ? 1 : (double) offered / kept;
+    }
+}
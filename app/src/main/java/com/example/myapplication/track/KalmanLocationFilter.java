@@ -0,0 +1,199 @@
+package com.example.myapplication.track;
+
+/**
+ * Smooths position fixes and estimates speed and heading with a constant-velocity Kalman filter.
+ *
+ * <p>Positions are tracked in metres east and north of an origin near the rider, which moves along
+ * once the rider is far from it. The two axes are independent filters of position and velocity,
+ * so all the state is a handful of doubles and an update neither allocates nor inverts a matrix.
+ * Each fix is weighted by its reported accuracy. A fix too far from the prediction for its
+ * accuracy is rejected as an outlier; after several in a row the filter believes the fixes again
+ * and starts over, as it does after a long gap.
+ *
+ * <p>Not thread-safe; the service feeds it from the location callback only.
+ */
+public final class KalmanLocationFilter {
+    public static final class Config {
+        // How hard the bike can speed up, brake or turn, m/s^2
+        public double accelerationNoise = 3;
+        // Squared innovation over its variance, summed over both axes; 13.8 passes 99.9% of good fixes
+        public double outlierGate = 13.8;
+        public int maxConsecutiveOutliers = 3;
+        // A gap this long makes the prediction useless
+        public long resetAfterMillis = 20_000;
+        // Fixes never get more weight than this accuracy, however good they claim to be
+        public double minAccuracyMeters = 2;
+    }
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+    private static final double RECENTER_METERS = 10_000;
+    private static final double INITIAL_SPEED_VARIANCE = 15 * 15;
+
+    private final Config config;
+    private boolean initialized;
+    private long lastNanos;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerLongitude;
+    // Per axis: position, velocity and the covariance [p00 p01; p01 p11]
+    private double east, eastVelocity, eastP00, eastP01, eastP11;
+    private double north, northVelocity, northP00, northP01, northP11;
+    private int consecutiveOutliers;
+    private long outliers;
+    private long resets;
+
+    public KalmanLocationFilter(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Adds a fix taken at elapsedNanos, which must not go backwards.
+     *
+     * @return false if the fix was rejected as an outlier
+     */
+    public boolean update(long elapsedNanos, double latitude, double longitude, double accuracyMeters) {
+        double accuracy = Math.max(accuracyMeters, config.minAccuracyMeters);
+        double variance = accuracy * accuracy;
+        if (!initialized || elapsedNanos - lastNanos > config.resetAfterMillis * 1_000_000) {
+            start(elapsedNanos, latitude, longitude, variance);
+            return true;
+        }
+        double dt = Math.max(0, (elapsedNanos - lastNanos) / 1e9);
+        lastNanos = elapsedNanos;
+        predict(dt);
+
+        double measuredEast = (longitude - originLongitude) * metersPerLongitude;
+        double measuredNorth = (latitude - originLatitude) * METERS_PER_DEGREE;
+        double eastInnovation = measuredEast - east;
+        double northInnovation = measuredNorth - north;
+        double eastS = eastP00 + variance;
+        double northS = northP00 + variance;
+        double normalized = eastInnovation * eastInnovation / eastS + northInnovation * northInnovation / northS;
+        if (normalized > config.outlierGate) {
+            outliers++;
+            if (++consecutiveOutliers > config.maxConsecutiveOutliers) {
+                // The outliers were right all along, e.g. after a tunnel
+                start(elapsedNanos, latitude, longitude, variance);
+                return true;
+            }
+            return false;
+        }
+        consecutiveOutliers = 0;
+
+        double k0 = eastP00 / eastS;
+        double k1 = eastP01 / eastS;
+        east += k0 * eastInnovation;
+        eastVelocity += k1 * eastInnovation;
+        eastP11 -= k1 * eastP01;
+        eastP01 *= 1 - k0;
+        eastP00 *= 1 - k0;
+
+        k0 = northP00 / northS;
+        k1 = northP01 / northS;
+        north += k0 * northInnovation;
+        northVelocity += k1 * northInnovation;
+        northP11 -= k1 * northP01;
+        northP01 *= 1 - k0;
+        northP00 *= 1 - k0;
+
+        if (Math.abs(east) > RECENTER_METERS || Math.abs(north) > RECENTER_METERS) {
+            recenter();
+        }
+        return true;
+    }
+
+    public void reset() {
+        initialized = false;
+        consecutiveOutliers = 0;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public double getLatitude() {
+        return originLatitude + north / METERS_PER_DEGREE;
+    }
+
+    public double getLongitude() {
+        return originLongitude + east / metersPerLongitude;
+    }
+
+    public double getSpeedMps() {
+        return Math.hypot(eastVelocity, northVelocity);
+    }
+
+    // Degrees clockwise from north, 0..360
+    public double getHeadingDegrees() {
+        double heading = Math.toDegrees(Math.atan2(eastVelocity, northVelocity));
+        return heading < 0 ? heading + 360 : heading;
+    }
+
+    public double getEastVelocity() {
+        return eastVelocity;
+    }
+
+    public double getNorthVelocity() {
+        return northVelocity;
+    }
+
+    // One standard deviation of the smoothed position, averaged over both axes
+    public double getPositionErrorMeters() {
+        return Math.sqrt((eastP00 + northP00) / 2);
+    }
+
+    public long getOutliers() {
+        return outliers;
+    }
+
+    // Starts over after a gap or a run of outliers, the first fix excluded
+    public long getResets() {
+        return resets;
+    }
+
+    private void start(long elapsedNanos, double latitude, double longitude, double variance) {
+        if (initialized) {
+            resets++;
+        }
+        initialized = true;
+        lastNanos = elapsedNanos;
+        consecutiveOutliers = 0;
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        east = 0;
+        north = 0;
+        eastVelocity = 0;
+        northVelocity = 0;
+        eastP00 = variance;
+        northP00 = variance;
+        eastP01 = 0;
+        northP01 = 0;
+        eastP11 = INITIAL_SPEED_VARIANCE;
+        northP11 = INITIAL_SPEED_VARIANCE;
+    }
+
+    // Constant velocity for dt, with acceleration as white noise
+    private void predict(double dt) {
+        double q = config.accelerationNoise * config.accelerationNoise;
+        double dt2 = dt * dt;
+        east += eastVelocity * dt;
+        eastP00 += dt * (2 * eastP01 + dt * eastP11) + q * dt2 * dt2 / 4;
+        eastP01 += dt * eastP11 + q * dt2 * dt / 2;
+        eastP11 += q * dt2;
+        north += northVelocity * dt;
+        northP00 += dt * (2 * northP01 + dt * northP11) + q * dt2 * dt2 / 4;
+        northP01 += dt * northP11 + q * dt2 * dt / 2;
+        northP11 += q * dt2;
+    }
+
+    private void recenter() {
+        double latitude = getLatitude();
+        double longitude = getLongitude();
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        east = 0;
+        north = 0;
+    }
+}
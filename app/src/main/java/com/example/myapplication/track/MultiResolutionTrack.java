@@ -0,0 +1,198 @@
+package com.example.myapplication.track;
+
+import java.util.Arrays;
+
+/**
+ * A ride's GPS track, kept simplified at several map zoom levels so the map only ever draws about
+ * as many points as can be told apart on screen.
+ *
+ * <p>Points are projected to Web Mercator, where a tolerance of {@link Config#pixelTolerance}
+ * screen pixels is a fixed distance for each zoom level. Simplification is incremental: the
+ * points since the last frozen vertex of a level are simplified again when the level is read,
+ * and once more than {@link Config#chunkSize} have piled up, that chunk is simplified one final
+ * time and frozen. Appending a point therefore costs the same at the end of a long ride as at its
+ * start, and every point stays within the tolerance of its level's line.
+ *
+ * <p>Not thread-safe; TrackRenderer keeps it on one worker thread.
+ */
+public final class MultiResolutionTrack {
+    public static final class Config {
+        // Zoom levels with their own simplification, ascending; the last one is used for anything closer
+        public int[] zooms = {5, 9, 12, 15, 18};
+        // Largest on-screen error allowed at each level's zoom
+        public double pixelTolerance = 1.0;
+        // Points re-simplified on every read before they are frozen
+        public int chunkSize = 1024;
+    }
+
+    public interface PointSink {
+        void accept(double latitude, double longitude);
+    }
+
+    private static final double TILE_PIXELS = 256;
+
+    private static final class Level {
+        final int zoom;
+        final double tolerance;
+        int[] frozen = new int[64];
+        int frozenCount;
+        int[] tail;
+        int tailCount;
+        boolean tailValid;
+
+        Level(int zoom, double tolerance, int chunkSize) {
+            this.zoom = zoom;
+            this.tolerance = tolerance;
+            this.tail = new int[chunkSize + 1];
+        }
+
+        int anchor() {
+            return frozen[frozenCount - 1];
+        }
+    }
+
+    private final Config config;
+    private final Level[] levels;
+    private final TrackSimplifier simplifier = new TrackSimplifier();
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int size;
+
+    public MultiResolutionTrack(Config config) {
+        if (config.zooms.length == 0 || config.chunkSize < 2) {
+            throw new IllegalArgumentException("need at least one zoom level and a chunk of two points");
+        }
+        this.config = config;
+        this.levels = new Level[config.zooms.length];
+        for (int i = 0; i < levels.length; i++) {
+            int zoom = config.zooms[i];
+            if (i > 0 && zoom <= config.zooms[i - 1]) {
+                throw new IllegalArgumentException("zooms must be ascending");
+            }
+            // One pixel at this zoom in world units, where the whole world is 1 x 1
+            levels[i] = new Level(zoom, config.pixelTolerance / (TILE_PIXELS * Math.pow(2, zoom)), config.chunkSize);
+        }
+    }
+
+    public void append(double latitude, double longitude) {
+        if (size == latitudes.length) {
+            int capacity = size * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        xs[size] = mercatorX(longitude);
+        ys[size] = mercatorY(latitude);
+        size++;
+        for (Level level : levels) {
+            if (level.frozenCount == 0) {
+                level.frozen[level.frozenCount++] = 0;
+            }
+            level.tailValid = false;
+            while (size - 1 - level.anchor() >= config.chunkSize) {
+                freezeChunk(level);
+            }
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        for (Level level : levels) {
+            level.frozenCount = 0;
+            level.tailCount = 0;
+            level.tailValid = false;
+        }
+    }
+
+    // Points appended so far
+    public int size() {
+        return size;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getZoom(int level) {
+        return levels[level].zoom;
+    }
+
+    // The level to draw at a map zoom: the most detailed one not finer than the zoom needs
+    public int levelFor(float zoom) {
+        int level = 0;
+        while (level + 1 < levels.length && levels[level + 1].zoom <= zoom) {
+            level++;
+        }
+        return level;
+    }
+
+    // Points of the level's line
+    public int getPointCount(int level) {
+        Level l = levels[level];
+        if (l.frozenCount == 0) {
+            return 0;
+        }
+        updateTail(l);
+        return l.frozenCount + l.tailCount;
+    }
+
+    // Leading points of the level's line that will not change any more
+    public int getFrozenCount(int level) {
+        return levels[level].frozenCount;
+    }
+
+    // Passes points from (inclusive) to to (exclusive) of the level's line to sink
+    public void forEachPoint(int level, int from, int to, PointSink sink) {
+        Level l = levels[level];
+        if (l.frozenCount == 0) {
+            return;
+        }
+        updateTail(l);
+        for (int i = from; i < Math.min(to, l.frozenCount); i++) {
+            int index = l.frozen[i];
+            sink.accept(latitudes[index], longitudes[index]);
+        }
+        for (int i = Math.max(0, from - l.frozenCount); i < Math.min(l.tailCount, to - l.frozenCount); i++) {
+            int index = l.tail[i];
+            sink.accept(latitudes[index], longitudes[index]);
+        }
+    }
+
+    private void freezeChunk(Level level) {
+        int anchor = level.anchor();
+        int count = simplifier.simplify(xs, ys, anchor, anchor + config.chunkSize, level.tolerance, level.tail, 0);
+        if (level.frozenCount + count > level.frozen.length) {
+            level.frozen = Arrays.copyOf(level.frozen, Math.max(level.frozen.length * 2, level.frozenCount + count));
+        }
+        // The first one is the anchor, already frozen
+        System.arraycopy(level.tail, 1, level.frozen, level.frozenCount, count - 1);
+        level.frozenCount += count - 1;
+    }
+
+    // Simplifies the points after the anchor, which are not frozen yet
+    private void updateTail(Level level) {
+        if (level.tailValid) {
+            return;
+        }
+        int anchor = level.anchor();
+        int count = simplifier.simplify(xs, ys, anchor, size - 1, level.tolerance, level.tail, 0);
+        // Drop the anchor, it is the last frozen point
+        System.arraycopy(level.tail, 1, level.tail, 0, count - 1);
+        level.tailCount = count - 1;
+        level.tailValid = true;
+    }
+
+    static double mercatorX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    static double mercatorY(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.05113, Math.min(85.05113, latitude))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+}
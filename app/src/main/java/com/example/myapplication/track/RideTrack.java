@@ -0,0 +1,73 @@
+package com.example.myapplication.track;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The current ride's track: smoothed position fixes, minus those that add nothing to its shape.
+ * Written by the service's location callback and read by whichever map is showing the ride;
+ * listeners are told about new points and fetch them with {@link #copy}, so a map attaching
+ * halfway through starts from 0.
+ */
+public final class RideTrack {
+    // Called on the writing thread; fetch the points elsewhere
+    public interface Listener {
+        void onPointsAdded(int size);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+    private long[] times = new long[1024];
+    private int size;
+
+    public void append(long timeMillis, double latitude, double longitude) {
+        int newSize;
+        synchronized (this) {
+            if (size == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            times[size] = timeMillis;
+            newSize = ++size;
+        }
+        for (Listener listener : listeners) {
+            listener.onPointsAdded(newSize);
+        }
+    }
+
+    public synchronized void clear() {
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Copies the points from index from on into the arrays, as many as fit.
+     *
+     * @return number of points copied
+     */
+    public synchronized int copy(int from, double[] latitudesOut, double[] longitudesOut) {
+        int count = Math.max(0, Math.min(size - from, Math.min(latitudesOut.length, longitudesOut.length)));
+        System.arraycopy(latitudes, from, latitudesOut, 0, count);
+        System.arraycopy(longitudes, from, longitudesOut, 0, count);
+        return count;
+    }
+
+    public synchronized long getTimeMillis(int index) {
+        return times[index];
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+}
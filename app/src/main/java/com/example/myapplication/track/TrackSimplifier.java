@@ -0,0 +1,95 @@
+package com.example.myapplication.track;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker polyline simplification over planar coordinates.
+ *
+ * <p>Keeps the fewest points such that every dropped point lies within the tolerance of the
+ * segment between the kept points around it. Distances are measured to the segment, not the
+ * infinite line, so a track that doubles back on itself keeps its turnaround. Iterative with an
+ * explicit stack, so a ride of hundreds of thousands of points can't overflow the thread's stack;
+ * the scratch arrays are reused between calls. Not thread-safe.
+ */
+public final class TrackSimplifier {
+    private int[] stack = new int[64];
+    private boolean[] keep = new boolean[0];
+
+    /**
+     * Simplifies the points from..to, both inclusive, and writes the indices of the kept points
+     * to out in order, starting at outOffset. The first and last point are always kept.
+     *
+     * @return number of indices written; out must have room for to - from + 1
+     */
+    public int simplify(double[] x, double[] y, int from, int to, double tolerance, int[] out, int outOffset) {
+        if (to < from) {
+            return 0;
+        }
+        int n = to - from + 1;
+        if (n <= 2) {
+            out[outOffset] = from;
+            if (n == 2) {
+                out[outOffset + 1] = to;
+            }
+            return n;
+        }
+        if (keep.length < n) {
+            keep = new boolean[Math.max(n, keep.length * 2)];
+        }
+        Arrays.fill(keep, 0, n, false);
+        keep[0] = true;
+        keep[n - 1] = true;
+        double toleranceSquared = tolerance * tolerance;
+
+        int top = 0;
+        push(top++, from);
+        push(top++, to);
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistanceSquared(x[i], y[i], x[start], y[start], x[end], y[end]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && maxDistance > toleranceSquared) {
+                keep[farthest - from] = true;
+                push(top++, start);
+                push(top++, farthest);
+                push(top++, farthest);
+                push(top++, end);
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                out[outOffset + count++] = from + i;
+            }
+        }
+        return count;
+    }
+
+    private void push(int index, int value) {
+        if (index == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[index] = value;
+    }
+
+    // Squared distance from (px, py) to the segment a-b
+    static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.myapplication.ui;
+
+import android.view.Choreographer;
+
+/**
+ * {@link FrameScheduler} backed by the main thread's {@link Choreographer}, so callbacks run in
+ * step with vsync. Must be created on the main thread.
+ */
+public final class ChoreographerFrameScheduler implements FrameScheduler {
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    // Presenters post the same callback every frame, so keep its wrapper instead of allocating one per post
+    private FrameCallback lastCallback;
+    private Choreographer.FrameCallback lastWrapper;
+
+    @Override
+    public synchronized void postFrameCallback(FrameCallback callback) {
+        if (callback != lastCallback) {
+            lastCallback = callback;
+            lastWrapper = callback::doFrame;
+        }
+        choreographer.postFrameCallback(lastWrapper);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.myapplication.ui;
+
+/**
+ * Runs a callback on the UI thread before the next display frame.
+ * Production code uses {@link ChoreographerFrameScheduler}; tests drive frames by hand.
+ */
+public interface FrameScheduler {
+    interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    // May be called from any thread
+    void postFrameCallback(FrameCallback callback);
+}
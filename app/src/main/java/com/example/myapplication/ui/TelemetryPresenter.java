@@ -0,0 +1,149 @@
+package com.example.myapplication.ui;
+
+import com.example.myapplication.metrics.Counter;
+import com.example.myapplication.telemetry.SampleListener;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces telemetry and status updates into at most one UI update per display frame.
+ * Updates only overwrite the latest value of each field; the first update after a frame posts a
+ * single frame callback, and every further update until that frame runs is free. Nothing is
+ * posted to the main thread per packet.
+ */
+public final class TelemetryPresenter implements SampleListener, FrameScheduler.FrameCallback {
+    public interface View {
+        void showTelemetry(String text);
+    }
+
+    private final FrameScheduler scheduler;
+    private final View view;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final AtomicLong updates = new AtomicLong();
+    private volatile long publishes;
+    private volatile Counter publishCounter;
+
+    private volatile String status;
+    private volatile String debug;
+    private volatile boolean hasSample;
+    private volatile float gForce;
+    private volatile float angularRate;
+    private volatile int sequence;
+
+    // Only touched on the UI thread
+    private final StringBuilder text = new StringBuilder(96);
+
+    public TelemetryPresenter(FrameScheduler scheduler, View view) {
+        this.scheduler = scheduler;
+        this.view = view;
+    }
+
+    @Override
+    public void onSampleReceived(TelemetrySample sample) {
+        gForce = sample.accelMagnitude();
+        angularRate = sample.gyroMagnitude();
+        sequence = sample.getSequence();
+        hasSample = true;
+        requestFrame();
+    }
+
+    // Replaces the status line shown above the live telemetry
+    public void showStatus(String message) {
+        status = message;
+        requestFrame();
+    }
+
+    // Extra lines below the telemetry, e.g. metrics in debug builds; null to hide
+    public void showDebug(String text) {
+        debug = text;
+        requestFrame();
+    }
+
+    // Also counts every publish into counter, e.g. a registry's, or stops when null
+    public void setPublishCounter(Counter counter) {
+        publishCounter = counter;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Clear first so an update racing with this frame schedules the next one
+        frameScheduled.set(false);
+
+        text.setLength(0);
+        String currentStatus = status;
+        if (currentStatus != null) {
+            text.append(currentStatus);
+        }
+        if (hasSample) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append("Acceleration: ");
+            appendFixed(text, gForce, 2);
+            text.append(" g  Rotation: ");
+            appendFixed(text, angularRate, 1);
+            text.append(" deg/s  #").append(sequence);
+        }
+        String currentDebug = debug;
+        if (currentDebug != null) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(currentDebug);
+        }
+        view.showTelemetry(text.toString());
+        publishes++;
+        Counter counter = publishCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    // Total updates received
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    // Updates that actually reached the view
+    public long getPublishCount() {
+        return publishes;
+    }
+
+    // Updates absorbed by a later update in the same frame
+    public long getCoalescedCount() {
+        return Math.max(0, updates.get() - publishes);
+    }
+
+    private void requestFrame() {
+        updates.incrementAndGet();
+        if (frameScheduled.compareAndSet(false, true)) {
+            scheduler.postFrameCallback(this);
+        }
+    }
+
+    // Appends value rounded to the given number of decimals without going through String.format
+    static void appendFixed(StringBuilder sb, float value, int decimals) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(Math.abs((double) value) * scale);
+        if (value < 0 && scaled != 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / scale);
+        if (decimals > 0) {
+            sb.append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                sb.append((char) ('0' + (fraction / digit) % 10));
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.myapplication.util;
+
+/**
+ * Monotonic time source, so timing logic can run against a virtual clock in tests.
+ */
+public interface Clock {
+    Clock SYSTEM = System::nanoTime;
+
+    long nanoTime();
+}
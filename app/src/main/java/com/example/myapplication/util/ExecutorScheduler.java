@@ -0,0 +1,22 @@
+package com.example.myapplication.util;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Scheduler} backed by a {@link ScheduledExecutorService}, which should be single threaded.
+ */
+public final class ExecutorScheduler implements Scheduler {
+    private final ScheduledExecutorService executor;
+
+    public ExecutorScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Cancellable schedule(Runnable task, long delayMillis) {
+        ScheduledFuture<?> future = executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.myapplication.util;
+
+import android.os.Handler;
+
+/**
+ * {@link Scheduler} that runs tasks on a {@link Handler}'s looper.
+ */
+public final class HandlerScheduler implements Scheduler {
+    private final Handler handler;
+
+    public HandlerScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public Cancellable schedule(Runnable task, long delayMillis) {
+        // Wrap so cancelling only removes this posting even if the same Runnable is scheduled twice
+        Runnable posted = task::run;
+        handler.postDelayed(posted, delayMillis);
+        return () -> handler.removeCallbacks(posted);
+    }
+}
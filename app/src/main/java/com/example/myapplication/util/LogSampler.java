@@ -0,0 +1,37 @@
+package com.example.myapplication.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets at most one log line through per interval from a hot path, e.g. once per second out of a
+ * 100 Hz packet stream, and counts the ones it held back so the line that does get through can
+ * say how many were skipped. Lock-free; a call that is not let through costs one atomic read.
+ */
+public final class LogSampler {
+    private final Clock clock;
+    private final long intervalNanos;
+    private final AtomicLong nextNanos;
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public LogSampler(Clock clock, long intervalMillis) {
+        this.clock = clock;
+        this.intervalNanos = intervalMillis * 1_000_000;
+        this.nextNanos = new AtomicLong(clock.nanoTime());
+    }
+
+    // True if the caller should log now
+    public boolean shouldLog() {
+        long now = clock.nanoTime();
+        long next = nextNanos.get();
+        if (now - next >= 0 && nextNanos.compareAndSet(next, now + intervalNanos)) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    // Lines held back since the last call, for the one that gets through
+    public long takeSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.myapplication.util;
+
+/**
+ * Runs tasks after a delay on a single thread. Implementations exist for Android handlers,
+ * executors and, in tests, a virtual clock.
+ */
+public interface Scheduler {
+    interface Cancellable {
+        void cancel();
+    }
+
+    Cancellable schedule(Runnable task, long delayMillis);
+}
@@ -0,0 +1,161 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ClockOffsetEstimatorTest {
+    // The unit's clock: started long before the phone's and runs 40 ppm fast
+    private static final long REMOTE_EPOCH_MICROS = 1_700_000_000_000_000L;
+    private static final double DRIFT = 40e-6;
+
+    private static long remoteAt(long localMicros) {
+        return REMOTE_EPOCH_MICROS + localMicros + Math.round(localMicros * DRIFT);
+    }
+
+    private final Random random = new Random(11);
+
+    // One-way BLE delay: a few ms with the odd long stall
+    private long delayMicros() {
+        long delay = 3_000 + random.nextInt(7_500);
+        if (random.nextInt(10) == 0) {
+            delay += 50_000 + random.nextInt(100_000);
+        }
+        return delay;
+    }
+
+    @Test
+    public void exchanges_recoverOffsetAndDrift() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(new ClockOffsetEstimator.Config());
+        long local = 5_000_000;
+        for (int i = 0; i < 200; i++) {
+            long outbound = delayMicros();
+            long back = delayMicros();
+            long t1 = local;
+            long t2 = remoteAt(t1 + outbound);
+            long t3 = t2 + 300;
+            long t4 = t1 + outbound + 300 + back;
+            estimator.addExchange(t1, t2, t3, t4);
+            local += 5_000_000;
+        }
+        assertTrue(estimator.isSynchronized());
+        assertEquals(40, estimator.getDriftPpm(), 15);
+        // A sample stamped now on the unit maps back to now on the phone, within the delay asymmetry
+        long remoteNow = remoteAt(local);
+        assertEquals(local, estimator.toLocalMicros(remoteNow), 3_000);
+        assertEquals(remoteNow - local, estimator.offsetMicros(local), 3_000);
+        assertTrue(estimator.getMinRoundTripMicros() >= 6_000);
+    }
+
+    @Test
+    public void impossibleAndSlowExchanges_areRejected() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(new ClockOffsetEstimator.Config());
+        assertFalse(estimator.addExchange(1_000, 500, 400, 2_000)); // t3 before t2
+        assertFalse(estimator.addExchange(1_000, 500, 600, 900)); // answer before the request
+        assertFalse(estimator.addExchange(0, 10, 20, 2_000_000)); // two seconds round trip
+        assertEquals(3, estimator.getRejected());
+        assertFalse(estimator.isSynchronized());
+    }
+
+    @Test
+    public void withoutExchanges_arrivalsGiveAFirstGuess() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(new ClockOffsetEstimator.Config());
+        assertEquals(123, estimator.toLocalMicros(123));
+        for (long local = 0; local < 5_000_000; local += 5_000) {
+            long sensed = local - delayMicros();
+            estimator.observeArrival(remoteAt(sensed), local);
+        }
+        assertFalse(estimator.isSynchronized());
+        // Off by the quickest delivery seen, a few ms
+        long remote = remoteAt(4_000_000);
+        long mapped = estimator.toLocalMicros(remote);
+        assertTrue(mapped >= 4_000_000);
+        assertTrue(mapped <= 4_000_000 + 4_000);
+
+        estimator.reset();
+        assertEquals(remote, estimator.toLocalMicros(remote));
+    }
+
+    // A unit answering the sync protocol with its skewed clock and a delay each way
+    private class FakeUnit implements ClockSync.Transport {
+        final VirtualScheduler scheduler;
+        int answered;
+        boolean silent;
+
+        FakeUnit(VirtualScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public CompletableFuture<byte[]> exchange(byte[] request) {
+            CompletableFuture<byte[]> answer = new CompletableFuture<>();
+            if (silent) {
+                scheduler.schedule(() -> answer.completeExceptionally(new RuntimeException("timeout")), 5_000);
+                return answer;
+            }
+            ByteBuffer in = ByteBuffer.wrap(request).order(ByteOrder.LITTLE_ENDIAN);
+            byte type = in.get();
+            byte id = in.get();
+            long t1 = in.getLong();
+            long outbound = delayMicros() / 1_000;
+            long back = delayMicros() / 1_000;
+            scheduler.schedule(() -> {
+                long t2 = remoteAt(scheduler.nanoTime() / 1_000);
+                scheduler.schedule(() -> {
+                    answered++;
+                    answer.complete(ByteBuffer.allocate(ClockSync.RESPONSE_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+                            .put(type).put(id).putLong(t1).putLong(t2).putLong(t2 + 500).array());
+                }, back);
+            }, outbound);
+            return answer;
+        }
+    }
+
+    @Test
+    public void clockSync_convergesAgainstASkewedUnit() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        FakeUnit unit = new FakeUnit(scheduler);
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(new ClockOffsetEstimator.Config());
+        ClockSync.Config config = new ClockSync.Config();
+        ClockSync sync = new ClockSync(unit, estimator, scheduler, scheduler, config);
+        sync.start();
+
+        // Fast exchanges until synchronized, then it slows down
+        scheduler.advanceMillis(5_000);
+        assertTrue(estimator.isSynchronized());
+        int afterFastPhase = unit.answered;
+        scheduler.advanceMillis(10 * config.intervalMillis);
+        assertTrue(unit.answered - afterFastPhase <= 11);
+
+        scheduler.advanceMillis(200 * config.intervalMillis);
+        long local = scheduler.nanoTime() / 1_000;
+        assertEquals(local, estimator.toLocalMicros(remoteAt(local)), 3_000);
+        assertEquals(40, estimator.getDriftPpm(), 5);
+        assertEquals(0, sync.getFailures());
+
+        sync.stop();
+        assertEquals(0, scheduler.pendingTasks());
+    }
+
+    @Test
+    public void clockSync_givesUpOnAUnitThatNeverAnswers() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        FakeUnit unit = new FakeUnit(scheduler);
+        unit.silent = true;
+        ClockSync.Config config = new ClockSync.Config();
+        ClockSync sync = new ClockSync(unit, new ClockOffsetEstimator(new ClockOffsetEstimator.Config()),
+                scheduler, scheduler, config);
+        sync.start();
+        scheduler.advanceMillis(60_000);
+        assertFalse(sync.isRunning());
+        assertEquals(config.maxConsecutiveFailures, sync.getFailures());
+        assertEquals(0, scheduler.pendingTasks());
+    }
+}
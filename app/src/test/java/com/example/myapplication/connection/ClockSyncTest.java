@@ -0,0 +1,86 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.telemetry.FrameDecoder;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final ClockOffsetEstimator estimator = new ClockOffsetEstimator(new ClockOffsetEstimator.Config());
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final TelemetrySample sample = new TelemetrySample();
+    private final byte[] frame = new byte[TelemetryFrame.SIZE];
+    private int sequence;
+
+    private long localMicros() {
+        return scheduler.nanoTime() / 1_000;
+    }
+
+    // A unit that answers straight away from a clock offsetMicros ahead of the phone's
+    private ClockSync.Transport unit(long offsetMicros) {
+        return request -> {
+            ByteBuffer in = ByteBuffer.wrap(request).order(ByteOrder.LITTLE_ENDIAN);
+            in.get();
+            byte id = in.get();
+            long t1 = in.getLong();
+            long unitMicros = localMicros() + offsetMicros;
+            return CompletableFuture.completedFuture(ByteBuffer.allocate(ClockSync.RESPONSE_LENGTH)
+                    .order(ByteOrder.LITTLE_ENDIAN).put(ClockSync.TYPE_SYNC).put(id)
+                    .putLong(t1).putLong(unitMicros).putLong(unitMicros).array());
+        };
+    }
+
+    // The frame the unit sends now, as the phone maps it
+    private long sampleToLocal(long offsetMicros) {
+        sample.set(sequence++, localMicros() + offsetMicros, 0, 0, 1, 0, 0, 0);
+        TelemetryFrame.encode(sample, frame, 0); // keeps the low 32 bits, like the unit
+        assertEquals(FrameDecoder.OK, decoder.decode(frame, 0, sample));
+        return estimator.toLocalMicros(sample.getTimestampMicros());
+    }
+
+    @Test
+    public void unitUpForHours_mapsFramesOntoThePhoneClock() {
+        // Up 3 h longer than the phone, well past the 71.6 min the 32-bit frame clock covers
+        long offset = 3 * 3_600_000_000L + 12_345;
+        scheduler.advanceMillis(60_000);
+        sampleToLocal(offset);
+        ClockSync sync = new ClockSync(unit(offset), estimator, scheduler, scheduler, new ClockSync.Config(),
+                decoder::unwrapTimestamp);
+        sync.start();
+        for (int i = 0; i < 40; i++) {
+            scheduler.advanceMillis(250);
+            sampleToLocal(offset);
+        }
+        assertTrue(estimator.isSynchronized());
+        assertEquals(localMicros(), sampleToLocal(offset), 1_000);
+
+        // Across a wrap of the frame clock
+        long toWrap = (1L << 32) - ((localMicros() + offset) & 0xFFFFFFFFL);
+        for (long waited = 0; waited < toWrap / 1_000 + 10_000; waited += 1_000) {
+            scheduler.advanceMillis(1_000);
+            sampleToLocal(offset);
+        }
+        assertEquals(localMicros(), sampleToLocal(offset), 1_000);
+        sync.stop();
+    }
+
+    @Test
+    public void unwrapTimestamp_followsTheDecodedTimeLine() {
+        assertEquals(5, decoder.unwrapTimestamp((7L << 32) + 5));
+        sample.set(0, 0xFFFF_FF00L, 0, 0, 1, 0, 0, 0);
+        TelemetryFrame.encode(sample, frame, 0);
+        decoder.decode(frame, 0, sample);
+        // Just past the wrap belongs after the last frame, not 71 min before it
+        assertEquals((1L << 32) + 0x10, decoder.unwrapTimestamp((9L << 32) + 0x10));
+        assertEquals(0xFFFF_FE00L, decoder.unwrapTimestamp((9L << 32) - 0x200));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConnectionSupervisorTest {
+
+    // Fake GATT link that only records what the supervisor asked for
+    private static class FakeTransport implements ConnectionSupervisor.Transport {
+        int connects;
+        int disconnects;
+        int lastAttempt = -1;
+
+        @Override
+        public void connect(int attempt) {
+            connects++;
+            lastAttempt = attempt;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnects++;
+        }
+    }
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final FakeTransport transport = new FakeTransport();
+    private final ConnectionSupervisor.Config config = new ConnectionSupervisor.Config();
+    private final ConnectionSupervisor supervisor =
+            new ConnectionSupervisor(transport, scheduler, scheduler, new Random(7), config);
+
+    @Test
+    public void linkLoss_reconnectsWithGrowingBackoff() {
+        supervisor.start();
+        supervisor.onConnected();
+        assertEquals(1, transport.connects);
+
+        supervisor.onDisconnected();
+        assertEquals(ConnectionSupervisor.State.BACKOFF, supervisor.getState());
+        // First retry comes within the initial backoff
+        scheduler.advanceMillis(config.initialBackoffMillis);
+        assertEquals(2, transport.connects);
+        assertEquals(1, transport.lastAttempt);
+
+        // Each failed attempt waits at least half of the doubled delay
+        supervisor.onDisconnected();
+        scheduler.advanceMillis(config.initialBackoffMillis - 1);
+        assertEquals(2, transport.connects);
+        scheduler.advanceMillis(config.initialBackoffMillis + 1);
+        assertEquals(3, transport.connects);
+        assertEquals(2, transport.lastAttempt);
+
+        scheduler.advanceMillis(250);
+        supervisor.onConnected();
+        assertEquals(ConnectionSupervisor.State.CONNECTED, supervisor.getState());
+        assertEquals(2, supervisor.getReconnectAttempts());
+        assertEquals(1, supervisor.getLinkLosses());
+        assertEquals(supervisor.getLastTimeToRecoverMillis(), supervisor.getTotalDisconnectedMillis());
+        assertTrue(supervisor.getLastTimeToRecoverMillis() >= 1250);
+    }
+
+    @Test
+    public void backoff_isCappedAndJittered() {
+        for (int attempt = 0; attempt < 30; attempt++) {
+            long delay = supervisor.backoffMillis(attempt);
+            long cap = (long) Math.min(config.maxBackoffMillis, config.initialBackoffMillis * Math.pow(2, attempt));
+            assertTrue(delay >= cap / 2);
+            assertTrue(delay <= cap);
+        }
+    }
+
+    @Test
+    public void silentStream_tripsWatchdog() {
+        supervisor.start();
+        supervisor.onConnected();
+        for (int i = 0; i < 10; i++) {
+            supervisor.onNotification();
+            scheduler.advanceMillis(config.watchdogPeriodMillis);
+        }
+        assertEquals(ConnectionSupervisor.State.CONNECTED, supervisor.getState());
+
+        scheduler.advanceMillis(config.silenceTimeoutMillis + config.watchdogPeriodMillis);
+        assertEquals(1, supervisor.getWatchdogTrips());
+        assertEquals(1, transport.disconnects);
+        assertNotEquals(ConnectionSupervisor.State.CONNECTED, supervisor.getState());
+    }
+
+    @Test
+    public void legacyPiThatNeverStreams_isNotTripped() {
+        supervisor.start();
+        supervisor.onConnected();
+        scheduler.advanceMillis(60_000);
+        assertEquals(ConnectionSupervisor.State.CONNECTED, supervisor.getState());
+        assertEquals(0, supervisor.getWatchdogTrips());
+    }
+
+    @Test
+    public void unreachablePi_keepsOneTimerAtATime() {
+        supervisor.start();
+        // Attempts time out on their own, nothing ever connects
+        for (int i = 0; i < 200; i++) {
+            scheduler.advanceMillis(1_000);
+            assertTrue(scheduler.pendingTasks() <= 1);
+        }
+        assertTrue(transport.connects > 3);
+        assertEquals(transport.connects - 1, transport.disconnects);
+
+        supervisor.stop();
+        assertEquals(0, scheduler.pendingTasks());
+        assertEquals(ConnectionSupervisor.State.IDLE, supervisor.getState());
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.myapplication.connection;
+
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class GattOperationQueueTest {
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final GattOperationQueue.Config config = new GattOperationQueue.Config();
+    private final GattOperationQueue queue = new GattOperationQueue(scheduler, scheduler, config);
+    private final List<String> started = new ArrayList<>();
+
+    private GattOperationQueue.Starter starter(String name) {
+        return () -> {
+            started.add(name);
+            return true;
+        };
+    }
+
+    @Test
+    public void operations_runOneAtATimeInOrder() throws Exception {
+        CompletableFuture<Integer> mtu = queue.submit(GattOperationQueue.Type.REQUEST_MTU, "mtu", starter("mtu"));
+        CompletableFuture<Void> discover = queue.submit(GattOperationQueue.Type.DISCOVER_SERVICES, "discover", starter("discover"));
+        assertEquals(List.of("mtu"), started);
+        assertEquals(2, queue.depth());
+
+        // A callback for something that isn't running is ignored
+        queue.onComplete(GattOperationQueue.Type.DISCOVER_SERVICES, 0, null);
+        assertFalse(discover.isDone());
+
+        scheduler.advanceMillis(30);
+        queue.onComplete(GattOperationQueue.Type.REQUEST_MTU, 0, 247);
+        assertEquals(247, (int) mtu.get());
+        assertEquals(List.of("mtu", "discover"), started);
+
+        scheduler.advanceMillis(10);
+        queue.onComplete(GattOperationQueue.Type.DISCOVER_SERVICES, 0, null);
+        assertTrue(discover.isDone());
+        assertEquals(0, queue.depth());
+        assertEquals(2, queue.getMaxDepth());
+        assertEquals(2, queue.getCompleted());
+        assertEquals(40, queue.getMaxLatencyMillis(), 1e-9);
+        assertEquals(0, scheduler.pendingTasks());
+    }
+
+    @Test
+    public void timeout_isRetriedThenFails() {
+        CompletableFuture<Void> write = queue.submit(GattOperationQueue.Type.WRITE_DESCRIPTOR, "cccd", starter("cccd"));
+        CompletableFuture<Void> next = queue.submit(GattOperationQueue.Type.DISCOVER_SERVICES, "discover", starter("discover"));
+
+        for (int i = 0; i <= config.maxRetries; i++) {
+            scheduler.advanceMillis(config.timeoutMillis + config.retryDelayMillis);
+        }
+        assertEquals(List.of("cccd", "cccd", "cccd", "discover"), started);
+        assertEquals(3, queue.getTimeouts());
+        assertEquals(2, queue.getRetries());
+        try {
+            write.get();
+            fail();
+        } catch (Exception e) {
+            GattOperationException cause = (GattOperationException) e.getCause();
+            assertEquals(GattOperationQueue.STATUS_TIMEOUT, cause.getStatus());
+        }
+        assertFalse(next.isDone());
+    }
+
+    @Test
+    public void refusedStart_isRetried() throws Exception {
+        int[] calls = new int[1];
+        CompletableFuture<byte[]> read = queue.submit(GattOperationQueue.Type.READ_CHARACTERISTIC, "read",
+                () -> ++calls[0] > 1);
+        assertEquals(1, calls[0]);
+        scheduler.advanceMillis(config.retryDelayMillis);
+        assertEquals(2, calls[0]);
+        queue.onComplete(GattOperationQueue.Type.READ_CHARACTERISTIC, 0, new byte[]{1});
+        assertArrayEquals(new byte[]{1}, read.get());
+    }
+
+    @Test
+    public void clear_failsEverythingPending() {
+        CompletableFuture<Void> first = queue.submit(GattOperationQueue.Type.REQUEST_MTU, "mtu", starter("mtu"));
+        CompletableFuture<Void> second = queue.submit(GattOperationQueue.Type.DISCOVER_SERVICES, "discover", starter("discover"));
+        queue.clear();
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, queue.depth());
+        assertEquals(0, scheduler.pendingTasks());
+        assertEquals(List.of("mtu"), started);
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void badStatus_withoutRetries_failsImmediately() throws Exception {
+        CompletableFuture<Void> phy = queue.submit(GattOperationQueue.Type.SET_PHY, "phy", 1000, 0, starter("phy"));
+        queue.onComplete(GattOperationQueue.Type.SET_PHY, 6, null);
+        phy.get();
+    }
+}
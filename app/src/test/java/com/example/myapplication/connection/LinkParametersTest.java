@@ -0,0 +1,67 @@
+package com.example.myapplication.connection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkParametersTest {
+
+    @Test
+    public void framesPerNotification_followsMtu() {
+        assertEquals(1, LinkParameters.defaults().framesPerNotification());
+        assertEquals(12, LinkParameters.defaults().withMtu(247).framesPerNotification());
+        assertEquals(25, LinkParameters.defaults().withMtu(517).framesPerNotification());
+    }
+
+    @Test
+    public void throughput_isKeptPerProfile() {
+        ThroughputMeter meter = new ThroughputMeter();
+        String slow = LinkParameters.defaults().profileKey();
+        String fast = LinkParameters.defaults().withMtu(247).withPhy(LinkParameters.PHY_2M, LinkParameters.PHY_2M)
+                .withPriority(LinkParameters.Priority.HIGH).profileKey();
+
+        meter.setProfile(slow);
+        // One frame every 10 ms for a second
+        for (int i = 0; i <= 100; i++) {
+            meter.onSamples(1, i * 10_000_000L);
+        }
+        meter.setProfile(fast);
+        // Twelve frames every 15 ms
+        for (int i = 0; i <= 100; i++) {
+            meter.onSamples(12, 2_000_000_000L + i * 15_000_000L);
+        }
+
+        assertEquals(100, meter.getSamplesPerSecond(slow), 1e-6);
+        assertEquals(800, meter.getSamplesPerSecond(fast), 1e-6);
+        assertEquals(2, meter.snapshot().size());
+        assertEquals(0, meter.getSamplesPerSecond("unknown"), 0);
+    }
+
+    @Test
+    public void throughput_onlyCountsTimeOnTheProfile() {
+        ThroughputMeter meter = new ThroughputMeter();
+        String slow = LinkParameters.defaults().profileKey();
+        String fast = LinkParameters.defaults().withMtu(247).profileKey();
+
+        meter.setProfile(slow);
+        for (int i = 0; i <= 100; i++) {
+            meter.onSamples(1, i * 10_000_000L);
+        }
+        // A minute on another profile, then disconnected for a minute
+        meter.setProfile(fast);
+        for (int i = 0; i <= 100; i++) {
+            meter.onSamples(12, 2_000_000_000L + i * 600_000_000L);
+        }
+        meter.stop();
+        meter.onSamples(12, 63_000_000_000L);
+        assertEquals(20, meter.getSamplesPerSecond(fast), 1e-6);
+
+        // Back on the slow profile at the same rate
+        meter.setProfile(slow);
+        for (int i = 0; i <= 100; i++) {
+            meter.onSamples(1, 130_000_000_000L + i * 10_000_000L);
+        }
+        assertEquals(100, meter.getSamplesPerSecond(slow), 1e-6);
+        assertEquals(20, meter.getSamplesPerSecond(fast), 1e-6);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.myapplication.crash;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BlackBoxRecorderTest {
+    private static final long PERIOD_MICROS = 10_000; // 100 Hz
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+    private final BlackBoxRecorder.Config config = new BlackBoxRecorder.Config();
+    private final TelemetrySample sample = new TelemetrySample();
+    private BlackBoxRecorder recorder;
+    private long time;
+
+    private BlackBoxRecorder create() throws IOException {
+        config.preSeconds = 2;
+        config.postSeconds = 1;
+        config.maxSampleRateHz = 100;
+        return new BlackBoxRecorder(folder.newFolder("blackbox"), config, executor, new BlackBoxRecorder.Listener() {
+            @Override
+            public void onSnapshotSaved(File file) {
+                results.add(file);
+            }
+
+            @Override
+            public void onSnapshotFailed(IOException e) {
+                results.add(e);
+            }
+        });
+    }
+
+    private void feed(double seconds) {
+        for (int i = 0; i < seconds * 1_000_000 / PERIOD_MICROS; i++) {
+            time += PERIOD_MICROS;
+            sample.set((int) (time / PERIOD_MICROS) & 0xFFFF, time, 0, 0, 1, 0, 0, 0);
+            sample.setSourceId((int) (time / PERIOD_MICROS) % 2);
+            recorder.onSampleReceived(sample);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void crash_savesWindowAroundImpact() throws Exception {
+        recorder = create();
+        feed(10);
+        long impact = time;
+        recorder.onLocation(System.currentTimeMillis(), 45.5, -73.6, 12.5f, 4f);
+        recorder.onCrashDetected(new CrashEvent(impact, impact, 9f, 300f, 120f, 0.02f, 0.9f));
+        // A second crash while capturing is folded into the first snapshot
+        assertFalse(recorder.trigger());
+        feed(3);
+
+        Object result = results.poll(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(result), result instanceof File);
+        BlackBoxFile snapshot = BlackBoxFile.read((File) result);
+        TelemetrySample[] samples = snapshot.getSamples();
+        // 2 s before the impact, the impact itself and 1 s after it
+        assertEquals(301, samples.length);
+        assertEquals(impact - 2_000_000, samples[0].getTimestampMicros());
+        assertEquals(impact + 1_000_000, samples[samples.length - 1].getTimestampMicros());
+        assertEquals((impact - 2_000_000) / PERIOD_MICROS % 2, samples[0].getSourceId());
+        assertEquals((impact - 2_000_000) / PERIOD_MICROS % 2 ^ 1, samples[1].getSourceId());
+        assertEquals(impact, snapshot.getImpactTimestampMicros());
+        assertEquals(9f, snapshot.getPeakG(), 0);
+        assertEquals(1, snapshot.getLocationCount());
+        assertEquals(-73.6, snapshot.getLongitude(0), 0);
+        assertEquals(1, recorder.getSnapshotsWritten());
+
+        // Back to recording, and no temp file left behind
+        waitUntilRecording();
+        assertEquals(1, ((File) result).getParentFile().list().length);
+    }
+
+    @Test
+    public void linkLostAtImpact_stillWritesAfterGrace() throws Exception {
+        config.fallbackGraceMillis = 100;
+        recorder = create();
+        feed(5);
+        assertTrue(recorder.trigger());
+
+        Object result = results.poll(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(result), result instanceof File);
+        BlackBoxFile snapshot = BlackBoxFile.read((File) result);
+        assertEquals(201, snapshot.getSamples().length);
+        assertTrue(Float.isNaN(snapshot.getConfidence()));
+    }
+
+    private void waitUntilRecording() throws InterruptedException {
+        for (int i = 0; i < 100 && recorder.isCapturing(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(recorder.isCapturing());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.myapplication.crash;
+
+import com.example.myapplication.telemetry.SyntheticTelemetryGenerator;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CrashDetectorTest {
+    private static final long PERIOD_MICROS = 10_000; // 100 Hz
+
+    private final List<CrashEvent> events = new ArrayList<>();
+    private final CrashDetector detector = new CrashDetector(events::add);
+    private final Random random = new Random(42);
+    private long time;
+
+    private void ride(double seconds, float noiseG, float gyroDps) {
+        for (int i = 0; i < seconds * 1_000_000 / PERIOD_MICROS; i++) {
+            time += PERIOD_MICROS;
+            detector.onSample(time, noise(noiseG), noise(noiseG), 1 + noise(noiseG), gyroDps, 0, 0);
+        }
+    }
+
+    private void impact(float peakG, int samples, float gyroDps) {
+        for (int i = 0; i < samples; i++) {
+            time += PERIOD_MICROS;
+            detector.onSample(time, peakG, peakG / 2, 1, gyroDps, gyroDps, 0);
+        }
+    }
+
+    private float noise(float amplitude) {
+        return (float) (random.nextGaussian() * amplitude);
+    }
+
+    @Test
+    public void normalRiding_raisesNothing() {
+        ride(600, 0.3f, 20);
+        assertTrue(events.isEmpty());
+        assertEquals(60_000, detector.getSamplesProcessed());
+    }
+
+    @Test
+    public void impactTumbleAndStillness_raisesCrash() {
+        ride(5, 0.3f, 10);
+        impact(8, 5, 400);
+        ride(1, 0.5f, 300); // tumbling
+        ride(3, 0.01f, 0);  // lying still
+
+        assertEquals(1, events.size());
+        CrashEvent event = events.get(0);
+        assertTrue(event.getPeakG() >= 8);
+        assertTrue(event.getRotationDegrees() >= 90);
+        assertTrue("confidence " + event.getConfidence(), event.getConfidence() > 0.8f);
+        assertEquals(CrashDetector.State.MONITORING, detector.getState());
+    }
+
+    @Test
+    public void secondImpactDuringStillness_restartsSettle() {
+        ride(5, 0.3f, 10);
+        long firstImpact = time + PERIOD_MICROS;
+        impact(8, 5, 400);
+        ride(0.6, 0.5f, 300);
+        ride(0.6, 0.01f, 0); // settled, stillness has started
+        assertEquals(CrashDetector.State.STILLNESS, detector.getState());
+        impact(11, 3, 400);  // the bike hits the barrier
+        ride(0.8, 0.5f, 300);
+        ride(3, 0.01f, 0);
+
+        assertEquals(1, events.size());
+        CrashEvent event = events.get(0);
+        assertEquals(firstImpact, event.getImpactTimestampMicros());
+        assertTrue(event.getPeakG() >= 11);
+        // The shaking after the second impact is not mistaken for movement
+        assertTrue("stillness " + event.getStillnessG(), event.getStillnessG() < 0.05f);
+        assertTrue("confidence " + event.getConfidence(), event.getConfidence() > 0.8f);
+    }
+
+    @Test
+    public void potholeWhileRiding_isRejected() {
+        ride(5, 0.3f, 10);
+        impact(4.5f, 2, 10);
+        ride(5, 0.3f, 10);
+
+        assertEquals(1, detector.getImpactsSeen());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void syntheticStream_detectsInjectedCrashOnly() {
+        SyntheticTelemetryGenerator.Config config = new SyntheticTelemetryGenerator.Config();
+        config.rateHz = 400;
+        config.crashAtSeconds = 120;
+        SyntheticTelemetryGenerator generator = new SyntheticTelemetryGenerator(config);
+        TelemetrySample sample = new TelemetrySample();
+        for (int i = 0; i < 130 * config.rateHz; i++) {
+            generator.next(sample);
+            detector.onSampleReceived(sample);
+        }
+
+        assertEquals(1, events.size());
+        // Within the generator's timestamp jitter of the injected time
+        assertEquals(120_000_000, events.get(0).getImpactTimestampMicros(), config.jitterMicros);
+    }
+
+    @Test
+    public void slidingWindow_matchesBruteForce() {
+        SlidingWindow window = new SlidingWindow(50, 8);
+        List<long[]> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long t = i * 7L;
+            float value = random.nextInt(100) - 50;
+            window.add(t, value);
+            entries.add(new long[]{t, (long) value});
+            // Time and capacity eviction, same rules as the window
+            entries.removeIf(e -> e[0] < t - 50);
+            while (entries.size() > 8) {
+                entries.remove(0);
+            }
+
+            long max = Long.MIN_VALUE;
+            long min = Long.MAX_VALUE;
+            double sum = 0;
+            for (long[] e : entries) {
+                max = Math.max(max, e[1]);
+                min = Math.min(min, e[1]);
+                sum += e[1];
+            }
+            assertEquals(entries.size(), window.size());
+            assertEquals(max, window.max(), 0);
+            assertEquals(min, window.min(), 0);
+            assertEquals(sum / entries.size(), window.mean(), 1e-9);
+        }
+    }
+}
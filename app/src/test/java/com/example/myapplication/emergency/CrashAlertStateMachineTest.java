@@ -0,0 +1,77 @@
+package com.example.myapplication.emergency;
+
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CrashAlertStateMachineTest {
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final CrashAlertStateMachine.Config config = new CrashAlertStateMachine.Config();
+    private final List<CrashEvent> dispatched = new ArrayList<>();
+    private final CrashAlertStateMachine alert = new CrashAlertStateMachine(
+            (event, triggeredNanos) -> dispatched.add(event), scheduler, scheduler, config);
+
+    private static CrashEvent event(float confidence) {
+        return new CrashEvent(0, 0, 8, 200, 120, 0.05f, confidence);
+    }
+
+    @Test
+    public void triggerBurst_dispatchesExactlyOnce() {
+        // 5000 triggers per second for 20 s, through countdown, dispatch and into cooldown
+        for (int i = 0; i < 100_000; i++) {
+            alert.trigger(i % 1000 == 0 ? event(0.5f + i / 1e6f) : null);
+            scheduler.advanceMillis(i % 5 == 4 ? 1 : 0);
+        }
+
+        assertEquals(1, dispatched.size());
+        assertEquals(CrashAlertStateMachine.State.COOLDOWN, alert.getState());
+        assertEquals(100_000, alert.getTriggers());
+        assertEquals(99_999, alert.getCoalescedTriggers());
+        // The most confident event seen during the countdown is the one sent
+        assertEquals(0.5f + 49_000 / 1e6f, dispatched.get(0).getConfidence(), 1e-6);
+        assertEquals(config.countdownMillis, alert.getLastTriggerToDispatchMillis());
+        assertEquals(1, scheduler.pendingTasks());
+    }
+
+    @Test
+    public void cancel_stopsTheOnlyTimer() {
+        alert.trigger(null);
+        alert.trigger(null);
+        scheduler.advanceMillis(4_000);
+        assertTrue(alert.cancel());
+        assertEquals(0, scheduler.pendingTasks());
+        assertEquals(4_000, alert.getLastCountdownMillis());
+
+        scheduler.advanceMillis(60_000);
+        assertTrue(dispatched.isEmpty());
+        assertEquals(CrashAlertStateMachine.State.ARMED, alert.getState());
+        assertFalse(alert.cancel());
+    }
+
+    @Test
+    public void afterCooldown_rearms() {
+        List<CrashAlertStateMachine.State> states = new ArrayList<>();
+        alert.setListener(states::add);
+        alert.trigger(event(0.9f));
+        scheduler.advanceMillis(config.countdownMillis);
+        // Too late to cancel once contacts are being alerted
+        assertFalse(alert.cancel());
+        assertFalse(alert.trigger(null));
+        scheduler.advanceMillis(config.cooldownMillis);
+
+        assertTrue(alert.trigger(null));
+        scheduler.advanceMillis(config.countdownMillis);
+        assertEquals(2, dispatched.size());
+        assertNull(dispatched.get(1));
+        assertEquals(List.of(CrashAlertStateMachine.State.COUNTDOWN, CrashAlertStateMachine.State.DISPATCHING,
+                CrashAlertStateMachine.State.COOLDOWN, CrashAlertStateMachine.State.ARMED,
+                CrashAlertStateMachine.State.COUNTDOWN, CrashAlertStateMachine.State.DISPATCHING,
+                CrashAlertStateMachine.State.COOLDOWN), states);
+    }
+}
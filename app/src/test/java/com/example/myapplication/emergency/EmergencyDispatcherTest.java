@@ -0,0 +1,136 @@
+package com.example.myapplication.emergency;
+
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EmergencyDispatcherTest {
+    private final VirtualScheduler clock = new VirtualScheduler();
+
+    // Records sends and lets the test play the network's sent and delivered reports
+    private static class FakeTransport implements EmergencyDispatcher.SmsTransport {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> messages = new ArrayList<>();
+        int parts = 2;
+
+        @Override
+        public synchronized int send(String number, String message, int messageId) {
+            if (number.startsWith("bad")) {
+                throw new IllegalArgumentException("Invalid destination address");
+            }
+            ids.put(number, messageId);
+            messages.add(message);
+            return parts;
+        }
+    }
+
+    @Test
+    public void fanOut_tracksEachRecipient() {
+        FakeTransport transport = new FakeTransport();
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(transport, Runnable::run, clock);
+        List<String> firstSent = new ArrayList<>();
+        dispatcher.setListener(new EmergencyDispatcher.Listener() {
+            @Override
+            public void onRecipientStatus(String number, EmergencyDispatcher.Status status) {
+            }
+
+            @Override
+            public void onFirstSent(String number, long crashToSentMillis, long dispatchToSentMillis) {
+                firstSent.add(number + " " + crashToSentMillis + " " + dispatchToSentMillis);
+            }
+        });
+
+        long crash = clock.nanoTime();
+        clock.advanceMillis(10_000); // countdown
+        dispatcher.dispatch(EmergencyDispatcher.parseContacts("555-0100, 555-0101;bad-number"), "help", crash);
+        assertEquals(EmergencyDispatcher.Status.FAILED, dispatcher.getStatus("bad-number"));
+
+        clock.advanceMillis(300);
+        int first = transport.ids.get("555-0100");
+        dispatcher.onPartSent(first, true);
+        assertEquals(EmergencyDispatcher.Status.SENDING, dispatcher.getStatus("555-0100"));
+        dispatcher.onPartSent(first, true);
+        assertEquals(EmergencyDispatcher.Status.SENT, dispatcher.getStatus("555-0100"));
+        assertEquals(List.of("555-0100 10300 300"), firstSent);
+        assertEquals(10_300, dispatcher.getLastCrashToFirstSentMillis());
+
+        dispatcher.onPartDelivered(first, true);
+        dispatcher.onPartDelivered(first, true);
+        assertEquals(EmergencyDispatcher.Status.DELIVERED, dispatcher.getStatus("555-0100"));
+
+        int second = transport.ids.get("555-0101");
+        dispatcher.onPartSent(second, true);
+        dispatcher.onPartSent(second, false);
+        assertEquals(EmergencyDispatcher.Status.FAILED, dispatcher.getStatus("555-0101"));
+        assertEquals(1, firstSent.size());
+    }
+
+    @Test
+    public void slowRecipient_doesNotHoldUpTheOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastHandedOver = new CountDownLatch(1);
+        int[] fastId = new int[1];
+        EmergencyDispatcher.SmsTransport transport = (number, message, messageId) -> {
+            if (number.equals("slow")) {
+                release.await();
+            } else {
+                fastId[0] = messageId;
+                fastHandedOver.countDown();
+            }
+            return 1;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(transport, executor, clock);
+        try {
+            dispatcher.dispatch(List.of("slow", "fast"), "help", 0);
+            assertTrue(fastHandedOver.await(5, TimeUnit.SECONDS));
+            // The sent report can race the transport returning its part count
+            dispatcher.onPartSent(fastId[0], true);
+            for (int i = 0; i < 500 && dispatcher.getStatus("fast") != EmergencyDispatcher.Status.SENT; i++) {
+                Thread.sleep(1);
+            }
+            assertEquals(EmergencyDispatcher.Status.SENT, dispatcher.getStatus("fast"));
+            assertEquals(EmergencyDispatcher.Status.SENDING, dispatcher.getStatus("slow"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void message_carriesCachedPositionAndImpact() {
+        LocationCache cache = new LocationCache(new LocationCache.Config());
+        assertNull(cache.best(clock.nanoTime()));
+        cache.update(new LocationCache.Fix(0, clock.nanoTime(), 45.501689, -73.567256, 8, 20));
+        clock.advanceMillis(5_000);
+        // A worse fix doesn't replace a fresh accurate one
+        cache.update(new LocationCache.Fix(0, clock.nanoTime(), 45.6, -73.6, 500, 0));
+        LocationCache.Fix fix = cache.best(clock.nanoTime());
+        assertEquals(8, fix.getAccuracyMeters(), 0);
+
+        CrashEvent event = new CrashEvent(0, 0, 9.2f, 300, 140, 0.02f, 0.87f);
+        String text = EmergencyMessage.build(fix, cache.freshness(fix, clock.nanoTime()), clock.nanoTime(), event);
+        assertTrue(text, text.contains("https://maps.google.com/?q=45.501689,-73.567256"));
+        assertTrue(text, text.contains("speed 72 km/h"));
+        assertTrue(text, text.contains("Impact 9.2 g"));
+        assertTrue(text, text.contains("confidence 87%"));
+
+        clock.advanceMillis(60_000);
+        fix = cache.best(clock.nanoTime());
+        assertEquals(LocationCache.Freshness.STALE, cache.freshness(fix, clock.nanoTime()));
+        text = EmergencyMessage.build(fix, LocationCache.Freshness.STALE, clock.nanoTime(), null);
+        assertTrue(text, text.contains("last known 60 s ago"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.myapplication.geo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FacilityIndexTest {
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+
+    private static double meters(double latitude, double longitude, double toLatitude, double toLongitude) {
+        double dy = (toLatitude - latitude) * METERS_PER_DEGREE;
+        double dx = (toLongitude - longitude) * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Test
+    public void nearestFacility_matchesBruteForce() throws IOException {
+        Random random = new Random(5);
+        FacilityIndexWriter writer = new FacilityIndexWriter(new FacilityIndexWriter.Config());
+        int count = 5_000;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        int[] kinds = new int[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = 45 + random.nextDouble() * 3;
+            longitudes[i] = 5 + random.nextDouble() * 4;
+            kinds[i] = random.nextInt(4);
+            writer.addFacility(kinds[i], "facility " + i, latitudes[i], longitudes[i]);
+        }
+        FacilityIndex index = FacilityIndex.wrap(writer.toByteBuffer(), true);
+        assertEquals(count, index.getFacilityCount());
+
+        FacilityIndex.Place place = new FacilityIndex.Place();
+        for (int query = 0; query < 200; query++) {
+            double latitude = 44.9 + random.nextDouble() * 3.2;
+            double longitude = 4.9 + random.nextDouble() * 4.2;
+            int kind = query % 2 == 0 ? FacilityIndex.ANY : FacilityIndex.HOSPITAL;
+            int best = -1;
+            double bestMeters = Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                double distance = meters(latitude, longitude, latitudes[i], longitudes[i]);
+                if ((kind == FacilityIndex.ANY || kinds[i] == kind) && distance < bestMeters) {
+                    best = i;
+                    bestMeters = distance;
+                }
+            }
+            assertTrue(index.nearestFacility(latitude, longitude, kind, Double.POSITIVE_INFINITY, place));
+            assertEquals(bestMeters, place.getDistanceMeters(), 0.1);
+            assertEquals(bestMeters, meters(latitude, longitude, place.getLatitude(), place.getLongitude()), 0.1);
+            if (kind == FacilityIndex.HOSPITAL) {
+                assertEquals(FacilityIndex.HOSPITAL, place.getKind());
+            }
+            assertEquals("facility " + best, place.getName());
+        }
+        assertFalse(index.nearestFacility(0, 0, FacilityIndex.ANY, 10_000, place));
+        assertNull(place.getName());
+    }
+
+    @Test
+    public void roadName_isTheRoadAlongside() throws IOException {
+        FacilityIndexWriter writer = new FacilityIndexWriter(new FacilityIndexWriter.Config());
+        // Two parallel roads 200 m apart, 5 km long with points only at their ends
+        double offset = 200 / METERS_PER_DEGREE;
+        double length = 5_000 / METERS_PER_DEGREE;
+        writer.addRoad("North Road", new double[]{50 + offset, 50 + offset}, new double[]{0, length * 1.6}, 2);
+        writer.addRoad("South Road", new double[]{50, 50}, new double[]{0, length * 1.6}, 2);
+        assertTrue(writer.getRoadPointCount() > 300);
+        FacilityIndex index = FacilityIndex.wrap(writer.toByteBuffer(), true);
+
+        double middle = length * 0.8;
+        assertEquals("South Road", index.roadName(50 + offset * 0.4, middle, 150));
+        assertEquals("North Road", index.roadName(50 + offset * 0.6, middle, 150));
+        assertNull(index.roadName(50 + offset * 0.5, -0.05, 150));
+    }
+
+    @Test
+    public void emptyIndex_answersNothing() throws IOException {
+        FacilityIndex index = FacilityIndex.wrap(new FacilityIndexWriter(new FacilityIndexWriter.Config()).toByteBuffer(), true);
+        assertFalse(index.nearestFacility(50, 8, FacilityIndex.ANY, Double.POSITIVE_INFINITY, new FacilityIndex.Place()));
+        assertNull(index.roadName(50, 8, 1_000));
+    }
+
+    @Test
+    public void corruptData_isRejected() {
+        FacilityIndexWriter writer = new FacilityIndexWriter(new FacilityIndexWriter.Config());
+        writer.addFacility(FacilityIndex.HOSPITAL, "General", 50, 8);
+        ByteBuffer data = writer.toByteBuffer();
+        data.put(FacilityIndex.HEADER_SIZE + 1, (byte) 0x55);
+        try {
+            FacilityIndex.wrap(data, true);
+            fail();
+        } catch (IOException expected) {
+        }
+        data.put(9, (byte) 1);
+        try {
+            FacilityIndex.wrap(data, false);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.myapplication.geo;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PayloadBoundsTest {
+
+    @Test
+    public void countIntersecting_countsEachPayloadOnce() throws Exception {
+        SpatialIndex index = SpatialIndex.inMemory(new SpatialIndex.Config());
+        Random random = new Random(3);
+        // Ten rides of 500 points each in a 1° square, added out of payload order
+        for (int ride = 9; ride >= 0; ride--) {
+            double[] latitudes = new double[500];
+            double[] longitudes = new double[500];
+            int[] payloads = new int[500];
+            for (int i = 0; i < 500; i++) {
+                latitudes[i] = 46 + ride * 0.1 + random.nextDouble() * 0.05;
+                longitudes[i] = 7 + random.nextDouble();
+                payloads[i] = 1_000 + ride;
+            }
+            index.add(latitudes, longitudes, payloads, 500);
+        }
+        PayloadBounds bounds = PayloadBounds.of(index);
+        assertEquals(10, bounds.size());
+        assertEquals(10, bounds.countIntersecting(45, 6, 48, 9));
+
+        // Rides 2 to 4 reach into this box; the same as the distinct payloads of the points in it
+        Set<Integer> inBox = new HashSet<>();
+        index.query(46.22, 7.2, 46.42, 7.4, (latitude, longitude, payload) -> inBox.add(payload));
+        assertEquals(inBox.size(), bounds.countIntersecting(46.22, 7.2, 46.42, 7.4));
+        assertEquals(3, inBox.size());
+        assertEquals(0, bounds.countIntersecting(10, 7, 11, 8));
+    }
+
+    @Test
+    public void countIntersecting_wrapsAcrossTheAntimeridian() {
+        PayloadBounds bounds = new PayloadBounds();
+        bounds.add(-17, 179.5, 2);
+        bounds.add(-17.2, 179.9, 2);
+        bounds.add(-17, -179.5, 1);
+        bounds.add(-17, 10, 3);
+        assertEquals(2, bounds.countIntersecting(-18, 179, -16, -179));
+        assertEquals(1, bounds.countIntersecting(-18, 179.6, -16, 179.95));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.myapplication.geo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(21);
+    private final List<double[]> all = new ArrayList<>(); // latitude, longitude; the payload is the position in here
+
+    // One ride: a random walk of about 10 m per point somewhere around the Alps
+    private void addRide(SpatialIndex index, int points) throws Exception {
+        double[] latitudes = new double[points];
+        double[] longitudes = new double[points];
+        int[] payloads = new int[points];
+        double latitude = 46 + random.nextDouble() * 2;
+        double longitude = 7 + random.nextDouble() * 3;
+        for (int i = 0; i < points; i++) {
+            latitude += random.nextGaussian() * 1e-4;
+            longitude += random.nextGaussian() * 1.4e-4;
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            payloads[i] = all.size();
+            all.add(new double[]{latitude, longitude});
+        }
+        index.add(latitudes, longitudes, payloads, points);
+    }
+
+    private static final double STEP = 180 / 4294967296.0; // one quantization step, in degrees
+
+    @Test
+    public void boxQuery_findsExactlyThePointsInside() throws Exception {
+        SpatialIndex index = SpatialIndex.inMemory(new SpatialIndex.Config());
+        for (int ride = 0; ride < 40; ride++) {
+            addRide(index, 500 + random.nextInt(3_000));
+        }
+        assertEquals(all.size(), index.size());
+        assertTrue(index.getRunCount() <= 8);
+
+        for (int q = 0; q < 50; q++) {
+            double minLat = 46 + random.nextDouble() * 2;
+            double minLon = 7 + random.nextDouble() * 3;
+            double maxLat = minLat + random.nextDouble() * 0.2;
+            double maxLon = minLon + random.nextDouble() * 0.3;
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < all.size(); i++) {
+                double[] p = all.get(i);
+                // Stay clear of the edges, where quantization decides
+                boolean inside = p[0] >= minLat && p[0] <= maxLat && p[1] >= minLon && p[1] <= maxLon;
+                boolean onEdge = Math.abs(p[0] - minLat) < 2 * STEP || Math.abs(p[0] - maxLat) < 2 * STEP
+                        || Math.abs(p[1] - minLon) < 4 * STEP || Math.abs(p[1] - maxLon) < 4 * STEP;
+                if (inside && !onEdge) {
+                    expected.add(i);
+                }
+            }
+            Set<Integer> found = new HashSet<>();
+            int count = index.query(minLat, minLon, maxLat, maxLon, (lat, lon, payload) -> {
+                assertEquals(all.get(payload)[0], lat, STEP);
+                assertEquals(all.get(payload)[1], lon, 2 * STEP);
+                found.add(payload);
+            });
+            assertEquals(count, found.size());
+            assertTrue(found.containsAll(expected));
+            assertTrue(found.size() - expected.size() <= 2);
+        }
+    }
+
+    @Test
+    public void nearest_matchesABruteForceSearch() throws Exception {
+        SpatialIndex index = SpatialIndex.inMemory(new SpatialIndex.Config());
+        for (int ride = 0; ride < 20; ride++) {
+            addRide(index, 2_000);
+        }
+        SpatialIndex.Neighbors neighbors = new SpatialIndex.Neighbors();
+        for (int q = 0; q < 30; q++) {
+            double latitude = 46 + random.nextDouble() * 2;
+            double longitude = 7 + random.nextDouble() * 3;
+            int k = 1 + random.nextInt(20);
+            assertEquals(k, index.nearest(latitude, longitude, k, neighbors));
+
+            double cos = Math.cos(Math.toRadians(latitude));
+            double[] distances = new double[all.size()];
+            for (int i = 0; i < all.size(); i++) {
+                double dx = (all.get(i)[1] - longitude) * cos;
+                double dy = all.get(i)[0] - latitude;
+                distances[i] = Math.sqrt(dx * dx + dy * dy) * Math.toRadians(1) * 6_371_008.8;
+            }
+            Arrays.sort(distances);
+            for (int i = 0; i < k; i++) {
+                assertEquals(distances[i], neighbors.getDistanceMeters(i), 0.05);
+            }
+        }
+    }
+
+    @Test
+    public void boxAcrossTheAntimeridian() throws Exception {
+        SpatialIndex index = SpatialIndex.inMemory(new SpatialIndex.Config());
+        index.add(new double[]{-17, -17, -17}, new double[]{179.5, -179.5, 0}, new int[]{1, 2, 3}, 3);
+        List<Integer> payloads = new ArrayList<>();
+        index.query(-18, 179, -16, -179, (lat, lon, payload) -> payloads.add(payload));
+        payloads.sort(null);
+        assertEquals(Arrays.asList(1, 2), payloads);
+    }
+
+    @Test
+    public void persistedIndex_reopensWithTheSamePoints() throws Exception {
+        File directory = folder.newFolder("geo");
+        SpatialIndex.Config config = new SpatialIndex.Config();
+        SpatialIndex index = SpatialIndex.open(directory, config);
+        for (int ride = 0; ride < 12; ride++) {
+            addRide(index, 1_000);
+        }
+        // A run written by an add that never got to update the manifest
+        new File(directory, "run-9999999999.sidx").createNewFile();
+
+        SpatialIndex reopened = SpatialIndex.open(directory, config);
+        assertEquals(index.size(), reopened.size());
+        assertEquals(index.getRunCount(), reopened.getRunCount());
+        assertFalse(new File(directory, "run-9999999999.sidx").exists());
+        int[] counts = new int[2];
+        index.query(46, 7, 48, 10, (lat, lon, payload) -> counts[0]++);
+        reopened.query(46, 7, 48, 10, (lat, lon, payload) -> counts[1]++);
+        assertEquals(counts[0], counts[1]);
+
+        // Only live runs and the manifest are left behind
+        String[] files = directory.list();
+        assertEquals(reopened.getRunCount() + 1, files.length);
+
+        addRide(reopened, 10);
+        assertEquals(all.size(), SpatialIndex.open(directory, config).size());
+    }
+}
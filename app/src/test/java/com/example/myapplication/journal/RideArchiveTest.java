@@ -0,0 +1,348 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.FrameDecoder;
+import com.example.myapplication.telemetry.SyntheticTelemetryGenerator;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RideArchiveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SyntheticTelemetryGenerator.Config generatorConfig = new SyntheticTelemetryGenerator.Config();
+    private final RideArchiveWriter.Config config = new RideArchiveWriter.Config();
+
+    // Samples as they arrive from the Pi, i.e. through a frame and back
+    private TelemetrySample[] ride(int count) {
+        SyntheticTelemetryGenerator generator = new SyntheticTelemetryGenerator(generatorConfig);
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] frame = new byte[TelemetryFrame.SIZE];
+        TelemetrySample[] samples = new TelemetrySample[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = new TelemetrySample();
+            generator.next(samples[i]);
+            TelemetryFrame.encode(samples[i], frame, 0);
+            assertEquals(FrameDecoder.OK, decoder.decode(frame, 0, samples[i]));
+        }
+        return samples;
+    }
+
+    private File write(TelemetrySample[] samples) throws IOException {
+        File file = new File(folder.getRoot(), "ride.rca");
+        try (RideArchiveWriter writer = new RideArchiveWriter(file, config)) {
+            for (TelemetrySample sample : samples) {
+                writer.append(sample);
+            }
+            writer.finish();
+        }
+        return file;
+    }
+
+    private static void assertSame(TelemetrySample expected, TelemetrySample actual) {
+        assertEquals(expected.getTimestampMicros(), actual.getTimestampMicros());
+        assertEquals(expected.getSequence(), actual.getSequence());
+        assertEquals(expected.getSourceId(), actual.getSourceId());
+        // Bit for bit, not within a tolerance
+        assertEquals(Float.floatToRawIntBits(expected.getAccelX()), Float.floatToRawIntBits(actual.getAccelX()));
+        assertEquals(Float.floatToRawIntBits(expected.getAccelY()), Float.floatToRawIntBits(actual.getAccelY()));
+        assertEquals(Float.floatToRawIntBits(expected.getAccelZ()), Float.floatToRawIntBits(actual.getAccelZ()));
+        assertEquals(Float.floatToRawIntBits(expected.getGyroX()), Float.floatToRawIntBits(actual.getGyroX()));
+        assertEquals(Float.floatToRawIntBits(expected.getGyroY()), Float.floatToRawIntBits(actual.getGyroY()));
+        assertEquals(Float.floatToRawIntBits(expected.getGyroZ()), Float.floatToRawIntBits(actual.getGyroZ()));
+    }
+
+    @Test
+    public void roundTrip_isLossless() throws Exception {
+        generatorConfig.crashAtSeconds = 10; // impact and tumble values too
+        TelemetrySample[] samples = ride(5000);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i].setSourceId(i / 100 % 2 == 0 ? 1 : 100);
+        }
+        File file = write(samples);
+
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(file)) {
+            assertEquals(5000, reader.getSampleCount());
+            assertEquals(5, reader.getBlockCount());
+            assertEquals(samples[0].getTimestampMicros(), reader.getMinTimestampMicros());
+            assertEquals(samples[4999].getTimestampMicros(), reader.getMaxTimestampMicros());
+            for (TelemetrySample expected : samples) {
+                assertTrue(reader.next(sample));
+                assertSame(expected, sample);
+            }
+            assertFalse(reader.next(sample));
+        }
+    }
+
+    @Test
+    public void floatsOffTheFrameScale_fallBackToXorAndStayLossless() throws Exception {
+        // Straight from the generator, so the floats aren't multiples of the frame scale
+        SyntheticTelemetryGenerator generator = new SyntheticTelemetryGenerator(generatorConfig);
+        TelemetrySample[] samples = new TelemetrySample[3000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new TelemetrySample();
+            generator.next(samples[i]);
+        }
+        samples[10].set(10, samples[10].getTimestampMicros(), Float.NaN, -0f, Float.MAX_VALUE,
+                Float.NEGATIVE_INFINITY, Float.MIN_VALUE, 0);
+        File file = write(samples);
+
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(file)) {
+            for (TelemetrySample expected : samples) {
+                assertTrue(reader.next(sample));
+                assertSame(expected, sample);
+            }
+            assertFalse(reader.next(sample));
+        }
+    }
+
+    @Test
+    public void longColumns_roundTripWhicheverEncodingIsPicked() {
+        Random random = new Random(7);
+        long[][] columns = {
+                {42},
+                {5, 5, 5, 5},
+                {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MAX_VALUE},
+                random.longs(1000, 0, 1 << 20).toArray(),
+                random.longs(1000).toArray(),
+                // Gaussian noise with one outlier, escaped in the Rice codes
+                random.doubles(1000).map(d -> random.nextGaussian() * 300 + (d < 0.001 ? 1e12 : 0)).mapToLong(Math::round).toArray(),
+        };
+        ColumnCodec.Sink sink = new ColumnCodec.Sink();
+        ColumnCodec.Source source = new ColumnCodec.Source();
+        for (long[] column : columns) {
+            sink.clear();
+            ColumnCodec.encodeLongs(column, column.length, sink);
+            sink.put(0x5A); // the next column starts on the following byte
+            source.reset(ByteBuffer.wrap(sink.bytes), 0, sink.size);
+            long[] decoded = new long[column.length];
+            ColumnCodec.decodeLongs(source, decoded, column.length);
+            assertArrayEquals(column, decoded);
+            assertEquals(0x5A, source.get());
+        }
+    }
+
+    @Test
+    public void smallStepColumns_roundTrip() {
+        // Random walks of -1, 0 and +1 average about 1.3 once zigzagged, just where the Rice estimate goes below 0
+        Random random = new Random(11);
+        ColumnCodec.Sink sink = new ColumnCodec.Sink();
+        ColumnCodec.Source source = new ColumnCodec.Source();
+        long[] column = new long[1024];
+        long[] decoded = new long[column.length];
+        for (int block = 0; block < 500; block++) {
+            for (int i = 1; i < column.length; i++) {
+                column[i] = column[i - 1] + random.nextInt(3) - 1;
+            }
+            sink.clear();
+            ColumnCodec.encodeLongs(column, column.length, sink);
+            source.reset(ByteBuffer.wrap(sink.bytes), 0, sink.size);
+            ColumnCodec.decodeLongs(source, decoded, column.length);
+            assertArrayEquals("block " + block, column, decoded);
+        }
+    }
+
+    @Test
+    public void microsecondJitter_roundTrips() throws Exception {
+        Random random = new Random(12);
+        TelemetrySample[] samples = ride(100_000);
+        long micros = 0;
+        for (TelemetrySample sample : samples) {
+            micros += 5_000 + random.nextInt(3) - 1;
+            sample.setTimestampMicros(micros);
+        }
+        File file = write(samples);
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(file)) {
+            for (TelemetrySample expected : samples) {
+                assertTrue(reader.next(sample));
+                assertSame(expected, sample);
+            }
+        }
+    }
+
+    @Test
+    public void seek_findsFirstSampleAtOrAfter() throws Exception {
+        TelemetrySample[] samples = ride(20_000);
+        File file = write(samples);
+
+        Random random = new Random(5);
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(file)) {
+            for (int q = 0; q < 200; q++) {
+                int i = random.nextInt(samples.length);
+                long from = samples[i].getTimestampMicros() - random.nextInt(2);
+                int expected = i;
+                while (expected > 0 && samples[expected - 1].getTimestampMicros() >= from) {
+                    expected--;
+                }
+                reader.seek(from);
+                // Reads on across block boundaries
+                for (int k = expected; k < Math.min(expected + 1500, samples.length); k++) {
+                    assertTrue(reader.next(sample));
+                    assertSame(samples[k], sample);
+                }
+            }
+            reader.seek(Long.MIN_VALUE);
+            assertTrue(reader.next(sample));
+            assertSame(samples[0], sample);
+            reader.seek(samples[samples.length - 1].getTimestampMicros() + 1);
+            assertFalse(reader.next(sample));
+        }
+    }
+
+    @Test
+    public void compressesPiSamplesAtLeastFiveTimes() throws Exception {
+        // The Pi stamps samples from its own timer, so they don't wander like the default generator's
+        generatorConfig.jitterMicros = 20;
+        int count = 200 * 60 * 5;
+        File file = write(ride(count));
+        double ratio = (double) JournalFormat.RECORD_SIZE * count / file.length();
+        assertTrue("ratio " + ratio, ratio >= 5);
+    }
+
+    @Test
+    public void corruptBlock_isReported() throws Exception {
+        File file = write(ride(3000));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(RideArchiveWriter.HEADER_SIZE + 100);
+            int b = raf.read();
+            raf.seek(RideArchiveWriter.HEADER_SIZE + 100);
+            raf.write(b ^ 0x10);
+        }
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(file)) {
+            reader.next(sample);
+            fail("Corrupt block was decoded");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("corrupt block 0"));
+        }
+    }
+
+    @Test
+    public void verify_rejectsAnArchiveThatDoesNotDecode() throws Exception {
+        File file = write(ride(3000));
+        assertEquals(3000, JournalCompactor.verify(file));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // In the last block, so the first ones still decode
+            raf.seek(file.length() - RideArchiveWriter.FOOTER_SIZE - 3 * RideArchiveWriter.INDEX_ENTRY_SIZE - 20);
+            raf.write(0x55);
+        }
+        try {
+            JournalCompactor.verify(file);
+            fail("Corrupt archive passed");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("corrupt block 2"));
+        }
+    }
+
+    @Test
+    public void compactor_archivesClosedSegmentsAndDeletesThem() throws Exception {
+        File journalDirectory = folder.newFolder("rides");
+        File archiveDirectory = new File(folder.getRoot(), "archive");
+        VirtualScheduler clock = new VirtualScheduler();
+        RideJournal.Config journalConfig = new RideJournal.Config();
+        journalConfig.segmentBytes = JournalFormat.HEADER_SIZE + 1000 * JournalFormat.RECORD_SIZE;
+        RideJournal journal = new RideJournal(journalDirectory, journalConfig, clock);
+        TelemetrySample[] first = ride(2500);
+        for (TelemetrySample sample : first) {
+            journal.append(sample);
+        }
+        // The generator starts again from zero, as after a reboot
+        TelemetrySample[] second = ride(700);
+        for (TelemetrySample sample : second) {
+            journal.append(sample);
+        }
+        journal.close();
+
+        JournalCompactor.Result result = JournalCompactor.compact(journalDirectory, archiveDirectory, config);
+        assertEquals(3200, result.getSamples());
+        assertEquals(2, result.getArchives().size());
+        assertTrue(result.getRatio() > 3);
+        assertTrue(JournalReader.listSegments(journalDirectory).isEmpty());
+
+        List<File> archives = JournalCompactor.listArchives(archiveDirectory);
+        assertEquals(2, archives.size());
+        TelemetrySample sample = new TelemetrySample();
+        try (RideArchiveReader reader = RideArchiveReader.open(archives.get(0))) {
+            assertEquals(2500, reader.getSampleCount());
+        }
+        try (RideArchiveReader reader = RideArchiveReader.open(archives.get(1))) {
+            for (TelemetrySample expected : second) {
+                assertTrue(reader.next(sample));
+                assertSame(expected, sample);
+            }
+            assertFalse(reader.next(sample));
+        }
+        assertEquals(0, JournalCompactor.compact(journalDirectory, archiveDirectory, config).getSamples());
+    }
+
+    @Test
+    public void compactor_givesEachSourceItsOwnArchiveAndSortsSmallSteps() throws Exception {
+        File journalDirectory = folder.newFolder("rides");
+        File archiveDirectory = new File(folder.getRoot(), "archive");
+        RideJournal journal = new RideJournal(journalDirectory, new RideJournal.Config(), new VirtualScheduler());
+        TelemetrySample[] unit = ride(3000);
+        TelemetrySample[] phone = ride(3000);
+        Random random = new Random(3);
+        for (int i = 0; i < unit.length; i++) {
+            unit[i].setSourceId(1);
+            phone[i].setSourceId(100);
+            // The phone's samples come in up to 100 ms behind the unit's, and its clock is stepped back once
+            phone[i].setTimestampMicros(phone[i].getTimestampMicros() + random.nextInt(100_000) - (i >= 1500 ? 200_000 : 0));
+        }
+        for (int i = 0; i < unit.length; i++) {
+            journal.append(unit[i]);
+            journal.append(phone[i]);
+        }
+        journal.close();
+
+        JournalCompactor.Result result = JournalCompactor.compact(journalDirectory, archiveDirectory, config);
+        assertEquals(6000, result.getSamples());
+        assertEquals(2, result.getArchives().size());
+        for (File archive : result.getArchives()) {
+            TelemetrySample[] expected = archive.getName().endsWith("-1.rca") ? unit : phone.clone();
+            Arrays.sort(expected, (a, b) -> Long.compare(a.getTimestampMicros(), b.getTimestampMicros()));
+            TelemetrySample sample = new TelemetrySample();
+            try (RideArchiveReader reader = RideArchiveReader.open(archive)) {
+                assertEquals(3000, reader.getSampleCount());
+                for (TelemetrySample e : expected) {
+                    assertTrue(reader.next(sample));
+                    assertEquals(e.getSourceId(), sample.getSourceId());
+                    assertEquals(e.getTimestampMicros(), sample.getTimestampMicros());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compactor_leavesOpenSegments() throws Exception {
+        File journalDirectory = folder.newFolder("rides");
+        RideJournal journal = new RideJournal(journalDirectory, new RideJournal.Config(), new VirtualScheduler());
+        for (TelemetrySample sample : ride(100)) {
+            journal.append(sample);
+        }
+        journal.flush();
+
+        JournalCompactor.Result result = JournalCompactor.compact(journalDirectory, new File(folder.getRoot(), "archive"), config);
+        assertEquals(0, result.getSamples());
+        assertEquals(1, JournalReader.listSegments(journalDirectory).size());
+        journal.close();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.myapplication.journal;
+
+import com.example.myapplication.telemetry.SyntheticTelemetryGenerator;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RideJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VirtualScheduler clock = new VirtualScheduler();
+    private final SyntheticTelemetryGenerator generator = new SyntheticTelemetryGenerator(new SyntheticTelemetryGenerator.Config());
+    private final RideJournal.Config config = new RideJournal.Config();
+
+    // Records written by the generator, for comparing against what comes back
+    private TelemetrySample[] write(RideJournal journal, int count) throws Exception {
+        TelemetrySample[] written = new TelemetrySample[count];
+        for (int i = 0; i < count; i++) {
+            written[i] = new TelemetrySample();
+            generator.next(written[i]);
+            written[i].setSourceId(i % 3);
+            journal.append(written[i]);
+            clock.advanceMillis(5);
+        }
+        return written;
+    }
+
+    private int readAll(File directory, TelemetrySample[] expected) throws Exception {
+        int read = 0;
+        TelemetrySample sample = new TelemetrySample();
+        try (JournalReader reader = new JournalReader(directory)) {
+            while (reader.next(sample)) {
+                if (expected != null && read < expected.length) {
+                    assertEquals(expected[read].getSequence(), sample.getSequence());
+                    assertEquals(expected[read].getTimestampMicros(), sample.getTimestampMicros());
+                    assertEquals(expected[read].getSourceId(), sample.getSourceId());
+                    assertEquals(expected[read].getAccelX(), sample.getAccelX(), 0);
+                    assertEquals(expected[read].getGyroZ(), sample.getGyroZ(), 0);
+                }
+                read++;
+            }
+        }
+        return read;
+    }
+
+    @Test
+    public void appendAndReadBack_acrossSizeRotation() throws Exception {
+        File directory = folder.newFolder("rides");
+        config.segmentBytes = JournalFormat.HEADER_SIZE + 1000 * JournalFormat.RECORD_SIZE;
+        RideJournal journal = new RideJournal(directory, config, clock);
+        TelemetrySample[] written = write(journal, 2500);
+        journal.close();
+
+        List<JournalReader.SegmentInfo> segments = JournalReader.listSegments(directory);
+        assertEquals(3, segments.size());
+        assertEquals(1000, segments.get(0).getRecordCount());
+        assertEquals(500, segments.get(2).getRecordCount());
+        assertTrue(segments.get(2).isClosed());
+        assertEquals(written[0].getTimestampMicros(), segments.get(0).getMinTimestampMicros());
+        assertEquals(written[2499].getTimestampMicros(), segments.get(2).getMaxTimestampMicros(), config.groupCommitRecords);
+        // Closed segments are trimmed to their contents
+        assertEquals(JournalFormat.recordOffset(500), segments.get(2).getFile().length());
+        assertEquals(2500, readAll(directory, written));
+    }
+
+    @Test
+    public void segments_rotateByTime() throws Exception {
+        File directory = folder.newFolder("rides");
+        config.maxSegmentMillis = 1_000;
+        RideJournal journal = new RideJournal(directory, config, clock);
+        write(journal, 1000); // 5 s at 5 ms per sample
+        journal.close();
+        assertEquals(5, journal.getSegmentsCreated());
+        assertEquals(1000, readAll(directory, null));
+    }
+
+    @Test
+    public void groupCommit_forcesEveryNRecords() throws Exception {
+        config.groupCommitRecords = 100;
+        config.groupCommitMillis = 60_000;
+        RideJournal journal = new RideJournal(folder.newFolder("rides"), config, clock);
+        write(journal, 1000);
+        // One commit for the new segment header, then one per 100 records
+        assertEquals(11, journal.getCommits());
+        journal.close();
+    }
+
+    @Test
+    public void killedMidRide_recoversAndTruncatesTornTail() throws Exception {
+        File directory = folder.newFolder("rides");
+        RideJournal killed = new RideJournal(directory, config, clock);
+        TelemetrySample[] written = write(killed, 700);
+        // Never closed, and the last record only half made it to disk
+        File segment = JournalFormat.segmentFile(directory, 0);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(JournalFormat.recordOffset(699) + 20);
+            raf.write(new byte[20]);
+        }
+        assertFalse(JournalReader.listSegments(directory).get(0).isClosed());
+
+        RideJournal next = new RideJournal(directory, config, clock);
+        write(next, 10);
+        next.close();
+
+        assertEquals(1, next.getRecoveredSegments());
+        assertEquals(1, next.getTornTails());
+        List<JournalReader.SegmentInfo> segments = JournalReader.listSegments(directory);
+        assertEquals(2, segments.size());
+        assertTrue(segments.get(0).isClosed());
+        assertEquals(699, segments.get(0).getRecordCount());
+        assertEquals(written[698].getTimestampMicros(), segments.get(0).getMaxTimestampMicros());
+        assertEquals(JournalFormat.recordOffset(699), segment.length());
+        assertEquals(709, readAll(directory, Arrays.copyOf(written, 699)));
+    }
+
+    @Test
+    public void olderVersionSegment_isLeftAlone() throws Exception {
+        File directory = folder.newFolder("rides");
+        // A version 1 header with 40-byte records, never closed; none of them would pass as version 2
+        ByteBuffer header = ByteBuffer.allocate(JournalFormat.HEADER_SIZE + 10 * 40).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, JournalFormat.MAGIC);
+        header.putShort(4, (short) 1);
+        header.putShort(6, (short) 40);
+        Arrays.fill(header.array(), JournalFormat.HEADER_SIZE, header.capacity(), (byte) 7);
+        File old = JournalFormat.segmentFile(directory, 0);
+        try (RandomAccessFile raf = new RandomAccessFile(old, "rw")) {
+            raf.write(header.array());
+        }
+
+        RideJournal journal = new RideJournal(directory, config, clock);
+        TelemetrySample[] written = write(journal, 10);
+        journal.close();
+
+        assertEquals(0, journal.getRecoveredSegments());
+        assertEquals(header.capacity(), old.length());
+        List<JournalReader.SegmentInfo> segments = JournalReader.listSegments(directory);
+        assertEquals(1, segments.size());
+        assertEquals(1, segments.get(0).getIndex());
+        assertEquals(10, readAll(directory, written));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.myapplication.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueWithinSixPercent() {
+        int previous = -1;
+        for (long value = 0; value < 5_000_000; value += 1 + value / 50) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= Math.max(0, value / 16));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_ofAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertEquals(5_000.5, histogram.getMeanMicros(), 1e-9);
+        assertEquals(5_000, histogram.getPercentileMicros(0.5), 5_000 / 16);
+        assertEquals(9_900, histogram.getPercentileMicros(0.99), 9_900 / 16);
+        assertEquals(10_000, histogram.getPercentileMicros(1));
+
+        histogram.record(-20); // clocks not in sync yet
+        assertEquals(0, histogram.getPercentileMicros(0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(0.5));
+    }
+
+    @Test
+    public void concurrentRecords_areAllCounted() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(offset * 1_000 + i % 1_000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(3_999, histogram.getMaxMicros());
+    }
+}
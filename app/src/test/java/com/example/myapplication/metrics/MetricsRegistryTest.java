@@ -0,0 +1,90 @@
+package com.example.myapplication.metrics;
+
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshot_readsEveryMetricAndRatesAgainstThePreviousOne() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter packets = registry.counter("ble.pi.notifications");
+        assertSame(packets, registry.counter("ble.pi.notifications"));
+        AtomicLong depth = new AtomicLong(3);
+        registry.gauge("detect.queue_depth", depth::get);
+        LatencyHistogram decode = registry.histogram("ble.pi.decode_us");
+        for (int i = 1; i <= 100; i++) {
+            decode.record(i * 10);
+        }
+
+        packets.add(50);
+        MetricsSnapshot first = registry.snapshot(1_000, null);
+        assertEquals(50, first.getCounter("ble.pi.notifications"));
+        assertTrue(first.getRates().isEmpty());
+        assertEquals(Long.valueOf(3), first.getGauges().get("detect.queue_depth"));
+        assertEquals(1_000, first.getHistograms().get("ble.pi.decode_us").getMaxMicros());
+
+        packets.add(400);
+        depth.set(7);
+        MetricsSnapshot second = registry.snapshot(3_000, first);
+        assertEquals(2_000, second.getIntervalMillis());
+        assertEquals(200, second.getRate("ble.pi.notifications"), 1e-9);
+        assertEquals(Long.valueOf(7), second.getGauges().get("detect.queue_depth"));
+        assertTrue(second.format().contains("ble.pi.notifications 450 200.0/s"));
+
+        registry.removeGauge("detect.queue_depth");
+        assertFalse(registry.snapshot(4_000, second).getGauges().containsKey("detect.queue_depth"));
+    }
+
+    @Test
+    public void register_keepsTheFirstHistogramOfAName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        LatencyHistogram existing = new LatencyHistogram("sensor-to-decision");
+        assertSame(existing, registry.register(existing));
+        assertSame(existing, registry.register(new LatencyHistogram("sensor-to-decision")));
+        assertSame(existing, registry.histogram("sensor-to-decision"));
+        assertSame(Tracer.NONE, registry.getTracer());
+    }
+
+    @Test
+    public void exporter_writesAndPublishesPeriodically() throws Exception {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter samples = registry.counter("detect.samples");
+        File target = new File(folder.getRoot(), "metrics.txt");
+        MetricsExporter.Config config = new MetricsExporter.Config();
+        MetricsExporter exporter = new MetricsExporter(registry, scheduler, scheduler, target, config);
+        List<MetricsSnapshot> published = new ArrayList<>();
+        exporter.setListener(published::add);
+        exporter.start();
+
+        for (int second = 0; second < 30; second++) {
+            samples.add(200);
+            scheduler.advanceMillis(1_000);
+        }
+        assertEquals(3, published.size());
+        assertEquals(200, published.get(2).getRate("detect.samples"), 1e-9);
+        String written = new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8);
+        assertEquals(published.get(2).format(), written);
+        assertFalse(new File(folder.getRoot(), "metrics.txt.tmp").exists());
+
+        exporter.stop();
+        assertFalse(exporter.isRunning());
+        assertEquals(0, scheduler.pendingTasks());
+        assertEquals(0, exporter.getWriteFailures());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.myapplication.replay;
+
+import com.example.myapplication.crash.CrashDetector;
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.telemetry.SyntheticTelemetryGenerator;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetryReceiver;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.Clock;
+import com.example.myapplication.util.ExecutorScheduler;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RideReplayerTest {
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final RideReplayer.Config config = new RideReplayer.Config();
+
+    // 200 Hz with jitter, crash at crashAtSeconds or none
+    private static byte[] capture(double seconds, double crashAtSeconds) {
+        SyntheticTelemetryGenerator.Config generatorConfig = new SyntheticTelemetryGenerator.Config();
+        generatorConfig.crashAtSeconds = crashAtSeconds;
+        SyntheticTelemetryGenerator generator = new SyntheticTelemetryGenerator(generatorConfig);
+        int frames = (int) (seconds * generatorConfig.rateHz);
+        byte[] buf = new byte[frames * TelemetryFrame.SIZE];
+        TelemetrySample sample = new TelemetrySample();
+        for (int i = 0; i < frames; i++) {
+            generator.next(sample);
+            TelemetryFrame.encode(sample, buf, i * TelemetryFrame.SIZE);
+        }
+        return buf;
+    }
+
+
+    @Test
+    public void realTime_deliversSamplesAsTheyFallDue() {
+        int[] delivered = new int[1];
+        RideReplayer replayer = new RideReplayer(new FrameCaptureSource(capture(10, -1)),
+                sample -> delivered[0]++, scheduler, scheduler, config);
+        replayer.start();
+
+        scheduler.advanceMillis(1_000);
+        // 200 Hz, give or take the jitter and one tick
+        assertEquals(200, delivered[0], 4);
+        scheduler.advanceMillis(20_000);
+        assertEquals(2000, delivered[0]);
+        assertFalse(replayer.isRunning());
+        assertTrue(replayer.getMaxLagMicros() <= config.tickMillis * 1000);
+    }
+
+    @Test
+    public void speedUp_compressesTime() {
+        config.speed = 50;
+        int[] delivered = new int[1];
+        RideReplayer replayer = new RideReplayer(new FrameCaptureSource(capture(60, -1)),
+                sample -> delivered[0]++, scheduler, scheduler, config);
+        replayer.start();
+
+        scheduler.advanceMillis(600); // 30 s of ride
+        assertEquals(6000, delivered[0], 50);
+        scheduler.advanceMillis(1_000);
+        assertEquals(12_000, replayer.getSamplesReplayed());
+        // Finished, no timer left behind
+        assertEquals(0, scheduler.pendingTasks());
+    }
+
+    @Test
+    public void gapsBetweenRides_areShortened() {
+        long[] times = {0, 5_000, 3_600_000_000L, 3_600_005_000L};
+        int[] next = new int[1];
+        List<Long> deliveredAt = new ArrayList<>();
+        RideReplayer.Source source = out -> {
+            if (next[0] == times.length) {
+                return false;
+            }
+            out.set(next[0], times[next[0]++], 0, 0, 1, 0, 0, 0);
+            return true;
+        };
+        config.tickMillis = 1;
+        RideReplayer replayer = new RideReplayer(source, sample -> deliveredAt.add(scheduler.nanoTime() / 1_000_000),
+                scheduler, scheduler, config);
+        replayer.start();
+        scheduler.advanceMillis(5_000);
+        assertEquals(List.of(0L, 5L, 1005L, 1010L), deliveredAt);
+    }
+
+    @Test
+    public void recordedCrash_isDetectedThroughTheDecodePath() throws IOException {
+        List<CrashEvent> crashes = new ArrayList<>();
+        List<String> legacy = new ArrayList<>();
+        CrashDetector detector = new CrashDetector(crashes::add);
+        TelemetryReceiver receiver = new TelemetryReceiver(detector, legacy::add);
+        NotificationEncoder encoder = new NotificationEncoder(receiver, 4);
+        config.speed = 0;
+        RideReplayer replayer = new RideReplayer(new FrameCaptureSource(capture(90, 60)), encoder,
+                scheduler, scheduler, config);
+
+        assertEquals(18_000, replayer.runToEnd());
+        encoder.sendLegacyMessage("1");
+
+        assertEquals(1, crashes.size());
+        assertEquals(60_000_000, crashes.get(0).getImpactTimestampMicros(), 1_000);
+        assertEquals(List.of("1"), legacy);
+        assertEquals(0, receiver.getDecoder().getFramesDropped());
+    }
+
+    @Test
+    public void soak_hundredTimesRealTime() throws Exception {
+        config.speed = 100;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch done = new CountDownLatch(1);
+        CrashDetector detector = new CrashDetector(event -> { });
+        RideReplayer replayer = new RideReplayer(new FrameCaptureSource(capture(120, -1)),
+                new NotificationEncoder(new TelemetryReceiver(detector, null), 1),
+                new ExecutorScheduler(executor), Clock.SYSTEM, config);
+        replayer.setListener(new RideReplayer.Listener() {
+            @Override
+            public void onReplayFinished(long samples) {
+                done.countDown();
+            }
+
+            @Override
+            public void onReplayFailed(IOException e) {
+            }
+        });
+        replayer.start();
+        try {
+            // 120 s of ride at 100x is 1.2 s
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(24_000, detector.getSamplesProcessed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
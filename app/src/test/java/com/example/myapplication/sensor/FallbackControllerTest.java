@@ -0,0 +1,57 @@
+package com.example.myapplication.sensor;
+
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FallbackControllerTest {
+    private boolean healthy;
+
+    @Test
+    public void switchesOnWhenTheLinkStaysDown_andOffOnlyWhenItStaysUp() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        FallbackController.Config config = new FallbackController.Config();
+        FallbackController controller = new FallbackController(() -> healthy, scheduler, scheduler, config);
+        List<Boolean> changes = new ArrayList<>();
+        controller.setListener(changes::add);
+
+        healthy = true;
+        controller.start();
+        scheduler.advanceMillis(30_000);
+        assertTrue(changes.isEmpty());
+
+        // A one second drop is ridden out
+        healthy = false;
+        scheduler.advanceMillis(1_000);
+        healthy = true;
+        scheduler.advanceMillis(5_000);
+        assertFalse(controller.isActive());
+
+        healthy = false;
+        scheduler.advanceMillis(config.activateAfterMillis + config.pollMillis);
+        assertTrue(controller.isActive());
+
+        // Flapping back up briefly keeps the phone sensors on
+        healthy = true;
+        scheduler.advanceMillis(3_000);
+        healthy = false;
+        scheduler.advanceMillis(3_000);
+        healthy = true;
+        scheduler.advanceMillis(5_000);
+        assertTrue(controller.isActive());
+        scheduler.advanceMillis(config.deactivateAfterMillis);
+        assertFalse(controller.isActive());
+        assertEquals(1, controller.getActivations());
+
+        healthy = false;
+        scheduler.advanceMillis(10_000);
+        controller.stop();
+        assertEquals(List.of(true, false, true, false), changes);
+        assertEquals(0, scheduler.pendingTasks());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.myapplication.sensor;
+
+import com.example.myapplication.crash.CrashDetector;
+import com.example.myapplication.crash.CrashEvent;
+import com.example.myapplication.metrics.MetricsRegistry;
+import com.example.myapplication.telemetry.TelemetrySample;
+import com.example.myapplication.util.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PhoneImuBatcherTest {
+    private static final float G = 9.80665f;
+
+    @Test
+    public void batch_pairsEachAccelerationWithTheLatestGyro() {
+        List<TelemetrySample> out = new ArrayList<>();
+        MetricsRegistry metrics = new MetricsRegistry();
+        PhoneImuBatcher batcher = new PhoneImuBatcher(sample -> {
+            TelemetrySample copy = new TelemetrySample();
+            copy.copyFrom(sample);
+            out.add(copy);
+        }, new VirtualScheduler(), metrics, new PhoneImuBatcher.Config());
+
+        batcher.onGyroscope(5_000_000, 0, 0, (float) Math.PI);
+        batcher.onAccelerometer(10_000_000, 0, 0, G);
+        batcher.onAccelerometer(20_000_000, 2 * G, 0, 0);
+        batcher.onGyroscope(25_000_000, (float) Math.PI / 2, 0, 0); // after the last acceleration
+        assertTrue(out.isEmpty()); // nothing until the batch is complete
+        assertEquals(2, batcher.flush());
+
+        TelemetrySample first = out.get(0);
+        assertEquals(PhoneImuBatcher.SOURCE_ID, first.getSourceId());
+        assertEquals(10_000, first.getTimestampMicros());
+        assertEquals(1f, first.getAccelZ(), 1e-6);
+        assertEquals(180f, first.getGyroZ(), 1e-3);
+        assertEquals(2f, out.get(1).getAccelX(), 1e-6);
+
+        // The late gyro reading is kept for the next batch
+        batcher.onAccelerometer(30_000_000, 0, G, 0);
+        assertEquals(1, batcher.flush());
+        assertEquals(90f, out.get(2).getGyroX(), 1e-3);
+        assertEquals(0f, out.get(2).getGyroZ(), 1e-6);
+
+        assertEquals(0, batcher.flush()); // nothing delivered, not a wakeup
+        assertEquals(2, batcher.getBatchCount());
+        assertEquals(3, metrics.counter("imu.samples").get());
+        assertEquals(2, metrics.histogram("imu.batch_us").getCount());
+    }
+
+    @Test
+    public void batchLargerThanTheBuffer_isProcessedInPasses() {
+        int[] count = new int[1];
+        PhoneImuBatcher.Config config = new PhoneImuBatcher.Config();
+        config.capacity = 16;
+        PhoneImuBatcher batcher = new PhoneImuBatcher(sample -> count[0]++, new VirtualScheduler(),
+                new MetricsRegistry(), config);
+        for (int i = 1; i <= 100; i++) {
+            batcher.onAccelerometer(i * 10_000_000L, 0, 0, G);
+            batcher.onGyroscope(i * 10_000_000L, 0, 0, 0);
+        }
+        batcher.flush();
+        assertEquals(100, count[0]);
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    public void phoneSamples_driveTheSameDetector() {
+        List<CrashEvent> crashes = new ArrayList<>();
+        CrashDetector detector = new CrashDetector(crashes::add);
+        PhoneImuBatcher batcher = new PhoneImuBatcher(detector, new VirtualScheduler(), new MetricsRegistry(),
+                new PhoneImuBatcher.Config());
+        // 100 Hz delivered once per second: riding, a hard hit while tumbling, then lying still
+        long nanos = 0;
+        for (int second = 0; second < 8; second++) {
+            for (int i = 0; i < 100; i++) {
+                nanos += 10_000_000;
+                boolean impact = second == 2 && i >= 50 && i < 60;
+                boolean tumbling = second == 2 && i >= 50;
+                batcher.onAccelerometer(nanos, impact ? 12 * G : 0, 0, impact ? 0 : G);
+                batcher.onGyroscope(nanos, 0, tumbling ? 8f : 0, 0);
+            }
+            batcher.flush();
+        }
+        assertEquals(1, crashes.size());
+    }
+}
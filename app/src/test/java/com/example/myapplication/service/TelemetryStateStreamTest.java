@@ -0,0 +1,75 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.emergency.CrashAlertStateMachine;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetryStateStreamTest {
+
+    private static class RecordingObserver implements TelemetryStateStream.Observer {
+        final List<String> statuses = new ArrayList<>();
+        final List<CrashAlertStateMachine.State> states = new ArrayList<>();
+        int samples;
+
+        @Override
+        public void onSampleReceived(TelemetrySample sample) {
+            samples++;
+        }
+
+        @Override
+        public void onStatus(String status) {
+            statuses.add(status);
+        }
+
+        @Override
+        public void onAlertStateChanged(CrashAlertStateMachine.State state) {
+            states.add(state);
+        }
+    }
+
+    private final TelemetryStateStream stream = new TelemetryStateStream();
+
+    @Test
+    public void lateSubscriber_isBroughtUpToDate() {
+        stream.publishStatus("Scanning for devices...");
+        stream.publishStatus("Received: 1");
+        stream.publishAlertState(CrashAlertStateMachine.State.COUNTDOWN);
+
+        // e.g. the activity was recreated mid-countdown
+        RecordingObserver observer = new RecordingObserver();
+        stream.subscribe(observer);
+        assertEquals(1, observer.statuses.size());
+        assertEquals("Received: 1", observer.statuses.get(0));
+        assertEquals(1, observer.states.size());
+        assertEquals(CrashAlertStateMachine.State.COUNTDOWN, observer.states.get(0));
+    }
+
+    @Test
+    public void updatesReachSubscribersUntilTheyLeave() {
+        RecordingObserver observer = new RecordingObserver();
+        stream.subscribe(observer);
+        stream.subscribe(observer); // second subscribe is ignored
+        assertEquals(1, stream.getObserverCount());
+        assertTrue(observer.statuses.isEmpty());
+        assertEquals(1, observer.states.size()); // replayed ARMED
+
+        TelemetrySample sample = new TelemetrySample();
+        stream.onSampleReceived(sample);
+        stream.publishStatus("Call canceled.");
+        assertEquals(1, observer.samples);
+        assertEquals(1, observer.statuses.size());
+
+        stream.unsubscribe(observer);
+        stream.onSampleReceived(sample);
+        stream.publishAlertState(CrashAlertStateMachine.State.DISPATCHING);
+        assertEquals(1, observer.samples);
+        assertEquals(1, observer.states.size());
+        assertEquals(CrashAlertStateMachine.State.DISPATCHING, stream.getAlertState());
+    }
+}
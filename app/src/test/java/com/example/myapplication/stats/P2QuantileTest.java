@@ -0,0 +1,77 @@
+package com.example.myapplication.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class P2QuantileTest {
+
+    private static double exact(double[] values, double quantile) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.round(quantile * (sorted.length - 1))];
+    }
+
+    @Test
+    public void estimates_matchExactQuantiles() {
+        Random random = new Random(8);
+        double[] values = new double[100_000];
+        double[] quantiles = {0.5, 0.85, 0.99};
+        P2Quantile[] estimators = new P2Quantile[quantiles.length];
+        for (int q = 0; q < quantiles.length; q++) {
+            estimators[q] = new P2Quantile(quantiles[q]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            // Mostly 1 g riding with a long tail of bumps
+            values[i] = 1 + Math.abs(random.nextGaussian()) * 0.3 + (random.nextInt(50) == 0 ? random.nextDouble() * 3 : 0);
+            for (P2Quantile estimator : estimators) {
+                estimator.add(values[i]);
+            }
+        }
+        for (int q = 0; q < quantiles.length; q++) {
+            double expected = exact(values, quantiles[q]);
+            assertEquals(expected, estimators[q].get(), expected * 0.02);
+        }
+    }
+
+    @Test
+    public void fewValues_areExact() {
+        P2Quantile median = new P2Quantile(0.5);
+        assertTrue(Double.isNaN(median.get()));
+        median.add(3);
+        median.add(1);
+        median.add(2);
+        assertEquals(2, median.get(), 0);
+        median.reset();
+        assertEquals(0, median.getCount());
+    }
+
+    @Test
+    public void runningMoments_matchTwoPassComputation() {
+        Random random = new Random(9);
+        double[] values = new double[1_000_000];
+        RunningMoments moments = new RunningMoments();
+        for (int i = 0; i < values.length; i++) {
+            // A large offset is where a naive sum of squares loses its precision
+            values[i] = 1e6 + random.nextGaussian();
+            moments.add(values[i]);
+        }
+        double mean = 0;
+        for (double value : values) {
+            mean += value;
+        }
+        mean /= values.length;
+        double variance = 0;
+        for (double value : values) {
+            variance += (value - mean) * (value - mean);
+        }
+        variance /= values.length;
+        assertEquals(mean, moments.getMean(), 1e-6);
+        assertEquals(variance, moments.getVariance(), variance * 1e-6);
+        assertEquals(Arrays.stream(values).max().getAsDouble(), moments.getMax(), 0);
+        assertEquals(Arrays.stream(values).min().getAsDouble(), moments.getMin(), 0);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.myapplication.stats;
+
+import com.example.myapplication.sensor.PhoneImuBatcher;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RideStatsAggregatorTest {
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+
+    private final TelemetrySample sample = new TelemetrySample();
+
+    private void feed(RideStatsAggregator aggregator, long micros, float accelZ, float yawRate) {
+        sample.set(0, micros, 0, 0, accelZ, 0, 0, yawRate);
+        aggregator.onSampleReceived(sample);
+    }
+
+    @Test
+    public void positionStats_matchAnOfflinePass() {
+        RideStatsAggregator.Config config = new RideStatsAggregator.Config();
+        RideStatsAggregator aggregator = new RideStatsAggregator(config);
+        Random random = new Random(4);
+        double latitude = 47;
+        double distance = 0;
+        double maxSpeed = 0;
+        double speedSum = 0;
+        int moving = 0;
+        long movingMillis = 0;
+        for (int t = 0; t < 600; t++) {
+            // Stop-and-go northwards, one fix a second
+            double speed = t % 100 < 20 ? 0 : 10 + random.nextDouble() * 20;
+            double step = t == 0 ? 0 : speed;
+            latitude += step / METERS_PER_DEGREE;
+            distance += step;
+            maxSpeed = Math.max(maxSpeed, speed);
+            if (speed >= config.movingSpeedMps) {
+                speedSum += speed;
+                moving++;
+                if (t > 0) {
+                    movingMillis += 1_000;
+                }
+            }
+            aggregator.onLocation(t * 1_000_000L, latitude, 8, speed);
+        }
+        RideSummary summary = aggregator.getSummary();
+        assertEquals(600, summary.getFixes());
+        assertEquals(distance, summary.getDistanceMeters(), distance * 1e-6);
+        assertEquals(maxSpeed, summary.getMaxSpeedMps(), 0);
+        assertEquals(speedSum / moving, summary.getAverageMovingSpeedMps(), 1e-9);
+        assertEquals(movingMillis, summary.getMovingMillis());
+        assertEquals(10 + 20 * 0.85, summary.getSpeedP85Mps(), 1);
+    }
+
+    @Test
+    public void lean_countsOnlyWhenHeld() {
+        RideStatsAggregator.Config config = new RideStatsAggregator.Config();
+        RideStatsAggregator aggregator = new RideStatsAggregator(config);
+        for (int t = 0; t <= 3; t++) {
+            aggregator.onLocation(t * 1_000_000L, 47, 8, 20);
+        }
+        // 20 m/s in a steady left turn of 20 deg/s: atan(20 * 0.349 / 9.81), about 35 deg
+        long micros = 0;
+        for (int i = 0; i < 200; i++, micros += 5_000) {
+            feed(aggregator, micros, 1, 20);
+        }
+        // A 50 ms yaw spike to the right is not a lean
+        for (int i = 0; i < 10; i++, micros += 5_000) {
+            feed(aggregator, micros, 1, -60);
+        }
+        for (int i = 0; i < 200; i++, micros += 5_000) {
+            feed(aggregator, micros, 1, 0);
+        }
+        RideSummary summary = aggregator.flush();
+        double expected = Math.toDegrees(Math.atan(20 * Math.toRadians(20) / 9.80665));
+        assertEquals(expected, summary.getMaxLeanLeftDegrees(), 0.01);
+        assertEquals(0, summary.getMaxLeanRightDegrees(), 0);
+    }
+
+    @Test
+    public void lean_usesTheSpeedAtTheSampleWhenFixesArriveLate() {
+        RideStatsAggregator aggregator = new RideStatsAggregator(new RideStatsAggregator.Config());
+        // Fixes come in 10 s batches: 30 m/s down the straight, then 10 m/s through the corner
+        long micros = 0;
+        for (; micros < 5_000_000; micros += 5_000) {
+            feed(aggregator, micros, 1, 0);
+        }
+        for (int t = 0; t < 5; t++) {
+            aggregator.onLocation(t * 1_000_000L, 47, 8, 30);
+        }
+        // A 3 s left turn at 40 deg/s, seen before any fix from the corner has arrived
+        for (; micros < 8_000_000; micros += 5_000) {
+            feed(aggregator, micros, 1, micros >= 5_500_000 ? 40 : 0);
+        }
+        for (; micros < 10_000_000; micros += 5_000) {
+            feed(aggregator, micros, 1, 0);
+        }
+        for (int t = 5; t <= 10; t++) {
+            aggregator.onLocation(t * 1_000_000L, 47, 8, 10);
+        }
+        RideSummary summary = aggregator.flush();
+        double expected = Math.toDegrees(Math.atan(10 * Math.toRadians(40) / 9.80665));
+        assertEquals(expected, summary.getMaxLeanLeftDegrees(), 0.01);
+    }
+
+    @Test
+    public void lean_needsAFixNearTheSample() {
+        RideStatsAggregator aggregator = new RideStatsAggregator(new RideStatsAggregator.Config());
+        aggregator.onLocation(0, 47, 8, 20);
+        // Turning 5 s after the only fix, its speed no longer says anything
+        for (long micros = 5_000_000; micros < 7_000_000; micros += 5_000) {
+            feed(aggregator, micros, 1, 20);
+        }
+        assertEquals(0, aggregator.flush().getMaxLeanLeftDegrees(), 0);
+    }
+
+    @Test
+    public void accelStats_andConstantMemory() {
+        RideStatsAggregator aggregator = new RideStatsAggregator(new RideStatsAggregator.Config());
+        Random random = new Random(6);
+        double peak = 0;
+        long micros = 0;
+        // An hour at 200 Hz
+        for (int i = 0; i < 720_000; i++, micros += 5_000) {
+            float g = (float) (1 + random.nextGaussian() * 0.1);
+            peak = Math.max(peak, Math.abs(g));
+            feed(aggregator, micros, g, 0);
+            // The phone in a pocket, swinging far harder than the bike
+            sample.set(0, micros, 0, 0, 5, 0, 0, 0);
+            sample.setSourceId(PhoneImuBatcher.SOURCE_ID);
+            aggregator.onSampleReceived(sample);
+            sample.setSourceId(0);
+        }
+        RideSummary summary = aggregator.flush();
+        assertEquals(720_000, summary.getSamples());
+        assertEquals(peak, summary.getPeakG(), 1e-6);
+        assertEquals(1, summary.getMedianG(), 0.01);
+        assertEquals(1 + 2.326 * 0.1, summary.getP99G(), 0.01);
+        assertEquals(0.1, summary.getGStandardDeviation(), 0.002);
+
+        long version = summary.getVersion();
+        aggregator.reset();
+        assertEquals(0, aggregator.getSummary().getSamples());
+        assertTrue(aggregator.getSummary().getVersion() > version);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.myapplication.telemetry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+
+    private static byte[] frame(int sequence, long timestampMicros, float ax, float ay, float az) {
+        TelemetrySample sample = new TelemetrySample();
+        sample.set(sequence, timestampMicros, ax, ay, az, 12.5f, -3.1f, 0f);
+        byte[] buf = new byte[TelemetryFrame.SIZE];
+        TelemetryFrame.encode(sample, buf, 0);
+        return buf;
+    }
+
+    @Test
+    public void decode_roundTripsEncodedFrame() {
+        FrameDecoder decoder = new FrameDecoder();
+        TelemetrySample out = new TelemetrySample();
+
+        assertEquals(FrameDecoder.OK, decoder.decode(frame(7, 123456, 0.25f, -1.5f, 9.999f), 0, out));
+        assertEquals(7, out.getSequence());
+        assertEquals(123456, out.getTimestampMicros());
+        assertEquals(0.25f, out.getAccelX(), 1e-3f);
+        assertEquals(-1.5f, out.getAccelY(), 1e-3f);
+        assertEquals(9.999f, out.getAccelZ(), 1e-3f);
+        assertEquals(12.5f, out.getGyroX(), 0.05f);
+        assertEquals(-3.1f, out.getGyroY(), 0.05f);
+        assertEquals(1, decoder.getFramesDecoded());
+    }
+
+    @Test
+    public void decode_rejectsCorruptedFrame() {
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] buf = frame(1, 10, 0, 0, 1);
+        buf[7] ^= 0x40;
+
+        assertEquals(FrameDecoder.BAD_CRC, decoder.decode(buf, 0, new TelemetrySample()));
+        assertEquals(1, decoder.getCrcErrors());
+        assertEquals(FrameDecoder.BAD_LENGTH, decoder.decode(new byte[5], 0, new TelemetrySample()));
+    }
+
+    @Test
+    public void decode_countsGapsAndLateFrames() {
+        FrameDecoder decoder = new FrameDecoder();
+        TelemetrySample out = new TelemetrySample();
+
+        decoder.decode(frame(65534, 0, 0, 0, 1), 0, out);
+        decoder.decode(frame(65535, 10, 0, 0, 1), 0, out);
+        decoder.decode(frame(2, 40, 0, 0, 1), 0, out); // 0 and 1 missing across the wrap
+        assertEquals(2, decoder.getFramesDropped());
+
+        assertEquals(FrameDecoder.OUT_OF_ORDER, decoder.decode(frame(1, 30, 0, 0, 1), 0, out));
+        assertEquals(1, decoder.getFramesOutOfOrder());
+        assertEquals(2, out.getSequence());
+    }
+
+    @Test
+    public void decode_resyncsWhenCounterRestartsWithoutReconnect() {
+        FrameDecoder decoder = new FrameDecoder();
+        TelemetrySample out = new TelemetrySample();
+
+        decoder.decode(frame(30000, 0, 0, 0, 1), 0, out);
+        decoder.decode(frame(30001, 10, 0, 0, 1), 0, out);
+        // Pi restarted: far behind, so followed at once
+        assertEquals(FrameDecoder.OK, decoder.decode(frame(0, 20, 0, 0, 1), 0, out));
+        assertEquals(FrameDecoder.OK, decoder.decode(frame(1, 30, 0, 0, 1), 0, out));
+        assertEquals(1, decoder.getResyncs());
+        assertEquals(0, decoder.getFramesOutOfOrder());
+        assertEquals(1, out.getSequence());
+    }
+
+    @Test
+    public void decode_resyncsAfterRunOfLateFrames() {
+        FrameDecoder decoder = new FrameDecoder();
+        TelemetrySample out = new TelemetrySample();
+
+        decoder.decode(frame(100, 0, 0, 0, 1), 0, out);
+        // Restarted just behind the last frame, looks late at first
+        int sequence = 90;
+        int result;
+        do {
+            result = decoder.decode(frame(sequence++, sequence * 10L, 0, 0, 1), 0, out);
+        } while (result == FrameDecoder.OUT_OF_ORDER);
+        assertEquals(FrameDecoder.OK, result);
+        assertEquals(FrameDecoder.MAX_CONSECUTIVE_LATE, decoder.getFramesOutOfOrder());
+        assertEquals(1, decoder.getResyncs());
+        assertEquals(FrameDecoder.OK, decoder.decode(frame(sequence, 0, 0, 0, 1), 0, out));
+    }
+
+    @Test
+    public void decode_unwrapsTimestamp() {
+        FrameDecoder decoder = new FrameDecoder();
+        TelemetrySample out = new TelemetrySample();
+
+        decoder.decode(frame(1, 0xFFFFFFF0L, 0, 0, 1), 0, out);
+        decoder.decode(frame(2, 0x10, 0, 0, 1), 0, out);
+        assertEquals((1L << 32) + 0x10, out.getTimestampMicros());
+    }
+
+    @Test
+    public void receiver_splitsPackedFramesAndKeepsLegacyProtocol() {
+        List<Integer> sequences = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        TelemetryReceiver receiver = new TelemetryReceiver(
+                sample -> sequences.add(sample.getSequence()), messages::add);
+
+        byte[] packed = new byte[TelemetryFrame.SIZE * 3];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(frame(i, i * 10, 0, 0, 1), 0, packed, i * TelemetryFrame.SIZE, TelemetryFrame.SIZE);
+        }
+        receiver.onNotification(packed);
+        receiver.onNotification("1".getBytes());
+
+        assertEquals(3, sequences.size());
+        assertEquals(2, (int) sequences.get(2));
+        assertEquals(1, messages.size());
+        assertEquals("1", messages.get(0));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.myapplication.telemetry;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SampleDispatcherTest {
+
+    @Test
+    public void stop_drainsQueuedSamplesWithoutInterrupting() throws Exception {
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        // A consumer slow enough that most of the samples are still queued when stop() is called
+        SampleDispatcher dispatcher = new SampleDispatcher(
+                new SampleRingBuffer(1024, SampleRingBuffer.OverflowPolicy.DROP_OLDEST), sample -> {
+            started.countDown();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            assertEquals(delivered.getAndIncrement(), sample.getSequence());
+        });
+        dispatcher.start();
+        TelemetrySample sample = new TelemetrySample();
+        for (int i = 0; i < 500; i++) {
+            sample.set(i, i * 5_000L, 0, 0, 1, 0, 0, 0);
+            dispatcher.onSampleReceived(sample);
+        }
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertTrue(dispatcher.stop());
+        assertEquals(500, delivered.get());
+        assertFalse(interrupted.get());
+        assertEquals(0, dispatcher.getBuffer().size());
+    }
+
+    @Test
+    public void restartedAfterStop_deliversTheNextRide() throws Exception {
+        AtomicInteger delivered = new AtomicInteger();
+        SampleDispatcher dispatcher = new SampleDispatcher(
+                new SampleRingBuffer(64, SampleRingBuffer.OverflowPolicy.DROP_OLDEST),
+                sample -> delivered.incrementAndGet());
+        TelemetrySample sample = new TelemetrySample();
+        for (int ride = 1; ride <= 2; ride++) {
+            assertTrue(dispatcher.start());
+            for (int i = 0; i < 10; i++) {
+                sample.set(i, i * 5_000L, 0, 0, 1, 0, 0, 0);
+                dispatcher.onSampleReceived(sample);
+            }
+            assertTrue(dispatcher.stop());
+            assertEquals(ride * 10, delivered.get());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.myapplication.telemetry;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SampleRingBufferTest {
+
+    private static TelemetrySample sample(int sequence) {
+        TelemetrySample sample = new TelemetrySample();
+        sample.set(sequence, sequence * 1000L, 0, 0, 1, 0, 0, 0);
+        return sample;
+    }
+
+    @Test
+    public void dropNewest_keepsQueuedSamples() {
+        SampleRingBuffer buffer = new SampleRingBuffer(4, SampleRingBuffer.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; i++) {
+            buffer.offer(sample(i));
+        }
+        TelemetrySample out = new TelemetrySample();
+        assertTrue(buffer.poll(out));
+        assertEquals(0, out.getSequence());
+        assertEquals(2, buffer.getDropped());
+        assertEquals(4, buffer.getHighWaterMark());
+    }
+
+    @Test
+    public void dropOldest_keepsLatestSamples() {
+        SampleRingBuffer buffer = new SampleRingBuffer(3, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(sample(i));
+        }
+        TelemetrySample out = new TelemetrySample();
+        for (int expected = 6; expected < 10; expected++) {
+            assertTrue(buffer.poll(out));
+            assertEquals(expected, out.getSequence());
+        }
+        assertFalse(buffer.poll(out));
+        assertEquals(6, buffer.getDropped());
+    }
+
+    @Test
+    public void block_timesOutWhenConsumerStalls() {
+        SampleRingBuffer buffer = new SampleRingBuffer(2, SampleRingBuffer.OverflowPolicy.BLOCK, 5, TimeUnit.MILLISECONDS);
+        assertTrue(buffer.offer(sample(0)));
+        assertTrue(buffer.offer(sample(1)));
+        assertFalse(buffer.offer(sample(2)));
+        assertEquals(1, buffer.getDropped());
+    }
+
+    @Test
+    public void syntheticProducer_deliversInOrderAcrossThreads() throws Exception {
+        final int count = 200_000;
+        SampleRingBuffer buffer = new SampleRingBuffer(64, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+        Thread producer = new Thread(() -> {
+            TelemetrySample sample = new TelemetrySample();
+            for (int i = 0; i < count; i++) {
+                sample.set(i, i, 0, 0, 1, 0, 0, 0);
+                buffer.offer(sample);
+            }
+        });
+        producer.start();
+
+        TelemetrySample out = new TelemetrySample();
+        long received = 0;
+        int last = -1;
+        while (last < count - 1) {
+            if (buffer.take(out, 1, TimeUnit.SECONDS)) {
+                assertTrue("out of order: " + out.getSequence() + " after " + last, out.getSequence() > last);
+                assertEquals(out.getSequence(), out.getTimestampMicros());
+                last = out.getSequence();
+                received++;
+            } else {
+                fail("consumer timed out after " + last);
+            }
+        }
+        producer.join();
+        assertEquals(count, received + buffer.getDropped());
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.myapplication.telemetry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamMergerTest {
+
+    // Records the merged stream as (source, timestamp) pairs
+    private static class Collector implements SampleListener {
+        final List<long[]> released = new ArrayList<>();
+
+        @Override
+        public void onSampleReceived(TelemetrySample sample) {
+            released.add(new long[]{sample.getSourceId(), sample.getTimestampMicros()});
+        }
+
+        void assertOrdered() {
+            for (int i = 1; i < released.size(); i++) {
+                assertTrue("out of order at " + i, released.get(i)[1] >= released.get(i - 1)[1]);
+            }
+        }
+    }
+
+    // A sensor unit streaming at a fixed period on the shared clock
+    private static class FakeDevice {
+        final int sourceId;
+        final long periodMicros;
+        final long startMicros;
+        int sequence;
+        private final TelemetrySample sample = new TelemetrySample();
+
+        FakeDevice(int sourceId, long periodMicros, long startMicros) {
+            this.sourceId = sourceId;
+            this.periodMicros = periodMicros;
+            this.startMicros = startMicros;
+        }
+
+        long nextMicros() {
+            return startMicros + sequence * periodMicros;
+        }
+
+        void send(StreamMerger merger) {
+            sample.set(sequence, nextMicros(), 0, 0, 1, 0, 0, 0);
+            sample.setSourceId(sourceId);
+            sequence++;
+            merger.onSampleReceived(sample);
+        }
+
+        void skip() {
+            sequence++;
+        }
+    }
+
+    private final Collector collector = new Collector();
+    private final StreamMerger.Config config = new StreamMerger.Config();
+
+    @Test
+    public void singleSource_passesStraightThrough() {
+        StreamMerger merger = new StreamMerger(collector, config);
+        FakeDevice pi = new FakeDevice(0, 5_000, 0);
+        for (int i = 0; i < 100; i++) {
+            pi.send(merger);
+            assertEquals(i + 1, collector.released.size());
+        }
+        assertEquals(0, merger.getQueuedCount());
+    }
+
+    @Test
+    public void twoDevices_withJitteredDelivery_mergeInOrder() {
+        StreamMerger merger = new StreamMerger(collector, config);
+        merger.addSource(1);
+        merger.addSource(2);
+        FakeDevice helmet = new FakeDevice(1, 5_000, 0);
+        FakeDevice frame = new FakeDevice(2, 2_500, 1_000);
+        Random random = new Random(3);
+        // Every 7.5 ms connection event each unit delivers what it has, up to 30 ms late
+        int sent = 0;
+        for (long now = 0; now < 10_000_000; now += 7_500) {
+            for (FakeDevice device : new FakeDevice[]{helmet, frame}) {
+                long delay = random.nextInt(30_000);
+                while (device.nextMicros() <= now - delay) {
+                    device.send(merger);
+                    sent++;
+                }
+            }
+        }
+        merger.flush();
+
+        assertEquals(sent, collector.released.size());
+        collector.assertOrdered();
+        assertEquals(0, merger.getStats(1).getLateDrops());
+        assertEquals(0, merger.getStats(2).getLateDrops());
+        assertEquals(200, merger.getStats(1).getRateHz(), 1);
+        assertEquals(400, merger.getStats(2).getRateHz(), 1);
+    }
+
+    @Test
+    public void silentDevice_holdsBackOnlyForTheLatenessWindow() {
+        StreamMerger merger = new StreamMerger(collector, config);
+        merger.addSource(1);
+        merger.addSource(2); // never sends
+        FakeDevice helmet = new FakeDevice(1, 5_000, 0);
+        for (int i = 0; i < 100; i++) {
+            helmet.send(merger);
+        }
+        // Everything older than the window behind the newest sample is out
+        long newest = 99 * 5_000;
+        long lastReleased = collector.released.get(collector.released.size() - 1)[1];
+        assertTrue(lastReleased <= newest - config.latenessMicros);
+        assertTrue(lastReleased > newest - config.latenessMicros - 5_000);
+        assertEquals(100 - collector.released.size(), merger.getQueuedCount());
+    }
+
+    @Test
+    public void lateSample_isDroppedAndCounted() {
+        StreamMerger merger = new StreamMerger(collector, config);
+        merger.addSource(1);
+        merger.addSource(2);
+        FakeDevice helmet = new FakeDevice(1, 5_000, 1_000_000);
+        FakeDevice frame = new FakeDevice(2, 5_000, 0);
+        for (int i = 0; i < 30; i++) {
+            helmet.send(merger);
+        }
+        // The frame unit comes back a second behind, far past the window
+        frame.send(merger);
+        collector.assertOrdered();
+        StreamMerger.SourceStats stats = merger.getStats(2);
+        assertEquals(1, stats.getLateDrops());
+        assertTrue(stats.getMaxSkewMicros() >= 1_000_000);
+    }
+
+    @Test
+    public void fullQueue_releasesEarlyWithoutLosingSamples() {
+        config.capacityPerSource = 8;
+        config.latenessMicros = Long.MAX_VALUE / 2;
+        StreamMerger merger = new StreamMerger(collector, config);
+        merger.addSource(1);
+        merger.addSource(2);
+        FakeDevice helmet = new FakeDevice(1, 5_000, 0);
+        for (int i = 0; i < 20; i++) {
+            helmet.send(merger);
+        }
+        assertEquals(12, collector.released.size());
+        assertEquals(12, merger.getForcedReleases());
+        assertEquals(8, merger.getQueuedCount());
+    }
+
+    @Test
+    public void sequenceHoles_areCountedAsLost() {
+        StreamMerger merger = new StreamMerger(collector, config);
+        FakeDevice pi = new FakeDevice(0, 5_000, 0);
+        pi.send(merger);
+        pi.skip();
+        pi.skip();
+        pi.send(merger);
+        assertEquals(2, merger.getStats(0).getSequenceGaps());
+        // 0xFFFF is 4 behind 3 modulo 2^16: a stale frame, not 65k lost ones
+        pi.sequence = 0xFFFF;
+        pi.send(merger);
+        pi.send(merger); // 0x10000 wraps to 0 on the wire
+        assertEquals(2, merger.getStats(0).getSequenceGaps());
+    }
+
+    @Test
+    public void forwardedAndMergedSamples_reachTheRingOneAtATime() throws Exception {
+        int perSource = 50_000;
+        SampleRingBuffer ring = new SampleRingBuffer(1 << 17, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+        StreamMerger merger = new StreamMerger(ring::offer, config);
+        // A unit on its GATT thread and the phone's IMU on its sensor thread, both at full speed
+        Thread unit = new Thread(() -> {
+            FakeDevice pi = new FakeDevice(0, 5_000, 0);
+            for (int i = 0; i < perSource; i++) {
+                pi.send(merger);
+            }
+        });
+        Thread phone = new Thread(() -> {
+            TelemetrySample sample = new TelemetrySample();
+            for (int i = 0; i < perSource; i++) {
+                sample.set(i, i * 2_500L, 0, 0, 1, 0, 0, 0);
+                sample.setSourceId(100);
+                merger.forward(sample);
+            }
+        });
+        unit.start();
+        phone.start();
+        unit.join();
+        phone.join();
+        merger.flush();
+
+        int[] next = new int[101];
+        TelemetrySample sample = new TelemetrySample();
+        while (ring.poll(sample)) {
+            assertEquals(next[sample.getSourceId()]++, sample.getSequence());
+        }
+        assertEquals(perSource, next[0]);
+        assertEquals(perSource, next[100]);
+        assertEquals(0, ring.getDropped());
+    }
+
+    @Test
+    public void reconnectedSource_startsItsSequenceOver() {
+        StreamMerger merger = new StreamMerger(collector, config);
+        FakeDevice pi = new FakeDevice(0, 5_000, 0);
+        pi.sequence = 40_000;
+        for (int i = 0; i < 100; i++) {
+            pi.send(merger);
+        }
+        // The unit rebooted while disconnected and counts from 0 again, which looks like 25k lost samples
+        merger.onSourceReconnected(0);
+        FakeDevice rebooted = new FakeDevice(0, 5_000, 500_000_000);
+        rebooted.send(merger);
+        rebooted.send(merger);
+        assertEquals(0, merger.getStats(0).getSequenceGaps());
+        assertEquals(102, merger.getStats(0).getReceived());
+    }
+}
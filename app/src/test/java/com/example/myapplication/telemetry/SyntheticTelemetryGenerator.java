@@ -0,0 +1,117 @@
+package com.example.myapplication.telemetry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic stand-in for the Pi's sensor stream, for tests and benchmarks.
+ * Produces riding vibration at a configurable rate with timestamp jitter, packs frames into
+ * notifications of a configurable burst size, can simulate link loss and can inject a crash
+ * (impact spike, tumble, then lying still) at a given time.
+ */
+public final class SyntheticTelemetryGenerator {
+    public static final class Config {
+        public int rateHz = 200;
+        // Timestamps are spread uniformly +/- this much around the nominal period
+        public long jitterMicros = 500;
+        // Frames packed into one notification
+        public int burstSize = 1;
+        // Seconds from the start of the stream to inject a crash, negative for none
+        public double crashAtSeconds = -1;
+        public float vibrationG = 0.3f;
+        public float cruiseRotationDps = 15f;
+        // Chance that a frame is lost on the link; its sequence number is still used up
+        public double dropProbability = 0;
+        public long seed = 1;
+    }
+
+    private static final long IMPACT_MICROS = 60_000;
+    private static final long TUMBLE_MICROS = 1_200_000;
+
+    private final Config config;
+    private final Random random;
+    private final long periodMicros;
+    private final long crashAtMicros;
+    private final TelemetrySample scratch = new TelemetrySample();
+    private int sequence;
+    private long sampleIndex;
+
+    public SyntheticTelemetryGenerator(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.periodMicros = 1_000_000L / config.rateHz;
+        this.crashAtMicros = config.crashAtSeconds < 0 ? Long.MAX_VALUE : (long) (config.crashAtSeconds * 1_000_000);
+    }
+
+    // Writes the next sample into out
+    public void next(TelemetrySample out) {
+        long nominal = sampleIndex * periodMicros;
+        long jitter = config.jitterMicros > 0
+                ? (long) ((random.nextDouble() * 2 - 1) * config.jitterMicros) : 0;
+        long timestamp = Math.max(0, nominal + jitter);
+        sampleIndex++;
+
+        float noise = config.vibrationG;
+        long sinceCrash = nominal - crashAtMicros;
+        if (sinceCrash < 0) {
+            out.set(sequence, timestamp,
+                    gaussian(noise), gaussian(noise), 1 + gaussian(noise),
+                    config.cruiseRotationDps + gaussian(5), gaussian(5), gaussian(5));
+        } else if (sinceCrash < IMPACT_MICROS) {
+            out.set(sequence, timestamp,
+                    9 + gaussian(1), 4 + gaussian(1), 2 + gaussian(1),
+                    350 + gaussian(40), 200 + gaussian(40), gaussian(40));
+        } else if (sinceCrash < IMPACT_MICROS + TUMBLE_MICROS) {
+            out.set(sequence, timestamp,
+                    gaussian(1.5f), gaussian(1.5f), 1 + gaussian(1.5f),
+                    250 + gaussian(50), gaussian(50), 120 + gaussian(50));
+        } else {
+            // On its side and not moving
+            out.set(sequence, timestamp,
+                    gaussian(0.01f), 1 + gaussian(0.01f), gaussian(0.01f),
+                    gaussian(0.5f), gaussian(0.5f), gaussian(0.5f));
+        }
+        sequence = (sequence + 1) & 0xFFFF;
+    }
+
+    /**
+     * Encodes the next notification, up to {@link Config#burstSize} frames, into buf.
+     * Frames lost to {@link Config#dropProbability} are left out.
+     *
+     * @return payload length in bytes, possibly 0 if every frame of the burst was dropped
+     */
+    public int nextNotification(byte[] buf) {
+        int length = 0;
+        for (int i = 0; i < config.burstSize; i++) {
+            next(scratch);
+            if (config.dropProbability > 0 && random.nextDouble() < config.dropProbability) {
+                continue;
+            }
+            TelemetryFrame.encode(scratch, buf, length);
+            length += TelemetryFrame.SIZE;
+        }
+        return length;
+    }
+
+    // Records the next count notifications, skipping fully dropped ones
+    public byte[][] record(int count) {
+        byte[][] payloads = new byte[count][];
+        byte[] buf = new byte[config.burstSize * TelemetryFrame.SIZE];
+        for (int i = 0; i < count; i++) {
+            int length;
+            do {
+                length = nextNotification(buf);
+            } while (length == 0);
+            payloads[i] = Arrays.copyOf(buf, length);
+        }
+        return payloads;
+    }
+
+    public long getPeriodMicros() {
+        return periodMicros;
+    }
+
+    private float gaussian(float sigma) {
+        return (float) (random.nextGaussian() * sigma);
+    }
+}
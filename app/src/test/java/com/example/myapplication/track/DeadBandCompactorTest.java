@@ -0,0 +1,50 @@
+package com.example.myapplication.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeadBandCompactorTest {
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+
+    @Test
+    public void steadyStraightRide_keepsOnlyTheGapFillers() {
+        DeadBandCompactor compactor = new DeadBandCompactor(new DeadBandCompactor.Config());
+        int kept = 0;
+        // 15 m/s due north for two minutes
+        for (int t = 0; t < 120; t++) {
+            if (compactor.offer(t * 1_000L, 47 + 15.0 * t / METERS_PER_DEGREE, 8, 0, 15)) {
+                kept++;
+            }
+        }
+        assertEquals(4, kept); // The start and one every 30 s
+        assertEquals(30, compactor.getCompactionRatio(), 1e-9);
+    }
+
+    @Test
+    public void turn_isKept() {
+        DeadBandCompactor compactor = new DeadBandCompactor(new DeadBandCompactor.Config());
+        assertTrue(compactor.offer(0, 47, 8, 0, 10));
+        assertFalse(compactor.offer(1_000, 47 + 10 / METERS_PER_DEGREE, 8, 0, 10));
+        // Turned east: after another second the rider is 7 m off the dead-reckoned line
+        double east = 7 / (METERS_PER_DEGREE * Math.cos(Math.toRadians(47)));
+        assertTrue(compactor.offer(2_000, 47 + 20 / METERS_PER_DEGREE, 8 + east, 10, 0));
+        assertEquals(3, compactor.getOffered());
+        assertEquals(2, compactor.getKept());
+    }
+
+    @Test
+    public void standingStill_withJitterWithinTolerance_isOnePoint() {
+        DeadBandCompactor compactor = new DeadBandCompactor(new DeadBandCompactor.Config());
+        int kept = 0;
+        for (int t = 0; t < 25; t++) {
+            double jitter = (t % 3 - 1) * 2 / METERS_PER_DEGREE;
+            if (compactor.offer(t * 1_000L, 47 + jitter, 8, 0, 0)) {
+                kept++;
+            }
+        }
+        assertEquals(1, kept);
+        compactor.reset();
+        assertTrue(compactor.offer(26_000, 47, 8, 0, 0));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.myapplication.track;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KalmanLocationFilterTest {
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_008.8;
+    private static final double LATITUDE = 47;
+    private static final double METERS_PER_LONGITUDE = METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE));
+
+    @Test
+    public void noisyStraightRide_isSmoothedWithSpeedAndHeading() {
+        Random random = new Random(2);
+        KalmanLocationFilter filter = new KalmanLocationFilter(new KalmanLocationFilter.Config());
+        // 20 m/s towards the north-east, one fix a second within 8 m
+        double speed = 20;
+        double rawError = 0;
+        double smoothedError = 0;
+        int compared = 0;
+        for (int t = 0; t < 120; t++) {
+            double east = speed * t * Math.sin(Math.toRadians(45));
+            double north = speed * t * Math.cos(Math.toRadians(45));
+            double noisyEast = east + random.nextGaussian() * 8;
+            double noisyNorth = north + random.nextGaussian() * 8;
+            assertTrue(filter.update(t * 1_000_000_000L, LATITUDE + noisyNorth / METERS_PER_DEGREE,
+                    8 + noisyEast / METERS_PER_LONGITUDE, 8));
+            if (t >= 20) {
+                double filteredEast = (filter.getLongitude() - 8) * METERS_PER_LONGITUDE;
+                double filteredNorth = (filter.getLatitude() - LATITUDE) * METERS_PER_DEGREE;
+                smoothedError += Math.hypot(filteredEast - east, filteredNorth - north);
+                rawError += Math.hypot(noisyEast - east, noisyNorth - north);
+                compared++;
+            }
+        }
+        assertTrue(smoothedError < rawError * 0.7);
+        assertEquals(speed, filter.getSpeedMps(), 2);
+        assertEquals(45, filter.getHeadingDegrees(), 5);
+        assertTrue(filter.getPositionErrorMeters() < 8);
+        assertEquals(0, filter.getOutliers());
+        assertTrue(compared > 0);
+    }
+
+    @Test
+    public void jump_isRejectedUntilItPersists() {
+        KalmanLocationFilter.Config config = new KalmanLocationFilter.Config();
+        KalmanLocationFilter filter = new KalmanLocationFilter(config);
+        for (int t = 0; t < 30; t++) {
+            filter.update(t * 1_000_000_000L, LATITUDE, 8, 5);
+        }
+        // A fix 500 m off that claims 5 m accuracy is a multipath glitch
+        double jumped = LATITUDE + 500 / METERS_PER_DEGREE;
+        assertFalse(filter.update(30_000_000_000L, jumped, 8, 5));
+        assertEquals(LATITUDE, filter.getLatitude(), 1 / METERS_PER_DEGREE);
+        // ...unless it keeps saying so
+        long t = 31;
+        while (!filter.update(t * 1_000_000_000L, jumped, 8, 5)) {
+            t++;
+        }
+        assertEquals(config.maxConsecutiveOutliers + 1, filter.getOutliers());
+        assertEquals(1, filter.getResets());
+        assertEquals(jumped, filter.getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void longGap_startsOver() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(new KalmanLocationFilter.Config());
+        filter.update(0, LATITUDE, 8, 5);
+        filter.update(1_000_000_000L, LATITUDE + 10 / METERS_PER_DEGREE, 8, 5);
+        assertTrue(filter.update(60_000_000_000L, LATITUDE + 0.1, 8.1, 5));
+        assertEquals(1, filter.getResets());
+        assertEquals(0, filter.getSpeedMps(), 1e-9);
+        assertEquals(LATITUDE + 0.1, filter.getLatitude(), 1e-9);
+    }
+}
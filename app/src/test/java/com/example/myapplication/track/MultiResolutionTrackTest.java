@@ -0,0 +1,86 @@
+package com.example.myapplication.track;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultiResolutionTrackTest {
+
+    // A wandering ride around Zurich, one fix a second at about 15 m/s
+    private static void ride(MultiResolutionTrack track, int fixes, long seed) {
+        Random random = new Random(seed);
+        double latitude = 47.37;
+        double longitude = 8.54;
+        double heading = 0;
+        for (int i = 0; i < fixes; i++) {
+            heading += random.nextGaussian() * 0.15;
+            latitude += Math.cos(heading) * 15 / 111_000;
+            longitude += Math.sin(heading) * 15 / 75_000;
+            track.append(latitude, longitude);
+        }
+    }
+
+    private static List<double[]> points(MultiResolutionTrack track, int level) {
+        List<double[]> points = new ArrayList<>();
+        track.forEachPoint(level, 0, Integer.MAX_VALUE, (lat, lon) -> points.add(new double[]{lat, lon}));
+        return points;
+    }
+
+    @Test
+    public void coarserLevels_haveFewerPoints() {
+        MultiResolutionTrack track = new MultiResolutionTrack(new MultiResolutionTrack.Config());
+        ride(track, 20_000, 1);
+        assertEquals(20_000, track.size());
+        int previous = 0;
+        for (int level = 0; level < track.getLevelCount(); level++) {
+            int count = track.getPointCount(level);
+            assertTrue(count > previous);
+            assertTrue(count < track.size());
+            assertEquals(count, points(track, level).size());
+            previous = count;
+        }
+        assertEquals(0, track.levelFor(3));
+        assertEquals(2, track.levelFor(12.5f));
+        assertEquals(track.getLevelCount() - 1, track.levelFor(21));
+    }
+
+    @Test
+    public void incrementalLine_startsAndEndsWithTheRide() {
+        MultiResolutionTrack.Config config = new MultiResolutionTrack.Config();
+        config.chunkSize = 64;
+        MultiResolutionTrack track = new MultiResolutionTrack(config);
+        Random random = new Random(5);
+        double lat = 47.37;
+        double lon = 8.54;
+        for (int i = 0; i < 1_000; i++) {
+            lat += random.nextGaussian() * 1e-4;
+            lon += random.nextGaussian() * 1e-4;
+            track.append(lat, lon);
+            int level = track.getLevelCount() - 1;
+            // Read after every fix, like the renderer does when the camera is idle
+            List<double[]> line = points(track, level);
+            assertEquals(lat, line.get(line.size() - 1)[0], 0);
+            assertEquals(47.37, line.get(0)[0], 1e-3);
+            assertTrue(track.getFrozenCount(level) <= line.size());
+        }
+
+        // Frozen points don't move as the ride goes on
+        int level = track.getLevelCount() - 1;
+        int frozen = track.getFrozenCount(level);
+        List<double[]> before = points(track, level).subList(0, frozen);
+        for (int i = 0; i < 500; i++) {
+            track.append(lat, lon + i * 1e-4);
+        }
+        List<double[]> after = points(track, level);
+        for (int i = 0; i < frozen; i++) {
+            assertArrayEquals(before.get(i), after.get(i), 0);
+        }
+
+        track.clear();
+        assertEquals(0, track.getPointCount(0));
+    }
+}
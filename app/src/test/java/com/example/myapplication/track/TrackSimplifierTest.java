@@ -0,0 +1,63 @@
+package com.example.myapplication.track;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrackSimplifierTest {
+    private final TrackSimplifier simplifier = new TrackSimplifier();
+
+    @Test
+    public void straightLine_keepsOnlyItsEnds() {
+        double[] x = new double[100];
+        double[] y = new double[100];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = 2 * i;
+        }
+        int[] out = new int[100];
+        assertEquals(2, simplifier.simplify(x, y, 0, 99, 0.01, out, 0));
+        assertEquals(0, out[0]);
+        assertEquals(99, out[1]);
+    }
+
+    @Test
+    public void turnaround_isKept() {
+        // Out and back along the same road: the far end lies on the line through the ends
+        double[] x = {0, 5, 10, 5, 0};
+        double[] y = {0, 0, 0, 0, 0.001};
+        int[] out = new int[5];
+        int count = simplifier.simplify(x, y, 0, 4, 0.5, out, 0);
+        assertEquals(3, count);
+        assertEquals(2, out[1]);
+    }
+
+    @Test
+    public void everyDroppedPoint_staysWithinTolerance() {
+        Random random = new Random(3);
+        int n = 50_000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double heading = 0;
+        for (int i = 1; i < n; i++) {
+            heading += random.nextGaussian() * 0.2;
+            x[i] = x[i - 1] + Math.cos(heading);
+            y[i] = y[i - 1] + Math.sin(heading);
+        }
+        int[] out = new int[n];
+        double tolerance = 3;
+        int count = simplifier.simplify(x, y, 0, n - 1, tolerance, out, 0);
+        assertTrue(count < n / 5);
+        for (int k = 0; k + 1 < count; k++) {
+            int a = out[k];
+            int b = out[k + 1];
+            assertTrue(b > a);
+            for (int i = a + 1; i < b; i++) {
+                double d = TrackSimplifier.segmentDistanceSquared(x[i], y[i], x[a], y[a], x[b], y[b]);
+                assertTrue(d <= tolerance * tolerance);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.myapplication.ui;
+
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetryPresenterTest {
+
+    // Collects posted callbacks until the test runs a frame
+    private static class ManualFrameScheduler implements FrameScheduler {
+        final List<FrameCallback> pending = new ArrayList<>();
+        long frameTimeNanos;
+
+        @Override
+        public void postFrameCallback(FrameCallback callback) {
+            pending.add(callback);
+        }
+
+        void runFrame() {
+            frameTimeNanos += 16_666_667L;
+            List<FrameCallback> callbacks = new ArrayList<>(pending);
+            pending.clear();
+            for (FrameCallback callback : callbacks) {
+                callback.doFrame(frameTimeNanos);
+            }
+        }
+    }
+
+    @Test
+    public void burstOfSamples_publishesOncePerFrame() {
+        ManualFrameScheduler scheduler = new ManualFrameScheduler();
+        List<String> shown = new ArrayList<>();
+        TelemetryPresenter presenter = new TelemetryPresenter(scheduler, shown::add);
+        TelemetrySample sample = new TelemetrySample();
+
+        for (int i = 0; i < 100; i++) {
+            sample.set(i, i, 0, 0, 1 + i / 100f, 0, 0, 0);
+            presenter.onSampleReceived(sample);
+        }
+        assertEquals(1, scheduler.pending.size());
+        scheduler.runFrame();
+
+        assertEquals(1, shown.size());
+        assertTrue(shown.get(0), shown.get(0).endsWith("#99"));
+        assertEquals(100, presenter.getUpdateCount());
+        assertEquals(1, presenter.getPublishCount());
+        assertEquals(99, presenter.getCoalescedCount());
+    }
+
+    @Test
+    public void statusAndTelemetry_areShownTogether() {
+        ManualFrameScheduler scheduler = new ManualFrameScheduler();
+        List<String> shown = new ArrayList<>();
+        TelemetryPresenter presenter = new TelemetryPresenter(scheduler, shown::add);
+        TelemetrySample sample = new TelemetrySample();
+        sample.set(5, 0, 0, 0, 1.234f, 0, 0, 0);
+
+        presenter.showStatus("Scanning for devices...");
+        scheduler.runFrame();
+        presenter.onSampleReceived(sample);
+        scheduler.runFrame();
+        scheduler.runFrame(); // nothing changed, nothing posted
+
+        assertEquals(2, shown.size());
+        assertEquals("Scanning for devices...", shown.get(0));
+        assertEquals("Scanning for devices...\nAcceleration: 1.23 g  Rotation: 0.0 deg/s  #5", shown.get(1));
+    }
+
+    @Test
+    public void appendFixed_roundsLikeFormat() {
+        StringBuilder sb = new StringBuilder();
+        TelemetryPresenter.appendFixed(sb, -0.006f, 2);
+        sb.append(' ');
+        TelemetryPresenter.appendFixed(sb, 12.345f, 1);
+        sb.append(' ');
+        TelemetryPresenter.appendFixed(sb, 3.05f, 2);
+        assertEquals("-0.01 12.3 3.05", sb.toString());
+    }
+}
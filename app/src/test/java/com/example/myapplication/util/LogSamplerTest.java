@@ -0,0 +1,28 @@
+package com.example.myapplication.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogSamplerTest {
+
+    @Test
+    public void letsOneLineThroughPerInterval() {
+        VirtualScheduler clock = new VirtualScheduler();
+        LogSampler sampler = new LogSampler(clock, 1_000);
+        int logged = 0;
+        // 100 Hz for ten seconds
+        for (int i = 0; i < 1_000; i++) {
+            if (sampler.shouldLog()) {
+                logged++;
+                if (i > 0) {
+                    assertEquals(99, sampler.takeSuppressed());
+                }
+            }
+            clock.advanceMillis(10);
+        }
+        assertEquals(10, logged);
+        assertEquals(99, sampler.takeSuppressed());
+        assertEquals(0, sampler.takeSuppressed());
+    }
+}
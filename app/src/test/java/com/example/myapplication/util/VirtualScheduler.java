@@ -0,0 +1,68 @@
+package com.example.myapplication.util;
+
+import java.util.PriorityQueue;
+
+/**
+ * Single-threaded {@link Scheduler} and {@link Clock} on virtual time. Tasks only run when the
+ * test advances the clock.
+ */
+public class VirtualScheduler implements Scheduler, Clock {
+    private static class Task implements Comparable<Task> {
+        final long dueNanos;
+        final long order;
+        final Runnable runnable;
+        boolean cancelled;
+
+        Task(long dueNanos, long order, Runnable runnable) {
+            this.dueNanos = dueNanos;
+            this.order = order;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byTime = Long.compare(dueNanos, other.dueNanos);
+            return byTime != 0 ? byTime : Long.compare(order, other.order);
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long now;
+    private long order;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public Cancellable schedule(Runnable runnable, long delayMillis) {
+        Task task = new Task(now + delayMillis * 1_000_000, order++, runnable);
+        tasks.add(task);
+        return () -> task.cancelled = true;
+    }
+
+    // Runs every task due within the next millis, in order, moving the clock along
+    public void advanceMillis(long millis) {
+        long target = now + millis * 1_000_000;
+        while (!tasks.isEmpty() && tasks.peek().dueNanos <= target) {
+            Task task = tasks.poll();
+            now = Math.max(now, task.dueNanos);
+            if (!task.cancelled) {
+                task.runnable.run();
+            }
+        }
+        now = target;
+    }
+
+    // Tasks scheduled and not cancelled
+    public int pendingTasks() {
+        int count = 0;
+        for (Task task : tasks) {
+            if (!task.cancelled) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,53 @@
+// JVM-only JMH benchmarks for the telemetry hot path.
+// Run with: ./gradlew :benchmark:jmh
+// Filter with -Pjmh.includes=<regex>, replay a capture with -Pjmh.recording=<file of raw frames>.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// :app is an Android application module and can't be a JVM dependency, so compile its
+// Android-free packages straight from its source tree.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/myapplication/telemetry/**",
+                "com/example/myapplication/crash/**",
+                "com/example/myapplication/journal/**",
+                "com/example/myapplication/geo/**",
+                "com/example/myapplication/util/Clock.java"
+            )
+        }
+    }
+    // The synthetic stream is a test fixture of :app
+    named("jmh") {
+        java {
+            srcDir("../app/src/test/java")
+            include(
+                "com/example/myapplication/benchmark/**",
+                "com/example/myapplication/telemetry/SyntheticTelemetryGenerator.java"
+            )
+        }
+    }
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    // Average throughput plus sampled latency (p50/p99/p99.9) and allocation per operation
+    benchmarkMode = listOf("thrpt", "sample")
+    timeUnit = "us"
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    providers.gradleProperty("jmh.includes").orNull?.let { includes = listOf(it) }
+    providers.gradleProperty("jmh.recording").orNull?.let { jvmArgsAppend = listOf("-Dtelemetry.recording=$it") }
+}
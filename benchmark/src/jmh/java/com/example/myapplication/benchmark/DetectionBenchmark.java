@@ -0,0 +1,58 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.crash.CrashDetector;
+import com.example.myapplication.telemetry.TelemetryReceiver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * Packet to crash decision: decode, dispatch and run the detector on each sample.
+ * The stream loops, so a synthetic crash is hit once per pass.
+ */
+@State(Scope.Thread)
+public class DetectionBenchmark {
+    private static final int NOTIFICATIONS = 1 << 14;
+
+    @Param({"synthetic", "crash", "recorded"})
+    public String source;
+
+    @Param({"200", "1000"})
+    public int rateHz;
+
+    private byte[][] payloads;
+    private TelemetryReceiver receiver;
+    private CrashDetector detector;
+    private long timeOffset;
+    private long lastTimestamp;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) throws IOException {
+        payloads = TelemetryStreams.load(source, rateHz, 1, NOTIFICATIONS);
+        detector = new CrashDetector(blackhole::consume);
+        // Shift timestamps on every pass so the looping stream stays monotonic for the detector
+        receiver = new TelemetryReceiver(sample -> {
+            lastTimestamp = sample.getTimestampMicros() + timeOffset;
+            detector.onSample(lastTimestamp, sample.getAccelX(), sample.getAccelY(), sample.getAccelZ(),
+                    sample.getGyroX(), sample.getGyroY(), sample.getGyroZ());
+        }, blackhole::consume);
+    }
+
+    @Benchmark
+    public void packetToDecision() {
+        receiver.onNotification(payloads[next]);
+        if (++next == payloads.length) {
+            next = 0;
+            timeOffset = lastTimestamp + 10_000;
+            receiver.getDecoder().reset();
+        }
+    }
+}
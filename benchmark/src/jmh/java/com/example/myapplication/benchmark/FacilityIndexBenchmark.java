@@ -0,0 +1,87 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.geo.FacilityIndex;
+import com.example.myapplication.geo.FacilityIndexWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * The lookups added to the crash alert text, against a mapped index the size of a country:
+ * a few thousand facilities and a grid of named roads densified by the writer.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FacilityIndexBenchmark {
+    private static final int QUERIES = 1 << 12;
+
+    @Param({"5000"})
+    public int facilities;
+
+    // Roads per direction; each one crosses the whole region
+    @Param({"100"})
+    public int roads;
+
+    private File file;
+    private FacilityIndex index;
+    private final FacilityIndex.Place place = new FacilityIndex.Place();
+    private final double[] queryLatitudes = new double[QUERIES];
+    private final double[] queryLongitudes = new double[QUERIES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        Random random = new Random(3);
+        FacilityIndexWriter writer = new FacilityIndexWriter(new FacilityIndexWriter.Config());
+        for (int i = 0; i < facilities; i++) {
+            writer.addFacility(random.nextInt(4), "facility " + i, 45.8 + random.nextDouble() * 2,
+                    6 + random.nextDouble() * 4.5);
+        }
+        for (int i = 0; i < roads; i++) {
+            double latitude = 45.8 + 2.0 * i / roads;
+            double longitude = 6 + 4.5 * i / roads;
+            writer.addRoad("east " + i, new double[]{latitude, latitude}, new double[]{6, 10.5}, 2);
+            writer.addRoad("north " + i, new double[]{45.8, 47.8}, new double[]{longitude, longitude}, 2);
+        }
+        file = File.createTempFile("facilities", ".fidx");
+        writer.write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            index = FacilityIndex.wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), true);
+        }
+        System.out.println(index.getFacilityCount() + " facilities, " + index.getRoadPointCount() + " road points, "
+                + file.length() + " bytes");
+        for (int q = 0; q < QUERIES; q++) {
+            queryLatitudes[q] = 45.8 + random.nextDouble() * 2;
+            queryLongitudes[q] = 6 + random.nextDouble() * 4.5;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        file.delete();
+    }
+
+    @Benchmark
+    public boolean nearestHospital() {
+        int q = next++ & (QUERIES - 1);
+        return index.nearestFacility(queryLatitudes[q], queryLongitudes[q], FacilityIndex.HOSPITAL, 100_000, place);
+    }
+
+    @Benchmark
+    public String roadName() {
+        int q = next++ & (QUERIES - 1);
+        return index.roadName(queryLatitudes[q], queryLongitudes[q], 100);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.telemetry.TelemetryReceiver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * Payload decode plus listener dispatch, one notification per operation:
+ * what the GATT callback thread pays per packet.
+ */
+@State(Scope.Thread)
+public class FrameDecodeBenchmark {
+    @Param({"1", "4", "12"})
+    public int burstSize;
+
+    private byte[][] payloads;
+    private TelemetryReceiver receiver;
+    private int next;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        payloads = TelemetryStreams.load("synthetic", 200, burstSize, 4096);
+        receiver = new TelemetryReceiver(sample -> blackhole.consume(sample.getAccelZ()), blackhole::consume);
+    }
+
+    @Benchmark
+    public void decodeNotification() {
+        receiver.onNotification(payloads[next]);
+        if (++next == payloads.length) {
+            // Sequence numbers start over on the next pass
+            next = 0;
+            receiver.getDecoder().reset();
+        }
+    }
+}
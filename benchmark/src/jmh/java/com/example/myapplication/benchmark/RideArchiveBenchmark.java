@@ -0,0 +1,122 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.journal.RideArchiveReader;
+import com.example.myapplication.journal.RideArchiveWriter;
+import com.example.myapplication.telemetry.FrameDecoder;
+import com.example.myapplication.telemetry.SyntheticTelemetryGenerator;
+import com.example.myapplication.telemetry.TelemetryFrame;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Archiving an hour-long ride at 200 Hz and reading it back, per sample, and seeking into it.
+ * Samples go through a telemetry frame first so the floats are what the Pi really sends.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RideArchiveBenchmark {
+    private static final int SAMPLES = 200 * 60 * 60;
+    private static final int SEEKS = 1 << 12;
+
+    // Timestamp jitter: the Pi's timer, and the generator's default
+    @Param({"20", "500"})
+    public long jitterMicros;
+
+    // Smaller blocks seek faster and compress worse
+    @Param({"256", "1024"})
+    public int blockSamples;
+
+    private final TelemetrySample[] samples = new TelemetrySample[SAMPLES];
+    private final TelemetrySample sample = new TelemetrySample();
+    private final long[] seekTimes = new long[SEEKS];
+    private File encoded;
+    private File archive;
+    private RideArchiveReader reader;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        SyntheticTelemetryGenerator.Config config = new SyntheticTelemetryGenerator.Config();
+        config.jitterMicros = jitterMicros;
+        SyntheticTelemetryGenerator generator = new SyntheticTelemetryGenerator(config);
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] frame = new byte[TelemetryFrame.SIZE];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = new TelemetrySample();
+            generator.next(samples[i]);
+            TelemetryFrame.encode(samples[i], frame, 0);
+            decoder.decode(frame, 0, samples[i]);
+        }
+        archive = File.createTempFile("ride", ".rca");
+        encoded = File.createTempFile("ride-encoded", ".rca");
+        write(archive);
+        reader = RideArchiveReader.open(archive);
+        System.out.println(SAMPLES + " samples, " + archive.length() + " bytes, "
+                + String.format("%.2f", 44.0 * SAMPLES / archive.length()) + "x smaller than the journal");
+        Random random = new Random(9);
+        long first = reader.getMinTimestampMicros();
+        long span = reader.getMaxTimestampMicros() - first;
+        for (int i = 0; i < SEEKS; i++) {
+            seekTimes[i] = first + (long) (random.nextDouble() * span);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        reader.close();
+        archive.delete();
+        encoded.delete();
+    }
+
+    private void write(File file) throws IOException {
+        RideArchiveWriter.Config config = new RideArchiveWriter.Config();
+        config.blockSamples = blockSamples;
+        try (RideArchiveWriter writer = new RideArchiveWriter(file, config)) {
+            for (TelemetrySample s : samples) {
+                writer.append(s);
+            }
+            writer.finish();
+        }
+    }
+
+    // Including the one fsync at the end
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long encode() throws IOException {
+        write(encoded);
+        return encoded.length();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long decode() throws IOException {
+        long sum = 0;
+        try (RideArchiveReader r = RideArchiveReader.open(archive)) {
+            while (r.next(sample)) {
+                sum += sample.getTimestampMicros();
+            }
+        }
+        return sum;
+    }
+
+    // Random jump into the ride and the first sample there
+    @Benchmark
+    public long seek() throws IOException {
+        reader.seek(seekTimes[next++ & (SEEKS - 1)]);
+        reader.next(sample);
+        return sample.getTimestampMicros();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.telemetry.SampleRingBuffer;
+import com.example.myapplication.telemetry.TelemetrySample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Hand-off from the GATT callback thread to the processing thread, with one producer and one
+ * consumer running concurrently.
+ */
+@State(Scope.Group)
+public class RingBufferBenchmark {
+    @Param({"DROP_OLDEST", "DROP_NEWEST"})
+    public SampleRingBuffer.OverflowPolicy policy;
+
+    private SampleRingBuffer buffer;
+
+    @State(Scope.Thread)
+    public static class Slot {
+        final TelemetrySample sample = new TelemetrySample();
+    }
+
+    @Setup
+    public void setUp() {
+        buffer = new SampleRingBuffer(512, policy);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean offer(Slot slot) {
+        return buffer.offer(slot.sample);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean poll(Slot slot) {
+        return buffer.poll(slot.sample);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.geo.SpatialIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Viewport and "near here" queries against months of ride history: rides of 10k points, one fix
+ * a second, spread over a region the size of Switzerland and added one at a time like the app
+ * does. Also times opening the persisted index, which is what a cold start pays.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SpatialIndexBenchmark {
+    private static final int RIDE_POINTS = 10_000;
+    private static final int QUERIES = 1 << 12;
+
+    @Param({"10000000"})
+    public int points;
+
+    // Side of the square viewport
+    @Param({"500", "5000"})
+    public int viewportMeters;
+
+    private File directory;
+    private SpatialIndex index;
+    private final double[] queryLatitudes = new double[QUERIES];
+    private final double[] queryLongitudes = new double[QUERIES];
+    private final SpatialIndex.Neighbors neighbors = new SpatialIndex.Neighbors();
+    private int next;
+    private long found;
+
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        directory = Files.createTempDirectory("spatial-bench").toFile();
+        index = SpatialIndex.open(directory, new SpatialIndex.Config());
+        Random random = new Random(1);
+        double[] latitudes = new double[RIDE_POINTS];
+        double[] longitudes = new double[RIDE_POINTS];
+        int[] payloads = new int[RIDE_POINTS];
+        for (int ride = 0; ride < points / RIDE_POINTS; ride++) {
+            double latitude = 45.8 + random.nextDouble() * 2;
+            double longitude = 6 + random.nextDouble() * 4.5;
+            double heading = random.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < RIDE_POINTS; i++) {
+                heading += random.nextGaussian() * 0.1;
+                latitude += Math.cos(heading) * 15 / 111_000;
+                longitude += Math.sin(heading) * 15 / 76_000;
+                latitudes[i] = latitude;
+                longitudes[i] = longitude;
+                payloads[i] = ride;
+            }
+            index.add(latitudes, longitudes, payloads, RIDE_POINTS);
+        }
+        // Anywhere in the region, so some viewports are empty and some cover several rides
+        for (int q = 0; q < QUERIES; q++) {
+            queryLatitudes[q] = 45.8 + random.nextDouble() * 2;
+            queryLongitudes[q] = 6 + random.nextDouble() * 4.5;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public int boxQuery() {
+        int q = next++ & (QUERIES - 1);
+        double halfLatitude = viewportMeters / 2.0 / 111_000;
+        double halfLongitude = viewportMeters / 2.0 / 76_000;
+        return index.query(queryLatitudes[q] - halfLatitude, queryLongitudes[q] - halfLongitude,
+                queryLatitudes[q] + halfLatitude, queryLongitudes[q] + halfLongitude,
+                (latitude, longitude, payload) -> found++);
+    }
+
+    @Benchmark
+    public void nearest10(Blackhole blackhole) {
+        int q = next++ & (QUERIES - 1);
+        index.nearest(queryLatitudes[q], queryLongitudes[q], 10, neighbors);
+        blackhole.consume(neighbors.getDistanceMeters(0));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public SpatialIndex open() throws IOException {
+        return SpatialIndex.open(directory, new SpatialIndex.Config());
+    }
+}
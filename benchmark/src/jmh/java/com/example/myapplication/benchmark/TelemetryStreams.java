@@ -0,0 +1,48 @@
+package com.example.myapplication.benchmark;
+
+import com.example.myapplication.telemetry.SyntheticTelemetryGenerator;
+import com.example.myapplication.telemetry.TelemetryFrame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Notification payloads for the benchmarks, either synthetic or loaded from a capture.
+ * A capture is a file of raw frames back to back, as the Pi sends them; pass it with
+ * -Pjmh.recording=path.
+ */
+final class TelemetryStreams {
+    static final String RECORDING_PROPERTY = "telemetry.recording";
+
+    private TelemetryStreams() {}
+
+    static byte[][] load(String source, int rateHz, int burstSize, int notifications) throws IOException {
+        if ("recorded".equals(source)) {
+            String path = System.getProperty(RECORDING_PROPERTY);
+            if (path != null && !path.isEmpty()) {
+                return split(Files.readAllBytes(Paths.get(path)), burstSize);
+            }
+            // No capture given, fall through to a synthetic stream with a crash in it
+        }
+        SyntheticTelemetryGenerator.Config config = new SyntheticTelemetryGenerator.Config();
+        config.rateHz = rateHz;
+        config.burstSize = burstSize;
+        // Stream length in seconds, crash two thirds of the way in so both paths get exercised
+        double seconds = (double) notifications * burstSize / rateHz;
+        config.crashAtSeconds = "crash".equals(source) || "recorded".equals(source) ? seconds * 2 / 3 : -1;
+        return new SyntheticTelemetryGenerator(config).record(notifications);
+    }
+
+    private static byte[][] split(byte[] frames, int burstSize) {
+        int frameCount = frames.length / TelemetryFrame.SIZE;
+        int payloadSize = burstSize * TelemetryFrame.SIZE;
+        byte[][] payloads = new byte[(frameCount + burstSize - 1) / burstSize][];
+        for (int i = 0; i < payloads.length; i++) {
+            int from = i * payloadSize;
+            payloads[i] = Arrays.copyOfRange(frames, from, Math.min(from + payloadSize, frameCount * TelemetryFrame.SIZE));
+        }
+        return payloads;
+    }
+}
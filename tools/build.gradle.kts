@@ -0,0 +1,27 @@
+// Build-time tools for :app, run by its build; see compileFacilities in app/build.gradle.kts.
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Same as :benchmark, share the Android-free sources with :app instead of copying them
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/myapplication/geo/FacilityIndex.java",
+                "com/example/myapplication/geo/FacilityIndexWriter.java",
+                "com/example/myapplication/tools/**"
+            )
+        }
+    }
+}
+
+application {
+    mainClass.set("com.example.myapplication.tools.FacilityCompiler")
+}
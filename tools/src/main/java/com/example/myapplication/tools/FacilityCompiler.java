@@ -0,0 +1,121 @@
+package com.example.myapplication.tools;
+
+import com.example.myapplication.geo.FacilityIndex;
+import com.example.myapplication.geo.FacilityIndexWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Compiles the facility and road tables into the asset read by FacilityIndex.
+ *
+ * <pre>
+ * usage: FacilityCompiler facilities.tsv roads.tsv out.fidx
+ *
+ * facilities.tsv   kind  latitude  longitude  name
+ *                  kind is hospital, ambulance, fire or police
+ * roads.tsv        name  latitude,longitude latitude,longitude ...
+ * </pre>
+ *
+ * Tab-separated; blank lines and lines starting with # are skipped.
+ */
+public final class FacilityCompiler {
+    private FacilityCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: FacilityCompiler facilities.tsv roads.tsv out.fidx");
+            System.exit(2);
+        }
+        FacilityIndexWriter writer = new FacilityIndexWriter(new FacilityIndexWriter.Config());
+        readFacilities(new File(args[0]), writer);
+        readRoads(new File(args[1]), writer);
+        File out = new File(args[2]);
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        writer.write(out);
+        System.out.println(out + ": " + writer.getFacilityCount() + " facilities, "
+                + writer.getRoadPointCount() + " road points, " + out.length() + " bytes");
+    }
+
+    private static void readFacilities(File file, FacilityIndexWriter writer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (skip(line)) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    throw new IOException(file + ":" + lineNumber + ": expected kind, latitude, longitude and name");
+                }
+                writer.addFacility(kind(fields[0], file, lineNumber), fields[3].trim(),
+                        coordinate(fields[1], file, lineNumber), coordinate(fields[2], file, lineNumber));
+            }
+        }
+    }
+
+    private static void readRoads(File file, FacilityIndexWriter writer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (skip(line)) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 2);
+                String[] points = fields.length == 2 ? fields[1].trim().split("\\s+") : new String[0];
+                if (points.length < 2) {
+                    throw new IOException(file + ":" + lineNumber + ": expected a name and at least two points");
+                }
+                double[] latitudes = new double[points.length];
+                double[] longitudes = new double[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    String[] pair = points[i].split(",");
+                    if (pair.length != 2) {
+                        throw new IOException(file + ":" + lineNumber + ": bad point " + points[i]);
+                    }
+                    latitudes[i] = coordinate(pair[0], file, lineNumber);
+                    longitudes[i] = coordinate(pair[1], file, lineNumber);
+                }
+                writer.addRoad(fields[0].trim(), latitudes, longitudes, points.length);
+            }
+        }
+    }
+
+    private static boolean skip(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
+    }
+
+    private static int kind(String value, File file, int lineNumber) throws IOException {
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "hospital":
+                return FacilityIndex.HOSPITAL;
+            case "ambulance":
+                return FacilityIndex.AMBULANCE_STATION;
+            case "fire":
+                return FacilityIndex.FIRE_STATION;
+            case "police":
+                return FacilityIndex.POLICE;
+            default:
+                throw new IOException(file + ":" + lineNumber + ": unknown facility kind " + value);
+        }
+    }
+
+    private static double coordinate(String value, File file, int lineNumber) throws IOException {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ":" + lineNumber + ": bad coordinate " + value);
+        }
+    }
+}